@@ -0,0 +1,267 @@
+/*
+ * jSite - CompressionPolicyBenchmark.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import de.todesbaum.util.freenet.fcp2.DirectFileEntry;
+import de.todesbaum.util.freenet.fcp2.FileEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the encode time the {@link CompressionPolicy} saves on a site with
+ * mixed media: HTML files, JPEG images, MP4 videos, and binaries of unknown
+ * type, some of them compressible. The node’s compression is modelled by
+ * deflating every file of a request the node is allowed to compress.
+ * <p>
+ * The benchmarks use the decisions of {@link ProjectInserter}, including the
+ * time it takes to sample the files: one benchmark compresses every file, as
+ * the node did before the policy was introduced; one inserts all files with
+ * a single manifest, which the node compresses as a whole as soon as one
+ * file is compressible; and one inserts the incompressible files as keys of
+ * their own, as {@link ProjectInserter} does for manifests with compressible
+ * files.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionPolicyBenchmark {
+
+	/** The directory of the site. */
+	private File siteDirectory;
+
+	/** The file entries of the site. */
+	private final List<FileEntry> fileEntries = new ArrayList<FileEntry>();
+
+	/** The compression policy. */
+	private final CompressionPolicy compressionPolicy = new CompressionPolicy(null);
+
+	/**
+	 * Creates the files of the site.
+	 *
+	 * @throws IOException
+	 *             if a file can not be created
+	 */
+	@Setup
+	public void createSite() throws IOException {
+		siteDirectory = Files.createTempDirectory("jsite-benchmark").toFile();
+		Random random = new Random(42);
+		byte[] markup = "<div class=\"entry\"><p>Lorem ipsum dolor sit amet.</p></div>\n".getBytes(StandardCharsets.UTF_8);
+		for (int index = 0; index < 40; index++) {
+			createFile("page" + index + ".html", "text/html", repeat(markup, 24 * 1024));
+		}
+		for (int index = 0; index < 20; index++) {
+			createFile("image" + index + ".jpg", "image/jpeg", randomBytes(random, 256 * 1024));
+		}
+		for (int index = 0; index < 2; index++) {
+			createFile("video" + index + ".mp4", "video/mp4", randomBytes(random, 4 * 1024 * 1024));
+		}
+		for (int index = 0; index < 4; index++) {
+			createFile("archive" + index + ".bin", "application/octet-stream", randomBytes(random, 512 * 1024));
+			createFile("table" + index + ".bin", "application/octet-stream", repeat(markup, 512 * 1024));
+		}
+	}
+
+	/**
+	 * Removes the files of the site.
+	 *
+	 * @throws IOException
+	 *             if a file can not be removed
+	 */
+	@TearDown
+	public void removeSite() throws IOException {
+		try (Stream<File> files = Files.walk(siteDirectory.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)) {
+			files.forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Compresses every file of the site.
+	 *
+	 * @param blackhole
+	 *            The blackhole that consumes the compressed sizes
+	 * @throws IOException
+	 *             if a file can not be read
+	 */
+	@Benchmark
+	public void compressEverything(Blackhole blackhole) throws IOException {
+		insertRequest(blackhole, fileEntries, true);
+	}
+
+	/**
+	 * Inserts all files of the site with a single manifest.
+	 *
+	 * @param blackhole
+	 *            The blackhole that consumes the compressed sizes
+	 * @throws IOException
+	 *             if a file can not be read
+	 */
+	@Benchmark
+	public void insertSingleManifest(Blackhole blackhole) throws IOException {
+		insertRequest(blackhole, fileEntries, ProjectInserter.shouldCompress(compressionPolicy, fileEntries));
+	}
+
+	/**
+	 * Inserts the incompressible files of the site as keys of their own,
+	 * without compression, and all other files with a manifest.
+	 *
+	 * @param blackhole
+	 *            The blackhole that consumes the compressed sizes
+	 * @throws IOException
+	 *             if a file can not be read
+	 */
+	@Benchmark
+	public void insertIncompressibleFilesSeparately(Blackhole blackhole) throws IOException {
+		List<FileEntry> separateEntries = ProjectInserter.getSeparateEntries(compressionPolicy, fileEntries);
+		for (FileEntry separateEntry : separateEntries) {
+			insertRequest(blackhole, Collections.singletonList(separateEntry), false);
+		}
+		List<FileEntry> manifestEntries = new ArrayList<FileEntry>(fileEntries);
+		manifestEntries.removeAll(separateEntries);
+		insertRequest(blackhole, manifestEntries, ProjectInserter.shouldCompress(compressionPolicy, manifestEntries));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates a file of the site.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param mimeType
+	 *            The MIME type of the file
+	 * @param content
+	 *            The content of the file
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	private void createFile(String filename, String mimeType, byte[] content) throws IOException {
+		File file = new File(siteDirectory, filename);
+		Files.write(file.toPath(), content);
+		fileEntries.add(new DirectFileEntry(filename, mimeType, file));
+	}
+
+	/**
+	 * Models the node encoding the files of a request.
+	 *
+	 * @param blackhole
+	 *            The blackhole that consumes the compressed sizes
+	 * @param fileEntries
+	 *            The file entries of the request
+	 * @param compress
+	 *            {@code true} if the node may compress the request,
+	 *            {@code false} otherwise
+	 * @throws IOException
+	 *             if a file can not be read
+	 */
+	private static void insertRequest(Blackhole blackhole, List<FileEntry> fileEntries, boolean compress) throws IOException {
+		for (FileEntry fileEntry : fileEntries) {
+			File file = ((DirectFileEntry) fileEntry).getDataFile();
+			blackhole.consume(compress ? compress(file) : file.length());
+		}
+	}
+
+	/**
+	 * Deflates the given file, the way the node compresses it with its GZIP
+	 * codec.
+	 *
+	 * @param file
+	 *            The file to compress
+	 * @return The size of the compressed file
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	private static long compress(File file) throws IOException {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(Files.readAllBytes(file.toPath()));
+			deflater.finish();
+			byte[] buffer = new byte[65536];
+			while (!deflater.finished()) {
+				deflater.deflate(buffer);
+			}
+			return deflater.getBytesWritten();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns random bytes.
+	 *
+	 * @param random
+	 *            The random number generator
+	 * @param length
+	 *            The number of bytes
+	 * @return The random bytes
+	 */
+	private static byte[] randomBytes(Random random, int length) {
+		byte[] content = new byte[length];
+		random.nextBytes(content);
+		return content;
+	}
+
+	/**
+	 * Repeats the given pattern.
+	 *
+	 * @param pattern
+	 *            The pattern to repeat
+	 * @param length
+	 *            The number of bytes to return
+	 * @return The repeated pattern
+	 */
+	private static byte[] repeat(byte[] pattern, int length) {
+		byte[] content = new byte[length];
+		for (int index = 0; index < length; index++) {
+			content[index] = pattern[index % pattern.length];
+		}
+		return content;
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * jSite - MessageDecoderBenchmark.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import de.todesbaum.util.io.LineInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link MessageDecoder} with the {@link LineInputStream}-based
+ * reader it replaced. Both decode a recorded insert session (node hello,
+ * progress messages, and a message with a payload) that is repeated to form a
+ * stream of roughly one megabyte. The stream is read in chunks of a
+ * configurable size to mimic the segments a socket delivers.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDecoderBenchmark {
+
+	/** The approximate size of the decoded stream. */
+	private static final int STREAM_SIZE = 1 << 20;
+
+	/** The maximum number of bytes a single read returns. */
+	@Param({ "1460", "65536" })
+	public int chunkSize;
+
+	/** The recorded message stream. */
+	private byte[] messageStream;
+
+	/**
+	 * Loads the recorded session and repeats it.
+	 *
+	 * @throws IOException
+	 *             if the recorded session can not be loaded
+	 */
+	@Setup
+	public void loadMessageStream() throws IOException {
+		ByteArrayOutputStream recordedSession = new ByteArrayOutputStream();
+		try (InputStream resourceInputStream = getClass().getResourceAsStream("insert-session.fcp")) {
+			resourceInputStream.transferTo(recordedSession);
+		}
+		ByteArrayOutputStream repeatedSessions = new ByteArrayOutputStream(STREAM_SIZE + recordedSession.size());
+		while (repeatedSessions.size() < STREAM_SIZE) {
+			recordedSession.writeTo(repeatedSessions);
+		}
+		messageStream = repeatedSessions.toByteArray();
+	}
+
+	/**
+	 * Decodes the message stream with the {@link MessageDecoder}.
+	 *
+	 * @param blackhole
+	 *            The blackhole that consumes the decoded messages
+	 * @throws IOException
+	 *             if the stream can not be decoded
+	 */
+	@Benchmark
+	public void messageDecoder(final Blackhole blackhole) throws IOException {
+		MessageDecoder messageDecoder = new MessageDecoder(blackhole::consume, (message, length) -> OutputStream.nullOutputStream());
+		messageDecoder.decode(new ChunkedInputStream(messageStream, chunkSize));
+	}
+
+	/**
+	 * Decodes the message stream the way the reader thread of
+	 * {@link Connection} did before the {@link MessageDecoder} was introduced.
+	 *
+	 * @param blackhole
+	 *            The blackhole that consumes the decoded messages
+	 * @throws IOException
+	 *             if the stream can not be decoded
+	 */
+	@Benchmark
+	public void lineInputStream(Blackhole blackhole) throws IOException {
+		InputStream nodeInputStream = new ChunkedInputStream(messageStream, chunkSize);
+		try (LineInputStream nodeReader = new LineInputStream(nodeInputStream)) {
+			String line;
+			Message message = null;
+			while ((line = nodeReader.readLine()) != null) {
+				if (message == null) {
+					message = new Message(line);
+					continue;
+				}
+				if ("Data".equals(line)) {
+					nodeInputStream.skipNBytes(Long.parseLong(message.get("DataLength")));
+				}
+				if ("Data".equals(line) || "EndMessage".equals(line)) {
+					blackhole.consume(message);
+					message = null;
+					continue;
+				}
+				int equalsPosition = line.indexOf('=');
+				if (equalsPosition > -1) {
+					String key = line.substring(0, equalsPosition).trim();
+					String value = line.substring(equalsPosition + 1).trim();
+					if (key.equals("Identifier")) {
+						message.setIdentifier(value);
+					} else {
+						message.put(key, value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Input stream that returns at most a fixed number of bytes per read, like
+	 * a socket returns at most one segment’s worth of data.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class ChunkedInputStream extends ByteArrayInputStream {
+
+		/** The maximum number of bytes returned by a single read. */
+		private final int chunkSize;
+
+		/**
+		 * Creates a new chunked input stream.
+		 *
+		 * @param data
+		 *            The data to return
+		 * @param chunkSize
+		 *            The maximum number of bytes returned by a single read
+		 */
+		public ChunkedInputStream(byte[] data, int chunkSize) {
+			super(data);
+			this.chunkSize = chunkSize;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public synchronized int read(byte[] buffer, int offset, int length) {
+			return super.read(buffer, offset, Math.min(length, chunkSize));
+		}
+
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * jSite - MessageRoutingBenchmark.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the identifier-keyed routing of {@link Connection} with the
+ * dispatch it replaced, where every message was offered to every listener and
+ * each listener searched a list of its identifiers. The identifiers are spread
+ * evenly over the listeners, and messages for all identifiers are dispatched
+ * in turn.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageRoutingBenchmark {
+
+	/** The number of concurrent identifiers. */
+	@Param({ "100", "10000" })
+	public int identifierCount;
+
+	/** The number of listeners the identifiers are spread over. */
+	@Param({ "1", "100" })
+	public int listenerCount;
+
+	/** The connection that routes the messages. */
+	private Connection connection;
+
+	/** The listeners for the broadcast dispatch. */
+	private List<ListFilteringListener> broadcastListeners;
+
+	/** One message for every identifier. */
+	private Message[] messages;
+
+	/** The index of the next message to dispatch. */
+	private int messageIndex;
+
+	/**
+	 * Creates the listeners, routes, and messages.
+	 */
+	@Setup
+	public void setupListeners() {
+		connection = new Connection(new Node("localhost"), "benchmark");
+		broadcastListeners = new ArrayList<ListFilteringListener>();
+		List<ConnectionListener> routedListeners = new ArrayList<ConnectionListener>();
+		for (int listenerIndex = 0; listenerIndex < listenerCount; listenerIndex++) {
+			broadcastListeners.add(new ListFilteringListener());
+			routedListeners.add(new CountingListener());
+			connection.addConnectionListener(routedListeners.get(listenerIndex));
+		}
+		messages = new Message[identifierCount];
+		for (int identifierIndex = 0; identifierIndex < identifierCount; identifierIndex++) {
+			String identifier = "file-" + identifierIndex;
+			broadcastListeners.get(identifierIndex % listenerCount).identifiers.add(identifier);
+			connection.addRoute(identifier, routedListeners.get(identifierIndex % listenerCount));
+			messages[identifierIndex] = new Message("SimpleProgress");
+			messages[identifierIndex].setIdentifier(identifier);
+		}
+	}
+
+	/**
+	 * Dispatches a message using the routing table of the connection.
+	 */
+	@Benchmark
+	public void routed() {
+		connection.fireMessageReceived(nextMessage());
+	}
+
+	/**
+	 * Dispatches a message to all listeners, each of which searches its
+	 * identifiers.
+	 */
+	@Benchmark
+	public void broadcast() {
+		Message message = nextMessage();
+		for (ListFilteringListener connectionListener : broadcastListeners) {
+			connectionListener.messageReceived(connection, message);
+		}
+	}
+
+	/**
+	 * Returns the next message to dispatch.
+	 *
+	 * @return The next message
+	 */
+	private Message nextMessage() {
+		Message message = messages[messageIndex];
+		messageIndex = (messageIndex + 1) % messages.length;
+		return message;
+	}
+
+	/**
+	 * Listener that accepts all messages, as the connection only routes
+	 * messages to the listener owning their identifier.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class CountingListener implements ConnectionListener {
+
+		/** The number of received messages. */
+		private long receivedMessages;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void messageReceived(Connection connection, Message message) {
+			receivedMessages++;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void connectionTerminated(Connection connection) {
+			/* ignore. */
+		}
+
+	}
+
+	/**
+	 * Listener that accepts messages whose identifier is in a list, the way
+	 * {@link Client} filtered messages before they were routed.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class ListFilteringListener implements ConnectionListener {
+
+		/** The identifiers of this listener. */
+		private final List<String> identifiers = new ArrayList<String>();
+
+		/** The number of accepted messages. */
+		private long acceptedMessages;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void messageReceived(Connection connection, Message message) {
+			if (identifiers.contains(message.getIdentifier())) {
+				acceptedMessages++;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void connectionTerminated(Connection connection) {
+			/* ignore. */
+		}
+
+	}
+
+}
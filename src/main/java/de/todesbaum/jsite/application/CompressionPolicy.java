@@ -0,0 +1,203 @@
+/*
+ * jSite - CompressionPolicy.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides for every file whether the node should try to compress it. Files
+ * whose MIME type denotes an already compressed format, such as JPEG images,
+ * MP4 videos, or ZIP archives, are never compressed; text files are always
+ * compressed. The content of all other files is sampled at a few places,
+ * and only files whose samples show some redundancy are compressed.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class CompressionPolicy {
+
+	/** The MIME types of formats that are compressed already. */
+	private static final Set<String> compressedMimeTypes = new HashSet<String>(Arrays.asList(
+			"image/jpeg", "image/png", "image/gif", "image/webp", "image/avif", "image/heic",
+			"audio/mpeg", "audio/mp4", "audio/ogg", "audio/opus", "audio/flac", "audio/aac",
+			"video/mp4", "video/mpeg", "video/ogg", "video/webm", "video/quicktime", "video/x-matroska", "video/x-msvideo",
+			"application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+			"application/x-7z-compressed", "application/x-rar-compressed", "application/vnd.rar", "application/java-archive",
+			"application/epub+zip", "application/vnd.oasis.opendocument.text", "application/x-lzma", "application/zstd",
+			"font/woff", "font/woff2"
+	));
+
+	/** The MIME types of text formats that are not <code>text/*</code>. */
+	private static final Set<String> textMimeTypes = new HashSet<String>(Arrays.asList(
+			"application/javascript", "application/json", "application/xml", "application/xhtml+xml",
+			"application/rss+xml", "application/atom+xml", "image/svg+xml"
+	));
+
+	/** The number of places at which the content of a file is sampled. */
+	private static final int SAMPLE_COUNT = 4;
+
+	/** The size of a single sample. */
+	private static final int SAMPLE_SIZE = 4096;
+
+	/**
+	 * The entropy (in bits per byte) above which the content of a file is
+	 * considered to be incompressible.
+	 */
+	private static final double MAXIMUM_ENTROPY = 7.5;
+
+	/** The compression codecs the node may use, or {@code null}. */
+	private final String codecs;
+
+	/**
+	 * Creates a new compression policy.
+	 *
+	 * @param codecs
+	 *            The compression codecs the node may use, or an empty string
+	 *            or {@code null} to let the node use its default codecs
+	 */
+	public CompressionPolicy(String codecs) {
+		this.codecs = ((codecs == null) || codecs.trim().isEmpty()) ? null : codecs.trim();
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the compression codecs the node may use.
+	 *
+	 * @return The compression codecs, or {@code null} to let the node use its
+	 *         default codecs
+	 */
+	public String getCodecs() {
+		return codecs;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns whether the node should try to compress the given file.
+	 *
+	 * @param mimeType
+	 *            The MIME type of the file
+	 * @param file
+	 *            The file
+	 * @return {@code true} if the node should try to compress the file,
+	 *         {@code false} otherwise
+	 */
+	public boolean isCompressible(String mimeType, File file) {
+		return isCompressible(mimeType, file, 0, file.length());
+	}
+
+	/**
+	 * Returns whether the node should try to compress the given range of the
+	 * given file. If the file can not be read, the node is left to decide.
+	 *
+	 * @param mimeType
+	 *            The MIME type of the file
+	 * @param file
+	 *            The file
+	 * @param offset
+	 *            The offset of the range
+	 * @param length
+	 *            The length of the range
+	 * @return {@code true} if the node should try to compress the range,
+	 *         {@code false} otherwise
+	 */
+	public boolean isCompressible(String mimeType, File file, long offset, long length) {
+		String baseMimeType = (mimeType == null) ? "" : mimeType.split(";", 2)[0].trim().toLowerCase();
+		if (compressedMimeTypes.contains(baseMimeType)) {
+			return false;
+		}
+		if (baseMimeType.startsWith("text/") || textMimeTypes.contains(baseMimeType)) {
+			return true;
+		}
+		try {
+			return sampleEntropy(file, offset, length) <= MAXIMUM_ENTROPY;
+		} catch (IOException ioe1) {
+			return true;
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Calculates the entropy of samples taken at evenly distributed places
+	 * of the given range of the given file.
+	 *
+	 * @param file
+	 *            The file to sample
+	 * @param offset
+	 *            The offset of the range
+	 * @param length
+	 *            The length of the range
+	 * @return The entropy of the samples, in bits per byte
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	static double sampleEntropy(File file, long offset, long length) throws IOException {
+		int[] counts = new int[256];
+		int total = 0;
+		int samples = (length <= (long) SAMPLE_COUNT * SAMPLE_SIZE) ? 1 : SAMPLE_COUNT;
+		byte[] sample = new byte[(int) Math.min(length, (samples == 1) ? SAMPLE_COUNT * SAMPLE_SIZE : SAMPLE_SIZE)];
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			for (int sampleIndex = 0; sampleIndex < samples; sampleIndex++) {
+				randomAccessFile.seek(offset + ((samples == 1) ? 0 : (length - sample.length) * sampleIndex / (samples - 1)));
+				int read = Math.max(randomAccessFile.read(sample), 0);
+				for (int index = 0; index < read; index++) {
+					counts[sample[index] & 0xff]++;
+				}
+				total += read;
+			}
+		}
+		return entropy(counts, total);
+	}
+
+	/**
+	 * Calculates the Shannon entropy of the given byte frequencies.
+	 *
+	 * @param counts
+	 *            The number of occurences of every byte value
+	 * @param total
+	 *            The total number of bytes
+	 * @return The entropy, in bits per byte
+	 */
+	static double entropy(int[] counts, int total) {
+		if (total == 0) {
+			return 0;
+		}
+		double entropy = 0;
+		for (int count : counts) {
+			if (count > 0) {
+				double probability = (double) count / total;
+				entropy -= probability * Math.log(probability);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+}
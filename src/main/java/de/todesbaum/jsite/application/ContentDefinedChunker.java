@@ -0,0 +1,237 @@
+/*
+ * jSite - ContentDefinedChunker.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Splits files into chunks at positions that depend on the content of the
+ * file instead of fixed offsets. A rolling “gear” hash is calculated over the
+ * last 64 bytes; a chunk ends where the hash’s upper bits are all zero, or when
+ * the chunk reaches its maximum size. Because boundaries only depend on the
+ * bytes around them, appending to a file or changing a part of it only
+ * changes the chunks around the modification, and all other chunks keep their
+ * content and hash.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ContentDefinedChunker {
+
+	/** The gear table, the same for every instance and every run. */
+	private static final long[] GEAR = new long[256];
+
+	static {
+		Random random = new Random(0x6a53697465L);
+		for (int index = 0; index < GEAR.length; index++) {
+			GEAR[index] = random.nextLong();
+		}
+	}
+
+	/** The minimum size of a chunk. */
+	private final int minimumSize;
+
+	/** The maximum size of a chunk. */
+	private final int maximumSize;
+
+	/** The mask for the hash that marks a chunk boundary. */
+	private final long mask;
+
+	/**
+	 * Creates a new chunker.
+	 *
+	 * @param minimumSize
+	 *            The minimum size of a chunk
+	 * @param averageSize
+	 *            The average size of a chunk; must be a power of two
+	 * @param maximumSize
+	 *            The maximum size of a chunk
+	 */
+	public ContentDefinedChunker(int minimumSize, int averageSize, int maximumSize) {
+		if ((averageSize <= 0) || (Integer.bitCount(averageSize) != 1)) {
+			throw new IllegalArgumentException("Average size must be a power of two.");
+		}
+		if ((minimumSize <= 0) || (minimumSize > averageSize) || (averageSize > maximumSize)) {
+			throw new IllegalArgumentException("Sizes must satisfy 0 < minimum ≤ average ≤ maximum.");
+		}
+		this.minimumSize = minimumSize;
+		this.maximumSize = maximumSize;
+		int bits = Integer.numberOfTrailingZeros(averageSize);
+		this.mask = (bits == 0) ? 0 : (-1L << (64 - bits));
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Splits the given file into chunks.
+	 *
+	 * @param file
+	 *            The file to split
+	 * @return The chunks of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public List<Chunk> split(File file) throws IOException {
+		try (InputStream fileInputStream = new FileInputStream(file)) {
+			return split(fileInputStream);
+		}
+	}
+
+	/**
+	 * Splits the data of the given input stream into chunks.
+	 *
+	 * @param inputStream
+	 *            The input stream to split
+	 * @return The chunks of the input stream
+	 * @throws IOException
+	 *             if the input stream can not be read
+	 */
+	public List<Chunk> split(InputStream inputStream) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		MessageDigest messageDigest = createDigest();
+		byte[] buffer = new byte[1 << 16];
+		long chunkOffset = 0;
+		long chunkLength = 0;
+		long hash = 0;
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			int chunkStart = 0;
+			for (int index = 0; index < read; index++) {
+				hash = (hash << 1) + GEAR[buffer[index] & 0xff];
+				chunkLength++;
+				if (((chunkLength >= minimumSize) && ((hash & mask) == 0)) || (chunkLength >= maximumSize)) {
+					messageDigest.update(buffer, chunkStart, index + 1 - chunkStart);
+					chunks.add(new Chunk(chunkOffset, chunkLength, toHex(messageDigest.digest())));
+					chunkOffset += chunkLength;
+					chunkLength = 0;
+					hash = 0;
+					chunkStart = index + 1;
+				}
+			}
+			messageDigest.update(buffer, chunkStart, read - chunkStart);
+		}
+		if ((chunkLength > 0) || chunks.isEmpty()) {
+			chunks.add(new Chunk(chunkOffset, chunkLength, toHex(messageDigest.digest())));
+		}
+		return chunks;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates a new SHA-256 digest.
+	 *
+	 * @return A new SHA-256 digest
+	 */
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException nsae1) {
+			throw new IllegalStateException("SHA-256 is not available.", nsae1);
+		}
+	}
+
+	/**
+	 * Converts the given byte array into a hexadecimal string.
+	 *
+	 * @param array
+	 *            The array to convert
+	 * @return The hexadecimal string
+	 */
+	private static String toHex(byte[] array) {
+		StringBuilder hexString = new StringBuilder(array.length * 2);
+		for (byte arrayByte : array) {
+			hexString.append(String.format("%02x", arrayByte & 0xff));
+		}
+		return hexString.toString();
+	}
+
+	/**
+	 * A chunk of a file.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public static class Chunk {
+
+		/** The offset of the chunk in the file. */
+		private final long offset;
+
+		/** The length of the chunk. */
+		private final long length;
+
+		/** The SHA-256 hash of the chunk’s content. */
+		private final String hash;
+
+		/**
+		 * Creates a new chunk.
+		 *
+		 * @param offset
+		 *            The offset of the chunk in the file
+		 * @param length
+		 *            The length of the chunk
+		 * @param hash
+		 *            The SHA-256 hash of the chunk’s content
+		 */
+		public Chunk(long offset, long length, String hash) {
+			this.offset = offset;
+			this.length = length;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns the offset of this chunk in the file.
+		 *
+		 * @return The offset of this chunk
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Returns the length of this chunk.
+		 *
+		 * @return The length of this chunk
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the SHA-256 hash of this chunk’s content.
+		 *
+		 * @return The hash of this chunk
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+	}
+
+}
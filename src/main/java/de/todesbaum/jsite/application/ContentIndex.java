@@ -0,0 +1,252 @@
+/*
+ * jSite - ContentIndex.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent index from the hash of a file’s content to a key the content has
+ * been inserted under. The index is shared by all projects, so a file whose
+ * content has already been inserted—by any project, under any name—can be
+ * inserted as a redirect to the existing key instead of being uploaded again.
+ * <p>
+ * The index is stored as a text file with one line per content hash; each
+ * line contains the hash and the key, separated by a tab. The first key that
+ * is stored for a hash is kept, so redirects never point to other redirects.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ContentIndex {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ContentIndex.class.getName());
+
+	/** The version of the file format. */
+	private static final String FORMAT_VERSION = "jSite content index 1";
+
+	/** The name of the index file in the cache directory. */
+	private static final String INDEX_FILENAME = "content.index";
+
+	/** The file the index is stored in. */
+	private final File indexFile;
+
+	/** The keys, by content hash. */
+	private final Map<String, String> keys = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Creates a new content index that is stored in the given file. The index
+	 * is not loaded until {@link #load()} is called.
+	 *
+	 * @param indexFile
+	 *            The file to store the index in
+	 */
+	public ContentIndex(File indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Returns the content index that is stored in the given directory.
+	 *
+	 * @param cacheDirectory
+	 *            The directory the index is stored in
+	 * @return The loaded content index
+	 */
+	public static ContentIndex forDirectory(File cacheDirectory) {
+		ContentIndex contentIndex = new ContentIndex(new File(cacheDirectory, INDEX_FILENAME));
+		contentIndex.load();
+		return contentIndex;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of indexed content hashes.
+	 *
+	 * @return The number of indexed content hashes
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Returns the key the content with the given hash has been inserted under.
+	 *
+	 * @param hash
+	 *            The hash of the content
+	 * @return The key of the content, or {@code null} if the content has not
+	 *         been inserted yet
+	 */
+	public String getKey(String hash) {
+		return isValidHash(hash) ? keys.get(hash) : null;
+	}
+
+	/**
+	 * Stores the key the content with the given hash has been inserted under.
+	 * If a key is already known for the hash, it is kept.
+	 *
+	 * @param hash
+	 *            The hash of the content
+	 * @param key
+	 *            The key of the content
+	 */
+	public void putKey(String hash, String key) {
+		if (!isValidHash(hash) || (key.indexOf('\n') > -1) || (key.indexOf('\r') > -1) || (key.indexOf('\t') > -1)) {
+			return;
+		}
+		keys.putIfAbsent(hash, key);
+	}
+
+	/**
+	 * Stores the keys of all files of the given project that were published
+	 * by its last insert. Split files whose last insert only published the
+	 * list of their chunks are skipped because their key does not lead to
+	 * their content; their chunks are stored in the index on their own.
+	 *
+	 * @param project
+	 *            The project whose files to store
+	 */
+	public void putInsertedFiles(Project project) {
+		for (FileOption fileOption : project.getFileOptions().values()) {
+			if (fileOption.isInsert() && (fileOption.getLastInsertHash() != null) && (fileOption.getLastInsertFilename() != null) && !fileOption.isLastInsertChunkListOnly()) {
+				putKey(fileOption.getLastInsertHash(), project.getLastInsertKey(fileOption));
+			}
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Loads the index from its file. A missing or unreadable index file
+	 * results in an empty index.
+	 */
+	public void load() {
+		keys.clear();
+		readIndexFile(keys);
+	}
+
+	/**
+	 * Writes the index to its file. Entries that have been written to the
+	 * file by another instance since the index was loaded are merged into the
+	 * index first. The file is replaced atomically, so an interrupted save
+	 * never leaves a corrupt index behind.
+	 */
+	public void save() {
+		File indexDirectory = indexFile.getAbsoluteFile().getParentFile();
+		if (!indexDirectory.exists() && !indexDirectory.mkdirs()) {
+			logger.log(Level.WARNING, "Could not create content index directory {0}.", indexDirectory);
+			return;
+		}
+		Map<String, String> storedKeys = new ConcurrentHashMap<String, String>();
+		readIndexFile(storedKeys);
+		for (Entry<String, String> storedKey : storedKeys.entrySet()) {
+			keys.putIfAbsent(storedKey.getKey(), storedKey.getValue());
+		}
+		try {
+			File temporaryFile = File.createTempFile("content", ".tmp", indexDirectory);
+			try (Writer indexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8))) {
+				indexWriter.write(FORMAT_VERSION + "\n");
+				for (Entry<String, String> key : keys.entrySet()) {
+					indexWriter.write(key.getKey() + "\t" + key.getValue() + "\n");
+				}
+			} catch (IOException ioe1) {
+				temporaryFile.delete();
+				throw ioe1;
+			}
+			Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not write content index " + indexFile, ioe1);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Reads the index file into the given map.
+	 *
+	 * @param keys
+	 *            The map to store the keys in
+	 */
+	private void readIndexFile(Map<String, String> keys) {
+		try (BufferedReader indexReader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), UTF_8))) {
+			if (!FORMAT_VERSION.equals(indexReader.readLine())) {
+				logger.log(Level.INFO, "Ignoring content index {0} with unknown format.", indexFile);
+				return;
+			}
+			String line;
+			while ((line = indexReader.readLine()) != null) {
+				String[] fields = line.split("\t", 2);
+				if ((fields.length == 2) && isValidHash(fields[0])) {
+					keys.putIfAbsent(fields[0], fields[1]);
+				}
+			}
+		} catch (FileNotFoundException fnfe1) {
+			/* no index yet. */
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not read content index " + indexFile, ioe1);
+			keys.clear();
+		}
+	}
+
+	/**
+	 * Returns whether the given hash can be indexed. Files that could not be
+	 * read are reported with a hash that consists of zeros only; such hashes
+	 * are never indexed.
+	 *
+	 * @param hash
+	 *            The hash to check
+	 * @return {@code true} if the hash can be indexed, {@code false}
+	 *         otherwise
+	 */
+	private static boolean isValidHash(String hash) {
+		if ((hash == null) || hash.isEmpty()) {
+			return false;
+		}
+		for (char hashCharacter : hash.toCharArray()) {
+			if (hashCharacter != '0') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * jSite - DirectoryManifest.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+/**
+ * The manifest of a subdirectory of a project that has been inserted as a
+ * key of its own. The hash covers the names, content types and contents of
+ * all files in the directory and its subdirectories; as long as it does not
+ * change, the next insert can link to the stored key instead of inserting the
+ * directory again.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class DirectoryManifest {
+
+	/** The hash of the directory. */
+	private final String hash;
+
+	/** The key of the directory’s manifest. */
+	private final String key;
+
+	/**
+	 * Creates a new directory manifest.
+	 *
+	 * @param hash
+	 *            The hash of the directory
+	 * @param key
+	 *            The key of the directory’s manifest
+	 */
+	public DirectoryManifest(String hash, String key) {
+		this.hash = hash;
+		this.key = key;
+	}
+
+	/**
+	 * Returns the hash of the directory.
+	 *
+	 * @return The hash of the directory
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the key of the directory’s manifest.
+	 *
+	 * @return The key of the directory’s manifest
+	 */
+	public String getKey() {
+		return key;
+	}
+
+}
@@ -20,6 +20,7 @@ package de.todesbaum.jsite.application;
 
 import static java.util.Optional.empty;
 
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -29,6 +30,14 @@ import java.util.Optional;
  */
 public class FileOption {
 
+	/**
+	 * The suffix of the name under which the chunk list of a split file is
+	 * published next to the file itself. The chunk list is not published
+	 * under the file’s own name because no Freenet client can reassemble the
+	 * file from it.
+	 */
+	public static final String SPLIT_INDEX_SUFFIX = ".jsite-split";
+
 	/** The default for the insert state. */
 	private static final boolean DEFAULT_INSERT = true;
 
@@ -47,9 +56,15 @@ public class FileOption {
 	/** Whether to insert a redirect. */
 	private boolean insertRedirect;
 
+	/** Whether to split the file into chunks if it is large. */
+	private boolean splitInsert;
+
 	/** The hash of the last insert. */
 	private String lastInsertHash;
 
+	/** Whether the file was split at the last insert. */
+	private boolean lastInsertSplit;
+
 	/** The edition of the last insert. */
 	private int lastInsertEdition;
 
@@ -59,6 +74,9 @@ public class FileOption {
 	/** The current hash of the file. */
 	private String currentHash;
 
+	/** Whether the file is split by the current insert. */
+	private boolean currentSplit;
+
 	/** The custom key. */
 	private String customKey;
 
@@ -89,10 +107,13 @@ public class FileOption {
 		this.insert = other.insert;
 		this.forceInsert = other.forceInsert;
 		this.insertRedirect = other.insertRedirect;
+		this.splitInsert = other.splitInsert;
 		this.lastInsertHash = other.lastInsertHash;
+		this.lastInsertSplit = other.lastInsertSplit;
 		this.lastInsertEdition = other.lastInsertEdition;
 		this.lastInsertFilename = other.lastInsertFilename;
 		this.currentHash = other.currentHash;
+		this.currentSplit = other.currentSplit;
 		this.customKey = other.customKey;
 		this.changedName = other.changedName;
 		this.defaultMimeType = other.defaultMimeType;
@@ -176,6 +197,41 @@ public class FileOption {
 		return this;
 	}
 
+	/**
+	 * Returns whether the file is split into chunks that are inserted as keys
+	 * of their own if it is larger than the split threshold. Only the chunks
+	 * that changed since the last insert are uploaded again.
+	 * <p>
+	 * A split file is still published under its own name, so it can be
+	 * downloaded by every Freenet client. In addition, a plain text list of
+	 * its chunks and their keys is published under the file’s name with
+	 * {@link #SPLIT_INDEX_SUFFIX} appended; tools that know the format can use
+	 * it to only download the chunks that changed. As the file is inserted
+	 * both as a whole and as chunks, a changed split file takes up to twice
+	 * as long to insert as a file that is not split.
+	 *
+	 * @return {@code true} to split the file if it is large, {@code false}
+	 *         otherwise
+	 */
+	public boolean isSplitInsert() {
+		return splitInsert;
+	}
+
+	/**
+	 * Sets whether the file is split into chunks that are inserted as keys of
+	 * their own if it is larger than the split threshold. See
+	 * {@link #isSplitInsert()} for how split files are published.
+	 *
+	 * @param splitInsert
+	 *            {@code true} to split the file if it is large, {@code false}
+	 *            otherwise
+	 * @return These file options
+	 */
+	public FileOption setSplitInsert(boolean splitInsert) {
+		this.splitInsert = splitInsert;
+		return this;
+	}
+
 	/**
 	 * Returns whether a redirect to a different key should be inserted. This
 	 * will only matter if {@link #isInsert()} returns {@code false}. The key
@@ -225,6 +281,43 @@ public class FileOption {
 		return this;
 	}
 
+	/**
+	 * Returns whether the file was split into chunks when it was last
+	 * inserted.
+	 *
+	 * @return {@code true} if the file was split at the last insert,
+	 *         {@code false} otherwise
+	 */
+	public boolean isLastInsertSplit() {
+		return lastInsertSplit;
+	}
+
+	/**
+	 * Sets whether the file was split into chunks when it was last inserted.
+	 *
+	 * @param lastInsertSplit
+	 *            {@code true} if the file was split at the last insert,
+	 *            {@code false} otherwise
+	 * @return These file options
+	 */
+	public FileOption setLastInsertSplit(boolean lastInsertSplit) {
+		this.lastInsertSplit = lastInsertSplit;
+		return this;
+	}
+
+	/**
+	 * Returns whether the last insert only published the chunk list of the
+	 * file, and not the file itself. Earlier versions of jSite published
+	 * split files this way; the key of such an insert does not lead to the
+	 * file’s content.
+	 *
+	 * @return {@code true} if only the chunk list of the file was published,
+	 *         {@code false} otherwise
+	 */
+	public boolean isLastInsertChunkListOnly() {
+		return lastInsertSplit && (lastInsertFilename != null) && lastInsertFilename.endsWith(SPLIT_INDEX_SUFFIX);
+	}
+
 	/**
 	 * Returns the last edition at which this file was inserted.
 	 *
@@ -291,6 +384,46 @@ public class FileOption {
 		return this;
 	}
 
+	/**
+	 * Returns whether the file is split into chunks by the current insert.
+	 * Like {@link #getCurrentHash()}, this value is copied to
+	 * {@link #isLastInsertSplit()} when a project has finished inserting.
+	 *
+	 * @return {@code true} if the file is split by the current insert,
+	 *         {@code false} otherwise
+	 */
+	public boolean isCurrentSplit() {
+		return currentSplit;
+	}
+
+	/**
+	 * Sets whether the file is split into chunks by the current insert.
+	 *
+	 * @param currentSplit
+	 *            {@code true} if the file is split by the current insert,
+	 *            {@code false} otherwise
+	 * @return These file options
+	 */
+	public FileOption setCurrentSplit(boolean currentSplit) {
+		this.currentSplit = currentSplit;
+		return this;
+	}
+
+	/**
+	 * Returns whether the file has changed since it was last inserted. A file
+	 * has changed if its content is different, or if it is split by the
+	 * current insert but was not split by the last insert, or vice versa, as
+	 * a split file is published together with its chunk list. A file whose
+	 * last insert {@link #isLastInsertChunkListOnly() only published its chunk
+	 * list} has always changed.
+	 *
+	 * @return {@code true} if the file has changed since the last insert,
+	 *         {@code false} otherwise
+	 */
+	public boolean isChangedSinceLastInsert() {
+		return !Objects.equals(currentHash, lastInsertHash) || (currentSplit != lastInsertSplit) || isLastInsertChunkListOnly();
+	}
+
 	/**
 	 * Returns the changed name for this file. This method will return {@code
 	 * null} or an empty {@link String} if this file should not be renamed.
@@ -361,6 +494,9 @@ public class FileOption {
 		if (insertRedirect != DEFAULT_INSERT_REDIRECT) {
 			return true;
 		}
+		if (splitInsert) {
+			return true;
+		}
 		return false;
 	}
 
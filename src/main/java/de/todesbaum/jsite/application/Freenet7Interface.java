@@ -19,6 +19,9 @@
 package de.todesbaum.jsite.application;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import de.todesbaum.util.freenet.fcp2.*;
 import de.todesbaum.util.freenet.fcp2.Node;
@@ -35,6 +38,15 @@ public class Freenet7Interface {
 	/** Counter. */
 	private static int counter = 0;
 
+	/** The maximum number of pooled connections. */
+	private static final int MAX_POOLED_CONNECTIONS = 4;
+
+	/** The time after which idle pooled connections are closed, in minutes. */
+	private static final long POOLED_CONNECTION_IDLE_TIMEOUT = 30;
+
+	/** The time to wait for the node to generate a key pair, in seconds. */
+	private static final long GENERATE_KEY_PAIR_TIMEOUT = 60;
+
 	private final NodeSupplier nodeSupplier;
 	private final ConnectionSupplier connectionSupplier;
 	private final ClientSupplier clientSupplier;
@@ -45,6 +57,9 @@ public class Freenet7Interface {
 	/** The connection to the node. */
 	private Connection connection;
 
+	/** The pool of shared connections to the node. */
+	private ConnectionPool connectionPool;
+
 	public Freenet7Interface() {
 		this(new DefaultNodeSupplier(), new DefaultConnectionSupplier(), new DefaultClientSupplier());
 	}
@@ -62,6 +77,12 @@ public class Freenet7Interface {
 	 *            The node to get the hostname and port from
 	 */
 	public void setNode(de.todesbaum.jsite.application.Node node) {
+		synchronized (this) {
+			if (connectionPool != null) {
+				connectionPool.close();
+				connectionPool = null;
+			}
+		}
 		if (node != null) {
 			this.node = nodeSupplier.supply(node.getHostname(), node.getPort());
 			connection = connectionSupplier.supply(node, "jSite-" + number + "-connection-" + counter++);
@@ -91,6 +112,50 @@ public class Freenet7Interface {
 		return connectionSupplier.supply(node, identifier);
 	}
 
+	/**
+	 * Returns a shared connection to the current node. Shared connections are
+	 * kept open between operations and are used by several clients at once,
+	 * so they must not be disconnected; the caller has to
+	 * {@link #releaseConnection(Connection) release} the connection when it
+	 * is done.
+	 *
+	 * @return A connected, shared connection to the node
+	 * @throws IOException
+	 *             if no connection to the node can be established
+	 */
+	public Connection acquireConnection() throws IOException {
+		ConnectionPool connectionPool;
+		synchronized (this) {
+			if (node == null) {
+				throw new IOException("No node configured.");
+			}
+			if (this.connectionPool == null) {
+				Node node = this.node;
+				this.connectionPool = new ConnectionPool(() -> connectionSupplier.supply(node, "jSite-" + number + "-pooled-" + counter++), MAX_POOLED_CONNECTIONS, POOLED_CONNECTION_IDLE_TIMEOUT, TimeUnit.MINUTES);
+			}
+			connectionPool = this.connectionPool;
+		}
+		return connectionPool.acquire();
+	}
+
+	/**
+	 * Releases a connection returned by {@link #acquireConnection()}.
+	 *
+	 * @param connection
+	 *            The connection to release
+	 */
+	public void releaseConnection(Connection connection) {
+		ConnectionPool connectionPool;
+		synchronized (this) {
+			connectionPool = this.connectionPool;
+		}
+		if (connectionPool != null) {
+			connectionPool.release(connection);
+		} else {
+			connection.disconnect();
+		}
+	}
+
 	/**
 	 * Checks whether the current node is connected. If the node is not
 	 * connected, a connection will be tried.
@@ -108,22 +173,38 @@ public class Freenet7Interface {
 	}
 
 	/**
-	 * Generates an SSK key pair.
+	 * Generates an SSK key pair. The request is submitted over a
+	 * {@link #acquireConnection() shared connection}.
 	 *
 	 * @return An array of strings, the first one being the generated private
 	 *         (insert) URI and the second one being the generated public
 	 *         (request) URI
 	 * @throws IOException
-	 *             if an I/O error occurs communicating with the node
+	 *             if an I/O error occurs communicating with the node, or the
+	 *             node does not generate a key pair in time
 	 */
 	public String[] generateKeyPair() throws IOException {
-		if (!isNodePresent()) {
-			throw new IOException("Node is offline.");
+		Connection connection = acquireConnection();
+		try {
+			Client client = clientSupplier.supply(connection);
+			try {
+				Request request = client.submit(new GenerateSSK("generate-ssk-" + number + "-" + counter++), null, GENERATE_KEY_PAIR_TIMEOUT, TimeUnit.SECONDS);
+				Message keypairMessage = request.getResult().get();
+				if (!"SSKKeypair".equals(keypairMessage.getName())) {
+					throw new IOException("Node could not generate key pair: " + keypairMessage.getName());
+				}
+				return new String[] { keypairMessage.get("InsertURI"), keypairMessage.get("RequestURI") };
+			} finally {
+				client.close();
+			}
+		} catch (ExecutionException ee1) {
+			throw new IOException("Could not generate key pair.", ee1.getCause());
+		} catch (InterruptedException ie1) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while generating key pair.");
+		} finally {
+			releaseConnection(connection);
 		}
-		GenerateSSK generateSSK = new GenerateSSK();
-		Client client = clientSupplier.supply(connection, generateSSK);
-		Message keypairMessage = client.readMessage();
-		return new String[] { keypairMessage.get("InsertURI"), keypairMessage.get("RequestURI") };
 	}
 
 	/**
@@ -168,15 +249,15 @@ public class Freenet7Interface {
 
 	public interface ClientSupplier {
 
-		Client supply(Connection connection, Command command) throws IOException;
+		Client supply(Connection connection);
 
 	}
 
 	public static class DefaultClientSupplier implements ClientSupplier {
 
 		@Override
-		public Client supply(Connection connection, Command command) throws IOException {
-			return new Client(connection, command);
+		public Client supply(Connection connection) {
+			return new Client(connection);
 		}
 
 	}
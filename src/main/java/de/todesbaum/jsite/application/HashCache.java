@@ -0,0 +1,357 @@
+/*
+ * jSite - HashCache.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent cache for the hashes of a project’s files. A cached hash is only
+ * used if the size, the modification time, and the file key (the inode on
+ * most systems) of the file are unchanged since the hash was calculated.
+ * <p>
+ * The cache is stored as a text file with one line per file; each line
+ * contains the hash, the size, the modification time, the file key, and the
+ * name of the file relative to the project’s local path, separated by tabs.
+ * Only files that were looked up or stored since the cache was loaded are
+ * written back, so entries for deleted files disappear on the next scan.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class HashCache {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(HashCache.class.getName());
+
+	/** The version of the file format. */
+	private static final String FORMAT_VERSION = "jSite hash cache 1";
+
+	/**
+	 * Files modified less than this many milliseconds before they were hashed
+	 * are not cached because a later modification might not change their
+	 * modification time.
+	 */
+	private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
+	/** The file the cache is stored in. */
+	private final File cacheFile;
+
+	/** The entries loaded from the cache file. */
+	private final Map<String, CacheEntry> loadedEntries = new ConcurrentHashMap<>();
+
+	/** The entries of the files that were seen during the current scan. */
+	private final Map<String, CacheEntry> currentEntries = new ConcurrentHashMap<>();
+
+	/** The number of cache hits. */
+	private final AtomicInteger hits = new AtomicInteger();
+
+	/** The number of cache misses. */
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Creates a new hash cache that is stored in the given file. The cache is
+	 * not loaded until {@link #load()} is called.
+	 *
+	 * @param cacheFile
+	 *            The file to store the cache in
+	 */
+	public HashCache(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Returns the hash cache for the given project, stored in the given
+	 * directory. The name of the cache file is derived from the project’s
+	 * local path so that projects sharing a local path share a cache.
+	 *
+	 * @param cacheDirectory
+	 *            The directory the hash caches are stored in
+	 * @param project
+	 *            The project to get the hash cache for
+	 * @return The loaded hash cache for the project
+	 */
+	public static HashCache forProject(File cacheDirectory, Project project) {
+		HashCache hashCache = new HashCache(new File(cacheDirectory, getCacheFilename(project.getLocalPath())));
+		hashCache.load();
+		return hashCache;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the file this cache is stored in.
+	 *
+	 * @return The file this cache is stored in
+	 */
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Returns the number of lookups that returned a cached hash.
+	 *
+	 * @return The number of cache hits
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that did not return a cached hash.
+	 *
+	 * @return The number of cache misses
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the cached hash of the given file, if the file’s metadata still
+	 * match the cached metadata.
+	 *
+	 * @param filename
+	 *            The name of the file, relative to the project’s local path
+	 * @param attributes
+	 *            The current attributes of the file
+	 * @return The cached hash, or {@code null} if there is no valid cached
+	 *         hash
+	 */
+	public String getHash(String filename, BasicFileAttributes attributes) {
+		CacheEntry cacheEntry = loadedEntries.get(filename);
+		if ((cacheEntry == null) || !cacheEntry.matches(attributes)) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		currentEntries.put(filename, cacheEntry);
+		return cacheEntry.hash;
+	}
+
+	/**
+	 * Stores the hash of the given file.
+	 *
+	 * @param filename
+	 *            The name of the file, relative to the project’s local path
+	 * @param attributes
+	 *            The attributes of the file at the time it was hashed
+	 * @param hash
+	 *            The hash of the file
+	 */
+	public void putHash(String filename, BasicFileAttributes attributes, String hash) {
+		if ((filename.indexOf('\n') > -1) || (filename.indexOf('\r') > -1)) {
+			return;
+		}
+		CacheEntry cacheEntry = new CacheEntry(hash, attributes);
+		if ((System.currentTimeMillis() - cacheEntry.modificationTime) < MODIFICATION_TIME_GRANULARITY) {
+			return;
+		}
+		currentEntries.put(filename, cacheEntry);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Loads the cache from its file. A missing or unreadable cache file results
+	 * in an empty cache.
+	 */
+	public void load() {
+		loadedEntries.clear();
+		currentEntries.clear();
+		try (BufferedReader cacheReader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), UTF_8))) {
+			if (!FORMAT_VERSION.equals(cacheReader.readLine())) {
+				logger.log(Level.INFO, "Ignoring hash cache {0} with unknown format.", cacheFile);
+				return;
+			}
+			String line;
+			while ((line = cacheReader.readLine()) != null) {
+				String[] fields = line.split("\t", 5);
+				if (fields.length < 5) {
+					continue;
+				}
+				try {
+					loadedEntries.put(fields[4], new CacheEntry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+				} catch (NumberFormatException nfe1) {
+					/* ignore broken line. */
+				}
+			}
+		} catch (FileNotFoundException fnfe1) {
+			/* no cache yet. */
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not read hash cache " + cacheFile, ioe1);
+			loadedEntries.clear();
+		}
+	}
+
+	/**
+	 * Writes the entries of all files seen since the cache was loaded to the
+	 * cache file. The file is replaced atomically, so an interrupted save
+	 * never leaves a corrupt cache behind.
+	 */
+	public void save() {
+		File cacheDirectory = cacheFile.getAbsoluteFile().getParentFile();
+		if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+			logger.log(Level.WARNING, "Could not create hash cache directory {0}.", cacheDirectory);
+			return;
+		}
+		try {
+			File temporaryFile = File.createTempFile("hashes", ".tmp", cacheDirectory);
+			try (Writer cacheWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8))) {
+				cacheWriter.write(FORMAT_VERSION + "\n");
+				for (Entry<String, CacheEntry> entry : currentEntries.entrySet()) {
+					CacheEntry cacheEntry = entry.getValue();
+					cacheWriter.write(cacheEntry.hash + "\t" + cacheEntry.size + "\t" + cacheEntry.modificationTime + "\t" + cacheEntry.fileKey + "\t" + entry.getKey() + "\n");
+				}
+			} catch (IOException ioe1) {
+				temporaryFile.delete();
+				throw ioe1;
+			}
+			Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not write hash cache " + cacheFile, ioe1);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the name of the cache file for the given local path.
+	 *
+	 * @param localPath
+	 *            The local path of a project
+	 * @return The name of the cache file
+	 */
+	private static String getCacheFilename(String localPath) {
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			byte[] digest = messageDigest.digest(new File(localPath).getAbsolutePath().getBytes(UTF_8));
+			StringBuilder filename = new StringBuilder();
+			for (int index = 0; index < 16; index++) {
+				filename.append(String.format("%02x", digest[index] & 0xff));
+			}
+			return filename.append(".hashes").toString();
+		} catch (NoSuchAlgorithmException nsae1) {
+			throw new IllegalStateException("SHA-256 is not available", nsae1);
+		}
+	}
+
+	/**
+	 * Returns the file key of the given attributes as a string.
+	 *
+	 * @param attributes
+	 *            The attributes of a file
+	 * @return The file key, or “-” if the file system does not provide file
+	 *         keys
+	 */
+	private static String getFileKey(BasicFileAttributes attributes) {
+		Object fileKey = attributes.fileKey();
+		return (fileKey == null) ? "-" : fileKey.toString().replace('\t', ' ');
+	}
+
+	/**
+	 * A single entry of the cache.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class CacheEntry {
+
+		/** The hash of the file. */
+		private final String hash;
+
+		/** The size of the file. */
+		private final long size;
+
+		/** The modification time of the file. */
+		private final long modificationTime;
+
+		/** The file key of the file. */
+		private final String fileKey;
+
+		/**
+		 * Creates a new cache entry.
+		 *
+		 * @param hash
+		 *            The hash of the file
+		 * @param size
+		 *            The size of the file
+		 * @param modificationTime
+		 *            The modification time of the file
+		 * @param fileKey
+		 *            The file key of the file
+		 */
+		public CacheEntry(String hash, long size, long modificationTime, String fileKey) {
+			this.hash = hash;
+			this.size = size;
+			this.modificationTime = modificationTime;
+			this.fileKey = fileKey;
+		}
+
+		/**
+		 * Creates a new cache entry from the given file attributes.
+		 *
+		 * @param hash
+		 *            The hash of the file
+		 * @param attributes
+		 *            The attributes of the file
+		 */
+		public CacheEntry(String hash, BasicFileAttributes attributes) {
+			this(hash, attributes.size(), attributes.lastModifiedTime().toMillis(), getFileKey(attributes));
+		}
+
+		/**
+		 * Returns whether this entry matches the given file attributes.
+		 *
+		 * @param attributes
+		 *            The current attributes of the file
+		 * @return {@code true} if the file is unchanged, {@code false}
+		 *         otherwise
+		 */
+		public boolean matches(BasicFileAttributes attributes) {
+			return (size == attributes.size()) && (modificationTime == attributes.lastModifiedTime().toMillis()) && fileKey.equals(getFileKey(attributes));
+		}
+
+	}
+
+}
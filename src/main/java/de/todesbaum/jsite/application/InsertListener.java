@@ -20,6 +20,8 @@ package de.todesbaum.jsite.application;
 
 import java.util.EventListener;
 
+import de.todesbaum.jsite.gui.ScanProgress;
+
 /**
  * Interface for objects that want to be notified abount insert events.
  *
@@ -58,6 +60,20 @@ public interface InsertListener extends EventListener {
 	 */
 	public void projectInsertStarted(Project project);
 
+	/**
+	 * Notifies a listener that the scan of the project’s files has made some
+	 * progress. Progress events that have not been delivered yet may be
+	 * replaced by newer ones.
+	 *
+	 * @param project
+	 *            The project being inserted
+	 * @param scanProgress
+	 *            The progress of the scan
+	 */
+	public default void projectScanProgress(Project project, ScanProgress scanProgress) {
+		/* do nothing. */
+	}
+
 	/**
 	 * Notifies a listener that the upload of a project has finished and the
 	 * inserting will start now.
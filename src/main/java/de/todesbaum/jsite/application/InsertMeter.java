@@ -0,0 +1,180 @@
+/*
+ * jSite - InsertMeter.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+/**
+ * Measures the throughput of a project insert and estimates when it will be
+ * finished. The upload of the files to the node is measured in bytes, the
+ * insert into Freenet in blocks, each with its own {@link ThroughputMeter}.
+ * <p>
+ * The estimated finish time combines the block rate with the duration of the
+ * last insert of the same project: at the beginning of the insert, when the
+ * rate is still unreliable, the history is trusted most, and the more blocks
+ * are done, the more the rate is trusted.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class InsertMeter {
+
+	/** The window of the moving averages, in milliseconds. */
+	private static final long WINDOW = 30 * 1000;
+
+	/** The duration of the last insert of the project, or {@code 0}. */
+	private final long lastInsertDuration;
+
+	/** The time the insert started. */
+	private final long startTime;
+
+	/** The meter for uploaded bytes. */
+	private final ThroughputMeter byteMeter = new ThroughputMeter(WINDOW);
+
+	/** The meter for inserted blocks. */
+	private final ThroughputMeter blockMeter = new ThroughputMeter(WINDOW);
+
+	/** The latest progress of the insert. */
+	private volatile InsertProgress insertProgress;
+
+	/**
+	 * Creates a new insert meter for an insert of the given project that
+	 * starts now.
+	 *
+	 * @param project
+	 *            The project being inserted
+	 */
+	public InsertMeter(Project project) {
+		this(project.getLastInsertDuration(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Creates a new insert meter.
+	 *
+	 * @param lastInsertDuration
+	 *            The duration of the last insert of the project, in
+	 *            milliseconds, or {@code 0} if it is not known
+	 * @param startTime
+	 *            The time the insert started
+	 */
+	public InsertMeter(long lastInsertDuration, long startTime) {
+		this.lastInsertDuration = lastInsertDuration;
+		this.startTime = startTime;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the meter for the bytes uploaded to the node.
+	 *
+	 * @return The meter for uploaded bytes
+	 */
+	public ThroughputMeter getByteMeter() {
+		return byteMeter;
+	}
+
+	/**
+	 * Returns the meter for the blocks inserted into Freenet.
+	 *
+	 * @return The meter for inserted blocks
+	 */
+	public ThroughputMeter getBlockMeter() {
+		return blockMeter;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Updates the meter with the progress of the upload to the node.
+	 *
+	 * @param copied
+	 *            The number of bytes uploaded
+	 * @param time
+	 *            The time of the update
+	 */
+	public void bytesUploaded(long copied, long time) {
+		byteMeter.update(copied, time);
+	}
+
+	/**
+	 * Updates the meter with the progress of the insert.
+	 *
+	 * @param insertProgress
+	 *            The progress of the insert
+	 */
+	public void progressChanged(InsertProgress insertProgress) {
+		this.insertProgress = insertProgress;
+		blockMeter.update(insertProgress.getSucceeded(), insertProgress.getTime());
+	}
+
+	/**
+	 * Returns the estimated remaining time of the insert.
+	 *
+	 * @param now
+	 *            The current time
+	 * @return The remaining time, in milliseconds, or {@code -1} if it can not
+	 *         be estimated
+	 */
+	public long getRemainingTime(long now) {
+		InsertProgress insertProgress = this.insertProgress;
+		long historyRemaining = (lastInsertDuration > 0) ? Math.max(startTime + lastInsertDuration - now, 0) : -1;
+		if ((insertProgress == null) || (insertProgress.getTotal() == 0)) {
+			return historyRemaining;
+		}
+		long rateRemaining = blockMeter.getRemainingTime(insertProgress.getTotal() - insertProgress.getFailed() - insertProgress.getFatal(), now);
+		if (rateRemaining == -1) {
+			return historyRemaining;
+		}
+		if (historyRemaining == -1) {
+			return rateRemaining;
+		}
+		double rateWeight = insertProgress.getFinished() / (double) insertProgress.getTotal();
+		return (long) (rateWeight * rateRemaining + (1 - rateWeight) * historyRemaining);
+	}
+
+	/**
+	 * Returns the estimated finish time of the insert.
+	 *
+	 * @param now
+	 *            The current time
+	 * @return The estimated finish time, in milliseconds since the epoch, or
+	 *         {@code -1} if it can not be estimated
+	 */
+	public long getFinishTime(long now) {
+		long remainingTime = getRemainingTime(now);
+		return (remainingTime == -1) ? -1 : now + remainingTime;
+	}
+
+	/**
+	 * Formats the given duration as hours, minutes, and seconds.
+	 *
+	 * @param duration
+	 *            The duration, in milliseconds
+	 * @return The formatted duration, or “?” if the duration is negative
+	 */
+	public static String formatDuration(long duration) {
+		if (duration < 0) {
+			return "?";
+		}
+		long seconds = duration / 1000;
+		return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * jSite - InsertProgress.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+/**
+ * Snapshot of the progress of a project insert, as reported by the node.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class InsertProgress {
+
+	/** The project being inserted. */
+	private final Project project;
+
+	/** The number of succeeded blocks. */
+	private final int succeeded;
+
+	/** The number of failed blocks. */
+	private final int failed;
+
+	/** The number of fatally failed blocks. */
+	private final int fatal;
+
+	/** The total number of blocks. */
+	private final int total;
+
+	/** Whether the total number of blocks is final. */
+	private final boolean finalized;
+
+	/** The time the snapshot was taken. */
+	private final long time;
+
+	/**
+	 * Creates a new progress snapshot, taken now.
+	 *
+	 * @param project
+	 *            The project being inserted
+	 * @param succeeded
+	 *            The number of succeeded blocks
+	 * @param failed
+	 *            The number of failed blocks
+	 * @param fatal
+	 *            The number of fatally failed blocks
+	 * @param total
+	 *            The total number of blocks
+	 * @param finalized
+	 *            {@code true} if the total number of blocks is final,
+	 *            {@code false} otherwise
+	 */
+	public InsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
+		this(project, succeeded, failed, fatal, total, finalized, System.currentTimeMillis());
+	}
+
+	/**
+	 * Creates a new progress snapshot.
+	 *
+	 * @param project
+	 *            The project being inserted
+	 * @param succeeded
+	 *            The number of succeeded blocks
+	 * @param failed
+	 *            The number of failed blocks
+	 * @param fatal
+	 *            The number of fatally failed blocks
+	 * @param total
+	 *            The total number of blocks
+	 * @param finalized
+	 *            {@code true} if the total number of blocks is final,
+	 *            {@code false} otherwise
+	 * @param time
+	 *            The time the snapshot was taken, in milliseconds since the
+	 *            epoch
+	 */
+	public InsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized, long time) {
+		this.project = project;
+		this.succeeded = succeeded;
+		this.failed = failed;
+		this.fatal = fatal;
+		this.total = total;
+		this.finalized = finalized;
+		this.time = time;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the project being inserted.
+	 *
+	 * @return The project being inserted
+	 */
+	public Project getProject() {
+		return project;
+	}
+
+	/**
+	 * Returns the number of succeeded blocks.
+	 *
+	 * @return The number of succeeded blocks
+	 */
+	public int getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * Returns the number of failed blocks.
+	 *
+	 * @return The number of failed blocks
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the number of fatally failed blocks.
+	 *
+	 * @return The number of fatally failed blocks
+	 */
+	public int getFatal() {
+		return fatal;
+	}
+
+	/**
+	 * Returns the total number of blocks.
+	 *
+	 * @return The total number of blocks
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns whether the total number of blocks is final.
+	 *
+	 * @return {@code true} if the total number of blocks is final,
+	 *         {@code false} otherwise
+	 */
+	public boolean isFinalized() {
+		return finalized;
+	}
+
+	/**
+	 * Returns the time the snapshot was taken.
+	 *
+	 * @return The time of the snapshot, in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the number of blocks that are done, whether they succeeded or
+	 * failed.
+	 *
+	 * @return The number of finished blocks
+	 */
+	public int getFinished() {
+		return succeeded + failed + fatal;
+	}
+
+	/**
+	 * Returns the percentage of finished blocks.
+	 *
+	 * @return The percentage of finished blocks, or {@code 0} if the total
+	 *         number of blocks is not known yet
+	 */
+	public int getPercent() {
+		return (total == 0) ? 0 : (int) (getFinished() * 100L / total);
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return succeeded + " done, " + failed + " failed, " + fatal + " fatal, " + total + " total" + (finalized ? " (finalized)" : "") + ", " + getPercent() + "%";
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * jSite - InsertProgressAggregator.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the progress of project inserts at a fixed rate. The node sends
+ * a progress message for every handful of blocks, which is far more often
+ * than a user interface can usefully show it; the aggregator only keeps the
+ * latest {@link InsertProgress} of every project and hands it to its
+ * listener at most once per interval.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class InsertProgressAggregator {
+
+	/** The listener to publish the progress to. */
+	private final InsertProgressListener insertProgressListener;
+
+	/** The minimum time between two publications, in milliseconds. */
+	private final long interval;
+
+	/** The executor that publishes the progress. */
+	private final ScheduledThreadPoolExecutor executor;
+
+	/** The progress that has not been published yet, by project. */
+	private final Map<Project, InsertProgress> pendingProgress = new LinkedHashMap<Project, InsertProgress>();
+
+	/** Whether a publication has been scheduled. */
+	private boolean publicationScheduled;
+
+	/**
+	 * Creates a new progress aggregator.
+	 *
+	 * @param interval
+	 *            The minimum time between two publications
+	 * @param unit
+	 *            The unit of the interval
+	 * @param insertProgressListener
+	 *            The listener to publish the progress to
+	 */
+	public InsertProgressAggregator(long interval, TimeUnit unit, InsertProgressListener insertProgressListener) {
+		this.interval = unit.toMillis(interval);
+		this.insertProgressListener = insertProgressListener;
+		executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "jSite Progress Aggregator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Stores the given progress. It replaces the progress of the same project
+	 * that has not been published yet, and will be published once the
+	 * interval since the last publication has passed.
+	 *
+	 * @param insertProgress
+	 *            The progress of an insert
+	 */
+	public void progressChanged(InsertProgress insertProgress) {
+		synchronized (pendingProgress) {
+			pendingProgress.put(insertProgress.getProject(), insertProgress);
+			if (!publicationScheduled) {
+				publicationScheduled = true;
+				executor.schedule(this::publishProgress, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the progress of the given project that has not been
+	 * published yet, right now. This should be called before the end of the
+	 * insert is shown, so that no progress is shown after it.
+	 *
+	 * @param project
+	 *            The project to publish the progress of
+	 */
+	public void flush(Project project) {
+		synchronized (pendingProgress) {
+			InsertProgress insertProgress = pendingProgress.remove(project);
+			if (insertProgress != null) {
+				insertProgressListener.insertProgressChanged(insertProgress);
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Publishes the progress of all projects that has not been published
+	 * yet.
+	 */
+	private void publishProgress() {
+		synchronized (pendingProgress) {
+			List<InsertProgress> insertProgresses = new ArrayList<InsertProgress>(pendingProgress.values());
+			pendingProgress.clear();
+			publicationScheduled = false;
+			/* publish while locked so flush() can not overtake us. */
+			for (InsertProgress insertProgress : insertProgresses) {
+				insertProgressListener.insertProgressChanged(insertProgress);
+			}
+		}
+	}
+
+	/**
+	 * Listener that receives the progress published by an
+	 * {@link InsertProgressAggregator}.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public interface InsertProgressListener extends EventListener {
+
+		/**
+		 * Notifies the listener about the latest progress of an insert.
+		 *
+		 * @param insertProgress
+		 *            The progress of the insert
+		 */
+		void insertProgressChanged(InsertProgress insertProgress);
+
+	}
+
+}
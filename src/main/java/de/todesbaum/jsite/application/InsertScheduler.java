@@ -0,0 +1,405 @@
+/*
+ * jSite - InsertScheduler.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the inserts of several projects at the same time. At most a fixed
+ * number of inserts run at once, and every node can be limited to a number
+ * of concurrent inserts of its own. Inserts are started in the order they
+ * were submitted; an insert whose node is busy, or whose project is being
+ * inserted already, is skipped until the running insert has finished. A
+ * failed insert is queued again behind all other inserts, until it has been
+ * retried a fixed number of times.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class InsertScheduler {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(InsertScheduler.class.getName());
+
+	/** The maximum number of concurrent inserts. */
+	private final int parallelism;
+
+	/** The maximum number of concurrent inserts per node, 0 for no limit. */
+	private final int maxInsertsPerNode;
+
+	/** The number of times a failed insert is retried. */
+	private final int retries;
+
+	/** Object used for synchronization. */
+	private final Object lockObject = new Object();
+
+	/** All submitted inserts, in the order of submission. */
+	private final List<Insert> inserts = new ArrayList<Insert>();
+
+	/** The inserts that are waiting to be started. */
+	private final LinkedList<Insert> queuedInserts = new LinkedList<Insert>();
+
+	/** The number of running inserts, per node. */
+	private final Map<Node, Integer> runningInsertsPerNode = new HashMap<Node, Integer>();
+
+	/** The projects that are being inserted. */
+	private final Set<Project> runningProjects = Collections.newSetFromMap(new IdentityHashMap<Project, Boolean>());
+
+	/** The number of running inserts. */
+	private int runningInserts;
+
+	/**
+	 * Creates a new insert scheduler.
+	 *
+	 * @param parallelism
+	 *            The maximum number of concurrent inserts
+	 * @param maxInsertsPerNode
+	 *            The maximum number of concurrent inserts per node, or
+	 *            {@code 0} to only limit the number of all inserts
+	 * @param retries
+	 *            The number of times a failed insert is retried
+	 */
+	public InsertScheduler(int parallelism, int maxInsertsPerNode, int retries) {
+		this.parallelism = Math.max(parallelism, 1);
+		this.maxInsertsPerNode = Math.max(maxInsertsPerNode, 0);
+		this.retries = Math.max(retries, 0);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Submits the insert of the given project to the given node. The insert
+	 * is started as soon as the limits allow it.
+	 *
+	 * @param project
+	 *            The project to insert
+	 * @param node
+	 *            The node to insert the project to
+	 * @param insertStarter
+	 *            The starter of the insert, called for every attempt
+	 */
+	public void submit(Project project, Node node, InsertStarter insertStarter) {
+		synchronized (lockObject) {
+			Insert insert = new Insert(project, node, insertStarter);
+			inserts.add(insert);
+			queuedInserts.add(insert);
+		}
+		startInserts();
+	}
+
+	/**
+	 * Waits until all submitted inserts have finished, including their
+	 * retries.
+	 *
+	 * @return The results of all inserts, in the order the inserts were
+	 *         submitted
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public List<Result> awaitResults() throws InterruptedException {
+		synchronized (lockObject) {
+			while (!queuedInserts.isEmpty() || (runningInserts > 0)) {
+				lockObject.wait();
+			}
+			List<Result> results = new ArrayList<Result>();
+			for (Insert insert : inserts) {
+				results.add(insert.result);
+			}
+			return results;
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Starts as many queued inserts as the limits allow.
+	 */
+	private void startInserts() {
+		List<Insert> startedInserts = new ArrayList<Insert>();
+		synchronized (lockObject) {
+			for (Iterator<Insert> queuedInsertIterator = queuedInserts.iterator(); (runningInserts < parallelism) && queuedInsertIterator.hasNext();) {
+				Insert insert = queuedInsertIterator.next();
+				int runningInsertsOfNode = runningInsertsPerNode.getOrDefault(insert.node, 0);
+				if (((maxInsertsPerNode > 0) && (runningInsertsOfNode >= maxInsertsPerNode)) || runningProjects.contains(insert.project)) {
+					continue;
+				}
+				queuedInsertIterator.remove();
+				runningProjects.add(insert.project);
+				runningInsertsPerNode.put(insert.node, runningInsertsOfNode + 1);
+				runningInserts++;
+				insert.attempts++;
+				startedInserts.add(insert);
+			}
+		}
+		for (Insert insert : startedInserts) {
+			logger.log(Level.INFO, "Starting attempt {0} of insert of {1}.", new Object[] { insert.attempts, insert.project.getName() });
+			try {
+				insert.insertStarter.startInsert(insert.project, insert.node, insert.attempts, insert);
+			} catch (RuntimeException re1) {
+				insert.projectInsertFinished(insert.project, false, re1);
+			}
+		}
+	}
+
+	/**
+	 * Records the result of an insert, and queues it again if it failed and
+	 * may be retried.
+	 *
+	 * @param insert
+	 *            The insert that finished
+	 * @param success
+	 *            {@code true} if the insert succeeded, {@code false} otherwise
+	 * @param cause
+	 *            The cause of the failure, may be {@code null}
+	 */
+	private void insertFinished(Insert insert, boolean success, Throwable cause) {
+		synchronized (lockObject) {
+			runningInserts--;
+			runningInsertsPerNode.merge(insert.node, -1, Integer::sum);
+			runningProjects.remove(insert.project);
+			insert.result = new Result(insert.project, insert.node, success, insert.attempts, cause);
+			if (!success && (insert.attempts <= retries)) {
+				logger.log(Level.INFO, "Insert of " + insert.project.getName() + " failed, retrying.", cause);
+				queuedInserts.add(insert);
+			}
+			lockObject.notifyAll();
+		}
+		startInserts();
+	}
+
+	/**
+	 * Starts the insert of a project.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public interface InsertStarter {
+
+		/**
+		 * Starts the insert of the given project to the given node. The given
+		 * insert listener has to be notified about the insert, at least about
+		 * its end. Every attempt should use a new {@link ProjectInserter}.
+		 * <p>
+		 * The attempt is counted by this scheduler, so it starts at 1 for
+		 * every submitted insert; if the attempt fails, it is retried as long
+		 * as the attempt is not greater than the number of retries.
+		 *
+		 * @param project
+		 *            The project to insert
+		 * @param node
+		 *            The node to insert the project to
+		 * @param attempt
+		 *            The number of this attempt, starting at 1
+		 * @param insertListener
+		 *            The insert listener to notify
+		 */
+		void startInsert(Project project, Node node, int attempt, InsertListener insertListener);
+
+	}
+
+	/**
+	 * The result of the insert of a project.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public static class Result {
+
+		/** The project. */
+		private final Project project;
+
+		/** The node. */
+		private final Node node;
+
+		/** Whether the insert succeeded. */
+		private final boolean success;
+
+		/** The number of attempts. */
+		private final int attempts;
+
+		/** The cause of the failure. */
+		private final Throwable cause;
+
+		/**
+		 * Creates a new result.
+		 *
+		 * @param project
+		 *            The project
+		 * @param node
+		 *            The node
+		 * @param success
+		 *            Whether the insert succeeded
+		 * @param attempts
+		 *            The number of attempts
+		 * @param cause
+		 *            The cause of the failure, may be {@code null}
+		 */
+		Result(Project project, Node node, boolean success, int attempts, Throwable cause) {
+			this.project = project;
+			this.node = node;
+			this.success = success;
+			this.attempts = attempts;
+			this.cause = cause;
+		}
+
+		/**
+		 * Returns the project.
+		 *
+		 * @return The project
+		 */
+		public Project getProject() {
+			return project;
+		}
+
+		/**
+		 * Returns the node the project was inserted to.
+		 *
+		 * @return The node
+		 */
+		public Node getNode() {
+			return node;
+		}
+
+		/**
+		 * Returns whether the insert succeeded.
+		 *
+		 * @return {@code true} if the insert succeeded, {@code false}
+		 *         otherwise
+		 */
+		public boolean isSuccess() {
+			return success;
+		}
+
+		/**
+		 * Returns the number of times the insert was attempted.
+		 *
+		 * @return The number of attempts
+		 */
+		public int getAttempts() {
+			return attempts;
+		}
+
+		/**
+		 * Returns the cause of the failure of the last attempt.
+		 *
+		 * @return The cause of the failure, or {@code null} if the insert
+		 *         succeeded or the cause is unknown
+		 */
+		public Throwable getCause() {
+			return cause;
+		}
+
+	}
+
+	/**
+	 * A submitted insert.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private class Insert implements InsertListener {
+
+		/** The project to insert. */
+		private final Project project;
+
+		/** The node to insert the project to. */
+		private final Node node;
+
+		/** The starter of the insert. */
+		private final InsertStarter insertStarter;
+
+		/** The number of attempts. */
+		private int attempts;
+
+		/** The result of the last attempt. */
+		private Result result;
+
+		/**
+		 * Creates a new insert.
+		 *
+		 * @param project
+		 *            The project to insert
+		 * @param node
+		 *            The node to insert the project to
+		 * @param insertStarter
+		 *            The starter of the insert
+		 */
+		public Insert(Project project, Node node, InsertStarter insertStarter) {
+			this.project = project;
+			this.node = node;
+			this.insertStarter = insertStarter;
+		}
+
+		//
+		// INTERFACE InsertListener
+		//
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectInsertStarted(Project project) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectUploadFinished(Project project) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectURIGenerated(Project project, String uri) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectInsertFinished(Project project, boolean success, Throwable cause) {
+			insertFinished(this, success, cause);
+		}
+
+	}
+
+}
@@ -19,6 +19,8 @@
 package de.todesbaum.jsite.application;
 
 import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -59,6 +61,9 @@ public class Project implements Comparable<Project> {
 	/** The time of the last insertion. */
 	protected long lastInsertionTime;
 
+	/** The duration of the last successful insert, in milliseconds. */
+	private long lastInsertDuration;
+
 	/** The edition to insert to. */
 	protected int edition;
 
@@ -68,9 +73,24 @@ public class Project implements Comparable<Project> {
 	/** Whether to ignore hidden directory. */
 	private boolean ignoreHiddenFiles;
 
+	/** The patterns of the files to split into chunks. */
+	private String splitPattern = "";
+
+	/** The compression codecs the node may use, empty for the node’s default. */
+	private String compressionCodecs = "";
+
+	/** The identifier of the unfinished persistent insert request. */
+	private String insertIdentifier;
+
+	/** The hashes of the files of the unfinished insert request, by name. */
+	private final Map<String, String> insertHashes = new HashMap<String, String>();
+
 	/** Options for files. */
 	protected Map<String, FileOption> fileOptions = new HashMap<String, FileOption>();
 
+	/** The manifests of inserted subdirectories, by path. */
+	private final Map<String, DirectoryManifest> directoryManifests = new HashMap<String, DirectoryManifest>();
+
 	/**
 	 * Empty constructor.
 	 */
@@ -94,8 +114,14 @@ public class Project implements Comparable<Project> {
 		localPath = project.localPath;
 		indexFile = project.indexFile;
 		lastInsertionTime = project.lastInsertionTime;
+		lastInsertDuration = project.lastInsertDuration;
 		alwaysForceInserts = project.alwaysForceInserts;
 		ignoreHiddenFiles = project.ignoreHiddenFiles;
+		splitPattern = project.splitPattern;
+		compressionCodecs = project.compressionCodecs;
+		insertIdentifier = project.insertIdentifier;
+		insertHashes.putAll(project.insertHashes);
+		directoryManifests.putAll(project.directoryManifests);
 		for (Entry<String, FileOption> fileOption : fileOptions.entrySet()) {
 			fileOptions.put(fileOption.getKey(), new FileOption(fileOption.getValue()));
 		}
@@ -200,6 +226,26 @@ public class Project implements Comparable<Project> {
 		lastInsertionTime = lastInserted;
 	}
 
+	/**
+	 * Returns how long the last successful insert of the project took.
+	 *
+	 * @return The duration of the last insert, in milliseconds, or {@code 0}
+	 *         if it is not known
+	 */
+	public long getLastInsertDuration() {
+		return lastInsertDuration;
+	}
+
+	/**
+	 * Sets how long the last successful insert of the project took.
+	 *
+	 * @param lastInsertDuration
+	 *            The duration of the last insert, in milliseconds
+	 */
+	public void setLastInsertDuration(long lastInsertDuration) {
+		this.lastInsertDuration = lastInsertDuration;
+	}
+
 	/**
 	 * Returns the remote path of the project. The remote path is the path that
 	 * directly follows the request URI of the project.
@@ -303,6 +349,82 @@ public class Project implements Comparable<Project> {
 		this.ignoreHiddenFiles = ignoreHiddenFiles;
 	}
 
+	/**
+	 * Returns the patterns of the files that are split into chunks if they
+	 * are larger than the split threshold. The patterns are globs, such as
+	 * <code>*.tar.gz</code> or <code>logs/**</code>, separated by commas.
+	 * Split files are published as a list of their chunks under a different
+	 * name, see {@link FileOption#isSplitInsert()}.
+	 *
+	 * @return The patterns of the files to split
+	 */
+	public String getSplitPattern() {
+		return splitPattern;
+	}
+
+	/**
+	 * Sets the patterns of the files that are split into chunks if they are
+	 * larger than the split threshold.
+	 *
+	 * @param splitPattern
+	 *            The patterns of the files to split, separated by commas
+	 */
+	public void setSplitPattern(String splitPattern) {
+		this.splitPattern = (splitPattern == null) ? "" : splitPattern;
+	}
+
+	/**
+	 * Returns the compression codecs the node may use when it compresses the
+	 * files of this project, such as <code>GZIP, LZMA_NEW</code>.
+	 *
+	 * @return The compression codecs, or an empty string to let the node use
+	 *         its default codecs
+	 */
+	public String getCompressionCodecs() {
+		return compressionCodecs;
+	}
+
+	/**
+	 * Sets the compression codecs the node may use when it compresses the
+	 * files of this project.
+	 *
+	 * @param compressionCodecs
+	 *            The compression codecs, separated by commas, or an empty
+	 *            string to let the node use its default codecs
+	 */
+	public void setCompressionCodecs(String compressionCodecs) {
+		this.compressionCodecs = (compressionCodecs == null) ? "" : compressionCodecs.trim();
+	}
+
+	/**
+	 * Returns whether the file with the given name is split into chunks if it
+	 * is larger than the split threshold, either because its file options say
+	 * so or because it matches the split pattern of this project.
+	 *
+	 * @param filename
+	 *            The name of the file, relative to the local path
+	 * @return {@code true} if the file is split if it is large, {@code false}
+	 *         otherwise
+	 */
+	public boolean isSplitInsert(String filename) {
+		if (getFileOption(filename).isSplitInsert()) {
+			return true;
+		}
+		for (String pattern : splitPattern.split(",")) {
+			if (pattern.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				if (FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()).matches(Paths.get(filename))) {
+					return true;
+				}
+			} catch (IllegalArgumentException iae1) {
+				/* ignore invalid pattern. */
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * <p>
@@ -461,6 +583,75 @@ public class Project implements Comparable<Project> {
 		this.edition = edition;
 	}
 
+	/**
+	 * Returns the identifier of the persistent insert request of this project
+	 * that has been handed to the node but has not yet finished.
+	 *
+	 * @return The identifier of the unfinished insert request, or
+	 *         {@code null} if there is none
+	 */
+	public String getInsertIdentifier() {
+		return insertIdentifier;
+	}
+
+	/**
+	 * Sets the identifier of the persistent insert request of this project
+	 * that has been handed to the node but has not yet finished.
+	 *
+	 * @param insertIdentifier
+	 *            The identifier of the unfinished insert request, or
+	 *            {@code null} if there is none
+	 */
+	public void setInsertIdentifier(String insertIdentifier) {
+		this.insertIdentifier = insertIdentifier;
+	}
+
+	/**
+	 * Returns the hashes of the files that were submitted with the
+	 * {@link #getInsertIdentifier() unfinished insert request}. When the
+	 * request is resumed, the files are not scanned again, so these hashes
+	 * are recorded as the hashes of the insert once it has finished.
+	 *
+	 * @return The hashes of the submitted files, by file name
+	 */
+	public Map<String, String> getInsertHashes() {
+		return Collections.unmodifiableMap(insertHashes);
+	}
+
+	/**
+	 * Sets the hashes of the files that were submitted with the
+	 * {@link #getInsertIdentifier() unfinished insert request}.
+	 *
+	 * @param insertHashes
+	 *            The hashes of the submitted files, by file name
+	 */
+	public void setInsertHashes(Map<String, String> insertHashes) {
+		this.insertHashes.clear();
+		this.insertHashes.putAll(insertHashes);
+	}
+
+	/**
+	 * Returns the manifests of the subdirectories that have been inserted as
+	 * keys of their own.
+	 *
+	 * @return The manifests of inserted subdirectories, by path
+	 */
+	public Map<String, DirectoryManifest> getDirectoryManifests() {
+		return Collections.unmodifiableMap(directoryManifests);
+	}
+
+	/**
+	 * Sets the manifests of the subdirectories that have been inserted as
+	 * keys of their own.
+	 *
+	 * @param directoryManifests
+	 *            The manifests of inserted subdirectories, by path
+	 */
+	public void setDirectoryManifests(Map<String, DirectoryManifest> directoryManifests) {
+		this.directoryManifests.clear();
+		this.directoryManifests.putAll(directoryManifests);
+	}
+
 	/**
 	 * Constructs the final request URI including the edition number.
 	 *
@@ -472,18 +663,30 @@ public class Project implements Comparable<Project> {
 		return "USK@" + requestURI + "/" + path + "/" + (edition + offset) + "/";
 	}
 
+	/**
+	 * Returns the key the given file was published under by its last insert.
+	 *
+	 * @param fileOption
+	 *            The file options of the file
+	 * @return The key of the file’s last insert
+	 */
+	public String getLastInsertKey(FileOption fileOption) {
+		return "SSK@" + requestURI + "/" + path + "-" + fileOption.getLastInsertEdition() + "/" + fileOption.getLastInsertFilename();
+	}
+
 	/**
 	 * Performs some post-processing on the project after it was inserted
-	 * successfully. At the moment it copies the current hashes of all file
-	 * options to the last insert hashes, updating the hashes for the next
-	 * insert.
+	 * successfully. At the moment it copies the current hashes and split
+	 * modes of all file options to the last insert hashes and split modes,
+	 * updating them for the next insert.
 	 */
 	public void onSuccessfulInsert() {
 		for (Entry<String, FileOption> fileOptionEntry : fileOptions.entrySet()) {
 			FileOption fileOption = fileOptionEntry.getValue();
-			if ((fileOption.getCurrentHash() != null) && (fileOption.getCurrentHash().length() > 0) && (!fileOption.getCurrentHash().equals(fileOption.getLastInsertHash()) || fileOption.isForceInsert())) {
+			if ((fileOption.getCurrentHash() != null) && (fileOption.getCurrentHash().length() > 0) && (fileOption.isChangedSinceLastInsert() || fileOption.isForceInsert())) {
 				fileOption.setLastInsertEdition(edition);
 				fileOption.setLastInsertHash(fileOption.getCurrentHash());
+				fileOption.setLastInsertSplit(fileOption.isCurrentSplit());
 				fileOption.setLastInsertFilename(fileOption.getChangedName().orElse(fileOptionEntry.getKey()));
 			}
 			fileOption.setForceInsert(false);
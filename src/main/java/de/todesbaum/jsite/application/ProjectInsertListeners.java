@@ -18,18 +18,33 @@
 
 package de.todesbaum.jsite.application;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.todesbaum.jsite.gui.ScanProgress;
+import de.todesbaum.util.event.EventDispatcher;
 
 /**
- * Manages {@link InsertListener}s for the {@link ProjectInserter}.
+ * Manages {@link InsertListener}s for the {@link ProjectInserter}. Listeners
+ * are notified by an {@link EventDispatcher} so that a slow listener does not
+ * hold up the insert; progress events that have not been delivered yet are
+ * replaced by newer ones.
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
 class ProjectInsertListeners {
 
+	/** The coalescing key of progress events. */
+	private static final Object PROGRESS = new Object();
+
+	/** The coalescing key of scan progress events. */
+	private static final Object SCAN_PROGRESS = new Object();
+
 	/** The list of insert listeners. */
-	private final List<InsertListener> insertListeners = new ArrayList<InsertListener>();
+	private final List<InsertListener> insertListeners = new CopyOnWriteArrayList<InsertListener>();
+
+	/** The dispatcher that notifies the listeners. */
+	private final EventDispatcher eventDispatcher = new EventDispatcher("jSite Insert Events");
 
 	/**
 	 * Adds a listener to the list of registered listeners.
@@ -58,9 +73,29 @@ class ProjectInsertListeners {
 	 * @see InsertListener#projectInsertStarted(Project)
 	 */
 	void fireProjectInsertStarted(Project project) {
-		for (InsertListener insertListener : insertListeners) {
-			insertListener.projectInsertStarted(project);
-		}
+		eventDispatcher.dispatch(() -> {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectInsertStarted(project);
+			}
+		});
+	}
+
+	/**
+	 * Notifies all listeners that the scan of the project’s files has made
+	 * some progress.
+	 *
+	 * @param project
+	 * 		The project whose files are scanned
+	 * @param scanProgress
+	 * 		The progress of the scan
+	 * @see InsertListener#projectScanProgress(Project, ScanProgress)
+	 */
+	void fireProjectScanProgress(Project project, ScanProgress scanProgress) {
+		eventDispatcher.dispatch(SCAN_PROGRESS, () -> {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectScanProgress(project, scanProgress);
+			}
+		});
 	}
 
 	/**
@@ -72,9 +107,11 @@ class ProjectInsertListeners {
 	 * @see InsertListener#projectURIGenerated(Project, String)
 	 */
 	void fireProjectURIGenerated(Project project, String uri) {
-		for (InsertListener insertListener : insertListeners) {
-			insertListener.projectURIGenerated(project, uri);
-		}
+		eventDispatcher.dispatch(() -> {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectURIGenerated(project, uri);
+			}
+		});
 	}
 
 	/**
@@ -84,9 +121,11 @@ class ProjectInsertListeners {
 	 * @see InsertListener#projectUploadFinished(Project)
 	 */
 	void fireProjectUploadFinished(Project project) {
-		for (InsertListener insertListener : insertListeners) {
-			insertListener.projectUploadFinished(project);
-		}
+		eventDispatcher.dispatch(() -> {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectUploadFinished(project);
+			}
+		});
 	}
 
 	/**
@@ -108,9 +147,11 @@ class ProjectInsertListeners {
 	 *      boolean)
 	 */
 	void fireProjectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
-		for (InsertListener insertListener : insertListeners) {
-			insertListener.projectInsertProgress(project, succeeded, failed, fatal, total, finalized);
-		}
+		eventDispatcher.dispatch(PROGRESS, () -> {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectInsertProgress(project, succeeded, failed, fatal, total, finalized);
+			}
+		});
 	}
 
 	/**
@@ -125,9 +166,11 @@ class ProjectInsertListeners {
 	 * @see InsertListener#projectInsertFinished(Project, boolean, Throwable)
 	 */
 	void fireProjectInsertFinished(Project project, boolean success, Throwable cause) {
-		for (InsertListener insertListener : insertListeners) {
-			insertListener.projectInsertFinished(project, success, cause);
-		}
+		eventDispatcher.dispatch(() -> {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectInsertFinished(project, success, cause);
+			}
+		});
 	}
 
 }
@@ -19,11 +19,21 @@
 package de.todesbaum.jsite.application;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import de.todesbaum.jsite.application.ContentDefinedChunker.Chunk;
 import de.todesbaum.jsite.gui.*;
 import de.todesbaum.util.freenet.fcp2.*;
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
@@ -44,6 +54,18 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** Counter for FCP connection identifier. */
 	private static final AtomicInteger counter = new AtomicInteger();
 
+	/** The maximum time to wait for a reply during the TestDDA handshake. */
+	private static final long TEST_DDA_TIMEOUT = 30 * 1000;
+
+	/** The default size above which files are split, 64 MiB. */
+	private static final long DEFAULT_SPLIT_THRESHOLD = 64 * 1024 * 1024;
+
+	/** The MIME type of the chunk list of a split file. */
+	private static final String SPLIT_INDEX_MIME_TYPE = "text/plain; charset=utf-8";
+
+	/** The chunker for split files, with chunks of 256 KiB to 4 MiB. */
+	private static final ContentDefinedChunker chunker = new ContentDefinedChunker(256 * 1024, 1024 * 1024, 4 * 1024 * 1024);
+
 	private final ProjectInsertListeners projectInsertListeners = new ProjectInsertListeners();
 
 	/** The freenet interface. */
@@ -55,6 +77,24 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** The file scanner. */
 	private FileScanner fileScanner;
 
+	/** The handle of the running scan, {@code null} if no scan was started. */
+	private volatile ScanTask scanTask;
+
+	/** The files to insert instead of scanning the project, or {@code null}. */
+	private List<ScannedFile> scannedFiles;
+
+	/** The files found by the file scanner. */
+	private volatile List<ScannedFile> projectFiles;
+
+	/** Latch that is released when the file scanner has finished. */
+	private volatile CountDownLatch fileScannerFinished;
+
+	/** Whether the file scanner has encountered an error. */
+	private volatile boolean fileScannerError;
+
+	/** The scanned files that have not been handled by a pipelined insert. */
+	private final BlockingQueue<ScannedFile> pendingFiles = new LinkedBlockingQueue<ScannedFile>();
+
 	/** Object used for synchronization. */
 	private final Object lockObject = new Object();
 
@@ -64,9 +104,24 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** The current connection. */
 	private Connection connection;
 
+	/** The client of the current insert. */
+	private Client client;
+
+	/** Whether the insert runs over a shared connection. */
+	private boolean sharedConnection;
+
+	/**
+	 * The identifiers of the requests of the current insert that are bound to
+	 * its client and are still running on the node.
+	 */
+	private final Set<String> runningRequests = ConcurrentHashMap.newKeySet();
+
 	/** Whether the insert is cancelled. */
 	private volatile boolean cancelled = false;
 
+	/** The time the insert was started. */
+	private long startTime;
+
 	/** Progress listener for payload transfers. */
 	private ProgressListener progressListener;
 
@@ -76,6 +131,48 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** The insert priority. */
 	private PriorityClass priority;
 
+	/** The directory to store hash caches in. */
+	private File hashCacheDirectory;
+
+	/** Whether to hash all files, ignoring the hash cache. */
+	private boolean verifyHashes;
+
+	/** The number of files to hash in parallel. */
+	private int scanParallelism;
+
+	/** Whether the node can read the project’s files from disk. */
+	private boolean directDiskAccess;
+
+	/** Whether to insert files while the project is still being scanned. */
+	private boolean pipelined;
+
+	/** Whether to insert the project as a persistent, resumable request. */
+	private boolean resumable;
+
+	/** Whether every directory is inserted as a manifest of its own. */
+	private boolean hierarchical;
+
+	/** The index of inserted file contents, shared by all projects. */
+	private ContentIndex contentIndex;
+
+	/** The keys of the files uploaded as keys of their own, by content hash. */
+	private final Map<String, String> uploadedKeys = new HashMap<String, String>();
+
+	/** The size above which files that are marked for splitting are split. */
+	private long splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+
+	/** The compression policy of the current insert. */
+	private CompressionPolicy compressionPolicy = new CompressionPolicy(null);
+
+	/**
+	 * The inserts of files that are inserted as keys of their own, such as
+	 * the chunks of split files.
+	 */
+	private final List<Request> fileRequests = new ArrayList<Request>();
+
+	/** The manifests of the directories of the current hierarchical insert. */
+	private Map<String, DirectoryManifest> directoryManifests;
+
 	/**
 	 * Adds a listener to the list of registered listeners.
 	 *
@@ -117,6 +214,67 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 		this.tempDirectory = tempDirectory;
 	}
 
+	/**
+	 * Sets the directory the hash caches are stored in.
+	 *
+	 * @see FileScanner#setHashCacheDirectory(File)
+	 * @param hashCacheDirectory
+	 *            The directory to store hash caches in, or {@code null} to not
+	 *            use a hash cache
+	 */
+	public void setHashCacheDirectory(File hashCacheDirectory) {
+		this.hashCacheDirectory = hashCacheDirectory;
+	}
+
+	/**
+	 * Sets whether all files are hashed, even if their hashes are cached.
+	 *
+	 * @see FileScanner#setVerifyAll(boolean)
+	 * @param verifyHashes
+	 *            {@code true} to hash all files, {@code false} to use cached
+	 *            hashes
+	 */
+	public void setVerifyHashes(boolean verifyHashes) {
+		this.verifyHashes = verifyHashes;
+	}
+
+	/**
+	 * Sets the number of files to hash in parallel.
+	 *
+	 * @see FileScanner#setParallelism(int)
+	 * @param scanParallelism
+	 *            The number of files to hash in parallel, or {@code 0} to
+	 *            choose automatically
+	 */
+	public void setScanParallelism(int scanParallelism) {
+		this.scanParallelism = scanParallelism;
+	}
+
+	/**
+	 * Returns the file scanner of the current insert.
+	 *
+	 * @return The file scanner of the current insert, or {@code null} if no
+	 *         insert was started yet or the files were given with
+	 *         {@link #setScannedFiles(List)}
+	 */
+	public FileScanner getFileScanner() {
+		return fileScanner;
+	}
+
+	/**
+	 * Sets the files to insert. If the files are set, the project is not
+	 * scanned when the insert is started; this is used by the
+	 * {@link ProjectWatcher} which keeps the files of a project up to date
+	 * itself.
+	 *
+	 * @param scannedFiles
+	 *            The files of the project, or {@code null} to scan the
+	 *            project
+	 */
+	public void setScannedFiles(List<ScannedFile> scannedFiles) {
+		this.scannedFiles = (scannedFiles == null) ? null : new ArrayList<ScannedFile>(scannedFiles);
+	}
+
 	/**
 	 * Sets whether to use the “early encode“ flag for the insert.
 	 *
@@ -128,6 +286,91 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 		this.useEarlyEncode = useEarlyEncode;
 	}
 
+	/**
+	 * Sets whether files are inserted while the project is still being
+	 * scanned. In pipelined mode, every file that needs to be uploaded is
+	 * inserted as a CHK of its own as soon as it has been hashed, and the
+	 * project’s manifest only contains redirects to these CHKs.
+	 *
+	 * @param pipelined
+	 *            {@code true} to insert files while scanning, {@code false} to
+	 *            insert all files with a single request after scanning
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Sets whether the insert runs over a shared connection from the
+	 * {@link Freenet7Interface#acquireConnection() connection pool} instead
+	 * of a connection of its own. A shared connection is kept open when the
+	 * insert is cancelled or fails; the requests of the insert are removed
+	 * from the node instead. As the node remembers the result of the TestDDA
+	 * handshake for every connection, the handshake is only done once per
+	 * connection and project directory.
+	 *
+	 * @param sharedConnection
+	 *            {@code true} to insert over a shared connection,
+	 *            {@code false} to open a connection for this insert
+	 */
+	public void setSharedConnection(boolean sharedConnection) {
+		this.sharedConnection = sharedConnection;
+	}
+
+	/**
+	 * Sets whether the project is inserted as a persistent request on the
+	 * node’s global queue. Once the upload has finished, the identifier of the
+	 * request is stored in the project; if the connection is lost or jSite is
+	 * restarted before the insert has finished, the next insert of the
+	 * project reattaches to the request instead of starting over. Resumable
+	 * inserts always use a single request, so they are never pipelined, and
+	 * incompressible files are compressed along with the compressible files
+	 * of the project.
+	 *
+	 * @param resumable
+	 *            {@code true} to insert the project as a resumable request,
+	 *            {@code false} to bind the insert to the connection
+	 */
+	public void setResumable(boolean resumable) {
+		this.resumable = resumable;
+	}
+
+	/**
+	 * Sets whether every directory of the project is inserted as a manifest
+	 * of its own. The manifest of a directory links to the manifests of its
+	 * subdirectories, and the keys of all directory manifests are stored in
+	 * the project together with a hash of the directory’s contents. On the
+	 * next insert only the directories that changed, and the directories
+	 * above them, are inserted again; all other directories are linked by
+	 * their stored keys. Hierarchical inserts are ignored for pipelined and
+	 * resumable inserts.
+	 *
+	 * @param hierarchical
+	 *            {@code true} to insert every directory as a manifest of its
+	 *            own, {@code false} to insert a single manifest
+	 */
+	public void setHierarchical(boolean hierarchical) {
+		this.hierarchical = hierarchical;
+	}
+
+	/**
+	 * Sets the size above which files are split into chunks. Only files whose
+	 * file options ask for it, or that match the project’s split pattern, are
+	 * split. Every chunk is inserted as a CHK of its own, and the file is
+	 * replaced by a small index that lists the chunks and their keys. Chunk
+	 * boundaries depend on the content of the file, so after appending to a
+	 * file or changing a part of it, only the new and changed chunks are
+	 * uploaded again; all other chunks are found in the content index. Files
+	 * are never split for resumable inserts.
+	 *
+	 * @see Project#isSplitInsert(String)
+	 * @param splitThreshold
+	 *            The size above which files are split, in bytes
+	 */
+	public void setSplitThreshold(long splitThreshold) {
+		this.splitThreshold = splitThreshold;
+	}
+
 	/**
 	 * Sets the insert priority.
 	 *
@@ -139,136 +382,919 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	}
 
 	/**
-	 * Starts the insert.
+	 * Starts the insert. The project’s files are scanned while the connection
+	 * to the node is established.
 	 *
 	 * @param progressListener
 	 *            Listener to notify on progress events
 	 */
 	public void start(ProgressListener progressListener) {
 		cancelled = false;
+		startTime = System.currentTimeMillis();
 		this.progressListener = progressListener;
-		fileScanner = new FileScanner(project, this);
-		fileScanner.startInBackground();
+		fileScannerFinished = new CountDownLatch(1);
+		fileScannerError = false;
+		pendingFiles.clear();
+		runningRequests.clear();
+		uploadedKeys.clear();
+		fileRequests.clear();
+		directoryManifests = null;
+		if (scannedFiles != null) {
+			fileScanner = null;
+			scanTask = null;
+			fileScanned(scannedFiles);
+			fileScannerFinished(false, scannedFiles);
+		} else {
+			fileScanner = new FileScanner(project, this);
+			fileScanner.setHashCacheDirectory(hashCacheDirectory);
+			fileScanner.setVerifyAll(verifyHashes);
+			fileScanner.setParallelism(scanParallelism);
+			scanTask = fileScanner.startInBackground();
+		}
+		new Thread(this).start();
 	}
 
 	/**
-	 * Stops the current insert.
+	 * Stops the current insert. If the project’s files are still being
+	 * scanned, the scan is cancelled as well. A connection of its own is
+	 * closed; on a shared connection, the insert’s client is closed, and the
+	 * requests of the insert are removed from the node.
 	 */
 	public void stop() {
 		cancelled = true;
+		ScanTask scanTask = this.scanTask;
+		if (scanTask != null) {
+			scanTask.cancel();
+		}
 		synchronized (lockObject) {
-			if (connection != null) {
+			if (sharedConnection) {
+				if (client != null) {
+					client.close();
+				}
+			} else if (connection != null) {
 				connection.disconnect();
 			}
 		}
 	}
 
 	/**
-	 * Creates a file entry suitable for handing in to
-	 * {@link ClientPutComplexDir#addFileEntry(FileEntry)}.
+	 * Creates the file entries suitable for handing in to
+	 * {@link ClientPutComplexDir#addFileEntry(FileEntry)}. The first entry is
+	 * always the file itself; a split file is followed by the entry of its
+	 * chunk list.
 	 *
+	 * @param client
+	 *            The client to insert the chunks of split files with, or
+	 *            {@code null} to never split files
 	 * @param file
 	 * 		The name and hash of the file to insert
-	 * @return A file entry for the given file
+	 * @return The file entries for the given file, or an empty list if the
+	 *         file is not inserted
+	 * @throws IOException
+	 *             if the chunks of a split file can not be inserted
 	 */
-	private Optional<FileEntry> createFileEntry(ScannedFile file) {
+	private List<FileEntry> createFileEntries(Client client, ScannedFile file) throws IOException {
 		String filename = file.getFilename();
 		FileOption fileOption = project.getFileOption(filename);
 		if (fileOption.isInsert()) {
+			File physicalFile = new File(project.getLocalPath(), filename);
+			boolean split = (client != null) && project.isSplitInsert(filename) && (physicalFile.length() > splitThreshold);
 			fileOption.setCurrentHash(file.getHash());
+			fileOption.setCurrentSplit(split);
 			/* check if file was modified. */
-			if (!project.isAlwaysForceInsert() && !fileOption.isForceInsert() && file.getHash().equals(fileOption.getLastInsertHash())) {
+			if (!project.isAlwaysForceInsert() && !fileOption.isForceInsert() && !fileOption.isChangedSinceLastInsert()) {
 				/* only insert a redirect. */
 				logger.log(Level.FINE, String.format("Inserting redirect to edition %d for %s.", fileOption.getLastInsertEdition(), filename));
-				return Optional.of(new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), "SSK@" + project.getRequestURI() + "/" + project.getPath() + "-" + fileOption.getLastInsertEdition() + "/" + fileOption.getLastInsertFilename()));
+				RedirectFileEntry redirect = new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), project.getLastInsertKey(fileOption));
+				if (split) {
+					return Arrays.asList(redirect, new RedirectFileEntry(redirect.getFilename() + FileOption.SPLIT_INDEX_SUFFIX, SPLIT_INDEX_MIME_TYPE, project.getLastInsertKey(fileOption) + FileOption.SPLIT_INDEX_SUFFIX));
+				}
+				return Collections.singletonList(redirect);
 			}
-			try {
-				return Optional.of(createFileEntry(filename, fileOption.getChangedName(), fileOption.getMimeType()));
-			} catch (IOException ioe1) {
-				/* ignore, null is returned. */
+			/* check if the content was inserted before, by any project. */
+			String contentKey = (contentIndex != null) && !project.isAlwaysForceInsert() && !fileOption.isForceInsert() ? contentIndex.getKey(file.getHash()) : null;
+			FileEntry fileEntry;
+			if (contentKey != null) {
+				logger.log(Level.FINE, String.format("Inserting redirect to %s for %s.", contentKey, filename));
+				fileEntry = new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), contentKey);
+			} else {
+				fileEntry = createFileEntry(filename, fileOption.getChangedName(), fileOption.getMimeType());
+			}
+			if (split) {
+				/* the chunks are looked up in the content index instead. */
+				return Arrays.asList(fileEntry, createSplitFileEntry(client, fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), physicalFile, file.getHash()));
 			}
+			return Collections.singletonList(fileEntry);
 		} else {
 			if (fileOption.isInsertRedirect()) {
-				return Optional.of(new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), fileOption.getCustomKey()));
+				return Collections.singletonList(new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), fileOption.getCustomKey()));
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Splits the given file into chunks, inserts all chunks whose keys are not
+	 * known yet, and creates the index of the file. The index is a text file
+	 * that starts with a header containing the name, size, MIME type, and
+	 * hash of the file, followed by an empty line and one line per chunk with
+	 * the offset, length, hash, and key of the chunk, separated by tabs.
+	 * <p>
+	 * As no Freenet client can reassemble the file from its index, the file
+	 * itself is still published under its own name; the index is published
+	 * next to it, under the file’s name with
+	 * {@link FileOption#SPLIT_INDEX_SUFFIX} appended.
+	 *
+	 * @param client
+	 *            The client to insert the chunks with
+	 * @param filename
+	 *            The name of the file in the manifest
+	 * @param mimeType
+	 *            The MIME type of the file
+	 * @param physicalFile
+	 *            The file to split
+	 * @param hash
+	 *            The hash of the file
+	 * @return The file entry of the file’s index
+	 * @throws IOException
+	 *             if a chunk can not be inserted
+	 */
+	private FileEntry createSplitFileEntry(Client client, String filename, String mimeType, File physicalFile, String hash) throws IOException {
+		boolean compressible = compressionPolicy.isCompressible(mimeType, physicalFile);
+		List<Chunk> chunks = chunker.split(physicalFile);
+		Map<String, String> chunkKeys = new HashMap<String, String>();
+		Map<String, Request> pendingChunks = new LinkedHashMap<String, Request>();
+		for (Chunk chunk : chunks) {
+			String chunkKey = uploadedKeys.get(chunk.getHash());
+			if ((chunkKey == null) && (contentIndex != null)) {
+				chunkKey = contentIndex.getKey(chunk.getHash());
+			}
+			if (chunkKey != null) {
+				chunkKeys.put(chunk.getHash(), chunkKey);
+			} else if (!pendingChunks.containsKey(chunk.getHash())) {
+				ClientPutFile putFile = new ClientPutFile("chunk-" + counter.getAndIncrement(), "CHK@", new DirectFileEntry(filename, "application/octet-stream", physicalFile, chunk.getOffset(), chunk.getLength()));
+				putFile.setVerbosity(Verbosity.ALL);
+				putFile.setMaxRetries(-1);
+				putFile.setEarlyEncode(useEarlyEncode);
+				putFile.setPriorityClass(priority);
+				putFile.setDontCompress(!compressible);
+				putFile.setCodecs(compressionPolicy.getCodecs());
+				Request request = client.submit(putFile, progressListener, 0, TimeUnit.MILLISECONDS);
+				fileRequests.add(request);
+				pendingChunks.put(chunk.getHash(), request);
 			}
 		}
-		return Optional.empty();
+		logger.log(Level.INFO, String.format("Split %s into %d chunks, inserting %d.", filename, chunks.size(), pendingChunks.size()));
+		for (Map.Entry<String, Request> pendingChunk : pendingChunks.entrySet()) {
+			try {
+				String chunkKey = awaitGeneratedKey(pendingChunk.getValue());
+				chunkKeys.put(pendingChunk.getKey(), chunkKey);
+				uploadedKeys.put(pendingChunk.getKey(), chunkKey);
+			} catch (ExecutionException ee1) {
+				throw new IOException("Could not insert chunk of " + filename + ".", ee1.getCause());
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while inserting chunks of " + filename + ".");
+			}
+		}
+		StringBuilder index = new StringBuilder();
+		index.append("jSite split file 1\n");
+		index.append("Name: ").append(filename).append('\n');
+		index.append("Size: ").append(physicalFile.length()).append('\n');
+		index.append("Content-Type: ").append(mimeType).append('\n');
+		index.append("SHA-256: ").append(hash).append('\n');
+		index.append('\n');
+		for (Chunk chunk : chunks) {
+			index.append(chunk.getOffset()).append('\t').append(chunk.getLength()).append('\t').append(chunk.getHash()).append('\t').append(chunkKeys.get(chunk.getHash())).append('\n');
+		}
+		return new DirectFileEntry(filename + FileOption.SPLIT_INDEX_SUFFIX, SPLIT_INDEX_MIME_TYPE, index.toString().getBytes(StandardCharsets.UTF_8));
 	}
 
-	private FileEntry createFileEntry(String filename, Optional<String> changedName, String mimeType) throws FileNotFoundException {
+	private FileEntry createFileEntry(String filename, Optional<String> changedName, String mimeType) {
 		File physicalFile = new File(project.getLocalPath(), filename);
-		InputStream fileEntryInputStream = new FileInputStream(physicalFile);
-		return new DirectFileEntry(changedName.orElse(filename), mimeType, fileEntryInputStream, physicalFile.length());
+		if (directDiskAccess) {
+			return new DiskFileEntry(changedName.orElse(filename), mimeType, physicalFile.getAbsolutePath());
+		}
+		return new DirectFileEntry(changedName.orElse(filename), mimeType, physicalFile);
+	}
+
+	/**
+	 * Inserts the incompressible files of a manifest as keys of their own,
+	 * without compression, and replaces them by redirects to these keys. As
+	 * the node can only be told whether to compress for a whole request, the
+	 * files would otherwise be compressed along with the compressible files
+	 * of the manifest.
+	 *
+	 * @param client
+	 *            The client to insert the files with
+	 * @param fileEntries
+	 *            The file entries of the manifest
+	 * @return The file entries of the manifest, in the same order, with
+	 *         redirects for the files that were inserted as keys of their own
+	 * @throws IOException
+	 *             if a file can not be inserted
+	 * @see #getSeparateEntries(CompressionPolicy, Collection)
+	 */
+	private List<FileEntry> insertIncompressibleFiles(Client client, List<FileEntry> fileEntries) throws IOException {
+		List<FileEntry> separateEntries = getSeparateEntries(compressionPolicy, fileEntries);
+		if (separateEntries.isEmpty()) {
+			return fileEntries;
+		}
+		logger.log(Level.INFO, "Inserting {0} incompressible files as keys of their own.", separateEntries.size());
+		Map<FileEntry, Request> separateRequests = new IdentityHashMap<FileEntry, Request>();
+		for (FileEntry fileEntry : separateEntries) {
+			String filename = fileEntry.getFilename();
+			ClientPutFile putFile = new ClientPutFile("file-" + counter.getAndIncrement(), "CHK@", fileEntry);
+			putFile.setTargetFilename(filename.substring(filename.lastIndexOf('/') + 1));
+			putFile.setVerbosity(Verbosity.ALL);
+			putFile.setMaxRetries(-1);
+			putFile.setEarlyEncode(useEarlyEncode);
+			putFile.setPriorityClass(priority);
+			putFile.setDontCompress(true);
+			putFile.setCodecs(compressionPolicy.getCodecs());
+			Request request = client.submit(putFile, progressListener, 0, TimeUnit.MILLISECONDS);
+			fileRequests.add(request);
+			separateRequests.put(fileEntry, request);
+		}
+		List<FileEntry> manifestEntries = new ArrayList<FileEntry>();
+		for (FileEntry fileEntry : fileEntries) {
+			Request request = separateRequests.get(fileEntry);
+			if (request == null) {
+				manifestEntries.add(fileEntry);
+				continue;
+			}
+			try {
+				manifestEntries.add(new RedirectFileEntry(fileEntry.getFilename(), fileEntry.getContentType(), awaitGeneratedKey(request)));
+			} catch (ExecutionException ee1) {
+				throw new IOException("Could not insert " + fileEntry.getFilename() + ".", ee1.getCause());
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while inserting " + fileEntry.getFilename() + ".");
+			}
+		}
+		return manifestEntries;
+	}
+
+	/**
+	 * Returns the file entries of a request that have to be inserted as keys
+	 * of their own so that they are not compressed. These are the
+	 * incompressible files, but only if the request contains compressible
+	 * files as well; if all files are incompressible, the node is told not to
+	 * compress the whole request instead.
+	 *
+	 * @param compressionPolicy
+	 *            The compression policy
+	 * @param fileEntries
+	 *            The file entries of the request
+	 * @return The file entries to insert as keys of their own
+	 */
+	static List<FileEntry> getSeparateEntries(CompressionPolicy compressionPolicy, Collection<FileEntry> fileEntries) {
+		List<FileEntry> incompressibleEntries = new ArrayList<FileEntry>();
+		boolean compressible = false;
+		for (FileEntry fileEntry : fileEntries) {
+			if (fileEntry instanceof RedirectFileEntry) {
+				continue;
+			}
+			if (isCompressible(compressionPolicy, fileEntry)) {
+				compressible = true;
+			} else {
+				incompressibleEntries.add(fileEntry);
+			}
+		}
+		return compressible ? incompressibleEntries : Collections.<FileEntry> emptyList();
+	}
+
+	/**
+	 * Tells the node whether to compress the data of the given request, and
+	 * which codecs to use.
+	 *
+	 * @param clientPut
+	 *            The request
+	 * @param fileEntries
+	 *            The file entries of the request
+	 * @see #shouldCompress(CompressionPolicy, Collection)
+	 */
+	private void applyCompressionPolicy(ClientPut clientPut, Collection<FileEntry> fileEntries) {
+		clientPut.setDontCompress(!shouldCompress(compressionPolicy, fileEntries));
+		clientPut.setCodecs(compressionPolicy.getCodecs());
+	}
+
+	/**
+	 * Returns whether the node should compress the data of a request with the
+	 * given file entries. As the node can only be told for a whole request,
+	 * the data of a request with several files is compressed if at least one
+	 * of the files is compressible; incompressible files should therefore be
+	 * {@link #getSeparateEntries(CompressionPolicy, Collection) inserted
+	 * separately}.
+	 *
+	 * @param compressionPolicy
+	 *            The compression policy
+	 * @param fileEntries
+	 *            The file entries of the request
+	 * @return {@code true} if the node should compress the request,
+	 *         {@code false} otherwise
+	 */
+	static boolean shouldCompress(CompressionPolicy compressionPolicy, Collection<FileEntry> fileEntries) {
+		boolean hasData = false;
+		for (FileEntry fileEntry : fileEntries) {
+			if (fileEntry instanceof RedirectFileEntry) {
+				continue;
+			}
+			hasData = true;
+			if (isCompressible(compressionPolicy, fileEntry)) {
+				return true;
+			}
+		}
+		return !hasData;
+	}
+
+	/**
+	 * Returns whether the node should try to compress the data of the given
+	 * file entry. Data that is held in memory, such as the index of a split
+	 * file, is always compressible.
+	 *
+	 * @param compressionPolicy
+	 *            The compression policy
+	 * @param fileEntry
+	 *            The file entry
+	 * @return {@code true} if the data of the file entry should be
+	 *         compressed, {@code false} otherwise
+	 */
+	private static boolean isCompressible(CompressionPolicy compressionPolicy, FileEntry fileEntry) {
+		if ((fileEntry instanceof DirectFileEntry) && (((DirectFileEntry) fileEntry).getDataFile() != null)) {
+			DirectFileEntry directFileEntry = (DirectFileEntry) fileEntry;
+			return compressionPolicy.isCompressible(fileEntry.getContentType(), directFileEntry.getDataFile(), directFileEntry.getDataOffset(), directFileEntry.getDataLength());
+		}
+		if (fileEntry instanceof DiskFileEntry) {
+			return compressionPolicy.isCompressible(fileEntry.getContentType(), new File(((DiskFileEntry) fileEntry).getLocalFilename()));
+		}
+		return true;
+	}
+
+	/**
+	 * Estimates the number of blocks that are inserted for the given file
+	 * entry. Redirects do not insert any blocks.
+	 *
+	 * @param fileEntry
+	 *            The file entry
+	 * @return The estimated number of blocks
+	 * @see BlockLayout
+	 */
+	private static long estimateBlocks(FileEntry fileEntry) {
+		if (fileEntry instanceof DirectFileEntry) {
+			return BlockLayout.forLength(((DirectFileEntry) fileEntry).getDataLength()).getTotalBlocks();
+		}
+		if (fileEntry instanceof DiskFileEntry) {
+			return BlockLayout.forLength(new File(((DiskFileEntry) fileEntry).getLocalFilename()).length()).getTotalBlocks();
+		}
+		return 0;
+	}
+
+	/**
+	 * Checks whether the node can read the files of the project directly from
+	 * disk. This uses the “TestDDA” handshake: the node names a file it has
+	 * created in the project’s directory, and if we can read it, the node and
+	 * jSite share the file system.
+	 *
+	 * @param client
+	 *            The client to use for the handshake
+	 * @return {@code true} if the node can read the project’s files,
+	 *         {@code false} otherwise
+	 */
+	private boolean testDirectDiskAccess(Client client) {
+		File localDirectory = new File(project.getLocalPath()).getAbsoluteFile();
+		String directory = localDirectory.getPath();
+		Optional<Boolean> directoryAccess = connection.getDirectoryAccess(directory);
+		if (directoryAccess.isPresent()) {
+			return directoryAccess.get();
+		}
+		try {
+			TestDDARequest testDDARequest = new TestDDARequest(directory);
+			testDDARequest.setWantReadDirectory(true);
+			client.execute(testDDARequest);
+			Message testDDAReply = readTestDDAMessage(client, "TestDDAReply", directory);
+			if (testDDAReply == null) {
+				return false;
+			}
+			String readContent = readTestDDAFile(localDirectory, testDDAReply.get("ReadFilename"));
+			client.execute(new TestDDAResponse(directory, readContent));
+			Message testDDAComplete = readTestDDAMessage(client, "TestDDAComplete", directory);
+			if (testDDAComplete == null) {
+				return false;
+			}
+			boolean readDirectoryAllowed = Boolean.parseBoolean(testDDAComplete.get("ReadDirectoryAllowed"));
+			connection.setDirectoryAccess(directory, readDirectoryAllowed);
+			return readDirectoryAllowed;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not test direct disk access.", ioe1);
+			return false;
+		}
+	}
+
+	/**
+	 * Waits for a message of the TestDDA handshake.
+	 *
+	 * @param client
+	 *            The client to read the message from
+	 * @param messageName
+	 *            The name of the expected message
+	 * @param directory
+	 *            The directory of the handshake; replies for other
+	 *            directories belong to other inserts on the same connection
+	 * @return The expected message, or {@code null} if the node did not send
+	 *         it in time or sent an error
+	 */
+	private Message readTestDDAMessage(Client client, String messageName, String directory) {
+		long stopTime = System.currentTimeMillis() + TEST_DDA_TIMEOUT;
+		long remainingTime;
+		while ((remainingTime = stopTime - System.currentTimeMillis()) > 0) {
+			Message message = client.readMessage(remainingTime);
+			if (message == null) {
+				return null;
+			}
+			if (messageName.equals(message.getName()) && directory.equals(message.get("Directory"))) {
+				return message;
+			}
+			if ("ProtocolError".equals(message.getName())) {
+				logger.log(Level.INFO, "Node refused TestDDA request: {0}", message);
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the file the node has created for the TestDDA handshake. Only
+	 * files within the project’s directory are read.
+	 *
+	 * @param localDirectory
+	 *            The project’s directory
+	 * @param readFilename
+	 *            The name of the file to read
+	 * @return The content of the file, or {@code null} if the file can not be
+	 *         read
+	 */
+	private static String readTestDDAFile(File localDirectory, String readFilename) {
+		if (readFilename == null) {
+			return null;
+		}
+		try {
+			File readFile = new File(readFilename).getCanonicalFile();
+			if (!localDirectory.getCanonicalFile().equals(readFile.getParentFile())) {
+				logger.log(Level.WARNING, String.format("Node asked to read %s, which is not in %s.", readFile, localDirectory));
+				return null;
+			}
+			return new String(Files.readAllBytes(readFile.toPath()), "UTF-8").trim();
+		} catch (IOException ioe1) {
+			logger.log(Level.FINE, "Could not read TestDDA file.", ioe1);
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the file scanner to finish.
+	 *
+	 * @return {@code true} if the file scanner finished without errors,
+	 *         {@code false} if it encountered an error or the insert was
+	 *         cancelled
+	 */
+	private boolean awaitFileScanner() {
+		try {
+			while (!fileScannerFinished.await(1, TimeUnit.SECONDS)) {
+				if (cancelled) {
+					return false;
+				}
+			}
+		} catch (InterruptedException ie1) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return !fileScannerError;
 	}
 
 	/**
 	 * {@inheritDoc}
+	 * <p>
+	 * Listeners are notified that the insert has finished even if it fails
+	 * with an unexpected exception, so that nobody waits for it forever.
 	 */
 	@Override
 	public void run() {
-		projectInsertListeners.fireProjectInsertStarted(project);
-		List<ScannedFile> files = fileScanner.getFiles();
+		try {
+			insert();
+		} catch (RuntimeException re1) {
+			logger.log(Level.SEVERE, "Insert of " + project.getName() + " failed unexpectedly.", re1);
+			abortRequests();
+			finishInsert(false, null, re1);
+		} finally {
+			releaseConnection();
+		}
+	}
 
-		/* create connection to node */
+	/**
+	 * Stops the requests of the current insert that are still running. A
+	 * connection of its own is closed. On a shared connection, the requests
+	 * that were started with {@link Client#execute(Command)} are removed from
+	 * the node, and the client is closed, which removes all requests that
+	 * were submitted with it.
+	 */
+	private void abortRequests() {
+		Connection connection;
+		Client client;
+		synchronized (lockObject) {
+			connection = this.connection;
+			client = this.client;
+		}
+		if (connection == null) {
+			return;
+		}
+		if (!sharedConnection) {
+			connection.disconnect();
+			return;
+		}
+		for (String identifier : runningRequests) {
+			try {
+				connection.execute(new RemoveRequest(identifier));
+			} catch (IOException | IllegalStateException e1) {
+				logger.log(Level.FINE, "Could not remove request " + identifier + " from the node.", e1);
+			}
+		}
+		runningRequests.clear();
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	/**
+	 * Returns a shared connection to the pool after the insert has finished.
+	 * Requests of the insert that are still running are removed first.
+	 */
+	private void releaseConnection() {
+		if (!sharedConnection) {
+			return;
+		}
+		abortRequests();
+		Connection connection;
 		synchronized (lockObject) {
-			connection = freenetInterface.getConnection("project-insert-" + random + counter.getAndIncrement());
+			connection = this.connection;
+			this.connection = null;
+			this.client = null;
+		}
+		if (connection != null) {
+			freenetInterface.releaseConnection(connection);
 		}
-		connection.setTempDirectory(tempDirectory);
+	}
+
+	/**
+	 * Inserts the project.
+	 */
+	private void insert() {
+		contentIndex = (hashCacheDirectory != null) ? ContentIndex.forDirectory(hashCacheDirectory) : null;
+		compressionPolicy = new CompressionPolicy(project.getCompressionCodecs());
+
+		/* create connection to node */
 		boolean connected = false;
 		Throwable cause = null;
-		try {
-			connected = connection.connect();
-		} catch (IOException e1) {
-			cause = e1;
+		if (sharedConnection) {
+			try {
+				Connection pooledConnection = freenetInterface.acquireConnection();
+				synchronized (lockObject) {
+					connection = pooledConnection;
+				}
+				connected = true;
+			} catch (IOException ioe1) {
+				cause = ioe1;
+			}
+		} else {
+			synchronized (lockObject) {
+				connection = freenetInterface.getConnection("project-insert-" + random + counter.getAndIncrement());
+			}
+			connection.setTempDirectory(tempDirectory);
+			try {
+				connected = connection.connect();
+			} catch (IOException e1) {
+				cause = e1;
+			}
 		}
 
+		Client client = null;
+		if (connected) {
+			synchronized (lockObject) {
+				client = new Client(connection);
+				this.client = client;
+			}
+		}
 		if (!connected || cancelled) {
 			projectInsertListeners.fireProjectInsertFinished(project, false, cancelled ? new AbortedException() : cause);
 			return;
 		}
 
-		Client client = new Client(connection);
+		/* check whether the node can read the files itself. */
+		directDiskAccess = testDirectDiskAccess(client);
+		logger.log(Level.INFO, "Direct disk access: {0}", directDiskAccess);
 
-		/* collect files */
-		int edition = project.getEdition();
-		String dirURI = "USK@" + project.getInsertURI() + "/" + project.getPath() + "/" + edition + "/";
-		ClientPutComplexDir putDir = new ClientPutComplexDir("dir-" + counter.getAndIncrement(), dirURI, tempDirectory);
-		if ((project.getIndexFile() != null) && (project.getIndexFile().length() > 0)) {
-			FileOption indexFileOption = project.getFileOption(project.getIndexFile());
-			Optional<String> changedName = indexFileOption.getChangedName();
-			if (changedName.isPresent()) {
-				putDir.setDefaultName(changedName.get());
-			} else {
-				putDir.setDefaultName(project.getIndexFile());
+		if (resumable) {
+			/* receive the messages of requests on the global queue. */
+			WatchGlobal watchGlobal = new WatchGlobal(true);
+			watchGlobal.setVerbosity(Verbosity.ALL);
+			try {
+				client.execute(watchGlobal, false);
+			} catch (IOException ioe1) {
+				projectInsertListeners.fireProjectInsertFinished(project, false, ioe1);
+				return;
+			}
+
+			/* reattach to an unfinished insert. */
+			if ((project.getInsertIdentifier() != null) && resumeInsert(client)) {
+				return;
 			}
+		} else if (pipelined) {
+			projectInsertListeners.fireProjectInsertStarted(project);
+			new PipelinedInsert(client).run();
+			return;
 		}
-		putDir.setVerbosity(Verbosity.ALL);
-		putDir.setMaxRetries(-1);
-		putDir.setEarlyEncode(useEarlyEncode);
-		putDir.setPriorityClass(priority);
-		for (ScannedFile file : files) {
-			Optional<FileEntry> fileEntry = createFileEntry(file);
-			if (fileEntry.isPresent()) {
-				try {
-					putDir.addFileEntry(fileEntry.get());
-				} catch (IOException ioe1) {
-					projectInsertListeners.fireProjectInsertFinished(project, false, ioe1);
-					return;
+
+		/* wait for the files, the scan has been running during the handshakes. */
+		if (!awaitFileScanner()) {
+			abortRequests();
+			projectInsertListeners.fireProjectInsertFinished(project, false, cancelled ? new AbortedException() : null);
+			return;
+		}
+		projectInsertListeners.fireProjectInsertStarted(project);
+		List<ScannedFile> files = projectFiles;
+		if (hierarchical && !resumable) {
+			insertHierarchical(client, files);
+			return;
+		}
+
+		/* collect files */
+		ClientPutComplexDir putDir = resumable ? createPutDir("jSite-" + UUID.randomUUID()) : createPutDir();
+		if (resumable) {
+			putDir.setPersistence(Persistence.FOREVER);
+			putDir.setGlobal(true);
+		}
+		long estimatedBlocks = 0;
+		List<FileEntry> fileEntries = new ArrayList<FileEntry>();
+		try {
+			for (ScannedFile file : files) {
+				for (FileEntry fileEntry : createFileEntries(resumable ? null : client, file)) {
+					fileEntries.add(fileEntry);
+					estimatedBlocks += estimateBlocks(fileEntry);
 				}
 			}
+			logger.log(Level.INFO, "Inserting about {0} blocks for the files of the project.", estimatedBlocks);
+			if (!resumable) {
+				fileEntries = insertIncompressibleFiles(client, fileEntries);
+			}
+			for (FileEntry fileEntry : fileEntries) {
+				putDir.addFileEntry(fileEntry);
+			}
+		} catch (IOException ioe1) {
+			abortRequests();
+			projectInsertListeners.fireProjectInsertFinished(project, false, cancelled ? new AbortedException() : ioe1);
+			return;
 		}
+		applyCompressionPolicy(putDir, fileEntries);
 
 		/* start request */
 		try {
+			if (!resumable) {
+				runningRequests.add(putDir.getIdentifier());
+			}
 			client.execute(putDir, progressListener);
+			if (resumable) {
+				project.setInsertIdentifier(putDir.getIdentifier());
+				project.setInsertHashes(getSubmittedHashes(files));
+			}
 			projectInsertListeners.fireProjectUploadFinished(project);
 		} catch (IOException ioe1) {
 			projectInsertListeners.fireProjectInsertFinished(project, false, ioe1);
 			return;
 		}
 
-		/* parse progress and success messages */
+		awaitInsert(client, putDir.getIdentifier(), false, fileRequests);
+	}
+
+	/**
+	 * Inserts every directory of the project as a manifest of its own.
+	 * Directories are inserted deepest first so that the keys of all
+	 * subdirectories are known when the manifest of a directory is created;
+	 * directories that did not change since the last insert are linked by
+	 * the key of their last insert. All directories of the same depth are
+	 * inserted at the same time, and the insert of the project’s manifest is
+	 * only successful once all directories have been inserted.
+	 *
+	 * @param client
+	 *            The client to use
+	 * @param files
+	 *            The files of the project
+	 */
+	private void insertHierarchical(Client client, List<ScannedFile> files) {
+		SiteDirectory rootDirectory = new SiteDirectory();
+		Map<String, DirectoryManifest> storedManifests = project.getDirectoryManifests();
+		Map<String, DirectoryManifest> insertedManifests = new HashMap<String, DirectoryManifest>();
+		Map<String, String> directoryKeys = new HashMap<String, String>();
+		Map<SiteDirectory, Request> pendingRequests = new LinkedHashMap<SiteDirectory, Request>();
+		List<Request> directoryRequests = new ArrayList<Request>();
+		ClientPutComplexDir putDir = createPutDir();
+		long estimatedBlocks = 0;
+		try {
+			List<FileEntry> fileEntries = new ArrayList<FileEntry>();
+			List<ScannedFile> entryFiles = new ArrayList<ScannedFile>();
+			for (ScannedFile file : files) {
+				for (FileEntry fileEntry : createFileEntries(client, file)) {
+					estimatedBlocks += estimateBlocks(fileEntry);
+					fileEntries.add(fileEntry);
+					entryFiles.add(file);
+				}
+			}
+			logger.log(Level.INFO, "Inserting about {0} blocks for the files of the project.", estimatedBlocks);
+			fileEntries = insertIncompressibleFiles(client, fileEntries);
+			for (int index = 0; index < fileEntries.size(); index++) {
+				ScannedFile file = entryFiles.get(index);
+				FileOption fileOption = project.getFileOption(file.getFilename());
+				String contentHash = fileOption.isInsert() ? file.getHash() : fileOption.getCustomKey();
+				boolean forceInsert = fileOption.isInsert() && (project.isAlwaysForceInsert() || fileOption.isForceInsert());
+				rootDirectory.addFile(fileEntries.get(index).getFilename(), fileEntries.get(index), contentHash, forceInsert);
+			}
+
+			for (SiteDirectory directory : rootDirectory.getDescendants()) {
+				if (!pendingRequests.isEmpty() && (pendingRequests.keySet().iterator().next().getDepth() > directory.getDepth())) {
+					awaitDirectoryKeys(pendingRequests, directoryKeys, insertedManifests);
+				}
+				DirectoryManifest storedManifest = storedManifests.get(directory.getPath());
+				if ((storedManifest != null) && !directory.isForceInsert() && storedManifest.getHash().equals(directory.getHash())) {
+					logger.log(Level.FINE, "Reusing manifest {0} of unchanged directory {1}.", new Object[] { storedManifest.getKey(), directory.getPath() });
+					directoryKeys.put(directory.getPath(), storedManifest.getKey());
+					insertedManifests.put(directory.getPath(), storedManifest);
+					continue;
+				}
+				ClientPutComplexDir directoryPutDir = new ClientPutComplexDir("dir-" + counter.getAndIncrement(), "CHK@");
+				directoryPutDir.setVerbosity(Verbosity.ALL);
+				directoryPutDir.setMaxRetries(-1);
+				directoryPutDir.setEarlyEncode(useEarlyEncode);
+				directoryPutDir.setPriorityClass(priority);
+				List<FileEntry> manifestEntries = directory.createManifestEntries(directoryKeys);
+				for (FileEntry fileEntry : manifestEntries) {
+					directoryPutDir.addFileEntry(fileEntry);
+				}
+				applyCompressionPolicy(directoryPutDir, manifestEntries);
+				logger.log(Level.FINE, "Inserting manifest of directory {0}.", directory.getPath());
+				Request request = client.submit(directoryPutDir, progressListener, 0, TimeUnit.MILLISECONDS);
+				pendingRequests.put(directory, request);
+				directoryRequests.add(request);
+			}
+			awaitDirectoryKeys(pendingRequests, directoryKeys, insertedManifests);
+
+			/* now insert the project’s manifest. */
+			List<FileEntry> manifestEntries = rootDirectory.createManifestEntries(directoryKeys);
+			for (FileEntry fileEntry : manifestEntries) {
+				putDir.addFileEntry(fileEntry);
+			}
+			applyCompressionPolicy(putDir, manifestEntries);
+			runningRequests.add(putDir.getIdentifier());
+			client.execute(putDir, progressListener);
+			projectInsertListeners.fireProjectUploadFinished(project);
+		} catch (IOException | ExecutionException e1) {
+			abortRequests();
+			projectInsertListeners.fireProjectInsertFinished(project, false, cancelled ? new AbortedException() : ((e1 instanceof ExecutionException) ? e1.getCause() : e1));
+			return;
+		} catch (InterruptedException ie1) {
+			Thread.currentThread().interrupt();
+			abortRequests();
+			projectInsertListeners.fireProjectInsertFinished(project, false, new AbortedException());
+			return;
+		}
+
+		directoryManifests = insertedManifests;
+		directoryRequests.addAll(fileRequests);
+		awaitInsert(client, putDir.getIdentifier(), false, directoryRequests);
+	}
+
+	/**
+	 * Waits for the keys of the given directory manifest inserts. The key of
+	 * a manifest is known as soon as the node has encoded it, long before the
+	 * insert has finished.
+	 *
+	 * @param pendingRequests
+	 *            The requests of the directories to wait for; this map is
+	 *            cleared afterwards
+	 * @param directoryKeys
+	 *            The keys of all directories, by path
+	 * @param insertedManifests
+	 *            The manifests of all directories, by path
+	 * @throws ExecutionException
+	 *             if a directory could not be inserted
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	private static void awaitDirectoryKeys(Map<SiteDirectory, Request> pendingRequests, Map<String, String> directoryKeys, Map<String, DirectoryManifest> insertedManifests) throws ExecutionException, InterruptedException {
+		for (Map.Entry<SiteDirectory, Request> pendingRequest : pendingRequests.entrySet()) {
+			String key = awaitGeneratedKey(pendingRequest.getValue());
+			SiteDirectory directory = pendingRequest.getKey();
+			directoryKeys.put(directory.getPath(), key);
+			insertedManifests.put(directory.getPath(), new DirectoryManifest(directory.getHash(), key));
+		}
+		pendingRequests.clear();
+	}
+
+	/**
+	 * Waits for the key of the given insert. The key is known as soon as the
+	 * node has encoded the data, long before the insert has finished.
+	 *
+	 * @param request
+	 *            The insert to wait for
+	 * @return The generated key, without a trailing slash
+	 * @throws ExecutionException
+	 *             if the insert failed before the key was generated
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	private static String awaitGeneratedKey(Request request) throws ExecutionException, InterruptedException {
+		String key;
+		try {
+			key = request.getMessage("URIGenerated").get().get("URI");
+		} catch (CancellationException ce1) {
+			throw new ExecutionException(new AbortedException());
+		}
+		return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+	}
+
+	/**
+	 * Waits until all of the given inserts have finished.
+	 *
+	 * @param requests
+	 *            The inserts to wait for
+	 * @return {@code null} if all inserts were successful, or the cause of
+	 *         the first failure
+	 */
+	private static Throwable awaitRequests(Collection<Request> requests) {
+		for (Request request : requests) {
+			try {
+				Message result = request.getResult().get();
+				if (!"PutSuccessful".equals(result.getName())) {
+					return new IOException("Insert " + request.getIdentifier() + " failed with " + result.getName() + ".");
+				}
+			} catch (ExecutionException ee1) {
+				return ee1.getCause();
+			} catch (CancellationException ce1) {
+				return new AbortedException();
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+				return new AbortedException();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reattaches to the unfinished persistent insert request of the project.
+	 *
+	 * @param client
+	 *            The client to use
+	 * @return {@code true} if the node still knows the request and it has
+	 *         been followed until it finished, {@code false} if the node does
+	 *         not know the request and the project has to be inserted again
+	 */
+	private boolean resumeInsert(Client client) {
+		String identifier = project.getInsertIdentifier();
+		logger.log(Level.INFO, "Trying to resume insert request {0}.", identifier);
+		client.addIdentifier(identifier);
+		try {
+			client.execute(new ListPersistentRequests(), false);
+		} catch (IOException ioe1) {
+			projectInsertListeners.fireProjectInsertFinished(project, false, ioe1);
+			return true;
+		}
+		if (!awaitInsert(client, identifier, true, Collections.<Request> emptyList())) {
+			logger.log(Level.INFO, "Node does not know insert request {0}, starting over.", identifier);
+			project.setInsertIdentifier(null);
+			project.setInsertHashes(Collections.<String, String> emptyMap());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Follows the insert request with the given identifier until it is
+	 * finished, and finishes the insert.
+	 *
+	 * @param client
+	 *            The client that receives the messages of the request
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param resuming
+	 *            {@code true} if the node is currently listing its persistent
+	 *            requests and the request might be unknown to it
+	 * @param subRequests
+	 *            The inserts of directory manifests and chunks that have to
+	 *            finish successfully as well
+	 * @return {@code false} if the node does not know the request,
+	 *         {@code true} otherwise
+	 */
+	private boolean awaitInsert(Client client, String identifier, boolean resuming, Collection<Request> subRequests) {
 		String finalURI = null;
+		boolean found = !resuming;
 		boolean success = false;
 		boolean finished = false;
 		boolean disconnected = false;
@@ -279,6 +1305,19 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 			if (!finished) {
 				@SuppressWarnings("null")
 				String messageName = message.getName();
+				if (!found) {
+					if (identifier.equals(message.getIdentifier())) {
+						found = true;
+						projectInsertListeners.fireProjectInsertStarted(project);
+						projectInsertListeners.fireProjectUploadFinished(project);
+					} else if ("EndListPersistentRequests".equals(messageName)) {
+						return false;
+					}
+				}
+				if (sharedConnection && !identifier.equals(message.getIdentifier())) {
+					/* messages without identifier might belong to other inserts. */
+					continue;
+				}
 				if ("URIGenerated".equals(messageName)) {
 					finalURI = message.get("URI");
 					projectInsertListeners.fireProjectURIGenerated(project, finalURI);
@@ -291,37 +1330,491 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 					boolean finalized = Boolean.parseBoolean(message.get("FinalizedTotal"));
 					projectInsertListeners.fireProjectInsertProgress(project, succeeded, failed, fatal, total, finalized);
 				}
-				success |= "PutSuccessful".equals(messageName);
+				if ("PutSuccessful".equals(messageName)) {
+					success = true;
+					if (finalURI == null) {
+						finalURI = message.get("URI");
+					}
+				}
 				finished = (success && (finalURI != null)) || "PutFailed".equals(messageName) || messageName.endsWith("Error");
 			}
 		}
+		Throwable cause = disconnected ? new IOException("Connection terminated") : null;
+		if (success) {
+			Throwable requestFailure = awaitRequests(subRequests);
+			if (requestFailure != null) {
+				success = false;
+				cause = requestFailure;
+			}
+		}
+		if (resuming) {
+			restoreSubmittedHashes();
+		}
+		if (resumable && (cancelled || !disconnected)) {
+			removePersistentRequest(identifier);
+		}
+		finishInsert(success, finalURI, cause);
+		return true;
+	}
+
+	/**
+	 * Returns the hashes of the files that are inserted by the current
+	 * request, the same hashes that {@link #createFileEntries(Client,
+	 * ScannedFile)} stores in the file options.
+	 *
+	 * @param files
+	 *            The files of the project
+	 * @return The hashes of the inserted files, by file name
+	 */
+	private Map<String, String> getSubmittedHashes(List<ScannedFile> files) {
+		Map<String, String> submittedHashes = new HashMap<String, String>();
+		for (ScannedFile file : files) {
+			if (project.getFileOption(file.getFilename()).isInsert()) {
+				submittedHashes.put(file.getFilename(), file.getHash());
+			}
+		}
+		return submittedHashes;
+	}
+
+	/**
+	 * Restores the hashes of the files that were submitted with the resumed
+	 * insert request. The files of a resumed request are not scanned, and
+	 * their current content might differ from the content that was
+	 * submitted, so the hashes stored with the request are used instead.
+	 */
+	private void restoreSubmittedHashes() {
+		for (Map.Entry<String, String> submittedHash : project.getInsertHashes().entrySet()) {
+			project.getFileOption(submittedHash.getKey()).setCurrentHash(submittedHash.getValue()).setCurrentSplit(false);
+		}
+	}
+
+	/**
+	 * Removes the persistent request with the given identifier from the
+	 * node’s global queue, and forgets it. This uses a shared connection
+	 * because the connection of the insert might have been closed to cancel
+	 * it.
+	 *
+	 * @param identifier
+	 *            The identifier of the request to remove
+	 */
+	private void removePersistentRequest(String identifier) {
+		project.setInsertIdentifier(null);
+		project.setInsertHashes(Collections.<String, String> emptyMap());
+		try {
+			Connection connection = freenetInterface.acquireConnection();
+			try {
+				RemoveRequest removeRequest = new RemoveRequest(identifier);
+				removeRequest.setGlobal(true);
+				connection.execute(removeRequest);
+			} finally {
+				freenetInterface.releaseConnection(connection);
+			}
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not remove request " + identifier + " from the node.", ioe1);
+		}
+	}
+
+	/**
+	 * Creates the request that inserts the project’s manifest. The file
+	 * entries still have to be added.
+	 *
+	 * @return The request for the project’s manifest
+	 */
+	private ClientPutComplexDir createPutDir() {
+		return createPutDir("dir-" + counter.getAndIncrement());
+	}
+
+	/**
+	 * Creates the request that inserts the project’s manifest, using the given
+	 * identifier. The file entries still have to be added.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @return The request for the project’s manifest
+	 */
+	private ClientPutComplexDir createPutDir(String identifier) {
+		int edition = project.getEdition();
+		String dirURI = "USK@" + project.getInsertURI() + "/" + project.getPath() + "/" + edition + "/";
+		ClientPutComplexDir putDir = new ClientPutComplexDir(identifier, dirURI);
+		if ((project.getIndexFile() != null) && (project.getIndexFile().length() > 0)) {
+			FileOption indexFileOption = project.getFileOption(project.getIndexFile());
+			Optional<String> changedName = indexFileOption.getChangedName();
+			if (changedName.isPresent()) {
+				putDir.setDefaultName(changedName.get());
+			} else {
+				putDir.setDefaultName(project.getIndexFile());
+			}
+		}
+		putDir.setVerbosity(Verbosity.ALL);
+		putDir.setMaxRetries(-1);
+		putDir.setEarlyEncode(useEarlyEncode);
+		putDir.setPriorityClass(priority);
+		return putDir;
+	}
 
-		/* post-insert work */
+	/**
+	 * Updates the project after an insert has finished, and notifies all
+	 * listeners.
+	 *
+	 * @param success
+	 *            {@code true} if the insert was successful, {@code false}
+	 *            otherwise
+	 * @param finalURI
+	 *            The URI of the inserted project
+	 * @param cause
+	 *            The cause of the failure, or {@code null}
+	 */
+	private void finishInsert(boolean success, String finalURI, Throwable cause) {
 		if (success) {
-			@SuppressWarnings("null")
-			String editionPart = finalURI.substring(finalURI.lastIndexOf('/') + 1);
+			runningRequests.clear();
+			String uri = finalURI.endsWith("/") ? finalURI.substring(0, finalURI.length() - 1) : finalURI;
+			String editionPart = uri.substring(uri.lastIndexOf('/') + 1);
 			int newEdition = Integer.parseInt(editionPart);
 			project.setEdition(newEdition);
 			project.setLastInsertionTime(System.currentTimeMillis());
+			project.setLastInsertDuration(project.getLastInsertionTime() - startTime);
 			project.onSuccessfulInsert();
+			if (directoryManifests != null) {
+				project.setDirectoryManifests(directoryManifests);
+			}
+			updateContentIndex();
+		}
+		projectInsertListeners.fireProjectInsertFinished(project, success, cancelled ? new AbortedException() : cause);
+	}
+
+	/**
+	 * Stores the keys of all files of the project in the content index, and
+	 * saves the index.
+	 */
+	private void updateContentIndex() {
+		if (contentIndex == null) {
+			return;
 		}
-		projectInsertListeners.fireProjectInsertFinished(project, success, cancelled ? new AbortedException() : (disconnected ? new IOException("Connection terminated") : null));
+		for (Map.Entry<String, String> uploadedKey : uploadedKeys.entrySet()) {
+			contentIndex.putKey(uploadedKey.getKey(), uploadedKey.getValue());
+		}
+		contentIndex.putInsertedFiles(project);
+		contentIndex.save();
+		logger.log(Level.INFO, "Content index contains {0} files.", contentIndex.size());
 	}
 
 	//
 	// INTERFACE FileScannerListener
 	//
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void fileScanned(List<ScannedFile> scannedFiles) {
+		if (pipelined) {
+			pendingFiles.addAll(scannedFiles);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void fileScannerProgress(ScanProgress scanProgress) {
+		projectInsertListeners.fireProjectScanProgress(project, scanProgress);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void fileScannerFinished(boolean error, Collection<ScannedFile> files) {
-		if (!error) {
-			new Thread(this).start();
-		} else {
-			projectInsertListeners.fireProjectInsertFinished(project, false, null);
+		fileScannerError = error;
+		projectFiles = new ArrayList<ScannedFile>(files);
+		fileScannerFinished.countDown();
+	}
+
+	/**
+	 * Inserts the files of the project while they are being scanned. Every file
+	 * that needs to be uploaded is inserted as a CHK of its own as soon as it
+	 * has been hashed, so hashing, uploading, and encoding on the node overlap.
+	 * Once all files have been scanned and the node has generated the keys of
+	 * all uploaded files, the project is inserted as a manifest that contains
+	 * only redirects.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private class PipelinedInsert {
+
+		/** The client to execute the requests with. */
+		private final Client client;
+
+		/** The uploaded files, by identifier of their requests. */
+		private final Map<String, FileEntry> uploads = new LinkedHashMap<String, FileEntry>();
+
+		/** The generated keys of the uploaded files, by identifier. */
+		private final Map<String, String> uploadURIs = new HashMap<String, String>();
+
+		/** The content hashes of the uploaded files, by identifier. */
+		private final Map<String, String> uploadHashes = new HashMap<String, String>();
+
+		/** The identifiers of the uploads that have finished. */
+		private final Set<String> finishedUploads = new HashSet<String>();
+
+		/** The manifest entries of files that are not uploaded. */
+		private final List<FileEntry> redirects = new ArrayList<FileEntry>();
+
+		/** The last progress message of every request, by identifier. */
+		private final Map<String, Message> progress = new HashMap<String, Message>();
+
+		/** The number of payload bytes sent for finished uploads. */
+		private long uploadedBytes;
+
+		/** The number of payload bytes of all uploads started so far. */
+		private long queuedBytes;
+
+		/** The request for the manifest, once it has been started. */
+		private ClientPutComplexDir putDir;
+
+		/** The URI of the manifest. */
+		private String finalURI;
+
+		/** Whether the manifest has been inserted. */
+		private boolean manifestInserted;
+
+		/** Whether a request has failed. */
+		private boolean failed;
+
+		/** The cause of the failure. */
+		private Throwable cause;
+
+		/**
+		 * Creates a new pipelined insert.
+		 *
+		 * @param client
+		 *            The client to execute the requests with
+		 */
+		public PipelinedInsert(Client client) {
+			this.client = client;
+		}
+
+		/**
+		 * Runs the insert and notifies the listeners when it has finished.
+		 */
+		public void run() {
+			try {
+				uploadScannedFiles();
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+				failed = true;
+			}
+			if (!failed && fileScannerError) {
+				failed = true;
+			}
+			boolean disconnected = false;
+			while (!failed && !cancelled && !isFinished()) {
+				if ((putDir == null) && (uploadURIs.size() == uploads.size())) {
+					insertManifest();
+					continue;
+				}
+				Message message = client.readMessage();
+				if ((message == null) || (disconnected = client.isDisconnected())) {
+					cause = new IOException("Connection terminated");
+					break;
+				}
+				processMessage(message);
+			}
+			boolean success = !failed && !cancelled && isFinished();
+			if (success) {
+				Throwable chunkFailure = awaitRequests(fileRequests);
+				if (chunkFailure != null) {
+					success = false;
+					cause = chunkFailure;
+				}
+			}
+			if (!success && !disconnected) {
+				/* stop the uploads that are still running. */
+				abortRequests();
+			}
+			finishInsert(success, finalURI, cause);
+		}
+
+		//
+		// PRIVATE METHODS
+		//
+
+		/**
+		 * Starts an upload for every scanned file until the file scanner has
+		 * finished.
+		 *
+		 * @throws InterruptedException
+		 *             if the thread is interrupted while waiting for files
+		 */
+		private void uploadScannedFiles() throws InterruptedException {
+			while (!failed && !cancelled) {
+				ScannedFile scannedFile = pendingFiles.poll(100, TimeUnit.MILLISECONDS);
+				if (scannedFile != null) {
+					uploadFile(scannedFile);
+				} else if ((fileScannerFinished.getCount() == 0) && pendingFiles.isEmpty()) {
+					return;
+				}
+				Message message;
+				while (!failed && ((message = client.readMessage(1)) != null)) {
+					processMessage(message);
+				}
+			}
+		}
+
+		/**
+		 * Starts the upload of the given file, or remembers its redirect if the
+		 * file does not need to be uploaded. The chunk list of a split file is
+		 * uploaded as well.
+		 *
+		 * @param scannedFile
+		 *            The file to upload
+		 */
+		private void uploadFile(ScannedFile scannedFile) {
+			List<FileEntry> fileEntries;
+			try {
+				fileEntries = createFileEntries(client, scannedFile);
+			} catch (IOException ioe1) {
+				failed = true;
+				cause = ioe1;
+				return;
+			}
+			for (FileEntry fileEntry : fileEntries) {
+				/* only the key of the file itself leads to its content. */
+				uploadFileEntry(fileEntry, (fileEntry == fileEntries.get(0)) ? scannedFile.getHash() : null);
+			}
+		}
+
+		/**
+		 * Starts the upload of the given file entry, or remembers it if it is a
+		 * redirect.
+		 *
+		 * @param fileEntry
+		 *            The file entry to upload
+		 * @param hash
+		 *            The hash of the content of the file entry, or {@code null}
+		 *            if its key should not be stored in the content index
+		 */
+		private void uploadFileEntry(FileEntry fileEntry, String hash) {
+			if (fileEntry instanceof RedirectFileEntry) {
+				redirects.add(fileEntry);
+				return;
+			}
+			String filename = fileEntry.getFilename();
+			ClientPutFile putFile = new ClientPutFile("file-" + counter.getAndIncrement(), "CHK@", fileEntry);
+			putFile.setTargetFilename(filename.substring(filename.lastIndexOf('/') + 1));
+			putFile.setVerbosity(Verbosity.ALL);
+			putFile.setMaxRetries(-1);
+			putFile.setEarlyEncode(useEarlyEncode);
+			putFile.setPriorityClass(priority);
+			applyCompressionPolicy(putFile, Collections.singletonList(fileEntry));
+			uploads.put(putFile.getIdentifier(), fileEntry);
+			if (hash != null) {
+				uploadHashes.put(putFile.getIdentifier(), hash);
+			}
+			long dataLength = (fileEntry instanceof DirectFileEntry) ? ((DirectFileEntry) fileEntry).getDataLength() : 0;
+			queuedBytes += dataLength;
+			runningRequests.add(putFile.getIdentifier());
+			try {
+				client.executeConcurrently(putFile, (progressListener == null) ? null : (copied, length) -> progressListener.onProgress(uploadedBytes + copied, queuedBytes));
+				uploadedBytes += dataLength;
+			} catch (IOException ioe1) {
+				failed = true;
+				cause = ioe1;
+			}
+		}
+
+		/**
+		 * Starts the insert of the manifest that redirects to all files.
+		 */
+		private void insertManifest() {
+			putDir = createPutDir();
+			try {
+				for (FileEntry redirect : redirects) {
+					putDir.addFileEntry(redirect);
+				}
+				for (Map.Entry<String, FileEntry> upload : uploads.entrySet()) {
+					FileEntry fileEntry = upload.getValue();
+					putDir.addFileEntry(new RedirectFileEntry(fileEntry.getFilename(), fileEntry.getContentType(), uploadURIs.get(upload.getKey())));
+					if (uploadHashes.containsKey(upload.getKey())) {
+						uploadedKeys.put(uploadHashes.get(upload.getKey()), uploadURIs.get(upload.getKey()));
+					}
+				}
+				runningRequests.add(putDir.getIdentifier());
+				client.executeConcurrently(putDir, null);
+				projectInsertListeners.fireProjectUploadFinished(project);
+			} catch (IOException ioe1) {
+				failed = true;
+				cause = ioe1;
+			}
 		}
+
+		/**
+		 * Processes a message for one of the requests of this insert.
+		 *
+		 * @param message
+		 *            The message to process
+		 */
+		private void processMessage(Message message) {
+			logger.log(Level.FINE, "Received message: {0}", message);
+			String identifier = message.getIdentifier();
+			String messageName = message.getName();
+			boolean upload = uploads.containsKey(identifier);
+			if (sharedConnection && !upload && ((putDir == null) || !putDir.getIdentifier().equals(identifier))) {
+				/* messages without identifier might belong to other inserts. */
+				return;
+			}
+			if ("URIGenerated".equals(messageName)) {
+				if (upload) {
+					uploadURIs.put(identifier, message.get("URI"));
+				} else {
+					finalURI = message.get("URI");
+					projectInsertListeners.fireProjectURIGenerated(project, finalURI);
+				}
+			} else if ("SimpleProgress".equals(messageName)) {
+				progress.put(identifier, message);
+				fireProgress();
+			} else if ("PutSuccessful".equals(messageName)) {
+				if (upload) {
+					uploadURIs.putIfAbsent(identifier, message.get("URI"));
+					finishedUploads.add(identifier);
+				} else {
+					manifestInserted = true;
+				}
+			} else if ("PutFailed".equals(messageName) || messageName.endsWith("Error")) {
+				logger.log(Level.WARNING, "Request {0} failed: {1}", new Object[] { identifier, message });
+				failed = true;
+			}
+		}
+
+		/**
+		 * Notifies the listeners about the combined progress of all requests.
+		 */
+		private void fireProgress() {
+			int succeeded = 0;
+			int failedBlocks = 0;
+			int fatal = 0;
+			int total = 0;
+			boolean finalized = (putDir != null) && (progress.size() == (uploads.size() + 1));
+			for (Message requestProgress : progress.values()) {
+				succeeded += Integer.parseInt(requestProgress.get("Succeeded"));
+				failedBlocks += Integer.parseInt(requestProgress.get("Failed"));
+				fatal += Integer.parseInt(requestProgress.get("FatallyFailed"));
+				total += Integer.parseInt(requestProgress.get("Total"));
+				finalized &= Boolean.parseBoolean(requestProgress.get("FinalizedTotal"));
+			}
+			projectInsertListeners.fireProjectInsertProgress(project, succeeded, failedBlocks, fatal, total, finalized);
+		}
+
+		/**
+		 * Returns whether the manifest and all uploads have been inserted.
+		 *
+		 * @return {@code true} if the insert is finished, {@code false}
+		 *         otherwise
+		 */
+		private boolean isFinished() {
+			return manifestInserted && (finalURI != null) && (finishedUploads.size() == uploads.size());
+		}
+
 	}
 
 }
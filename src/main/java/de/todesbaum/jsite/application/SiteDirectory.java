@@ -0,0 +1,272 @@
+/*
+ * jSite - SiteDirectory.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import de.todesbaum.util.freenet.fcp2.DirectFileEntry;
+import de.todesbaum.util.freenet.fcp2.DiskFileEntry;
+import de.todesbaum.util.freenet.fcp2.FileEntry;
+import de.todesbaum.util.freenet.fcp2.RedirectFileEntry;
+
+/**
+ * A directory of a project that is inserted as a manifest of its own. The
+ * directory contains the file entries of its files, renamed to their names
+ * within the directory, and its subdirectories, which are linked from the
+ * directory’s manifest once their keys are known.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class SiteDirectory {
+
+	/** The path of the directory, empty for the root directory. */
+	private final String path;
+
+	/** The depth of the directory, 0 for the root directory. */
+	private final int depth;
+
+	/** The file entries of the directory, by name. */
+	private final SortedMap<String, FileEntry> files = new TreeMap<String, FileEntry>();
+
+	/** The hashes of the files’ contents, by name. */
+	private final Map<String, String> fileHashes = new HashMap<String, String>();
+
+	/** Whether a file of the directory has to be inserted again. */
+	private boolean forceInsert;
+
+	/** The subdirectories of the directory, by name. */
+	private final SortedMap<String, SiteDirectory> directories = new TreeMap<String, SiteDirectory>();
+
+	/** The hash of the directory, calculated on first use. */
+	private String hash;
+
+	/**
+	 * Creates a new root directory.
+	 */
+	SiteDirectory() {
+		this("", 0);
+	}
+
+	/**
+	 * Creates a new directory.
+	 *
+	 * @param path
+	 *            The path of the directory
+	 * @param depth
+	 *            The depth of the directory
+	 */
+	private SiteDirectory(String path, int depth) {
+		this.path = path;
+		this.depth = depth;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the path of this directory.
+	 *
+	 * @return The path of this directory, empty for the root directory
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the hash of this directory. The hash covers the names, content
+	 * types and content hashes of all files, and the names and hashes of all
+	 * subdirectories.
+	 *
+	 * @return The hash of this directory
+	 */
+	String getHash() {
+		if (hash == null) {
+			MessageDigest messageDigest;
+			try {
+				messageDigest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException nsae1) {
+				throw new IllegalStateException("SHA-256 is not available.", nsae1);
+			}
+			for (Entry<String, FileEntry> file : files.entrySet()) {
+				messageDigest.update(("f" + file.getKey() + "\0" + file.getValue().getContentType() + "\0" + fileHashes.get(file.getKey()) + "\n").getBytes(UTF_8));
+			}
+			for (Entry<String, SiteDirectory> directory : directories.entrySet()) {
+				messageDigest.update(("d" + directory.getKey() + "\0" + directory.getValue().getHash() + "\n").getBytes(UTF_8));
+			}
+			StringBuilder hexHash = new StringBuilder();
+			for (byte hashByte : messageDigest.digest()) {
+				hexHash.append(String.format("%02x", hashByte & 0xff));
+			}
+			hash = hexHash.toString();
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns whether a file in this directory or one of its subdirectories
+	 * has to be inserted again even if it did not change.
+	 *
+	 * @return {@code true} if this directory has to be inserted again,
+	 *         {@code false} otherwise
+	 */
+	boolean isForceInsert() {
+		if (forceInsert) {
+			return true;
+		}
+		for (SiteDirectory directory : directories.values()) {
+			if (directory.isForceInsert()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns all directories below this directory, deepest directories
+	 * first. Every directory is returned after all of its subdirectories.
+	 *
+	 * @return All directories below this directory
+	 */
+	List<SiteDirectory> getDescendants() {
+		List<SiteDirectory> descendants = new ArrayList<SiteDirectory>();
+		collectDescendants(descendants);
+		descendants.sort(Comparator.comparingInt((SiteDirectory directory) -> directory.depth).reversed());
+		return descendants;
+	}
+
+	/**
+	 * Returns the depth of this directory.
+	 *
+	 * @return The depth of this directory, 0 for the root directory
+	 */
+	int getDepth() {
+		return depth;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds a file to this directory or one of its subdirectories, creating
+	 * subdirectories as necessary.
+	 *
+	 * @param name
+	 *            The name of the file, relative to this directory
+	 * @param fileEntry
+	 *            The file entry of the file
+	 * @param contentHash
+	 *            A hash that changes whenever the file entry would insert
+	 *            different content
+	 * @param forceInsert
+	 *            {@code true} if the file has to be inserted even if it did
+	 *            not change, {@code false} otherwise
+	 */
+	void addFile(String name, FileEntry fileEntry, String contentHash, boolean forceInsert) {
+		hash = null;
+		int slash = name.indexOf('/');
+		if (slash < 1) {
+			files.put(name, renameFileEntry(fileEntry, name));
+			fileHashes.put(name, contentHash);
+			this.forceInsert |= forceInsert;
+			return;
+		}
+		String directoryName = name.substring(0, slash);
+		SiteDirectory directory = directories.computeIfAbsent(directoryName, newName -> new SiteDirectory(path.isEmpty() ? newName : (path + "/" + newName), depth + 1));
+		directory.addFile(name.substring(slash + 1), fileEntry, contentHash, forceInsert);
+	}
+
+	/**
+	 * Creates the file entries of this directory’s manifest: the entries of
+	 * all files, and a redirect to the manifest of every subdirectory.
+	 *
+	 * @param directoryKeys
+	 *            The keys of the subdirectories’ manifests, by path
+	 * @return The file entries of this directory’s manifest
+	 */
+	List<FileEntry> createManifestEntries(Map<String, String> directoryKeys) {
+		List<FileEntry> manifestEntries = new ArrayList<FileEntry>(files.values());
+		for (Entry<String, SiteDirectory> directory : directories.entrySet()) {
+			String key = directoryKeys.get(directory.getValue().getPath());
+			if (key == null) {
+				throw new IllegalStateException("No key for directory " + directory.getValue().getPath() + ".");
+			}
+			manifestEntries.add(new RedirectFileEntry(directory.getKey(), null, key));
+		}
+		return manifestEntries;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Adds all directories below this directory to the given list.
+	 *
+	 * @param descendants
+	 *            The list to add the directories to
+	 */
+	private void collectDescendants(List<SiteDirectory> descendants) {
+		for (SiteDirectory directory : directories.values()) {
+			directory.collectDescendants(descendants);
+			descendants.add(directory);
+		}
+	}
+
+	/**
+	 * Creates a copy of the given file entry with a different name.
+	 *
+	 * @param fileEntry
+	 *            The file entry to copy
+	 * @param filename
+	 *            The new name of the file entry
+	 * @return The renamed file entry
+	 */
+	private static FileEntry renameFileEntry(FileEntry fileEntry, String filename) {
+		if (filename.equals(fileEntry.getFilename())) {
+			return fileEntry;
+		}
+		if (fileEntry instanceof RedirectFileEntry) {
+			return new RedirectFileEntry(filename, fileEntry.getContentType(), ((RedirectFileEntry) fileEntry).getTargetURI());
+		}
+		if (fileEntry instanceof DiskFileEntry) {
+			return new DiskFileEntry(filename, fileEntry.getContentType(), ((DiskFileEntry) fileEntry).getLocalFilename());
+		}
+		if ((fileEntry instanceof DirectFileEntry) && (((DirectFileEntry) fileEntry).getDataFile() != null)) {
+			return new DirectFileEntry(filename, fileEntry.getContentType(), ((DirectFileEntry) fileEntry).getDataFile(), ((DirectFileEntry) fileEntry).getDataOffset(), ((DirectFileEntry) fileEntry).getDataLength());
+		}
+		if ((fileEntry instanceof DirectFileEntry) && (((DirectFileEntry) fileEntry).getDataBytes() != null)) {
+			return new DirectFileEntry(filename, fileEntry.getContentType(), ((DirectFileEntry) fileEntry).getDataBytes());
+		}
+		throw new IllegalArgumentException("Can not rename file entry " + fileEntry.getFilename() + ".");
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * jSite - ThroughputMeter.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+/**
+ * Measures the rate at which a counter, e.g. the number of uploaded bytes or
+ * inserted blocks, increases. The current rate is an exponentially weighted
+ * moving average, so it follows changes within about one window and shows a
+ * stall as a falling rate instead of hiding it in a lifetime average; the
+ * average rate since the first update is available as well.
+ * <p>
+ * All methods take the time explicitly, in milliseconds since the epoch.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ThroughputMeter {
+
+	/** The window of the moving average, in milliseconds. */
+	private final long window;
+
+	/** Whether the meter has received an update. */
+	private boolean started;
+
+	/** The time of the first update. */
+	private long firstTime;
+
+	/** The value of the counter at the first update. */
+	private long firstValue;
+
+	/** The time of the last update. */
+	private long lastTime;
+
+	/** The value of the counter at the last update. */
+	private long lastValue;
+
+	/** The moving average of the rate, in units per second. */
+	private double rate;
+
+	/** Whether the moving average has been initialized. */
+	private boolean hasRate;
+
+	/**
+	 * Creates a new throughput meter.
+	 *
+	 * @param window
+	 *            The window of the moving average, in milliseconds
+	 */
+	public ThroughputMeter(long window) {
+		this.window = Math.max(window, 1);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Updates the meter with the current value of the counter. Updates with
+	 * a smaller value than before (e.g. because the counter was reset)
+	 * restart the meter.
+	 *
+	 * @param value
+	 *            The current value of the counter
+	 * @param time
+	 *            The time of the update
+	 */
+	public synchronized void update(long value, long time) {
+		if (!started || (value < lastValue)) {
+			started = true;
+			hasRate = false;
+			firstTime = lastTime = time;
+			firstValue = lastValue = value;
+			return;
+		}
+		long elapsed = time - lastTime;
+		if (elapsed <= 0) {
+			lastValue = value;
+			return;
+		}
+		double currentRate = (value - lastValue) * 1000.0 / elapsed;
+		if (hasRate) {
+			rate += (1 - Math.exp(-(double) elapsed / window)) * (currentRate - rate);
+		} else {
+			rate = currentRate;
+			hasRate = true;
+		}
+		lastTime = time;
+		lastValue = value;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the last value of the counter.
+	 *
+	 * @return The last value of the counter
+	 */
+	public synchronized long getValue() {
+		return lastValue;
+	}
+
+	/**
+	 * Returns the current rate. If the counter has not been updated for a
+	 * while, the rate decays as if the counter had not changed since.
+	 *
+	 * @param now
+	 *            The current time
+	 * @return The current rate, in units per second
+	 */
+	public synchronized double getCurrentRate(long now) {
+		if (!hasRate) {
+			return 0;
+		}
+		long idle = Math.max(now - lastTime, 0);
+		return rate * Math.exp(-(double) idle / window);
+	}
+
+	/**
+	 * Returns the average rate since the first update.
+	 *
+	 * @return The average rate, in units per second, or {@code 0} if no time
+	 *         has passed yet
+	 */
+	public synchronized double getAverageRate() {
+		long elapsed = lastTime - firstTime;
+		return (elapsed <= 0) ? 0 : (lastValue - firstValue) * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Returns the time it will take the counter to reach the given value at
+	 * the current rate, or at the average rate if the current rate is not
+	 * known.
+	 *
+	 * @param target
+	 *            The value the counter will reach
+	 * @param now
+	 *            The current time
+	 * @return The remaining time, in milliseconds, or {@code -1} if it can not
+	 *         be estimated yet
+	 */
+	public synchronized long getRemainingTime(long target, long now) {
+		if (lastValue >= target) {
+			return started ? 0 : -1;
+		}
+		double usedRate = getCurrentRate(now);
+		if (usedRate <= 0) {
+			usedRate = getAverageRate();
+		}
+		if (usedRate <= 0) {
+			return -1;
+		}
+		return (long) ((target - lastValue) * 1000 / usedRate);
+	}
+
+}
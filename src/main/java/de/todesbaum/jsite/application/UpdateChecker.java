@@ -23,6 +23,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -197,95 +198,91 @@ public class UpdateChecker implements Runnable {
 		while (!shouldStop()) {
 
 			/* try to connect. */
+			Connection connection;
 			Client client;
 			while (true) {
-				Connection connection = freenetInterface.getConnection("jSite-" + ++counter + "-UpdateChecker");
 				try {
-					connection.connect();
+					connection = freenetInterface.acquireConnection();
 					logger.log(Level.INFO, "Connected to " + freenetInterface.getNode() + ".");
 					client = new Client(connection);
 					break;
 				} catch (IOException ioe1) {
 					logger.log(Level.INFO, "Could not connect to " + freenetInterface.getNode() + ".", ioe1);
 				}
-				if (!connection.isConnected()) {
-					try {
-						Thread.sleep(60 * 1000);
-					} catch (InterruptedException ie1) {
-						/* ignore, we’re looping. */
-					}
+				try {
+					Thread.sleep(60 * 1000);
+				} catch (InterruptedException ie1) {
+					/* ignore, we’re looping. */
 				}
 			}
 
 			boolean checkNow = false;
 			logger.log(Level.FINE, "Trying " + constructUpdateKey(currentEdition));
-			ClientGet clientGet = new ClientGet("get-update-key");
+			ClientGet clientGet = new ClientGet("jSite-" + ++counter + "-UpdateChecker");
 			clientGet.setUri(constructUpdateKey(currentEdition));
 			clientGet.setPersistence(Persistence.CONNECTION);
 			clientGet.setReturnType(ReturnType.direct);
 			clientGet.setVerbosity(Verbosity.ALL);
 			try {
-				client.execute(clientGet);
-				boolean stop = false;
-				while (!stop) {
-					Message message = client.readMessage();
-					logger.log(Level.FINEST, "Received message: " + message);
-					if (message == null) {
-						break;
+				Message message = client.submit(clientGet).getResult().get();
+				logger.log(Level.FINEST, "Received message: " + message);
+				if ("GetFailed".equals(message.getName())) {
+					if ("27".equals(message.get("code"))) {
+						String editionString = message.get("redirecturi").split("/")[2];
+						int editionNumber = -1;
+						try {
+							editionNumber = Integer.parseInt(editionString);
+						} catch (NumberFormatException nfe1) {
+							/* ignore. */
+						}
+						if (editionNumber != -1) {
+							logger.log(Level.INFO, "Found new edition " + editionNumber);
+							currentEdition = editionNumber;
+							lastUpdateEdition = editionNumber;
+							checkNow = true;
+						}
+					}
+				}
+				if ("AllData".equals(message.getName())) {
+					logger.log(Level.FINE, "Update data found.");
+					InputStream dataInputStream = null;
+					Properties properties = new Properties();
+					try {
+						dataInputStream = message.getPayloadInputStream();
+						properties.load(dataInputStream);
+					} finally {
+						Closer.close(dataInputStream);
 					}
-					if ("GetFailed".equals(message.getName())) {
-						if ("27".equals(message.get("code"))) {
-							String editionString = message.get("redirecturi").split("/")[2];
-							int editionNumber = -1;
+
+					String foundVersionString = properties.getProperty("jSite.Version");
+					if (foundVersionString != null) {
+						Version foundVersion = Version.parse(foundVersionString);
+						if (foundVersion != null) {
+							lastVersion = foundVersion;
+							String versionTimestampString = properties.getProperty("jSite.Date");
+							logger.log(Level.FINEST, "Version timestamp: " + versionTimestampString);
+							long versionTimestamp = -1;
 							try {
-								editionNumber = Integer.parseInt(editionString);
+								versionTimestamp = Long.parseLong(versionTimestampString);
 							} catch (NumberFormatException nfe1) {
 								/* ignore. */
 							}
-							if (editionNumber != -1) {
-								logger.log(Level.INFO, "Found new edition " + editionNumber);
-								currentEdition = editionNumber;
-								lastUpdateEdition = editionNumber;
-								checkNow = true;
-								break;
-							}
-						}
-					}
-					if ("AllData".equals(message.getName())) {
-						logger.log(Level.FINE, "Update data found.");
-						InputStream dataInputStream = null;
-						Properties properties = new Properties();
-						try {
-							dataInputStream = message.getPayloadInputStream();
-							properties.load(dataInputStream);
-						} finally {
-							Closer.close(dataInputStream);
-						}
-
-						String foundVersionString = properties.getProperty("jSite.Version");
-						if (foundVersionString != null) {
-							Version foundVersion = Version.parse(foundVersionString);
-							if (foundVersion != null) {
-								lastVersion = foundVersion;
-								String versionTimestampString = properties.getProperty("jSite.Date");
-								logger.log(Level.FINEST, "Version timestamp: " + versionTimestampString);
-								long versionTimestamp = -1;
-								try {
-									versionTimestamp = Long.parseLong(versionTimestampString);
-								} catch (NumberFormatException nfe1) {
-									/* ignore. */
-								}
-								fireUpdateFound(foundVersion, versionTimestamp);
-								stop = true;
-								checkNow = true;
-								++currentEdition;
-							}
+							fireUpdateFound(foundVersion, versionTimestamp);
+							checkNow = true;
+							++currentEdition;
 						}
 					}
 				}
 			} catch (IOException e) {
 				logger.log(Level.INFO, "Got IOException: " + e.getMessage());
 				e.printStackTrace();
+			} catch (ExecutionException ee1) {
+				logger.log(Level.INFO, "Request for update key failed.", ee1.getCause());
+			} catch (InterruptedException ie1) {
+				/* ignore, we’re looping. */
+			} finally {
+				client.close();
+				freenetInterface.releaseConnection(connection);
 			}
 			if (!checkNow && !shouldStop()) {
 				synchronized (syncObject) {
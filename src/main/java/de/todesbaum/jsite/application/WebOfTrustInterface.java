@@ -23,6 +23,7 @@ import static java.util.Collections.emptyList;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -32,6 +33,7 @@ import de.todesbaum.util.freenet.fcp2.Client;
 import de.todesbaum.util.freenet.fcp2.Connection;
 import de.todesbaum.util.freenet.fcp2.FcpPluginMessage;
 import de.todesbaum.util.freenet.fcp2.Message;
+import de.todesbaum.util.freenet.fcp2.Request;
 import de.todesbaum.util.freenet.fcp2.wot.DefaultOwnIdentity;
 import de.todesbaum.util.freenet.fcp2.wot.OwnIdentity;
 
@@ -75,45 +77,41 @@ public class WebOfTrustInterface {
 		try {
 
 			/* connect. */
-			Connection connection = freenetInterface.getConnection("jSite-WoT-Connector");
 			logger.log(Level.INFO, String.format("Trying to connect to node at %s...", freenetInterface.getNode()));
-			if (!connection.connect()) {
-				logger.log(Level.WARNING, "Connection failed.");
-				return emptyList();
-			}
+			Connection connection = freenetInterface.acquireConnection();
 			Client client = new Client(connection);
-
-			/* send FCP command to WebOfTrust plugin. */
-			sendFcpCommandToWotPlugin(client);
-
-			/* read a message. */
-			Message message = null;
-			while (!client.isDisconnected() && (message == null)) {
-				message = client.readMessage(1000);
+			try {
+
+				/* send FCP command to WebOfTrust plugin. */
+				Request request = sendFcpCommandToWotPlugin(client);
+
+				/* wait for the reply. */
+				Message message;
+				try {
+					message = request.getResult().get();
+				} catch (ExecutionException | InterruptedException e1) {
+					logger.log(Level.WARNING, "Did not receive reply from WebOfTrust plugin.", e1);
+					return emptyList();
+				}
+
+				/* evaluate message. */
+				return parseOwnIdentitiesFromMessage(message);
+			} finally {
+				client.close();
+				freenetInterface.releaseConnection(connection);
 			}
-			if (message == null) {
-				return emptyList();
-			}
-
-			/* evaluate message. */
-			List<OwnIdentity> ownIdentities = parseOwnIdentitiesFromMessage(message);
-
-            /* disconnect. */
-			logger.log(Level.INFO, "Disconnecting from Node.");
-			connection.disconnect();
-			return ownIdentities;
 		} catch (IOException ioe1) {
 			logger.log(Level.WARNING, String.format("Communication with node at %s failed.", freenetInterface.getNode()), ioe1);
 			return emptyList();
 		}
 	}
 
-	private void sendFcpCommandToWotPlugin(Client client) throws IOException {
+	private Request sendFcpCommandToWotPlugin(Client client) throws IOException {
 		String messageIdentifier = "jSite-WoT-Command-" + commandCounter.getAndIncrement();
 		FcpPluginMessage pluginMessage = new FcpPluginMessage(messageIdentifier);
 		pluginMessage.setPluginName("plugins.WebOfTrust.WebOfTrust");
 		pluginMessage.setParameter("Message", "GetOwnIdentities");
-		client.execute(pluginMessage);
+		return client.submit(pluginMessage);
 	}
 
 	private List<OwnIdentity> parseOwnIdentitiesFromMessage(Message message) {
@@ -23,6 +23,14 @@ public class ProjectValidator {
 	private static final Logger logger = Logger.getLogger(ProjectValidator.class.getName());
 
 	public static CheckReport validateProject(Project project) {
+		return validateProject(project, null);
+	}
+
+	public static CheckReport validateProject(Project project, File hashCacheDirectory) {
+		return validateProject(project, hashCacheDirectory, 0);
+	}
+
+	public static CheckReport validateProject(Project project, File hashCacheDirectory, int scanParallelism) {
 		CheckReport checkReport = new CheckReport();
 		if ((project.getLocalPath() == null) || (project.getLocalPath().trim().length() == 0)) {
 			checkReport.addIssue("error.no-local-path", true);
@@ -78,6 +86,8 @@ public class ProjectValidator {
 		long totalSize = 0;
 		final CountDownLatch completionLatch = new CountDownLatch(1);
 		FileScanner fileScanner = new FileScanner(project, (error, files) -> completionLatch.countDown());
+		fileScanner.setHashCacheDirectory(hashCacheDirectory);
+		fileScanner.setParallelism(scanParallelism);
 		fileScanner.startInBackground();
 		while (completionLatch.getCount() > 0) {
 			try {
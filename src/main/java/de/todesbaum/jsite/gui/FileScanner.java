@@ -22,27 +22,40 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestOutputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import net.pterodactylus.util.io.Closer;
-import net.pterodactylus.util.io.NullOutputStream;
-import net.pterodactylus.util.io.StreamCopier;
+import de.todesbaum.jsite.application.HashCache;
 import de.todesbaum.jsite.application.Project;
 import de.todesbaum.jsite.i18n.I18n;
+import de.todesbaum.util.io.StorageDevices;
 
 /**
  * Scans the local path of a project anychronously and returns the list of found
- * files as an event.
+ * files as an event. While the scan is running, hashed files are handed to the
+ * listener in batches so that it can start working on them before the whole
+ * tree has been hashed. A scan can be cancelled using the {@link ScanTask}
+ * returned by {@link #startInBackground()}.
  *
  * @see Project#getLocalPath()
+ * @see FileScannerListener#fileScanned(List)
  * @see FileScannerListener#fileScannerFinished(boolean, java.util.Collection)
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
@@ -51,6 +64,21 @@ public class FileScanner implements Runnable {
 	/** The logger. */
 	private final static Logger logger = Logger.getLogger(FileScanner.class.getName());
 
+	/** The number of files that may wait for a hash thread, per thread. */
+	private static final int QUEUED_FILES_PER_THREAD = 16;
+
+	/** The maximum number of files in a batch. */
+	private static final int BATCH_SIZE = 64;
+
+	/** The maximum time a hashed file waits for its batch, in milliseconds. */
+	private static final long BATCH_INTERVAL = 100;
+
+	/** The minimum time between two progress events, in milliseconds. */
+	private static final long PROGRESS_INTERVAL = 250;
+
+	/** The size of the buffer used to read files for hashing. */
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
 	/** The list of listeners. */
 	private final FileScannerListener fileScannerListener;
 
@@ -63,8 +91,47 @@ public class FileScanner implements Runnable {
 	/** Wether there was an error. */
 	private boolean error = false;
 
-	/** The name of the last file scanned. */
-	private String lastFilename;
+	/** The name of the file that is currently being hashed. */
+	private volatile String currentFilename;
+
+	/** The handle of the current scan. */
+	private volatile ScanTask scanTask;
+
+	/** The directory to store hash caches in. */
+	private File hashCacheDirectory;
+
+	/** Whether to hash all files even if they have a cached hash. */
+	private boolean verifyAll;
+
+	/** The hash cache used by the last scan. */
+	private HashCache hashCache;
+
+	/** The number of files to hash in parallel, {@code 0} for automatic. */
+	private int parallelism;
+
+	/** The hashed files that have not yet been sent to the listener. */
+	private final List<ScannedFile> batch = new ArrayList<ScannedFile>();
+
+	/** The total size of the files in the current batch. */
+	private long batchBytes;
+
+	/** The time the last batch was sent to the listener. */
+	private long lastBatchTime;
+
+	/** The number of files sent to the listener. */
+	private final AtomicInteger scannedFileCount = new AtomicInteger();
+
+	/** The total size of the files sent to the listener. */
+	private final AtomicLong scannedBytes = new AtomicLong();
+
+	/** The number of files found in the project’s directory. */
+	private final AtomicInteger seenFileCount = new AtomicInteger();
+
+	/** The number of bytes read for hashing. */
+	private final AtomicLong hashedBytes = new AtomicLong();
+
+	/** The time the last progress event was sent to the listener. */
+	private long lastProgressTime;
 
 	/**
 	 * Creates a new file scanner for the given project.
@@ -78,39 +145,115 @@ public class FileScanner implements Runnable {
 	}
 
 	/**
-	 * Returns the name of the last file scanned.
+	 * Returns the progress of the current scan.
 	 *
-	 * @return The name of the last file scanned, or {@code null} if there was
-	 *         no file scanned yet
+	 * @return The progress of the current scan
 	 */
-	public String getLastFilename() {
-		return lastFilename;
+	public ScanProgress getProgress() {
+		return new ScanProgress(seenFileCount.get(), scannedFileCount.get(), scannedBytes.get(), hashedBytes.get(), currentFilename);
 	}
 
-	public void startInBackground() {
-		new Thread(this).start();
+	/**
+	 * Returns the number of files that have been hashed by the current scan.
+	 *
+	 * @return The number of hashed files
+	 */
+	public int getScannedFileCount() {
+		return scannedFileCount.get();
+	}
+
+	/**
+	 * Returns the total size of the files that have been hashed by the
+	 * current scan.
+	 *
+	 * @return The total size of the hashed files, in bytes
+	 */
+	public long getScannedBytes() {
+		return scannedBytes.get();
+	}
+
+	/**
+	 * Sets the directory the hash caches are stored in. If no directory is
+	 * set, every file is hashed on every scan.
+	 *
+	 * @param hashCacheDirectory
+	 *            The directory to store hash caches in, or {@code null} to not
+	 *            use a hash cache
+	 */
+	public void setHashCacheDirectory(File hashCacheDirectory) {
+		this.hashCacheDirectory = hashCacheDirectory;
+	}
+
+	/**
+	 * Sets whether all files are hashed, even if their hashes are cached. The
+	 * hash cache is still updated with the calculated hashes.
+	 *
+	 * @param verifyAll
+	 *            {@code true} to hash all files, {@code false} to use cached
+	 *            hashes
+	 */
+	public void setVerifyAll(boolean verifyAll) {
+		this.verifyAll = verifyAll;
+	}
+
+	/**
+	 * Returns the hash cache used by the last scan.
+	 *
+	 * @return The hash cache of the last scan, or {@code null} if no hash
+	 *         cache was used
+	 */
+	public HashCache getHashCache() {
+		return hashCache;
+	}
+
+	/**
+	 * Sets the number of files that are hashed in parallel. With the default
+	 * of {@code 0}, files on spinning disks are hashed one after another and
+	 * files on other devices are hashed using one thread per processor.
+	 *
+	 * @param parallelism
+	 *            The number of files to hash in parallel, or {@code 0} to
+	 *            choose automatically
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Starts a scan on a new thread.
+	 *
+	 * @return The handle of the scan, which can be used to cancel it
+	 */
+	public ScanTask startInBackground() {
+		ScanTask scanTask = new ScanTask();
+		new Thread(() -> scan(scanTask), "jSite File Scanner").start();
+		return scanTask;
+	}
+
+	/**
+	 * Returns whether the last scan was cancelled.
+	 *
+	 * @return {@code true} if the last scan was cancelled, {@code false}
+	 *         otherwise
+	 */
+	public boolean isCancelled() {
+		ScanTask scanTask = this.scanTask;
+		return (scanTask != null) && scanTask.isCancelled();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 * <p>
-	 * Scans all available files in the project’s local path and emits an event
+	 * Scans all available files in the project’s local path on the current
+	 * thread, emits events for batches of hashed files, and emits an event
 	 * when finished.
 	 *
+	 * @see FileScannerListener#fileScanned(List)
 	 * @see FileScannerListener#fileScannerFinished(boolean, java.util.Collection)
 	 */
 	@Override
 	public void run() {
-		files = new ArrayList<ScannedFile>();
-		error = false;
-		lastFilename = null;
-		try {
-			scanFiles(new File(project.getLocalPath()), files);
-			Collections.sort(files);
-		} catch (IOException ioe1) {
-			error = true;
-		}
-		fileScannerListener.fileScannerFinished(error, files);
+		scan(new ScanTask());
 	}
 
 	/**
@@ -132,60 +275,283 @@ public class FileScanner implements Runnable {
 		return files;
 	}
 
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Scans all available files in the project’s local path. If the scan is
+	 * cancelled, no more files are read, and the listener is notified about
+	 * an error once all hashing threads have stopped.
+	 *
+	 * @param scanTask
+	 *            The handle of the scan
+	 */
+	private void scan(ScanTask scanTask) {
+		this.scanTask = scanTask;
+		scanTask.start();
+		files = new ArrayList<ScannedFile>();
+		error = false;
+		currentFilename = null;
+		synchronized (batch) {
+			batch.clear();
+			batchBytes = 0;
+			lastBatchTime = System.currentTimeMillis();
+			lastProgressTime = lastBatchTime;
+			scannedFileCount.set(0);
+			scannedBytes.set(0);
+			seenFileCount.set(0);
+			hashedBytes.set(0);
+		}
+		hashCache = (hashCacheDirectory != null) ? HashCache.forProject(hashCacheDirectory, project) : null;
+		File localPath = new File(project.getLocalPath());
+		List<ScannedFile> scannedFiles = Collections.synchronizedList(new ArrayList<ScannedFile>());
+		HashQueue hashQueue = new HashQueue(getParallelism(localPath));
+		try {
+			scanFiles(localPath, scannedFiles, hashQueue, scanTask);
+			hashQueue.awaitCompletion();
+			if (scanTask.isCancelled()) {
+				throw new InterruptedIOException("Scan was cancelled.");
+			}
+			sendBatch();
+			List<ScannedFile> sortedFiles = new ArrayList<ScannedFile>(scannedFiles);
+			Collections.sort(sortedFiles);
+			files = sortedFiles;
+		} catch (IOException ioe1) {
+			error = true;
+		} finally {
+			scanTask.finish();
+			hashQueue.shutdown();
+		}
+		if (scanTask.isCancelled()) {
+			logger.log(Level.INFO, "Scan of {0} was cancelled after {1} files.", new Object[] { project.getLocalPath(), scannedFileCount.get() });
+		}
+		if ((hashCache != null) && !error) {
+			hashCache.save();
+			logger.log(Level.INFO, String.format("Hash cache for %s: %d hits, %d misses.", project.getLocalPath(), hashCache.getHits(), hashCache.getMisses()));
+		}
+		fileScannerListener.fileScannerFinished(error, files);
+	}
+
+	/**
+	 * Returns the number of files to hash in parallel.
+	 *
+	 * @param localPath
+	 *            The local path of the project
+	 * @return The number of files to hash in parallel
+	 */
+	private int getParallelism(File localPath) {
+		if (parallelism > 0) {
+			return parallelism;
+		}
+		if (StorageDevices.isRotational(localPath)) {
+			logger.log(Level.INFO, "{0} is on a rotational device, hashing files sequentially.", localPath);
+			return 1;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
 	/**
 	 * Recursively scans a directory and adds all found files to the given list.
+	 * The files are hashed by the given hash queue, so they may be added to
+	 * the list after this method returns.
 	 *
 	 * @param rootDir
 	 *            The directory to scan
 	 * @param fileList
 	 *            The list to which to add the found files
+	 * @param hashQueue
+	 *            The queue that hashes the files
+	 * @param scanTask
+	 *            The handle of the scan
 	 * @throws IOException
-	 *             if an I/O error occurs
+	 *             if an I/O error occurs, or the scan is cancelled
 	 */
-	private void scanFiles(File rootDir, List<ScannedFile> fileList) throws IOException {
+	private void scanFiles(File rootDir, List<ScannedFile> fileList, HashQueue hashQueue, ScanTask scanTask) throws IOException {
+		if (scanTask.isCancelled()) {
+			throw new InterruptedIOException("Scan was cancelled.");
+		}
 		File[] files = rootDir.listFiles((File file) -> !project.isIgnoreHiddenFiles() || !file.isHidden());
 		if (files == null) {
 			throw new IOException(I18n.getMessage("jsite.file-scanner.can-not-read-directory"));
 		}
 		for (File file : files) {
 			if (file.isDirectory()) {
-				scanFiles(file, fileList);
+				scanFiles(file, fileList, hashQueue, scanTask);
 				continue;
 			}
+			seenFileCount.incrementAndGet();
 			String filename = project.shortenFilename(file).replace('\\', '/');
-			String hash = hashFile(project.getLocalPath(), filename);
-			fileList.add(new ScannedFile(filename, hash));
-			lastFilename = filename;
+			hashQueue.submit(() -> {
+				if (scanTask.isCancelled()) {
+					return;
+				}
+				currentFilename = filename;
+				String hash = getHash(file, filename, scanTask);
+				if (scanTask.isCancelled()) {
+					return;
+				}
+				ScannedFile scannedFile = new ScannedFile(filename, hash);
+				fileList.add(scannedFile);
+				addToBatch(scannedFile, file.length());
+			});
 		}
+		sendProgressIfDue();
 	}
 
 	/**
-	 * Hashes the given file.
+	 * Adds a hashed file to the current batch, and sends the batch to the
+	 * listener if it is full or has been waiting long enough.
+	 *
+	 * @param scannedFile
+	 *            The hashed file
+	 * @param size
+	 *            The size of the file
+	 */
+	private void addToBatch(ScannedFile scannedFile, long size) {
+		synchronized (batch) {
+			batch.add(scannedFile);
+			batchBytes += size;
+			if ((batch.size() >= BATCH_SIZE) || ((System.currentTimeMillis() - lastBatchTime) >= BATCH_INTERVAL)) {
+				sendBatch();
+			}
+		}
+	}
+
+	/**
+	 * Sends the current batch to the listener, if it is not empty, followed
+	 * by the current progress. The listener is notified while holding the lock
+	 * on the batch so that events are never delivered concurrently, or out of
+	 * order.
+	 */
+	private void sendBatch() {
+		synchronized (batch) {
+			if (!batch.isEmpty()) {
+				List<ScannedFile> scannedFiles = new ArrayList<ScannedFile>(batch);
+				batch.clear();
+				lastBatchTime = System.currentTimeMillis();
+				scannedFileCount.addAndGet(scannedFiles.size());
+				scannedBytes.addAndGet(batchBytes);
+				batchBytes = 0;
+				fileScannerListener.fileScanned(scannedFiles);
+			}
+			sendProgress();
+		}
+	}
+
+	/**
+	 * Adds the given number of bytes to the number of hashed bytes, and sends
+	 * the progress to the listener if the last progress event is old enough.
+	 *
+	 * @param bytes
+	 *            The number of bytes that have been hashed
+	 */
+	private void addHashedBytes(long bytes) {
+		hashedBytes.addAndGet(bytes);
+		sendProgressIfDue();
+	}
+
+	/**
+	 * Sends the current progress to the listener if the last progress event
+	 * is older than {@link #PROGRESS_INTERVAL}. This keeps the listener
+	 * informed while large files are hashed or large directories are
+	 * traversed, when no batches are sent.
+	 */
+	private void sendProgressIfDue() {
+		synchronized (batch) {
+			if ((System.currentTimeMillis() - lastProgressTime) >= PROGRESS_INTERVAL) {
+				sendProgress();
+			}
+		}
+	}
+
+	/**
+	 * Sends the current progress to the listener. This method must only be
+	 * called while holding the lock on the batch.
+	 */
+	private void sendProgress() {
+		lastProgressTime = System.currentTimeMillis();
+		fileScannerListener.fileScannerProgress(getProgress());
+	}
+
+	/**
+	 * Returns the hash of the given file, using the hash cache if possible.
 	 *
-	 * @param path
-	 *            The path of the project
+	 * @param file
+	 *            The file to hash
 	 * @param filename
 	 *            The name of the file, relative to the project path
+	 * @param scanTask
+	 *            The handle of the scan
 	 * @return The hash of the file
 	 */
-	private static String hashFile(String path, String filename) {
-		InputStream fileInputStream = null;
-		DigestOutputStream digestOutputStream = null;
-		File file = new File(path, filename);
-		try {
-			fileInputStream = new FileInputStream(file);
-			digestOutputStream = new DigestOutputStream(new NullOutputStream(), MessageDigest.getInstance("SHA-256"));
-			StreamCopier.copy(fileInputStream, digestOutputStream, file.length());
-			return toHex(digestOutputStream.getMessageDigest().digest());
+	private String getHash(File file, String filename, ScanTask scanTask) {
+		BasicFileAttributes attributes = null;
+		if (hashCache != null) {
+			try {
+				attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "Could not read attributes of " + file, ioe1);
+			}
+		}
+		if ((attributes != null) && !verifyAll) {
+			String cachedHash = hashCache.getHash(filename, attributes);
+			if (cachedHash != null) {
+				return cachedHash;
+			}
+		}
+		Optional<String> hash = hashFile(file, scanTask::isCancelled, this::addHashedBytes);
+		if (hash.isPresent() && (attributes != null)) {
+			hashCache.putHash(filename, attributes, hash.get());
+		}
+		return hash.orElse(toHex(new byte[32]));
+	}
+
+	/**
+	 * Hashes the given file.
+	 *
+	 * @param file
+	 *            The file to hash
+	 * @return The hash of the file, or an empty optional if the file could not
+	 *         be hashed
+	 */
+	static Optional<String> hashFile(File file) {
+		return hashFile(file, () -> false, (bytes) -> { });
+	}
+
+	/**
+	 * Hashes the given file. The file is closed as soon as the hashing is
+	 * cancelled.
+	 *
+	 * @param file
+	 *            The file to hash
+	 * @param cancelled
+	 *            Returns whether the hashing has been cancelled; it is checked
+	 *            after every block read from the file
+	 * @param hashedBytes
+	 *            Receives the number of bytes hashed after every block
+	 * @return The hash of the file, or an empty optional if the file could not
+	 *         be hashed, or the hashing was cancelled
+	 */
+	static Optional<String> hashFile(File file, BooleanSupplier cancelled, LongConsumer hashedBytes) {
+		try (InputStream fileInputStream = new FileInputStream(file)) {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[HASH_BUFFER_SIZE];
+			int read;
+			while ((read = fileInputStream.read(buffer)) != -1) {
+				if (cancelled.getAsBoolean()) {
+					return Optional.empty();
+				}
+				messageDigest.update(buffer, 0, read);
+				hashedBytes.accept(read);
+			}
+			return Optional.of(toHex(messageDigest.digest()));
 		} catch (NoSuchAlgorithmException nsae1) {
 			logger.log(Level.WARNING, "Could not get SHA-256 digest!", nsae1);
 		} catch (IOException ioe1) {
 			logger.log(Level.WARNING, "Could not read file!", ioe1);
-		} finally {
-			Closer.close(digestOutputStream);
-			Closer.close(fileInputStream);
 		}
-		return toHex(new byte[32]);
+		return Optional.empty();
 	}
 
 	/**
@@ -203,4 +569,107 @@ public class FileScanner implements Runnable {
 		return hexString.toString();
 	}
 
+	/**
+	 * Hashes files on a pool of threads. At most a fixed number of files are
+	 * waiting for a thread at any time so that the directory traversal does
+	 * not run arbitrarily far ahead of the hashing. With a parallelism of one,
+	 * files are hashed on the scanning thread.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class HashQueue {
+
+		/** The pool hashing the files, {@code null} to hash on the caller. */
+		private final ForkJoinPool hashPool;
+
+		/** The number of files that may be queued. */
+		private final int maximumQueuedFiles;
+
+		/** The permits for queued files. */
+		private final Semaphore queuedFiles;
+
+		/**
+		 * Creates a new hash queue.
+		 *
+		 * @param parallelism
+		 *            The number of files to hash in parallel
+		 */
+		public HashQueue(int parallelism) {
+			hashPool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+			maximumQueuedFiles = parallelism * QUEUED_FILES_PER_THREAD;
+			queuedFiles = new Semaphore(maximumQueuedFiles);
+		}
+
+		/**
+		 * Submits the given task, blocking while the queue is full.
+		 *
+		 * @param hashTask
+		 *            The task that hashes a file
+		 * @throws IOException
+		 *             if the scanning thread is interrupted
+		 */
+		public void submit(Runnable hashTask) throws IOException {
+			if (hashPool == null) {
+				hashTask.run();
+				return;
+			}
+			acquire(1);
+			hashPool.execute(() -> {
+				try {
+					hashTask.run();
+				} finally {
+					queuedFiles.release();
+				}
+			});
+		}
+
+		/**
+		 * Waits until all submitted files have been hashed.
+		 *
+		 * @throws IOException
+		 *             if the scanning thread is interrupted
+		 */
+		public void awaitCompletion() throws IOException {
+			acquire(maximumQueuedFiles);
+			queuedFiles.release(maximumQueuedFiles);
+		}
+
+		/**
+		 * Stops the threads of this queue, and waits for files that are
+		 * currently being hashed. Files that are still queued are not hashed
+		 * anymore.
+		 */
+		public void shutdown() {
+			if (hashPool == null) {
+				return;
+			}
+			hashPool.shutdownNow();
+			try {
+				if (!hashPool.awaitTermination(1, TimeUnit.MINUTES)) {
+					logger.log(Level.WARNING, "Hash threads did not stop within a minute.");
+				}
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Acquires the given number of permits.
+		 *
+		 * @param permits
+		 *            The number of permits to acquire
+		 * @throws IOException
+		 *             if the scanning thread is interrupted
+		 */
+		private void acquire(int permits) throws IOException {
+			try {
+				queuedFiles.acquire(permits);
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while hashing files.");
+			}
+		}
+
+	}
+
 }
@@ -20,16 +20,69 @@ package de.todesbaum.jsite.gui;
 
 import java.util.Collection;
 import java.util.EventListener;
+import java.util.List;
 
 /**
  * Listener interface for objects that want to be notified when scanning a
- * project’s local path has finished.
+ * project’s local path has finished. Listeners that want to process files
+ * while the scan is still running can additionally override
+ * {@link #fileScanned(List)} and {@link #fileScannerProgress(ScanProgress)}.
+ * <p>
+ * All events of a scan are delivered one after another (never concurrently),
+ * but not necessarily on the same thread.
  *
  * @see FileScanner
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
 public interface FileScannerListener extends EventListener {
 
+	/**
+	 * Notifies the listener that some files have been hashed. Files are
+	 * delivered in batches, in the order they were hashed; when the scan
+	 * finishes, every file has been delivered exactly once.
+	 *
+	 * @param scannedFiles
+	 *            The files that have been hashed since the last event
+	 */
+	default void fileScanned(List<ScannedFile> scannedFiles) {
+		/* do nothing. */
+	}
+
+	/**
+	 * Notifies the listener about the progress of the scan. This event is
+	 * sent after every {@link #fileScanned(List)} event, and regularly while
+	 * large files are hashed or directories are traversed. The default
+	 * implementation calls {@link #fileScannerProgress(int, long)}.
+	 *
+	 * @param scanProgress
+	 *            The progress of the scan
+	 */
+	default void fileScannerProgress(ScanProgress scanProgress) {
+		fileScannerProgress(scanProgress.getScannedFiles(), scanProgress.getScannedBytes());
+	}
+
+	/**
+	 * Notifies the listener about the number and size of the files scanned so
+	 * far.
+	 *
+	 * @param scannedFiles
+	 *            The number of files hashed so far
+	 * @param scannedBytes
+	 *            The total size of the files hashed so far
+	 */
+	default void fileScannerProgress(int scannedFiles, long scannedBytes) {
+		/* do nothing. */
+	}
+
+	/**
+	 * Notifies the listener that the scan has finished.
+	 *
+	 * @param error
+	 *            {@code true} if there was an error scanning the files, or the
+	 *            scan was cancelled, {@code false} otherwise
+	 * @param files
+	 *            The scanned files, sorted by name
+	 */
 	void fileScannerFinished(boolean error, Collection<ScannedFile> files);
 
 }
@@ -20,9 +20,13 @@ package de.todesbaum.jsite.gui;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import java.text.MessageFormat;
 import static java.util.Optional.ofNullable;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import javax.swing.*;
@@ -51,6 +55,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	/** The “scan files” action. */
 	private Action scanAction;
 
+	/** The “cancel scan” action. */
+	private Action cancelScanAction;
+
 	/** The “always force insert” checkbox. */
 	private JCheckBox alwaysForceInsertCheckBox;
 
@@ -60,6 +67,18 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	/** The list of project files. */
 	private JList<ScannedFile> projectFileList;
 
+	/** The model of the list of project files. */
+	private ScannedFileListModel projectFileListModel;
+
+	/** The text field for the filter of the list of project files. */
+	private JTextField projectFileFilterTextField;
+
+	/** The scanned files that have not been added to the file list yet. */
+	private final Queue<ScannedFile> pendingScannedFiles = new ConcurrentLinkedQueue<ScannedFile>();
+
+	/** Whether adding the pending files to the file list is scheduled. */
+	private final AtomicBoolean pendingScannedFilesScheduled = new AtomicBoolean();
+
 	/** The “default file” checkbox. */
 	private JCheckBox defaultFileCheckBox;
 
@@ -69,6 +88,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	/** The “force insert” checkbox. */
 	private JCheckBox fileOptionsForceInsertCheckBox;
 
+	/** The “split insert” checkbox. */
+	private JCheckBox fileOptionsSplitInsertCheckBox;
+
 	/** The “insert redirect” checkbox. */
 	private JCheckBox fileOptionsInsertRedirectCheckBox;
 
@@ -93,9 +115,21 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	/** The file scanner. */
 	private FileScanner fileScanner;
 
+	/** The handle of the running scan. */
+	private ScanTask scanTask;
+
+	/** The directory to store hash caches in. */
+	private File hashCacheDirectory;
+
+	/** The number of files to hash in parallel. */
+	private int scanParallelism;
+
 	/** The progress bar. */
 	private JProgressBar progressBar;
 
+	/** The label showing the file that is currently being hashed. */
+	private JLabel currentFileLabel;
+
 	/**
 	 * Creates a new project file page.
 	 *
@@ -130,9 +164,20 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		scanAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_S);
 		scanAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.rescan.tooltip"));
 
+		cancelScanAction = new AbstractAction(I18n.getMessage("jsite.general.cancel")) {
+
+			@Override
+			public void actionPerformed(ActionEvent actionEvent) {
+				actionCancelScan();
+			}
+		};
+		cancelScanAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.cancel-scan.tooltip"));
+
 		I18nContainer.getInstance().registerRunnable(() -> {
 				scanAction.putValue(Action.NAME, I18n.getMessage("jsite.project-files.action.rescan"));
 				scanAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.rescan.tooltip"));
+				cancelScanAction.putValue(Action.NAME, I18n.getMessage("jsite.general.cancel"));
+				cancelScanAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.cancel-scan.tooltip"));
 			});
 	}
 
@@ -143,6 +188,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	public void pageAdded(TWizard wizard) {
 		/* create file scanner. */
 		fileScanner = new FileScanner(project, this);
+		fileScanner.setHashCacheDirectory(hashCacheDirectory);
+		fileScanner.setParallelism(scanParallelism);
 
 		actionScan();
 		this.wizard.setPreviousName(I18n.getMessage("jsite.wizard.previous"));
@@ -158,12 +205,27 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	private JComponent createProjectFilesPanel() {
 		JPanel projectFilesPanel = new JPanel(new BorderLayout(12, 12));
 
-		projectFileList = new JList<>();
+		projectFileListModel = new ScannedFileListModel();
+		projectFileList = new JList<>(projectFileListModel);
 		projectFileList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		/* fixed cell sizes keep the list from measuring every file. */
+		projectFileList.setPrototypeCellValue(new ScannedFile("index.html", ""));
+		projectFileList.setFixedCellWidth(250);
 		projectFileList.setMinimumSize(new Dimension(250, projectFileList.getPreferredSize().height));
 		projectFileList.addListSelectionListener(this);
 
-		projectFilesPanel.add(new JScrollPane(projectFileList), BorderLayout.CENTER);
+		JPanel projectFileListPanel = new JPanel(new BorderLayout(6, 6));
+		projectFilesPanel.add(projectFileListPanel, BorderLayout.CENTER);
+		JPanel projectFileFilterPanel = new JPanel(new BorderLayout(6, 6));
+		projectFileListPanel.add(projectFileFilterPanel, BorderLayout.PAGE_START);
+		final JLabel projectFileFilterLabel = new JLabel(I18n.getMessage("jsite.project-files.filter") + ":");
+		projectFileFilterPanel.add(projectFileFilterLabel, BorderLayout.LINE_START);
+		projectFileFilterTextField = new JTextField();
+		projectFileFilterTextField.setToolTipText(I18n.getMessage("jsite.project-files.filter.tooltip"));
+		projectFileFilterTextField.getDocument().addDocumentListener(new StoreDocument(filter -> updateFileList(() -> projectFileListModel.setFilter(filter))));
+		projectFileFilterLabel.setLabelFor(projectFileFilterTextField);
+		projectFileFilterPanel.add(projectFileFilterTextField, BorderLayout.CENTER);
+		projectFileListPanel.add(new JScrollPane(projectFileList), BorderLayout.CENTER);
 
 		JPanel fileOptionsAlignmentPanel = new JPanel(new BorderLayout(12, 12));
 		projectFilesPanel.add(fileOptionsAlignmentPanel, BorderLayout.PAGE_END);
@@ -213,6 +275,14 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 
 		fileOptionsPanel.add(fileOptionsForceInsertCheckBox, new GridBagConstraints(0, 6, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
 
+		fileOptionsSplitInsertCheckBox = new JCheckBox(I18n.getMessage("jsite.project-files.split-insert"));
+		fileOptionsSplitInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.split-insert.tooltip"));
+		fileOptionsSplitInsertCheckBox.setName("split-insert");
+		fileOptionsSplitInsertCheckBox.addActionListener(this);
+		fileOptionsSplitInsertCheckBox.setEnabled(false);
+
+		fileOptionsPanel.add(fileOptionsSplitInsertCheckBox, new GridBagConstraints(0, 7, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+
 		fileOptionsCustomKeyTextField = new JTextField(45);
 		fileOptionsCustomKeyTextField.setToolTipText(I18n.getMessage("jsite.project-files.custom-key.tooltip"));
 		fileOptionsCustomKeyTextField.setEnabled(false);
@@ -226,9 +296,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		fileOptionsInsertRedirectCheckBox.setEnabled(false);
 
 		final TLabel customKeyLabel = new TLabel(I18n.getMessage("jsite.project-files.custom-key") + ":", KeyEvent.VK_K, fileOptionsCustomKeyTextField);
-		fileOptionsPanel.add(fileOptionsInsertRedirectCheckBox, new GridBagConstraints(0, 7, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
-		fileOptionsPanel.add(customKeyLabel, new GridBagConstraints(1, 7, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 6, 0, 0), 0, 0));
-		fileOptionsPanel.add(fileOptionsCustomKeyTextField, new GridBagConstraints(2, 7, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsInsertRedirectCheckBox, new GridBagConstraints(0, 8, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(customKeyLabel, new GridBagConstraints(1, 8, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsCustomKeyTextField, new GridBagConstraints(2, 8, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
 
 		fileOptionsRenameCheckBox = new JCheckBox(I18n.getMessage("jsite.project-files.rename"), false);
 		fileOptionsRenameCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.rename.tooltip"));
@@ -241,8 +311,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		fileOptionsRenameTextField.setEnabled(false);
 		fileOptionsRenameTextField.getDocument().addDocumentListener(new StoreDocument(this::updateChangedName));
 
-		fileOptionsPanel.add(fileOptionsRenameCheckBox, new GridBagConstraints(0, 8, 2, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
-		fileOptionsPanel.add(fileOptionsRenameTextField, new GridBagConstraints(2, 8, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsRenameCheckBox, new GridBagConstraints(0, 9, 2, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsRenameTextField, new GridBagConstraints(2, 9, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
 
 		fileOptionsMIMETypeComboBox = new JComboBox<>(MimeTypes.getAllMimeTypes().toArray(new String[0]));
 		fileOptionsMIMETypeComboBox.setToolTipText(I18n.getMessage("jsite.project-files.mime-type.tooltip"));
@@ -255,12 +325,13 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				.addDocumentListener(new StoreDocument(this::updateMimeType));
 
 		final TLabel mimeTypeLabel = new TLabel(I18n.getMessage("jsite.project-files.mime-type") + ":", KeyEvent.VK_M, fileOptionsMIMETypeComboBox);
-		fileOptionsPanel.add(mimeTypeLabel, new GridBagConstraints(0, 9, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
-		fileOptionsPanel.add(fileOptionsMIMETypeComboBox, new GridBagConstraints(1, 9, 4, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(mimeTypeLabel, new GridBagConstraints(0, 10, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsMIMETypeComboBox, new GridBagConstraints(1, 10, 4, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
 
 		/* create dialog to show while scanning. */
 		scanningFilesDialog = new JDialog(wizard);
-		scanningFilesDialog.setModal(true);
+		/* not modal so that the file list can be seen while it fills up. */
+		scanningFilesDialog.setModal(false);
 		scanningFilesDialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
 
 		JPanel progressPanel = new JPanel(new BorderLayout(12, 12));
@@ -270,11 +341,21 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		final JLabel scanningLabel = new JLabel(I18n.getMessage("jsite.project-files.scanning"), SwingConstants.CENTER);
 		progressPanel.add(scanningLabel, BorderLayout.NORTH);
 		progressBar = new JProgressBar(SwingConstants.HORIZONTAL);
-		progressPanel.add(progressBar, BorderLayout.SOUTH);
+		progressPanel.add(progressBar, BorderLayout.CENTER);
 		progressBar.setIndeterminate(true);
 		progressBar.setStringPainted(true);
 		progressBar.setPreferredSize(new Dimension(progressBar.getPreferredSize().width * 2, progressBar.getPreferredSize().height));
 
+		JPanel currentFilePanel = new JPanel(new BorderLayout(12, 12));
+		progressPanel.add(currentFilePanel, BorderLayout.SOUTH);
+		currentFileLabel = new JLabel(" ");
+		/* keep long filenames from resizing the dialog. */
+		currentFileLabel.setPreferredSize(new Dimension(progressBar.getPreferredSize().width, currentFileLabel.getPreferredSize().height));
+		currentFilePanel.add(currentFileLabel, BorderLayout.NORTH);
+		JPanel cancelScanButtonPanel = new JPanel(new FlowLayout(FlowLayout.TRAILING, 0, 0));
+		cancelScanButtonPanel.add(new JButton(cancelScanAction));
+		currentFilePanel.add(cancelScanButtonPanel, BorderLayout.SOUTH);
+
 		scanningFilesDialog.pack();
 		scanningFilesDialog.addWindowListener(new WindowAdapter() {
 
@@ -285,6 +366,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		});
 
 		I18nContainer.getInstance().registerRunnable(() -> {
+				projectFileFilterLabel.setText(I18n.getMessage("jsite.project-files.filter") + ":");
+				projectFileFilterTextField.setToolTipText(I18n.getMessage("jsite.project-files.filter.tooltip"));
 				alwaysForceInsertCheckBox.setText(I18n.getMessage("jsite.project-files.always-force-insert"));
 				alwaysForceInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.always-force-insert.tooltip"));
 				ignoreHiddenFilesCheckBox.setText(I18n.getMessage("jsite.project-files.ignore-hidden-files"));
@@ -296,6 +379,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				fileOptionsInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.insert.tooltip"));
 				fileOptionsForceInsertCheckBox.setText(I18n.getMessage("jsite.project-files.force-insert"));
 				fileOptionsForceInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.force-insert.tooltip"));
+				fileOptionsSplitInsertCheckBox.setText(I18n.getMessage("jsite.project-files.split-insert"));
+				fileOptionsSplitInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.split-insert.tooltip"));
 				fileOptionsInsertRedirectCheckBox.setText(I18n.getMessage("jsite.project-files.insert-redirect"));
 				fileOptionsInsertRedirectCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.insert-redirect.tooltip"));
 				fileOptionsCustomKeyTextField.setToolTipText(I18n.getMessage("jsite.project-files.custom-key.tooltip"));
@@ -310,6 +395,27 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		return projectFilesPanel;
 	}
 
+	/**
+	 * Sets the directory the file scanner stores hash caches in.
+	 *
+	 * @param hashCacheDirectory
+	 *            The directory to store hash caches in
+	 */
+	public void setHashCacheDirectory(File hashCacheDirectory) {
+		this.hashCacheDirectory = hashCacheDirectory;
+	}
+
+	/**
+	 * Sets the number of files the file scanner hashes in parallel.
+	 *
+	 * @param scanParallelism
+	 *            The number of files to hash in parallel, or {@code 0} to
+	 *            choose automatically
+	 */
+	public void setScanParallelism(int scanParallelism) {
+		this.scanParallelism = scanParallelism;
+	}
+
 	/**
 	 * Sets the project whose files to manage.
 	 *
@@ -337,7 +443,11 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	 */
 	private void actionScan() {
 		projectFileList.clearSelection();
-		projectFileList.setListData(new ScannedFile[0]);
+		pendingScannedFiles.clear();
+		projectFileListModel.clear();
+		progressBar.setString(MessageFormat.format(I18n.getMessage("jsite.project-files.scanning.progress"), 0, 0));
+		currentFileLabel.setText(" ");
+		cancelScanAction.setEnabled(true);
 
 		wizard.setNextEnabled(false);
 		wizard.setPreviousEnabled(false);
@@ -351,18 +461,78 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
                 }, () -> {
                     scanningFilesDialog.setVisible(false);
                 }, 2000);
-		fileScanner.startInBackground();
+		scanTask = fileScanner.startInBackground();
 		new Thread(delayedNotification).start();
-		new Thread(() -> {
-                    while (!delayedNotification.isFinished()) {
-                        try {
-                            Thread.sleep(250);
-                        } catch (InterruptedException ie1) {
-                            /* ignore. */
-                        }
-                        progressBar.setString(fileScanner.getLastFilename());
-                    }
-                }).start();
+	}
+
+	/**
+	 * Cancels the running scan. The scanner stops reading files and notifies
+	 * this page that it has finished.
+	 */
+	private void actionCancelScan() {
+		cancelScanAction.setEnabled(false);
+		if (scanTask != null) {
+			scanTask.cancel();
+		}
+	}
+
+	/**
+	 * Runs the given update of the file list, keeping the selected file
+	 * selected if it is still shown.
+	 *
+	 * @param update
+	 *            The update of the file list
+	 */
+	private void updateFileList(Runnable update) {
+		ScannedFile selectedFile = projectFileList.getSelectedValue();
+		update.run();
+		int selectedIndex = (selectedFile != null) ? projectFileListModel.indexOf(selectedFile) : -1;
+		if (selectedIndex == -1) {
+			projectFileList.clearSelection();
+		} else {
+			projectFileList.setSelectedIndex(selectedIndex);
+			projectFileList.ensureIndexIsVisible(selectedIndex);
+		}
+	}
+
+	/**
+	 * Adds the pending scanned files to the file list.
+	 */
+	private void addPendingFilesToFileList() {
+		pendingScannedFilesScheduled.set(false);
+		List<ScannedFile> scannedFiles = new ArrayList<ScannedFile>();
+		for (ScannedFile scannedFile; (scannedFile = pendingScannedFiles.poll()) != null;) {
+			scannedFiles.add(scannedFile);
+		}
+		updateFileList(() -> projectFileListModel.addFiles(scannedFiles));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Adds the files to the file list. Batches that arrive while the event
+	 * dispatch thread is busy are added together.
+	 */
+	@Override
+	public void fileScanned(List<ScannedFile> scannedFiles) {
+		pendingScannedFiles.addAll(scannedFiles);
+		if (pendingScannedFilesScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(this::addPendingFilesToFileList);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Shows the number and size of the scanned files, and the file that is
+	 * currently being hashed.
+	 */
+	@Override
+	public void fileScannerProgress(ScanProgress scanProgress) {
+		SwingUtilities.invokeLater(() -> {
+			progressBar.setString(MessageFormat.format(I18n.getMessage("jsite.project-files.scanning.progress"), scanProgress.getScannedFiles(), scanProgress.getScannedBytes() / 1024));
+			currentFileLabel.setText((scanProgress.getCurrentFilename() != null) ? scanProgress.getCurrentFilename() : " ");
+		});
 	}
 
 	/**
@@ -375,26 +545,22 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		delayedNotification.finish();
 		if (!error) {
 			SwingUtilities.invokeLater(() -> {
-                            projectFileList.setListData(files.toArray(new ScannedFile[0]));
-                            projectFileList.clearSelection();
+                            /* normally, fileScanned() has already added all files. */
+                            if (projectFileListModel.getFileCount() != files.size()) {
+                                updateFileList(() -> projectFileListModel.setFiles(files));
+                            }
                         });
-			Set<String> entriesToRemove = new HashSet<>();
-			for (String filename : new HashSet<>(project.getFileOptions().keySet())) {
-				boolean found = false;
-				for (ScannedFile scannedFile : files) {
-					if (scannedFile.getFilename().equals(filename)) {
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
-					entriesToRemove.add(filename);
-				}
+			/* this runs on the scanner thread, not on the event dispatch thread. */
+			Set<String> scannedFilenames = new HashSet<>();
+			for (ScannedFile scannedFile : files) {
+				scannedFilenames.add(scannedFile.getFilename());
 			}
+			Set<String> entriesToRemove = new HashSet<>(project.getFileOptions().keySet());
+			entriesToRemove.removeAll(scannedFilenames);
 			for (String filename : entriesToRemove) {
 				project.setFileOption(filename, null);
 			}
-		} else {
+		} else if (!fileScanner.isCancelled()) {
 			JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.project-files.scan-error"), null, JOptionPane.ERROR_MESSAGE);
 		}
 		SwingUtilities.invokeLater(() -> {
@@ -456,10 +622,13 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 			} else if ("insert".equals(checkBox.getName())) {
 				boolean isInsert = checkBox.isSelected();
 				fileOption.setInsert(isInsert);
+				fileOptionsSplitInsertCheckBox.setEnabled(isInsert);
 				fileOptionsInsertRedirectCheckBox.setEnabled(!isInsert);
 			} else if ("force-insert".equals(checkBox.getName())) {
 				boolean isForceInsert = checkBox.isSelected();
 				fileOption.setForceInsert(isForceInsert);
+			} else if ("split-insert".equals(checkBox.getName())) {
+				fileOption.setSplitInsert(checkBox.isSelected());
 			} else if ("insert-redirect".equals(checkBox.getName())) {
 				boolean isInsertRedirect = checkBox.isSelected();
 				fileOption.setInsertRedirect(isInsertRedirect);
@@ -508,6 +677,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 			fileOptionsInsertCheckBox.setSelected(fileOption.isInsert());
 			fileOptionsForceInsertCheckBox.setEnabled(!project.isAlwaysForceInsert() && scannedFile.getHash().equals(fileOption.getLastInsertHash()));
 			fileOptionsForceInsertCheckBox.setSelected(fileOption.isForceInsert());
+			fileOptionsSplitInsertCheckBox.setEnabled(fileOption.isInsert());
+			fileOptionsSplitInsertCheckBox.setSelected(fileOption.isSplitInsert());
 			fileOptionsInsertRedirectCheckBox.setEnabled(!fileOption.isInsert());
 			fileOptionsInsertRedirectCheckBox.setSelected(fileOption.isInsertRedirect());
 			fileOptionsCustomKeyTextField.setEnabled(fileOption.isInsertRedirect());
@@ -521,6 +692,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 			fileOptionsInsertCheckBox.setSelected(true);
 			fileOptionsForceInsertCheckBox.setEnabled(false);
 			fileOptionsForceInsertCheckBox.setSelected(false);
+			fileOptionsSplitInsertCheckBox.setEnabled(false);
+			fileOptionsSplitInsertCheckBox.setSelected(false);
 			fileOptionsInsertRedirectCheckBox.setEnabled(false);
 			fileOptionsInsertRedirectCheckBox.setSelected(false);
 			fileOptionsCustomKeyTextField.setEnabled(false);
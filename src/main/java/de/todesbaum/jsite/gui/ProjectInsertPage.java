@@ -30,9 +30,11 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,6 +52,9 @@ import javax.swing.SwingUtilities;
 import de.todesbaum.jsite.application.AbortedException;
 import de.todesbaum.jsite.application.Freenet7Interface;
 import de.todesbaum.jsite.application.InsertListener;
+import de.todesbaum.jsite.application.InsertMeter;
+import de.todesbaum.jsite.application.InsertProgress;
+import de.todesbaum.jsite.application.InsertProgressAggregator;
 import de.todesbaum.jsite.application.Project;
 import de.todesbaum.jsite.application.ProjectInserter;
 import de.todesbaum.jsite.i18n.I18n;
@@ -86,8 +91,14 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 	/** The start time of the insert. */
 	private long startTime = 0;
 
-	/** The number of inserted blocks. */
-	private volatile int insertedBlocks;
+	/** The project to insert. */
+	private Project project;
+
+	/** Measures the throughput of the running insert. */
+	private volatile InsertMeter insertMeter = new InsertMeter(0, System.currentTimeMillis());
+
+	/** Limits the progress updates to ten per second. */
+	private final InsertProgressAggregator insertProgressAggregator = new InsertProgressAggregator(100, TimeUnit.MILLISECONDS, this::showProgress);
 
 	/** Whether the “copy URI to clipboard” button was used. */
 	private boolean uriCopied;
@@ -209,7 +220,9 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 		progressBar.setValue(0);
 		progressBar.setString(I18n.getMessage("jsite.insert.starting"));
 		progressBar.setFont(progressBar.getFont().deriveFont(Font.PLAIN));
+		insertMeter = new InsertMeter(project);
 		projectInserter.start((final long copied, final long length) -> {
+				insertMeter.bytesUploaded(copied, System.currentTimeMillis());
 				SwingUtilities.invokeLater(() -> {
 					int divisor = 1;
 					while (((copied / divisor) > Integer.MAX_VALUE) || ((length / divisor) > Integer.MAX_VALUE)) {
@@ -217,7 +230,7 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 					}
 					progressBar.setMaximum((int) (length / divisor));
 					progressBar.setValue((int) (copied / divisor));
-					progressBar.setString("Uploaded: " + copied + " / " + length);
+					progressBar.setString("Uploaded: " + copied + " / " + length + " (" + formatNumber(insertMeter.getByteMeter().getCurrentRate(System.currentTimeMillis()) / 1024, 1) + " " + I18n.getMessage("jsite.insert.k-per-s") + ")");
 				});
 			});
 	}
@@ -249,6 +262,7 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 	 *            The project to insert
 	 */
 	public void setProject(final Project project) {
+		this.project = project;
 		projectInserter.setProject(project);
 		SwingUtilities.invokeLater(new Runnable() {
 
@@ -282,6 +296,90 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 		projectInserter.setTempDirectory(tempDirectory);
 	}
 
+	/**
+	 * Sets the directory the project inserter stores hash caches in.
+	 *
+	 * @see ProjectInserter#setHashCacheDirectory(File)
+	 * @param hashCacheDirectory
+	 *            The directory to store hash caches in
+	 */
+	public void setHashCacheDirectory(File hashCacheDirectory) {
+		projectInserter.setHashCacheDirectory(hashCacheDirectory);
+	}
+
+	/**
+	 * Sets the number of files the project inserter hashes in parallel.
+	 *
+	 * @see ProjectInserter#setScanParallelism(int)
+	 * @param scanParallelism
+	 *            The number of files to hash in parallel, or {@code 0} to
+	 *            choose automatically
+	 */
+	public void setScanParallelism(int scanParallelism) {
+		projectInserter.setScanParallelism(scanParallelism);
+	}
+
+	/**
+	 * Sets whether files are inserted while the project is still being
+	 * scanned.
+	 *
+	 * @see ProjectInserter#setPipelined(boolean)
+	 * @param pipelinedInsert
+	 *            {@code true} to insert files while scanning, {@code false}
+	 *            otherwise
+	 */
+	public void setPipelinedInsert(boolean pipelinedInsert) {
+		projectInserter.setPipelined(pipelinedInsert);
+	}
+
+	/**
+	 * Sets whether every directory of the project is inserted as a manifest
+	 * of its own.
+	 *
+	 * @see ProjectInserter#setHierarchical(boolean)
+	 * @param hierarchicalInsert
+	 *            {@code true} to insert every directory as a manifest of its
+	 *            own, {@code false} otherwise
+	 */
+	public void setHierarchicalInsert(boolean hierarchicalInsert) {
+		projectInserter.setHierarchical(hierarchicalInsert);
+	}
+
+	/**
+	 * Sets the size above which files that are marked for splitting are split
+	 * into chunks.
+	 *
+	 * @see ProjectInserter#setSplitThreshold(long)
+	 * @param splitThreshold
+	 *            The split threshold, in bytes
+	 */
+	public void setSplitThreshold(long splitThreshold) {
+		projectInserter.setSplitThreshold(splitThreshold);
+	}
+
+	/**
+	 * Sets whether the project is inserted as a persistent request that can
+	 * be resumed after an interruption.
+	 *
+	 * @see ProjectInserter#setResumable(boolean)
+	 * @param resumableInsert
+	 *            {@code true} to insert the project as a resumable request,
+	 *            {@code false} otherwise
+	 */
+	public void setResumableInsert(boolean resumableInsert) {
+		projectInserter.setResumable(resumableInsert);
+	}
+
+	/**
+	 * Adds a listener that is notified about the events of the insert.
+	 *
+	 * @param insertListener
+	 *            The listener to add
+	 */
+	public void addInsertListener(InsertListener insertListener) {
+		projectInserter.addInsertListener(insertListener);
+	}
+
 	/**
 	 * Returns whether the “copy URI to clipboard” button was used.
 	 *
@@ -333,6 +431,20 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 		});
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectScanProgress(Project project, ScanProgress scanProgress) {
+		SwingUtilities.invokeLater(() -> {
+			/* once the upload has started, its progress is shown instead. */
+			if (insertMeter.getByteMeter().getValue() > 0) {
+				return;
+			}
+			progressBar.setString(I18n.getMessage("jsite.project-files.scanning") + " " + MessageFormat.format(I18n.getMessage("jsite.project-files.scanning.progress"), scanProgress.getScannedFiles(), scanProgress.getScannedBytes() / 1024));
+		});
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -390,25 +502,9 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 	 */
 	@Override
 	public void projectInsertProgress(Project project, final int succeeded, final int failed, final int fatal, final int total, final boolean finalized) {
-		insertedBlocks = succeeded;
-		SwingUtilities.invokeLater(() -> {
-				if (total == 0) {
-					return;
-				}
-				progressBar.setMaximum(total);
-				progressBar.setValue(succeeded + failed + fatal);
-				int progress = (succeeded + failed + fatal) * 100 / total;
-				StringBuilder progressString = new StringBuilder();
-				progressString.append(progress).append("% (");
-				progressString.append(succeeded + failed + fatal).append('/').append(total);
-				progressString.append(") (");
-				progressString.append(getTransferRate());
-				progressString.append(' ').append(I18n.getMessage("jsite.insert.k-per-s")).append(')');
-				progressBar.setString(progressString.toString());
-				if (finalized) {
-					progressBar.setFont(progressBar.getFont().deriveFont(Font.BOLD));
-				}
-			});
+		InsertProgress insertProgress = new InsertProgress(project, succeeded, failed, fatal, total, finalized);
+		insertMeter.progressChanged(insertProgress);
+		insertProgressAggregator.progressChanged(insertProgress);
 	}
 
 	/**
@@ -417,6 +513,7 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 	@Override
 	public void projectInsertFinished(Project project, boolean success, Throwable cause) {
 		running = false;
+		insertProgressAggregator.flush(project);
 		if (success) {
 			String copyURILabel = I18n.getMessage("jsite.insert.okay-copy-uri");
 			int selectedValue = JOptionPane.showOptionDialog(this, I18n.getMessage("jsite.insert.inserted"), I18n.getMessage("jsite.insert.done.title"), 0, JOptionPane.INFORMATION_MESSAGE, null, new Object[] { I18n.getMessage("jsite.general.ok"), copyURILabel }, copyURILabel);
@@ -436,7 +533,7 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 		}
 		SwingUtilities.invokeLater(() -> {
 				progressBar.setValue(progressBar.getMaximum());
-				progressBar.setString(I18n.getMessage("jsite.insert.done") + " (" + getTransferRate() + " " + I18n.getMessage("jsite.insert.k-per-s") + ")");
+				progressBar.setString(I18n.getMessage("jsite.insert.done") + " (" + formatTransferRate(insertMeter.getBlockMeter().getAverageRate()) + " " + I18n.getMessage("jsite.insert.k-per-s") + ")");
 				wizard.setNextName(I18n.getMessage("jsite.wizard.next"));
 				wizard.setNextEnabled(true);
 				wizard.setQuitEnabled(true);
@@ -447,6 +544,38 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 	// ACTIONS
 	//
 
+	/**
+	 * Shows the given progress in the progress bar.
+	 *
+	 * @param insertProgress
+	 *            The progress to show
+	 */
+	private void showProgress(final InsertProgress insertProgress) {
+		SwingUtilities.invokeLater(() -> {
+				if (insertProgress.getTotal() == 0) {
+					return;
+				}
+				progressBar.setMaximum(insertProgress.getTotal());
+				progressBar.setValue(insertProgress.getFinished());
+				StringBuilder progressString = new StringBuilder();
+				progressString.append(insertProgress.getPercent()).append("% (");
+				progressString.append(insertProgress.getFinished()).append('/').append(insertProgress.getTotal());
+				progressString.append(") (");
+				long now = System.currentTimeMillis();
+				progressString.append(formatTransferRate(insertMeter.getBlockMeter().getCurrentRate(now)));
+				progressString.append(' ').append(I18n.getMessage("jsite.insert.k-per-s"));
+				long remainingTime = insertMeter.getRemainingTime(now);
+				if (remainingTime != -1) {
+					progressString.append(", ").append(MessageFormat.format(I18n.getMessage("jsite.insert.remaining"), InsertMeter.formatDuration(remainingTime)));
+				}
+				progressString.append(')');
+				progressBar.setString(progressString.toString());
+				if (insertProgress.isFinalized()) {
+					progressBar.setFont(progressBar.getFont().deriveFont(Font.BOLD));
+				}
+			});
+	}
+
 	/**
 	 * Copies the request URI of the project to the clipboard.
 	 */
@@ -479,12 +608,14 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 	}
 
 	/**
-	 * Returns the formatted transfer rate at this point.
+	 * Formats the given block rate as transfer rate.
 	 *
-	 * @return The formatted transfer rate
+	 * @param blocksPerSecond
+	 *            The number of blocks inserted per second
+	 * @return The formatted transfer rate, in KiB per second
 	 */
-	private String getTransferRate() {
-		return formatNumber(insertedBlocks * 32.0 / ((System.currentTimeMillis() - startTime) / 1000), 1);
+	private static String formatTransferRate(double blocksPerSecond) {
+		return formatNumber(blocksPerSecond * 32.0, 1);
 	}
 
 	//
@@ -0,0 +1,403 @@
+/*
+ * jSite - ProjectWatcher.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.gui;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import de.todesbaum.jsite.application.Project;
+
+/**
+ * Keeps the files of a project up to date while the project’s local path is
+ * being changed. The project is scanned once when the watcher is started;
+ * afterwards the watcher receives the changes from a {@link WatchService}
+ * and only rehashes the files that were created or modified. Once no change
+ * has been made for the quiet period, the {@link ProjectWatcherListener} is
+ * notified about all changes since the last notification.
+ * <p>
+ * If the watch service loses events, the whole project is scanned again.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ProjectWatcher implements Runnable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ProjectWatcher.class.getName());
+
+	/** The project to watch. */
+	private final Project project;
+
+	/** The local path of the project. */
+	private final Path localPath;
+
+	/** The quiet period, in milliseconds. */
+	private final long quietPeriod;
+
+	/** The listener to notify. */
+	private final ProjectWatcherListener projectWatcherListener;
+
+	/** The files of the project, by name. */
+	private final Map<String, ScannedFile> files = new TreeMap<String, ScannedFile>();
+
+	/** The watched directories, by watch key. */
+	private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+	/** The paths that changed since the last notification. */
+	private final Set<Path> changedPaths = new HashSet<Path>();
+
+	/** The directory of the hash cache for the initial scan. */
+	private File hashCacheDirectory;
+
+	/** The number of files to hash in parallel during the initial scan. */
+	private int scanParallelism;
+
+	/** The watch service. */
+	private WatchService watchService;
+
+	/**
+	 * Creates a new project watcher.
+	 *
+	 * @param project
+	 *            The project to watch
+	 * @param quietPeriod
+	 *            The time without changes after which the listener is
+	 *            notified, in milliseconds
+	 * @param projectWatcherListener
+	 *            The listener to notify
+	 */
+	public ProjectWatcher(Project project, long quietPeriod, ProjectWatcherListener projectWatcherListener) {
+		this.project = project;
+		this.localPath = Paths.get(project.getLocalPath()).toAbsolutePath();
+		this.quietPeriod = quietPeriod;
+		this.projectWatcherListener = projectWatcherListener;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Sets the directory of the hash cache that is used for the initial scan.
+	 *
+	 * @param hashCacheDirectory
+	 *            The hash cache directory, or {@code null} to hash all files
+	 */
+	public void setHashCacheDirectory(File hashCacheDirectory) {
+		this.hashCacheDirectory = hashCacheDirectory;
+	}
+
+	/**
+	 * Sets the number of files to hash in parallel during the initial scan.
+	 *
+	 * @param scanParallelism
+	 *            The number of files to hash in parallel, or {@code 0} to
+	 *            choose automatically
+	 */
+	public void setScanParallelism(int scanParallelism) {
+		this.scanParallelism = scanParallelism;
+	}
+
+	/**
+	 * Returns the current files of the project.
+	 *
+	 * @return The files of the project, sorted by name
+	 */
+	public List<ScannedFile> getFiles() {
+		synchronized (files) {
+			return new ArrayList<ScannedFile>(files.values());
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts watching the project. All directories are registered with the
+	 * watch service before the project is scanned, so no change made during
+	 * the scan is lost. This method returns after the initial scan.
+	 *
+	 * @throws IOException
+	 *             if the project can not be scanned or watched
+	 */
+	public void start() throws IOException {
+		watchService = localPath.getFileSystem().newWatchService();
+		registerDirectories(localPath);
+		scanProject();
+		Thread watcherThread = new Thread(this, "jSite Project Watcher: " + project.getName());
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	/**
+	 * Stops watching the project.
+	 */
+	public void stop() {
+		try {
+			if (watchService != null) {
+				watchService.close();
+			}
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not close watch service.", ioe1);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Collects the changes reported by the watch service, and processes them
+	 * once no change has been reported for the quiet period. A path that can
+	 * not be processed does not stop the watcher; the whole project is
+	 * scanned again after the next quiet period instead.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				WatchKey watchKey = changedPaths.isEmpty() ? watchService.take() : watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+				if (watchKey == null) {
+					processChanges();
+					continue;
+				}
+				Path directory = watchedDirectories.get(watchKey);
+				for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+					if ((watchEvent.kind() == OVERFLOW) || (directory == null)) {
+						logger.log(Level.INFO, "Lost changes of {0}, scanning it again.", localPath);
+						changedPaths.add(localPath);
+						continue;
+					}
+					Path path = directory.resolve((Path) watchEvent.context());
+					changedPaths.add(path);
+					if ((watchEvent.kind() == ENTRY_CREATE) && Files.isDirectory(path)) {
+						try {
+							registerDirectories(path);
+						} catch (IOException | UncheckedIOException e1) {
+							logger.log(Level.WARNING, "Could not watch " + path + ", scanning " + localPath + " again.", e1);
+							changedPaths.add(localPath);
+						}
+					}
+				}
+				if (!watchKey.reset()) {
+					watchedDirectories.remove(watchKey);
+				}
+			}
+		} catch (ClosedWatchServiceException cwse1) {
+			/* watcher was stopped. */
+		} catch (InterruptedException ie1) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Scans the whole project.
+	 *
+	 * @throws IOException
+	 *             if the project can not be scanned
+	 */
+	private void scanProject() throws IOException {
+		FileScanner fileScanner = new FileScanner(project, (error, scannedFiles) -> { });
+		fileScanner.setHashCacheDirectory(hashCacheDirectory);
+		fileScanner.setParallelism(scanParallelism);
+		fileScanner.run();
+		if (fileScanner.isError()) {
+			throw new IOException("Could not scan " + localPath);
+		}
+		synchronized (files) {
+			files.clear();
+			for (ScannedFile scannedFile : fileScanner.getFiles()) {
+				files.put(scannedFile.getFilename(), scannedFile);
+			}
+		}
+	}
+
+	/**
+	 * Registers the given directory and all its subdirectories with the watch
+	 * service.
+	 *
+	 * @param directory
+	 *            The directory to register
+	 * @throws IOException
+	 *             if a directory can not be registered
+	 */
+	private void registerDirectories(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Iterator<Path> pathIterator = paths.filter(Files::isDirectory).iterator(); pathIterator.hasNext();) {
+				Path path = pathIterator.next();
+				if (!isIgnored(path)) {
+					watchedDirectories.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the files of all changed paths, and notifies the listener if
+	 * any file was added, changed, or removed. If a path can not be updated,
+	 * e.g. because it was removed while it was being read, the whole project
+	 * is marked as changed so that it is scanned again after the next quiet
+	 * period.
+	 */
+	private void processChanges() {
+		Set<String> changedFilenames = new TreeSet<String>();
+		List<Path> pathsToUpdate = new ArrayList<Path>(changedPaths);
+		changedPaths.clear();
+		for (Path path : pathsToUpdate) {
+			try {
+				updatePath(path, changedFilenames);
+			} catch (IOException | UncheckedIOException e1) {
+				logger.log(Level.WARNING, "Could not update " + path + ", scanning " + localPath + " again.", e1);
+				changedPaths.add(localPath);
+			}
+		}
+		if (!changedFilenames.isEmpty()) {
+			logger.log(Level.INFO, "{0} files of {1} changed.", new Object[] { changedFilenames.size(), project.getName() });
+			projectWatcherListener.projectFilesChanged(project, getFiles(), changedFilenames);
+		}
+	}
+
+	/**
+	 * Updates the files at the given path. A file is rehashed; a directory is
+	 * scanned for files that were added or removed; for a path that does not
+	 * exist anymore, the file or all files below it are removed.
+	 *
+	 * @param path
+	 *            The path that changed
+	 * @param changedFilenames
+	 *            The set to add the names of changed files to
+	 * @throws IOException
+	 *             if a directory can not be read
+	 */
+	private void updatePath(Path path, Set<String> changedFilenames) throws IOException {
+		String filename = getFilename(path);
+		Set<String> existingFilenames = new HashSet<String>();
+		if (Files.isDirectory(path) && !isIgnored(path)) {
+			try (Stream<Path> paths = Files.walk(path)) {
+				for (Iterator<Path> pathIterator = paths.filter(Files::isRegularFile).iterator(); pathIterator.hasNext();) {
+					Path file = pathIterator.next();
+					if (!isIgnored(file)) {
+						existingFilenames.add(getFilename(file));
+						updateFile(file, changedFilenames);
+					}
+				}
+			}
+		} else if (Files.isRegularFile(path) && !isIgnored(path)) {
+			existingFilenames.add(filename);
+			updateFile(path, changedFilenames);
+		}
+		synchronized (files) {
+			for (Iterator<String> filenameIterator = files.keySet().iterator(); filenameIterator.hasNext();) {
+				String existingFilename = filenameIterator.next();
+				boolean belowPath = filename.isEmpty() || existingFilename.equals(filename) || existingFilename.startsWith(filename + "/");
+				if (belowPath && !existingFilenames.contains(existingFilename)) {
+					filenameIterator.remove();
+					changedFilenames.add(existingFilename);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rehashes the given file and updates it if its hash changed.
+	 *
+	 * @param file
+	 *            The file to rehash
+	 * @param changedFilenames
+	 *            The set to add the name of the file to if it changed
+	 */
+	private void updateFile(Path file, Set<String> changedFilenames) {
+		String filename = getFilename(file);
+		Optional<String> hash = FileScanner.hashFile(file.toFile());
+		if (!hash.isPresent()) {
+			/* the file is probably still being written, wait for the next change. */
+			return;
+		}
+		synchronized (files) {
+			ScannedFile oldFile = files.get(filename);
+			if ((oldFile == null) || !oldFile.getHash().equals(hash.get())) {
+				files.put(filename, new ScannedFile(filename, hash.get()));
+				changedFilenames.add(filename);
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the given file relative to the local path of the
+	 * project, the way the {@link FileScanner} names it.
+	 *
+	 * @param path
+	 *            The path of the file
+	 * @return The name of the file
+	 */
+	private String getFilename(Path path) {
+		return localPath.relativize(path.toAbsolutePath()).toString().replace('\\', '/');
+	}
+
+	/**
+	 * Returns whether the given path is ignored because it, or one of its
+	 * parent directories below the local path, is hidden and the project
+	 * ignores hidden files.
+	 *
+	 * @param path
+	 *            The path to check
+	 * @return {@code true} if the path is ignored, {@code false} otherwise
+	 */
+	private boolean isIgnored(Path path) {
+		if (!project.isIgnoreHiddenFiles()) {
+			return false;
+		}
+		for (Path currentPath = path.toAbsolutePath(); (currentPath != null) && !currentPath.equals(localPath); currentPath = currentPath.getParent()) {
+			if (currentPath.toFile().isHidden()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
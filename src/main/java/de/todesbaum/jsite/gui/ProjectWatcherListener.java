@@ -0,0 +1,49 @@
+/*
+ * jSite - ProjectWatcherListener.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.gui;
+
+import java.util.EventListener;
+import java.util.List;
+import java.util.Set;
+
+import de.todesbaum.jsite.application.Project;
+
+/**
+ * Listener interface for objects that want to be notified when the files of
+ * a project watched by a {@link ProjectWatcher} have changed.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public interface ProjectWatcherListener extends EventListener {
+
+	/**
+	 * Notifies the listener that files of the project have been added,
+	 * changed, or removed, and that no further changes have been made for
+	 * the quiet period of the watcher.
+	 *
+	 * @param project
+	 *            The project whose files changed
+	 * @param files
+	 *            All files of the project, sorted by name
+	 * @param changedFilenames
+	 *            The names of the files that were added, changed, or removed
+	 */
+	void projectFilesChanged(Project project, List<ScannedFile> files, Set<String> changedFilenames);
+
+}
@@ -0,0 +1,135 @@
+/*
+ * jSite - ScanProgress.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.gui;
+
+/**
+ * Snapshot of the progress of a {@link FileScanner}.
+ *
+ * @see FileScannerListener#fileScannerProgress(ScanProgress)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ScanProgress {
+
+	/** The number of files found in the project’s directory. */
+	private final int seenFiles;
+
+	/** The number of files that have been delivered to the listener. */
+	private final int scannedFiles;
+
+	/** The total size of the files delivered to the listener. */
+	private final long scannedBytes;
+
+	/** The number of bytes that have actually been read for hashing. */
+	private final long hashedBytes;
+
+	/** The name of the file that is currently being hashed. */
+	private final String currentFilename;
+
+	/**
+	 * Creates a new scan progress snapshot.
+	 *
+	 * @param seenFiles
+	 *            The number of files found in the project’s directory
+	 * @param scannedFiles
+	 *            The number of files that have been delivered to the listener
+	 * @param scannedBytes
+	 *            The total size of the files delivered to the listener
+	 * @param hashedBytes
+	 *            The number of bytes that have been read for hashing
+	 * @param currentFilename
+	 *            The name of the file that is currently being hashed, or
+	 *            {@code null} if no file has been hashed yet
+	 */
+	public ScanProgress(int seenFiles, int scannedFiles, long scannedBytes, long hashedBytes, String currentFilename) {
+		this.seenFiles = seenFiles;
+		this.scannedFiles = scannedFiles;
+		this.scannedBytes = scannedBytes;
+		this.hashedBytes = hashedBytes;
+		this.currentFilename = currentFilename;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of files that have been found in the project’s
+	 * directory. While the directory is still being traversed this number
+	 * grows, so it is only a lower bound of the number of files to scan.
+	 *
+	 * @return The number of files found
+	 */
+	public int getSeenFiles() {
+		return seenFiles;
+	}
+
+	/**
+	 * Returns the number of files that have been delivered to the listener.
+	 *
+	 * @return The number of scanned files
+	 */
+	public int getScannedFiles() {
+		return scannedFiles;
+	}
+
+	/**
+	 * Returns the total size of the files that have been delivered to the
+	 * listener.
+	 *
+	 * @return The total size of the scanned files, in bytes
+	 */
+	public long getScannedBytes() {
+		return scannedBytes;
+	}
+
+	/**
+	 * Returns the number of bytes that have been read for hashing. Files whose
+	 * hash was taken from the hash cache are not read, so this may be less
+	 * than {@link #getScannedBytes()}; it includes the bytes of files that
+	 * are still being hashed.
+	 *
+	 * @return The number of hashed bytes
+	 */
+	public long getHashedBytes() {
+		return hashedBytes;
+	}
+
+	/**
+	 * Returns the name of the file that is currently being hashed.
+	 *
+	 * @return The name of the current file, relative to the project path, or
+	 *         {@code null} if no file has been hashed yet
+	 */
+	public String getCurrentFilename() {
+		return currentFilename;
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return scannedFiles + "/" + seenFiles + " files, " + (scannedBytes / 1024) + " KiB, " + (hashedBytes / 1024) + " KiB hashed" + ((currentFilename != null) ? ", " + currentFilename : "");
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * jSite - ScanTask.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.gui;
+
+/**
+ * Handle of a single run of a {@link FileScanner}. The handle can be used to
+ * cancel the scan; a cancelled scan stops reading files as soon as possible,
+ * closes all files it has opened, and finishes with an error.
+ *
+ * @see FileScanner#startInBackground()
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ScanTask {
+
+	/** The thread running the scan, {@code null} if it has not started. */
+	private Thread thread;
+
+	/** Whether the scan has been cancelled. */
+	private volatile boolean cancelled;
+
+	/** Whether the scan has finished. */
+	private volatile boolean finished;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the scan has been cancelled.
+	 *
+	 * @return {@code true} if the scan has been cancelled, {@code false}
+	 *         otherwise
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns whether the scan has finished, either because all files have
+	 * been scanned or because it was cancelled.
+	 *
+	 * @return {@code true} if the scan has finished, {@code false} otherwise
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Cancels the scan. The thread running the scan is interrupted so that it
+	 * stops waiting for files to be hashed. Cancelling a scan that has already
+	 * finished or been cancelled does nothing.
+	 */
+	public synchronized void cancel() {
+		if (cancelled || finished) {
+			return;
+		}
+		cancelled = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Notifies this handle that the scan is now running on the current
+	 * thread.
+	 */
+	synchronized void start() {
+		thread = Thread.currentThread();
+		if (cancelled) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Marks the scan as finished, and clears the interrupt caused by
+	 * cancelling it so that the scanning thread can wait for the hashing
+	 * threads to stop.
+	 */
+	synchronized void finish() {
+		finished = true;
+		if (cancelled && (thread == Thread.currentThread())) {
+			Thread.interrupted();
+		}
+	}
+
+}
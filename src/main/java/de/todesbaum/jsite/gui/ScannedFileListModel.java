@@ -0,0 +1,306 @@
+/*
+ * jSite - ScannedFileListModel.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * List model for the files of a project that stays fast with hundreds of
+ * thousands of files. The files are kept in a sorted index; rows are not
+ * stored but looked up in the index when the list asks for them, and files
+ * are merged into the index in batches, with a single event per batch.
+ * <p>
+ * The model can be filtered. A filter starting with a slash matches the
+ * files whose names start with the rest of the filter (e.g.
+ * “/images/” matches all files in the images directory); this is a lookup in
+ * the sorted index and does not depend on the number of files. Any other
+ * filter matches the files whose names contain it, ignoring case.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class ScannedFileListModel extends AbstractListModel<ScannedFile> {
+
+	/** All files, sorted by name. */
+	private List<ScannedFile> files = new ArrayList<ScannedFile>();
+
+	/** The current filter. */
+	private String filter = "";
+
+	/** The indexes of the shown files, or {@code null} to show a range. */
+	private int[] shownIndexes;
+
+	/** The index of the first shown file, if a range is shown. */
+	private int rangeStart;
+
+	/** The index after the last shown file, if a range is shown. */
+	private int rangeEnd;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of files, including the files that are hidden by the
+	 * filter.
+	 *
+	 * @return The number of files
+	 */
+	public int getFileCount() {
+		return files.size();
+	}
+
+	/**
+	 * Returns the current filter.
+	 *
+	 * @return The current filter
+	 */
+	public String getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Sets the filter.
+	 *
+	 * @param filter
+	 *            The filter, or an empty string to show all files
+	 */
+	public void setFilter(String filter) {
+		String oldFilter = this.filter;
+		int oldSize = getSize();
+		this.filter = (filter == null) ? "" : filter;
+		if ((shownIndexes != null) && !oldFilter.isEmpty() && !oldFilter.startsWith("/") && !this.filter.startsWith("/") && this.filter.toLowerCase().contains(oldFilter.toLowerCase())) {
+			/* the new filter only matches files the old filter matched. */
+			shownIndexes = filterIndexes(shownIndexes, shownIndexes.length);
+		} else {
+			applyFilter();
+		}
+		fireChanged(oldSize);
+	}
+
+	/**
+	 * Returns the row of the given file.
+	 *
+	 * @param scannedFile
+	 *            The file to locate
+	 * @return The row of the file, or {@code -1} if the file is not shown
+	 */
+	public int indexOf(ScannedFile scannedFile) {
+		int index = Collections.binarySearch(files, scannedFile);
+		if (index < 0) {
+			return -1;
+		}
+		if (shownIndexes != null) {
+			int row = Arrays.binarySearch(shownIndexes, index);
+			return (row < 0) ? -1 : row;
+		}
+		return ((index >= rangeStart) && (index < rangeEnd)) ? index - rangeStart : -1;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds the given files, keeping the files sorted.
+	 *
+	 * @param newFiles
+	 *            The files to add
+	 */
+	public void addFiles(Collection<ScannedFile> newFiles) {
+		if (newFiles.isEmpty()) {
+			return;
+		}
+		List<ScannedFile> sortedNewFiles = new ArrayList<ScannedFile>(newFiles);
+		Collections.sort(sortedNewFiles);
+		List<ScannedFile> mergedFiles = new ArrayList<ScannedFile>(files.size() + sortedNewFiles.size());
+		int fileIndex = 0;
+		int newFileIndex = 0;
+		while ((fileIndex < files.size()) || (newFileIndex < sortedNewFiles.size())) {
+			if ((newFileIndex == sortedNewFiles.size()) || ((fileIndex < files.size()) && (files.get(fileIndex).compareTo(sortedNewFiles.get(newFileIndex)) <= 0))) {
+				mergedFiles.add(files.get(fileIndex++));
+			} else {
+				mergedFiles.add(sortedNewFiles.get(newFileIndex++));
+			}
+		}
+		replaceFiles(mergedFiles);
+	}
+
+	/**
+	 * Replaces all files with the given files.
+	 *
+	 * @param newFiles
+	 *            The new files
+	 */
+	public void setFiles(Collection<ScannedFile> newFiles) {
+		List<ScannedFile> sortedFiles = new ArrayList<ScannedFile>(newFiles);
+		Collections.sort(sortedFiles);
+		replaceFiles(sortedFiles);
+	}
+
+	/**
+	 * Removes all files.
+	 */
+	public void clear() {
+		replaceFiles(new ArrayList<ScannedFile>());
+	}
+
+	//
+	// INTERFACE ListModel
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSize() {
+		return (shownIndexes != null) ? shownIndexes.length : (rangeEnd - rangeStart);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ScannedFile getElementAt(int index) {
+		return files.get((shownIndexes != null) ? shownIndexes[index] : (rangeStart + index));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Replaces the files with the given sorted files and applies the filter.
+	 *
+	 * @param sortedFiles
+	 *            The new files, sorted by name
+	 */
+	private void replaceFiles(List<ScannedFile> sortedFiles) {
+		int oldSize = getSize();
+		files = sortedFiles;
+		applyFilter();
+		fireChanged(oldSize);
+	}
+
+	/**
+	 * Determines the shown files from the current filter.
+	 */
+	private void applyFilter() {
+		shownIndexes = null;
+		if (filter.isEmpty()) {
+			rangeStart = 0;
+			rangeEnd = files.size();
+		} else if (filter.startsWith("/")) {
+			String prefix = filter.substring(1);
+			rangeStart = lowerBound(prefix);
+			rangeEnd = lowerBound(prefix + Character.MAX_VALUE);
+		} else {
+			int[] allIndexes = new int[files.size()];
+			for (int index = 0; index < allIndexes.length; index++) {
+				allIndexes[index] = index;
+			}
+			shownIndexes = filterIndexes(allIndexes, allIndexes.length);
+		}
+	}
+
+	/**
+	 * Returns the indexes of the files that contain the current filter.
+	 *
+	 * @param indexes
+	 *            The indexes of the files to check
+	 * @param count
+	 *            The number of indexes to check
+	 * @return The indexes of the matching files
+	 */
+	private int[] filterIndexes(int[] indexes, int count) {
+		int[] matchingIndexes = new int[count];
+		int matches = 0;
+		for (int position = 0; position < count; position++) {
+			if (containsIgnoreCase(files.get(indexes[position]).getFilename(), filter)) {
+				matchingIndexes[matches++] = indexes[position];
+			}
+		}
+		return Arrays.copyOf(matchingIndexes, matches);
+	}
+
+	/**
+	 * Returns the index of the first file whose name is not smaller than the
+	 * given name.
+	 *
+	 * @param filename
+	 *            The name to search for
+	 * @return The index of the first file not smaller than the name
+	 */
+	private int lowerBound(String filename) {
+		int low = 0;
+		int high = files.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (files.get(middle).getFilename().compareTo(filename) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Notifies the listeners that the shown files have changed.
+	 *
+	 * @param oldSize
+	 *            The number of rows before the change
+	 */
+	private void fireChanged(int oldSize) {
+		int newSize = getSize();
+		if (newSize < oldSize) {
+			fireIntervalRemoved(this, newSize, oldSize - 1);
+		} else if (newSize > oldSize) {
+			fireIntervalAdded(this, oldSize, newSize - 1);
+		}
+		if (Math.min(oldSize, newSize) > 0) {
+			fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+		}
+	}
+
+	/**
+	 * Returns whether the given text contains the given part, ignoring case.
+	 *
+	 * @param text
+	 *            The text to search
+	 * @param part
+	 *            The part to search for
+	 * @return {@code true} if the text contains the part, {@code false}
+	 *         otherwise
+	 */
+	private static boolean containsIgnoreCase(String text, String part) {
+		for (int offset = 0; offset <= (text.length() - part.length()); offset++) {
+			if (text.regionMatches(true, offset, part, 0, part.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -18,15 +18,31 @@
 
 package de.todesbaum.jsite.main;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.HashCache;
 import de.todesbaum.jsite.application.InsertListener;
+import de.todesbaum.jsite.application.InsertMeter;
+import de.todesbaum.jsite.application.InsertProgress;
+import de.todesbaum.jsite.application.InsertProgressAggregator;
+import de.todesbaum.jsite.application.InsertScheduler;
+import de.todesbaum.jsite.application.InsertScheduler.InsertStarter;
+import de.todesbaum.jsite.application.InsertScheduler.Result;
 import de.todesbaum.jsite.application.Node;
 import de.todesbaum.jsite.application.Project;
 import de.todesbaum.jsite.application.ProjectInserter;
+import de.todesbaum.jsite.gui.FileScanner;
+import de.todesbaum.jsite.gui.ProjectWatcher;
+import de.todesbaum.jsite.gui.ScanProgress;
 import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
 
 /**
@@ -36,17 +52,53 @@ import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
  */
 public class CLI implements InsertListener {
 
-	/** Object used for synchronization. */
-	private Object lockObject = new Object();
-
 	/** Writer for the console. */
 	private PrintWriter outputWriter = new PrintWriter(System.out, true);
 
-	/** The freenet interface. */
-	private Freenet7Interface freenetInterface;
+	/** The freenet interfaces, by node. */
+	private final Map<Node, Freenet7Interface> freenetInterfaces = new HashMap<Node, Freenet7Interface>();
+
+	/** The project inserters of the running inserts, by project. */
+	private final Map<Project, ProjectInserter> projectInserters = new ConcurrentHashMap<Project, ProjectInserter>();
+
+	/** The meters of the running inserts, by project. */
+	private final Map<Project, InsertMeter> insertMeters = new ConcurrentHashMap<Project, InsertMeter>();
+
+	/** Limits the progress output to one line per second. */
+	private final InsertProgressAggregator insertProgressAggregator = new InsertProgressAggregator(1, TimeUnit.SECONDS, this::printProgress);
+
+	/** Whether to rehash all files. */
+	private boolean verifyHashes;
+
+	/** The number of files to hash in parallel. */
+	private int scanParallelism;
+
+	/** Whether to insert files while scanning. */
+	private boolean pipelined;
+
+	/** Whether to insert projects as persistent requests. */
+	private boolean resumable;
+
+	/** Whether to insert every directory as a manifest of its own. */
+	private boolean hierarchical;
+
+	/** The number of projects to insert at the same time. */
+	private int parallelInserts;
+
+	/** Whether to insert projects again when their files change. */
+	private boolean watch;
 
-	/** The project inserter. */
-	private ProjectInserter projectInserter = new ProjectInserter();
+	/** The time without changes before a watched project is inserted. */
+	private long quietPeriod;
+
+	/** The project watchers, by project. */
+	private final Map<Project, ProjectWatcher> projectWatchers = new ConcurrentHashMap<Project, ProjectWatcher>();
+
+	/** The watched projects that are waiting to be inserted. */
+	private final Set<Project> queuedProjects = ConcurrentHashMap.newKeySet();
+
+	/** The insert scheduler. */
+	private InsertScheduler insertScheduler;
 
 	/** The list of nodes. */
 	private Node[] nodes;
@@ -54,11 +106,8 @@ public class CLI implements InsertListener {
 	/** The projects. */
 	private List<Project> projects;
 
-	/** Whether the insert has finished. */
-	private boolean finished = false;
-
-	/** Whether the insert finished successfully. */
-	private boolean success;
+	/** The configuration. */
+	private Configuration configuration;
 
 	/**
 	 * Creates a new command-line interface.
@@ -76,17 +125,54 @@ public class CLI implements InsertListener {
 			outputWriter.println("  --local-directory=<local directory>");
 			outputWriter.println("  --path=<path>");
 			outputWriter.println("  --edition=<edition>");
+			outputWriter.println("  --verify-hashes");
+			outputWriter.println("  --scan-threads=<number of threads>");
+			outputWriter.println("  --pipelined");
+			outputWriter.println("  --resumable");
+			outputWriter.println("  --hierarchical");
+			outputWriter.println("  --parallel=<number of projects>");
+			outputWriter.println("  --max-inserts-per-node=<number of projects>");
+			outputWriter.println("  --retries=<number of retries>");
+			outputWriter.println("  --watch");
+			outputWriter.println("  --quiet-period=<seconds>");
 			outputWriter.println("\nA project gets inserted when a new project is loaded on the command line,");
 			outputWriter.println("or when the command line is finished. --local-directory, --path, and --edition");
-			outputWriter.println("override the parameters in the project.");
+			outputWriter.println("override the parameters in the project. --verify-hashes rehashes all files");
+			outputWriter.println("instead of trusting the hash cache. --scan-threads overrides the number of");
+			outputWriter.println("files that are hashed in parallel (0 chooses automatically). --pipelined");
+			outputWriter.println("inserts every file as soon as it has been hashed. --resumable inserts the");
+			outputWriter.println("project as a persistent request on the node's global queue; if the insert is");
+			outputWriter.println("interrupted, inserting the project again resumes it. --hierarchical inserts");
+			outputWriter.println("every directory as a manifest of its own, and reuses the manifests of");
+			outputWriter.println("directories that did not change. --parallel inserts several projects at the");
+			outputWriter.println("same time, --max-inserts-per-node limits the number of projects inserted to");
+			outputWriter.println("the same node at the same time (0 for no limit), and --retries sets how often");
+			outputWriter.println("a failed project is tried again after all other projects have been started.");
+			outputWriter.println("--watch keeps running after the first insert and inserts a project again once");
+			outputWriter.println("its files have not changed for --quiet-period seconds; only changed files are");
+			outputWriter.println("hashed again.");
 			return;
 		}
 
 		String configFile = System.getProperty("user.home") + "/.jSite/config7";
+		Integer parallelArgument = null;
+		Integer maxInsertsPerNodeArgument = null;
+		Integer retriesArgument = null;
+		Integer quietPeriodArgument = null;
 		for (String argument : args) {
 			String value = argument.substring(argument.indexOf('=') + 1).trim();
 			if (argument.startsWith("--config-file=")) {
 				configFile = value;
+			} else if (argument.startsWith("--parallel=")) {
+				parallelArgument = Integer.parseInt(value);
+			} else if (argument.startsWith("--max-inserts-per-node=")) {
+				maxInsertsPerNodeArgument = Integer.parseInt(value);
+			} else if (argument.startsWith("--retries=")) {
+				retriesArgument = Integer.parseInt(value);
+			} else if (argument.equals("--watch")) {
+				watch = true;
+			} else if (argument.startsWith("--quiet-period=")) {
+				quietPeriodArgument = Integer.parseInt(value);
 			}
 		}
 
@@ -94,25 +180,44 @@ public class CLI implements InsertListener {
 		if (configFile != null) {
 			configurationLocator.setCustomLocation(configFile);
 		}
-		Configuration configuration = new Configuration(configurationLocator, configurationLocator.findPreferredLocation());
+		configuration = new Configuration(configurationLocator, configurationLocator.findPreferredLocation());
 
-		projectInserter.addInsertListener(this);
 		projects = configuration.getProjects();
 		Node node = configuration.getSelectedNode();
 		nodes = configuration.getNodes();
 
-		freenetInterface = new Freenet7Interface();
-		freenetInterface.setNode(node);
-
-		projectInserter.setFreenetInterface(freenetInterface);
-        projectInserter.setPriority(configuration.getPriority());
+		scanParallelism = configuration.getScanParallelism();
+		pipelined = configuration.isPipelinedInsert();
+		resumable = configuration.isResumableInsert();
+		hierarchical = configuration.isHierarchicalInsert();
+		parallelInserts = (parallelArgument != null) ? parallelArgument : configuration.getParallelInserts();
+		int maxInsertsPerNode = (maxInsertsPerNodeArgument != null) ? maxInsertsPerNodeArgument : configuration.getMaxInsertsPerNode();
+		int retries = (retriesArgument != null) ? retriesArgument : configuration.getInsertRetries();
+		quietPeriod = ((quietPeriodArgument != null) ? quietPeriodArgument : configuration.getWatchQuietPeriod()) * 1000L;
+		insertScheduler = new InsertScheduler(parallelInserts, maxInsertsPerNode, retries);
 
 		Project currentProject = null;
 		for (String argument : args) {
-			if (argument.startsWith("--config-file=")) {
+			if (argument.startsWith("--config-file=") || argument.startsWith("--parallel=") || argument.startsWith("--max-inserts-per-node=") || argument.startsWith("--retries=") || argument.equals("--watch") || argument.startsWith("--quiet-period=")) {
 				/* we already parsed this one. */
 				continue;
 			}
+			if (argument.equals("--verify-hashes")) {
+				verifyHashes = true;
+				continue;
+			}
+			if (argument.equals("--pipelined")) {
+				pipelined = true;
+				continue;
+			}
+			if (argument.equals("--resumable")) {
+				resumable = true;
+				continue;
+			}
+			if (argument.equals("--hierarchical")) {
+				hierarchical = true;
+				continue;
+			}
 			String value = argument.substring(argument.indexOf('=') + 1).trim();
 			if (argument.startsWith("--node=")) {
 				Node newNode = getNode(value);
@@ -121,14 +226,9 @@ public class CLI implements InsertListener {
 					return;
 				}
 				node = newNode;
-				freenetInterface.setNode(node);
 			} else if (argument.startsWith("--project=")) {
 				if (currentProject != null) {
-					if (insertProject(currentProject)) {
-						outputWriter.println("Project \"" + currentProject.getName() + "\" successfully inserted.");
-					} else {
-						outputWriter.println("Project \"" + currentProject.getName() + "\" was not successfully inserted.");
-					}
+					insertProject(currentProject, node);
 					currentProject = null;
 				}
 				currentProject = getProject(value);
@@ -147,6 +247,8 @@ public class CLI implements InsertListener {
 					return;
 				}
 				currentProject.setPath(value);
+			} else if (argument.startsWith("--scan-threads=")) {
+				scanParallelism = Integer.parseInt(value);
 			} else if (argument.startsWith("--edition=")) {
 				if (currentProject == null) {
 					outputWriter.println("You can't specify --edition before --project.");
@@ -159,18 +261,42 @@ public class CLI implements InsertListener {
 			}
 		}
 
-		int errorCode = 1;
 		if (currentProject != null) {
-			if (insertProject(currentProject)) {
-				outputWriter.println("Project \"" + currentProject.getName() + "\" successfully inserted.");
-				errorCode = 0;
-			} else {
-				outputWriter.println("Project \"" + currentProject.getName() + "\" was not successfully inserted.");
+			insertProject(currentProject, node);
+		}
+
+		if (watch) {
+			outputWriter.println("Watching projects for changes...");
+			try {
+				/* inserts are started by the project watchers from now on. */
+				Thread.currentThread().join();
+			} catch (InterruptedException ie1) {
+				outputWriter.println("Interrupted while watching projects.");
+			}
+			System.exit(1);
+		}
+
+		int errorCode = 1;
+		try {
+			List<Result> results = insertScheduler.awaitResults();
+			errorCode = results.isEmpty() ? 1 : 0;
+			for (Result result : results) {
+				String attempts = (result.getAttempts() > 1) ? " (" + result.getAttempts() + " attempts)" : "";
+				if (result.isSuccess()) {
+					outputWriter.println("Project \"" + result.getProject().getName() + "\" successfully inserted." + attempts);
+				} else {
+					outputWriter.println("Project \"" + result.getProject().getName() + "\" was not successfully inserted." + attempts);
+					errorCode = 1;
+				}
 			}
+		} catch (InterruptedException ie1) {
+			outputWriter.println("Interrupted while waiting for inserts.");
 		}
 
-		configuration.setProjects(projects);
-		configuration.save();
+		synchronized (configuration) {
+			configuration.setProjects(projects);
+			configuration.save();
+		}
 
 		System.exit(errorCode);
 	}
@@ -208,36 +334,157 @@ public class CLI implements InsertListener {
 	}
 
 	/**
-	 * Inserts the given project.
+	 * Returns the freenet interface for the given node. All inserts to the
+	 * same node share the same freenet interface.
+	 *
+	 * @param node
+	 *            The node
+	 * @return The freenet interface for the node
+	 */
+	private Freenet7Interface getFreenetInterface(Node node) {
+		synchronized (freenetInterfaces) {
+			Freenet7Interface freenetInterface = freenetInterfaces.get(node);
+			if (freenetInterface == null) {
+				freenetInterface = new Freenet7Interface();
+				freenetInterface.setNode(node);
+				freenetInterfaces.put(node, freenetInterface);
+			}
+			return freenetInterface;
+		}
+	}
+
+	/**
+	 * Submits the insert of the given project to the given node. In watch
+	 * mode, a {@link ProjectWatcher} is started for the project first, and
+	 * the project is submitted again whenever its files change.
 	 *
-	 * @param currentProject
+	 * @param project
 	 *            The project to insert
-	 * @return <code>true</code> if the insert finished successfully,
-	 *         <code>false</code> otherwise
+	 * @param node
+	 *            The node to insert the project to
 	 */
-	private boolean insertProject(Project currentProject) {
-		if (!freenetInterface.hasNode()) {
-			outputWriter.println("Node is not running!");
-			return false;
+	private void insertProject(Project project, Node node) {
+		if (!watch) {
+			insertScheduler.submit(project, node, createInsertStarter(null));
+			return;
+		}
+		ProjectWatcher projectWatcher = new ProjectWatcher(project, quietPeriod, (changedProject, files, changedFilenames) -> {
+			outputWriter.println(getPrefix(changedProject) + changedFilenames.size() + " files of project \"" + changedProject.getName() + "\" changed.");
+			submitWatchedProject(changedProject, node);
+		});
+		projectWatcher.setHashCacheDirectory(verifyHashes ? null : configuration.getHashCacheDirectory());
+		projectWatcher.setScanParallelism(scanParallelism);
+		try {
+			projectWatcher.start();
+		} catch (IOException ioe1) {
+			outputWriter.println("Could not watch project \"" + project.getName() + "\": " + ioe1.getMessage());
+			return;
+		}
+		projectWatchers.put(project, projectWatcher);
+		submitWatchedProject(project, node);
+	}
+
+	/**
+	 * Submits the insert of a watched project unless an insert of the
+	 * project is already waiting to be started; that insert will pick up
+	 * the latest files of the project.
+	 *
+	 * @param project
+	 *            The project to insert
+	 * @param node
+	 *            The node to insert the project to
+	 */
+	private void submitWatchedProject(Project project, Node node) {
+		if (queuedProjects.add(project)) {
+			insertScheduler.submit(project, node, createInsertStarter(projectWatchers.get(project)));
 		}
-		projectInserter.setProject(currentProject);
-		projectInserter.start(new ProgressListener() {
+	}
 
-			@Override
-			public void onProgress(long copied, long length) {
-				System.out.print("Uploaded: " + copied + " / " + length + " bytes...\r");
+	/**
+	 * Creates the starter for the insert of a project. The starter uses the
+	 * settings that are current when this method is called, and creates a
+	 * new {@link ProjectInserter} for every attempt.
+	 *
+	 * @param projectWatcher
+	 *            The watcher whose files to insert, or {@code null} to scan
+	 *            the project
+	 * @return The insert starter
+	 */
+	private InsertStarter createInsertStarter(ProjectWatcher projectWatcher) {
+		boolean verifyHashes = this.verifyHashes;
+		int scanParallelism = this.scanParallelism;
+		boolean pipelined = this.pipelined;
+		boolean resumable = this.resumable;
+		boolean hierarchical = this.hierarchical;
+		return (project, node, attempt, insertListener) -> {
+			Freenet7Interface freenetInterface = getFreenetInterface(node);
+			if (!freenetInterface.hasNode()) {
+				outputWriter.println("Node is not running!");
+				insertListener.projectInsertFinished(project, false, null);
+				return;
 			}
-		});
-		synchronized (lockObject) {
-			while (!finished) {
-				try {
-					lockObject.wait();
-				} catch (InterruptedException e) {
-					/* ignore, we're in a loop. */
-				}
+			ProjectInserter projectInserter = new ProjectInserter();
+			projectInserter.addInsertListener(this);
+			projectInserter.addInsertListener(insertListener);
+			projectInserter.setFreenetInterface(freenetInterface);
+			projectInserter.setPriority(configuration.getPriority());
+			projectInserter.setHashCacheDirectory(configuration.getHashCacheDirectory());
+			projectInserter.setSplitThreshold(configuration.getSplitThreshold() * 1024L * 1024L);
+			projectInserter.setVerifyHashes(verifyHashes);
+			projectInserter.setScanParallelism(scanParallelism);
+			projectInserter.setPipelined(pipelined);
+			projectInserter.setResumable(resumable);
+			projectInserter.setHierarchical(hierarchical);
+			projectInserter.setProject(project);
+			if (projectWatcher != null) {
+				/* changes from now on need another insert. */
+				queuedProjects.remove(project);
+				projectInserter.setScannedFiles(projectWatcher.getFiles());
 			}
+			projectInserters.put(project, projectInserter);
+			InsertMeter insertMeter = new InsertMeter(project);
+			insertMeters.put(project, insertMeter);
+			projectInserter.start(new ProgressListener() {
+
+				@Override
+				public void onProgress(long copied, long length) {
+					long now = System.currentTimeMillis();
+					insertMeter.bytesUploaded(copied, now);
+					System.out.print(getPrefix(project) + "Uploaded: " + copied + " / " + length + " bytes (" + (long) (insertMeter.getByteMeter().getCurrentRate(now) / 1024) + " KiB/s, " + InsertMeter.formatDuration(insertMeter.getByteMeter().getRemainingTime(length, now)) + " remaining)...\r");
+				}
+			});
+		};
+	}
+
+	/**
+	 * Prints the given progress of an insert.
+	 *
+	 * @param insertProgress
+	 *            The progress to print
+	 */
+	private void printProgress(InsertProgress insertProgress) {
+		if (insertProgress.getTotal() == 0) {
+			return;
 		}
-		return success;
+		InsertMeter insertMeter = insertMeters.get(insertProgress.getProject());
+		String throughput = "";
+		if (insertMeter != null) {
+			long now = System.currentTimeMillis();
+			throughput = ", " + (long) (insertMeter.getBlockMeter().getCurrentRate(now) * 32) + " KiB/s, ETA " + InsertMeter.formatDuration(insertMeter.getRemainingTime(now));
+		}
+		outputWriter.println(getPrefix(insertProgress.getProject()) + "Progress: " + insertProgress + throughput);
+	}
+
+	/**
+	 * Returns the prefix of the output lines of the given project. If only
+	 * one project is inserted at a time, the output lines have no prefix.
+	 *
+	 * @param project
+	 *            The project
+	 * @return The prefix of the output lines
+	 */
+	private String getPrefix(Project project) {
+		return (parallelInserts > 1) ? "[" + project.getName() + "] " : "";
 	}
 
 	//
@@ -249,7 +496,20 @@ public class CLI implements InsertListener {
 	 */
 	@Override
 	public void projectInsertStarted(Project project) {
-		outputWriter.println("Starting Insert of project \"" + project.getName() + "\".");
+		outputWriter.println(getPrefix(project) + "Starting Insert of project \"" + project.getName() + "\".");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectScanProgress(Project project, ScanProgress scanProgress) {
+		InsertMeter insertMeter = insertMeters.get(project);
+		/* once the upload has started, its progress is printed instead. */
+		if ((insertMeter == null) || (insertMeter.getByteMeter().getValue() > 0)) {
+			return;
+		}
+		System.out.print(getPrefix(project) + "Scanning: " + scanProgress + "...\r");
 	}
 
 	/**
@@ -257,7 +517,20 @@ public class CLI implements InsertListener {
 	 */
 	@Override
 	public void projectUploadFinished(Project project) {
-		outputWriter.println("Project \"" + project.getName() + "\" has been uploaded, starting insert...");
+		/* the scan is finished now, even for pipelined inserts. */
+		FileScanner fileScanner = projectInserters.get(project).getFileScanner();
+		HashCache hashCache = (fileScanner != null) ? fileScanner.getHashCache() : null;
+		if (hashCache != null) {
+			outputWriter.println(getPrefix(project) + "Hash cache: " + hashCache.getHits() + " hits, " + hashCache.getMisses() + " misses.");
+		}
+		outputWriter.println(getPrefix(project) + "Project \"" + project.getName() + "\" has been uploaded, starting insert...");
+		if (project.getInsertIdentifier() != null) {
+			/* save the request identifier so the insert can be resumed. */
+			synchronized (configuration) {
+				configuration.setProjects(projects);
+				configuration.save();
+			}
+		}
 	}
 
 	/**
@@ -265,7 +538,7 @@ public class CLI implements InsertListener {
 	 */
 	@Override
 	public void projectURIGenerated(Project project, String uri) {
-		outputWriter.println("URI: " + uri);
+		outputWriter.println(getPrefix(project) + "URI: " + uri);
 	}
 
 	/**
@@ -273,10 +546,12 @@ public class CLI implements InsertListener {
 	 */
 	@Override
 	public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
-		if (total == 0) {
-			return;
+		InsertProgress insertProgress = new InsertProgress(project, succeeded, failed, fatal, total, finalized);
+		InsertMeter insertMeter = insertMeters.get(project);
+		if (insertMeter != null) {
+			insertMeter.progressChanged(insertProgress);
 		}
-		outputWriter.println("Progress: " + succeeded + " done, " + failed + " failed, " + fatal + " fatal, " + total + " total" + (finalized ? " (finalized)" : "") + ", " + ((succeeded + failed + fatal) * 100 / total) + "%");
+		insertProgressAggregator.progressChanged(insertProgress);
 	}
 
 	/**
@@ -284,11 +559,16 @@ public class CLI implements InsertListener {
 	 */
 	@Override
 	public void projectInsertFinished(Project project, boolean success, Throwable cause) {
-		outputWriter.println("Request URI: " + project.getFinalRequestURI(0));
-		finished = true;
-		this.success = success;
-		synchronized (lockObject) {
-			lockObject.notify();
+		insertProgressAggregator.flush(project);
+		outputWriter.println(getPrefix(project) + "Request URI: " + project.getFinalRequestURI(0));
+		projectInserters.remove(project);
+		insertMeters.remove(project);
+		if (watch) {
+			/* save the new edition, the command line is never finished. */
+			synchronized (configuration) {
+				configuration.setProjects(projects);
+				configuration.save();
+			}
 		}
 	}
 
@@ -39,6 +39,7 @@ import net.pterodactylus.util.io.Closer;
 import net.pterodactylus.util.io.StreamCopier;
 import net.pterodactylus.util.xml.SimpleXML;
 import net.pterodactylus.util.xml.XML;
+import de.todesbaum.jsite.application.DirectoryManifest;
 import de.todesbaum.jsite.application.FileOption;
 import de.todesbaum.jsite.application.Node;
 import de.todesbaum.jsite.application.Project;
@@ -326,6 +327,7 @@ public class Configuration {
 					}
 					project.setIndexFile(indexFile);
 					project.setLastInsertionTime(Long.parseLong(projectNode.getValue("last-insertion-time", "0")));
+					project.setLastInsertDuration(Long.parseLong(projectNode.getValue("last-insert-duration", "0")));
 					project.setLocalPath(projectNode.getValue("local-path", ""));
 					project.setName(projectNode.getValue("name", ""));
 					project.setPath(projectNode.getValue("path", ""));
@@ -341,6 +343,17 @@ public class Configuration {
 						project.setIgnoreHiddenFiles(true);
 					}
 					project.setAlwaysForceInsert(Boolean.parseBoolean(projectNode.getValue("always-force-insert", "false")));
+					project.setInsertIdentifier(projectNode.getValue("insert-identifier", null));
+					Map<String, String> insertHashes = new HashMap<String, String>();
+					SimpleXML insertHashesNode = projectNode.getNode("insert-hashes");
+					if (insertHashesNode != null) {
+						for (SimpleXML fileNode : insertHashesNode.getNodes("file")) {
+							insertHashes.put(fileNode.getValue("filename", ""), fileNode.getValue("hash", ""));
+						}
+					}
+					project.setInsertHashes(insertHashes);
+					project.setSplitPattern(projectNode.getValue("split-pattern", ""));
+					project.setCompressionCodecs(projectNode.getValue("compression-codecs", ""));
 
 					/* load last insert hashes. */
 					Map<String, FileOption> fileOptions = new HashMap<String, FileOption>();
@@ -354,8 +367,9 @@ public class Configuration {
 							if (fileNode.getNode("last-insert-filename") != null) {
 								lastInsertFilename = fileNode.getNode("last-insert-filename").getValue();
 							}
+							boolean lastInsertSplit = Boolean.parseBoolean(fileNode.getValue("last-insert-split", "false"));
 							FileOption fileOption = project.getFileOption(filename);
-							fileOption.setLastInsertHash(lastInsertHash).setLastInsertEdition(lastInsertEdition).setLastInsertFilename(lastInsertFilename);
+							fileOption.setLastInsertHash(lastInsertHash).setLastInsertSplit(lastInsertSplit).setLastInsertEdition(lastInsertEdition).setLastInsertFilename(lastInsertFilename);
 							fileOptions.put(filename, fileOption);
 						}
 					}
@@ -375,10 +389,21 @@ public class Configuration {
 								fileOption.setChangedName(fileOptionNode.getNode("changed-name").getValue());
 							}
 							fileOption.setMimeType(fileOptionNode.getValue("mime-type", ""));
+							fileOption.setSplitInsert(Boolean.parseBoolean(fileOptionNode.getValue("split-insert", "false")));
 							fileOptions.put(filename, fileOption);
 						}
 					}
 					project.setFileOptions(fileOptions);
+
+					/* load the manifests of inserted directories. */
+					Map<String, DirectoryManifest> directoryManifests = new HashMap<String, DirectoryManifest>();
+					SimpleXML directoryManifestsNode = projectNode.getNode("directory-manifests");
+					if (directoryManifestsNode != null) {
+						for (SimpleXML directoryNode : directoryManifestsNode.getNodes("directory")) {
+							directoryManifests.put(directoryNode.getValue("path", ""), new DirectoryManifest(directoryNode.getValue("hash", ""), directoryNode.getValue("key", "")));
+						}
+					}
+					project.setDirectoryManifests(directoryManifests);
 				} catch (NumberFormatException nfe1) {
 					nfe1.printStackTrace();
 				}
@@ -401,6 +426,7 @@ public class Configuration {
 			projectNode.append("description", project.getDescription());
 			projectNode.append("index-file", project.getIndexFile());
 			projectNode.append("last-insertion-time", String.valueOf(project.getLastInsertionTime()));
+			projectNode.append("last-insert-duration", String.valueOf(project.getLastInsertDuration()));
 			projectNode.append("local-path", project.getLocalPath());
 			projectNode.append("name", project.getName());
 			projectNode.append("path", project.getPath());
@@ -408,6 +434,17 @@ public class Configuration {
 			projectNode.append("request-uri", project.getRequestURI());
 			projectNode.append("ignore-hidden-files", String.valueOf(project.isIgnoreHiddenFiles()));
 			projectNode.append("always-force-insert", String.valueOf(project.isAlwaysForceInsert()));
+			if (project.getInsertIdentifier() != null) {
+				projectNode.append("insert-identifier", project.getInsertIdentifier());
+				SimpleXML insertHashesNode = projectNode.append("insert-hashes");
+				for (Entry<String, String> insertHash : project.getInsertHashes().entrySet()) {
+					SimpleXML fileNode = insertHashesNode.append("file");
+					fileNode.append("filename", insertHash.getKey());
+					fileNode.append("hash", insertHash.getValue());
+				}
+			}
+			projectNode.append("split-pattern", project.getSplitPattern());
+			projectNode.append("compression-codecs", project.getCompressionCodecs());
 
 			/* store last insert hashes. */
 			SimpleXML lastInsertHashesNode = projectNode.append("last-insert-hashes");
@@ -420,6 +457,7 @@ public class Configuration {
 				fileNode.append("last-insert-hash", fileOption.getValue().getLastInsertHash());
 				fileNode.append("last-insert-edition", String.valueOf(fileOption.getValue().getLastInsertEdition()));
 				fileNode.append("last-insert-filename", fileOption.getValue().getLastInsertFilename());
+				fileNode.append("last-insert-split", String.valueOf(fileOption.getValue().isLastInsertSplit()));
 			}
 
 			SimpleXML fileOptionsNode = projectNode.append("file-options");
@@ -435,8 +473,18 @@ public class Configuration {
 					fileOptionNode.append("custom-key", fileOption.getCustomKey());
 					fileOptionNode.append("changed-name", fileOption.getChangedName().orElse(null));
 					fileOptionNode.append("mime-type", fileOption.getMimeType());
+					fileOptionNode.append("split-insert", String.valueOf(fileOption.isSplitInsert()));
 				}
 			}
+
+			/* store the manifests of inserted directories. */
+			SimpleXML directoryManifestsNode = projectNode.append("directory-manifests");
+			for (Entry<String, DirectoryManifest> directoryManifest : project.getDirectoryManifests().entrySet()) {
+				SimpleXML directoryNode = directoryManifestsNode.append("directory");
+				directoryNode.append("path", directoryManifest.getKey());
+				directoryNode.append("hash", directoryManifest.getValue().getHash());
+				directoryNode.append("key", directoryManifest.getValue().getKey());
+			}
 		}
 		rootNode.replace(projectsNode);
 	}
@@ -582,6 +630,60 @@ public class Configuration {
 		}
 	}
 
+	/**
+	 * Returns the directory the hash caches of the projects are stored in. The
+	 * directory is located next to the configuration file.
+	 *
+	 * @return The hash cache directory
+	 */
+	public File getHashCacheDirectory() {
+		File configurationFile = new File(configurationLocator.getFile(configurationLocation));
+		return new File(configurationFile.getAbsoluteFile().getParentFile(), "jSite-hash-cache");
+	}
+
+	/**
+	 * Returns the file the daemon stores its job queue in. The file is
+	 * located next to the configuration file.
+	 *
+	 * @return The job queue file of the daemon
+	 */
+	public File getDaemonJobFile() {
+		File configurationFile = new File(configurationLocator.getFile(configurationLocation));
+		return new File(configurationFile.getAbsoluteFile().getParentFile(), "jSite-daemon-jobs");
+	}
+
+	/**
+	 * Returns the file that contains the token clients of the daemon have to
+	 * send with every request. The file is located next to the job queue.
+	 *
+	 * @return The token file of the daemon
+	 */
+	public File getDaemonTokenFile() {
+		return new File(getDaemonJobFile().getParentFile(), "jSite-daemon-token");
+	}
+
+	/**
+	 * Returns the port the daemon listens on. The daemon only accepts
+	 * connections from the local host.
+	 *
+	 * @return The port of the daemon
+	 */
+	public int getDaemonPort() {
+		return getNodeIntValue(new String[] { "daemon-port" }, 9490);
+	}
+
+	/**
+	 * Sets the port the daemon listens on.
+	 *
+	 * @param daemonPort
+	 *            The port of the daemon
+	 * @return This configuration
+	 */
+	public Configuration setDaemonPort(int daemonPort) {
+		rootNode.replace("daemon-port", String.valueOf(daemonPort));
+		return this;
+	}
+
 	/**
 	 * Returns whether to use the “early encode“ flag for the insert.
 	 *
@@ -626,4 +728,220 @@ public class Configuration {
 		return this;
 	}
 
+	/**
+	 * Returns the number of files to hash in parallel when scanning a
+	 * project.
+	 *
+	 * @return The number of files to hash in parallel, or {@code 0} to choose
+	 *         automatically
+	 */
+	public int getScanParallelism() {
+		return getNodeIntValue(new String[] { "scan-parallelism" }, 0);
+	}
+
+	/**
+	 * Sets the number of files to hash in parallel when scanning a project.
+	 *
+	 * @param scanParallelism
+	 *            The number of files to hash in parallel, or {@code 0} to
+	 *            choose automatically
+	 * @return This configuration
+	 */
+	public Configuration setScanParallelism(int scanParallelism) {
+		rootNode.replace("scan-parallelism", String.valueOf(scanParallelism));
+		return this;
+	}
+
+	/**
+	 * Returns the size above which files that are marked for splitting are
+	 * split into chunks.
+	 *
+	 * @return The split threshold, in MiB
+	 */
+	public int getSplitThreshold() {
+		return getNodeIntValue(new String[] { "split-threshold" }, 64);
+	}
+
+	/**
+	 * Sets the size above which files that are marked for splitting are split
+	 * into chunks.
+	 *
+	 * @param splitThreshold
+	 *            The split threshold, in MiB
+	 * @return This configuration
+	 */
+	public Configuration setSplitThreshold(int splitThreshold) {
+		rootNode.replace("split-threshold", String.valueOf(splitThreshold));
+		return this;
+	}
+
+	/**
+	 * Returns the number of projects the command-line interface inserts at
+	 * the same time.
+	 *
+	 * @return The number of concurrent project inserts
+	 */
+	public int getParallelInserts() {
+		return getNodeIntValue(new String[] { "parallel-inserts" }, 1);
+	}
+
+	/**
+	 * Sets the number of projects the command-line interface inserts at the
+	 * same time.
+	 *
+	 * @param parallelInserts
+	 *            The number of concurrent project inserts
+	 * @return This configuration
+	 */
+	public Configuration setParallelInserts(int parallelInserts) {
+		rootNode.replace("parallel-inserts", String.valueOf(parallelInserts));
+		return this;
+	}
+
+	/**
+	 * Returns the number of projects that are inserted to the same node at
+	 * the same time.
+	 *
+	 * @return The number of concurrent project inserts per node, or
+	 *         {@code 0} for no limit
+	 */
+	public int getMaxInsertsPerNode() {
+		return getNodeIntValue(new String[] { "max-inserts-per-node" }, 0);
+	}
+
+	/**
+	 * Sets the number of projects that are inserted to the same node at the
+	 * same time.
+	 *
+	 * @param maxInsertsPerNode
+	 *            The number of concurrent project inserts per node, or
+	 *            {@code 0} for no limit
+	 * @return This configuration
+	 */
+	public Configuration setMaxInsertsPerNode(int maxInsertsPerNode) {
+		rootNode.replace("max-inserts-per-node", String.valueOf(maxInsertsPerNode));
+		return this;
+	}
+
+	/**
+	 * Returns how often the command-line interface retries a failed project
+	 * insert.
+	 *
+	 * @return The number of retries
+	 */
+	public int getInsertRetries() {
+		return getNodeIntValue(new String[] { "insert-retries" }, 0);
+	}
+
+	/**
+	 * Sets how often the command-line interface retries a failed project
+	 * insert.
+	 *
+	 * @param insertRetries
+	 *            The number of retries
+	 * @return This configuration
+	 */
+	public Configuration setInsertRetries(int insertRetries) {
+		rootNode.replace("insert-retries", String.valueOf(insertRetries));
+		return this;
+	}
+
+	/**
+	 * Returns the time without changes after which the command-line interface
+	 * inserts a watched project again.
+	 *
+	 * @return The quiet period, in seconds
+	 */
+	public int getWatchQuietPeriod() {
+		return getNodeIntValue(new String[] { "watch-quiet-period" }, 10);
+	}
+
+	/**
+	 * Sets the time without changes after which the command-line interface
+	 * inserts a watched project again.
+	 *
+	 * @param watchQuietPeriod
+	 *            The quiet period, in seconds
+	 * @return This configuration
+	 */
+	public Configuration setWatchQuietPeriod(int watchQuietPeriod) {
+		rootNode.replace("watch-quiet-period", String.valueOf(watchQuietPeriod));
+		return this;
+	}
+
+	/**
+	 * Returns whether files are inserted while the project is still being
+	 * scanned.
+	 *
+	 * @return {@code true} to insert files while scanning, {@code false} to
+	 *         insert all files after scanning
+	 */
+	public boolean isPipelinedInsert() {
+		return getNodeBooleanValue(new String[] { "pipelined-insert" }, false);
+	}
+
+	/**
+	 * Sets whether files are inserted while the project is still being
+	 * scanned.
+	 *
+	 * @param pipelinedInsert
+	 *            {@code true} to insert files while scanning, {@code false} to
+	 *            insert all files after scanning
+	 * @return This configuration
+	 */
+	public Configuration setPipelinedInsert(boolean pipelinedInsert) {
+		rootNode.replace("pipelined-insert", String.valueOf(pipelinedInsert));
+		return this;
+	}
+
+	/**
+	 * Returns whether every directory of a project is inserted as a manifest
+	 * of its own.
+	 *
+	 * @return {@code true} to insert every directory as a manifest of its own,
+	 *         {@code false} to insert a single manifest
+	 */
+	public boolean isHierarchicalInsert() {
+		return getNodeBooleanValue(new String[] { "hierarchical-insert" }, false);
+	}
+
+	/**
+	 * Sets whether every directory of a project is inserted as a manifest of
+	 * its own.
+	 *
+	 * @param hierarchicalInsert
+	 *            {@code true} to insert every directory as a manifest of its
+	 *            own, {@code false} to insert a single manifest
+	 * @return This configuration
+	 */
+	public Configuration setHierarchicalInsert(boolean hierarchicalInsert) {
+		rootNode.replace("hierarchical-insert", String.valueOf(hierarchicalInsert));
+		return this;
+	}
+
+	/**
+	 * Returns whether projects are inserted as persistent requests on the
+	 * node’s global queue, so that an interrupted insert can be resumed.
+	 *
+	 * @return {@code true} to insert projects as resumable requests,
+	 *         {@code false} to bind inserts to the connection
+	 */
+	public boolean isResumableInsert() {
+		return getNodeBooleanValue(new String[] { "resumable-insert" }, false);
+	}
+
+	/**
+	 * Sets whether projects are inserted as persistent requests on the
+	 * node’s global queue, so that an interrupted insert can be resumed.
+	 *
+	 * @param resumableInsert
+	 *            {@code true} to insert projects as resumable requests,
+	 *            {@code false} to bind inserts to the connection
+	 * @return This configuration
+	 */
+	public Configuration setResumableInsert(boolean resumableInsert) {
+		rootNode.replace("resumable-insert", String.valueOf(resumableInsert));
+		return this;
+	}
+
 }
@@ -0,0 +1,551 @@
+/*
+ * jSite - Daemon.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.main;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.InsertListener;
+import de.todesbaum.jsite.application.InsertScheduler;
+import de.todesbaum.jsite.application.Node;
+import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.application.ProjectInserter;
+import de.todesbaum.jsite.main.ConfigurationLocator.ConfigurationLocation;
+import de.todesbaum.jsite.main.Job.Status;
+import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
+
+/**
+ * Headless daemon that inserts projects on request. The daemon loads the
+ * configuration once and keeps a pool of connections to every node open
+ * between inserts; all inserts run over these shared connections, and
+ * cancelled or failed inserts are removed from the node instead of closing
+ * the connection. Jobs are submitted through an HTTP interface that only
+ * listens on the loopback interface:
+ * <ul>
+ * <li><code>POST /jobs?project=&lt;name&gt;[&amp;node=&lt;name&gt;]</code>
+ * queues the insert of a project and returns the new job. If the project is
+ * already queued for the same node, the existing job is returned
+ * instead.</li>
+ * <li><code>GET /jobs</code> returns all jobs.</li>
+ * <li><code>GET /jobs/&lt;identifier&gt;</code> returns a single job.</li>
+ * </ul>
+ * Every request has to carry the token from the
+ * {@link Configuration#getDaemonTokenFile() token file} in the
+ * <code>X-jSite-Token</code> header; the file is created with a random token
+ * when the daemon is first started. Because browsers do not send custom
+ * headers to other sites without asking first, and requests that carry an
+ * <code>Origin</code> header are rejected, web pages can not submit jobs.
+ * Parameters are only read from the query string.
+ * <p>
+ * Jobs are returned in the format of FCP messages. The jobs are stored in a
+ * {@link JobQueue}, so jobs that have not finished when the daemon is
+ * stopped are started again when it is restarted. The inserts are run by an
+ * {@link InsertScheduler} with the limits of the configuration.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class Daemon {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(Daemon.class.getName());
+
+	/** The name of the header that carries the token. */
+	static final String TOKEN_HEADER = "X-jSite-Token";
+
+	/** The configuration. */
+	private final Configuration configuration;
+
+	/** The projects. */
+	private final List<Project> projects;
+
+	/** The job queue. */
+	private final JobQueue jobQueue;
+
+	/** The token clients have to send. */
+	private final String token;
+
+	/** The insert scheduler. */
+	private final InsertScheduler insertScheduler;
+
+	/** The freenet interfaces, by node. */
+	private final Map<Node, Freenet7Interface> freenetInterfaces = new HashMap<Node, Freenet7Interface>();
+
+	/** The HTTP server. */
+	private HttpServer httpServer;
+
+	/**
+	 * Creates a new daemon.
+	 *
+	 * @param configuration
+	 *            The configuration
+	 * @param jobQueue
+	 *            The job queue
+	 * @param token
+	 *            The token clients have to send with every request
+	 */
+	Daemon(Configuration configuration, JobQueue jobQueue, String token) {
+		this.configuration = configuration;
+		this.projects = configuration.getProjects();
+		this.jobQueue = jobQueue;
+		this.token = token;
+		this.insertScheduler = new InsertScheduler(configuration.getParallelInserts(), configuration.getMaxInsertsPerNode(), configuration.getInsertRetries());
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts the daemon. All jobs that have not finished are queued again,
+	 * and the HTTP interface is started.
+	 *
+	 * @param port
+	 *            The port to listen on
+	 * @throws IOException
+	 *             if the HTTP interface can not be started
+	 */
+	public void start(int port) throws IOException {
+		for (Job job : jobQueue.load()) {
+			submitJob(job);
+		}
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/jobs", this::handleJobsRequest);
+		httpServer.start();
+		logger.log(Level.INFO, "Daemon listening on {0}.", httpServer.getAddress());
+	}
+
+	/**
+	 * Stops the HTTP interface of the daemon and saves the job queue. Running
+	 * inserts are not interrupted.
+	 */
+	public void stop() {
+		if (httpServer != null) {
+			httpServer.stop(0);
+		}
+		jobQueue.save();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Queues the insert of a project, unless the project is already queued
+	 * for the same node.
+	 *
+	 * @param projectName
+	 *            The name of the project
+	 * @param nodeName
+	 *            The name of the node, or {@code null} for the selected node
+	 * @return The job of the insert
+	 */
+	private Job queueJob(String projectName, String nodeName) {
+		synchronized (jobQueue) {
+			for (Job job : jobQueue.getJobs()) {
+				if ((job.getStatus() == Status.QUEUED) && job.getProjectName().equals(projectName) && Objects.equals(job.getNodeName(), nodeName)) {
+					return job;
+				}
+			}
+			Job job = jobQueue.addJob(projectName, nodeName);
+			submitJob(job);
+			return job;
+		}
+	}
+
+	/**
+	 * Submits the given job to the insert scheduler. A job whose project or
+	 * node does not exist fails immediately.
+	 *
+	 * @param job
+	 *            The job to submit
+	 */
+	private void submitJob(Job job) {
+		Project project = getProject(job.getProjectName());
+		Node node = (job.getNodeName() == null) ? configuration.getSelectedNode() : getNode(job.getNodeName());
+		if ((project == null) || (node == null)) {
+			job.setStatus(Status.FAILED);
+			job.setError((project == null) ? "Project not found." : "Node not found.");
+			jobQueue.save();
+			return;
+		}
+		insertScheduler.submit(project, node, (insertedProject, insertNode, attempt, insertListener) -> {
+			job.setStatus(Status.RUNNING);
+			job.setAttempts(job.getAttempts() + 1);
+			jobQueue.save();
+			ProjectInserter projectInserter = new ProjectInserter();
+			projectInserter.addInsertListener(new JobListener(job, attempt));
+			projectInserter.addInsertListener(insertListener);
+			projectInserter.setFreenetInterface(getFreenetInterface(insertNode));
+			projectInserter.setSharedConnection(true);
+			projectInserter.setTempDirectory(configuration.getTempDirectory());
+			projectInserter.setPriority(configuration.getPriority());
+			projectInserter.setUseEarlyEncode(configuration.useEarlyEncode());
+			projectInserter.setHashCacheDirectory(configuration.getHashCacheDirectory());
+			projectInserter.setScanParallelism(configuration.getScanParallelism());
+			projectInserter.setPipelined(configuration.isPipelinedInsert());
+			projectInserter.setResumable(configuration.isResumableInsert());
+			projectInserter.setHierarchical(configuration.isHierarchicalInsert());
+			projectInserter.setSplitThreshold(configuration.getSplitThreshold() * 1024L * 1024L);
+			projectInserter.setProject(insertedProject);
+			projectInserter.start(null);
+		});
+	}
+
+	/**
+	 * Saves the projects to the configuration.
+	 */
+	private void saveProjects() {
+		synchronized (configuration) {
+			configuration.setProjects(projects);
+			configuration.save();
+		}
+	}
+
+	/**
+	 * Handles a request to the job interface.
+	 *
+	 * @param httpExchange
+	 *            The HTTP exchange
+	 * @throws IOException
+	 *             if the response can not be sent
+	 */
+	private void handleJobsRequest(HttpExchange httpExchange) throws IOException {
+		try {
+			if (httpExchange.getRequestHeaders().containsKey("Origin")) {
+				sendResponse(httpExchange, 403, "Requests from web pages are not allowed.\n");
+				return;
+			}
+			String requestToken = httpExchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+			if ((requestToken == null) || !MessageDigest.isEqual(requestToken.getBytes(UTF_8), token.getBytes(UTF_8))) {
+				sendResponse(httpExchange, 403, "Header “" + TOKEN_HEADER + "” is missing or invalid.\n");
+				return;
+			}
+			String path = httpExchange.getRequestURI().getPath();
+			String method = httpExchange.getRequestMethod();
+			if (path.equals("/jobs") || path.equals("/jobs/")) {
+				if (method.equals("GET")) {
+					StringBuilder response = new StringBuilder();
+					for (Job job : jobQueue.getJobs()) {
+						response.append(job.toMessage());
+					}
+					sendResponse(httpExchange, 200, response.toString());
+				} else if (method.equals("POST")) {
+					Map<String, String> parameters = parseParameters(httpExchange.getRequestURI().getRawQuery());
+					String projectName = parameters.get("project");
+					if (projectName == null) {
+						sendResponse(httpExchange, 400, "Parameter “project” is missing.\n");
+						return;
+					}
+					sendResponse(httpExchange, 202, queueJob(projectName, parameters.get("node")).toMessage());
+				} else {
+					sendResponse(httpExchange, 405, "Method not allowed.\n");
+				}
+				return;
+			}
+			Job job = null;
+			try {
+				job = jobQueue.getJob(Integer.parseInt(path.substring("/jobs/".length())));
+			} catch (NumberFormatException nfe1) {
+				/* job stays null. */
+			}
+			if (job == null) {
+				sendResponse(httpExchange, 404, "Job not found.\n");
+			} else if (!method.equals("GET")) {
+				sendResponse(httpExchange, 405, "Method not allowed.\n");
+			} else {
+				sendResponse(httpExchange, 200, job.toMessage());
+			}
+		} finally {
+			httpExchange.close();
+		}
+	}
+
+	/**
+	 * Returns the project with the given name.
+	 *
+	 * @param name
+	 *            The name of the project
+	 * @return The project, or {@code null} if no project could be found
+	 */
+	private Project getProject(String name) {
+		for (Project project : projects) {
+			if (project.getName().equals(name)) {
+				return project;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the node with the given name.
+	 *
+	 * @param name
+	 *            The name of the node
+	 * @return The node, or {@code null} if no node could be found
+	 */
+	private Node getNode(String name) {
+		for (Node node : configuration.getNodes()) {
+			if (node.getName().equals(name)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the freenet interface for the given node. All inserts to the
+	 * same node share the same freenet interface.
+	 *
+	 * @param node
+	 *            The node
+	 * @return The freenet interface for the node
+	 */
+	private Freenet7Interface getFreenetInterface(Node node) {
+		synchronized (freenetInterfaces) {
+			Freenet7Interface freenetInterface = freenetInterfaces.get(node);
+			if (freenetInterface == null) {
+				freenetInterface = new Freenet7Interface();
+				freenetInterface.setNode(node);
+				freenetInterfaces.put(node, freenetInterface);
+			}
+			return freenetInterface;
+		}
+	}
+
+	/**
+	 * Sends a plain text response.
+	 *
+	 * @param httpExchange
+	 *            The HTTP exchange
+	 * @param status
+	 *            The HTTP status code
+	 * @param text
+	 *            The text to send
+	 * @throws IOException
+	 *             if the response can not be sent
+	 */
+	private static void sendResponse(HttpExchange httpExchange, int status, String text) throws IOException {
+		byte[] response = text.getBytes(UTF_8);
+		httpExchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		httpExchange.sendResponseHeaders(status, response.length);
+		try (OutputStream responseStream = httpExchange.getResponseBody()) {
+			responseStream.write(response);
+		}
+	}
+
+	/**
+	 * Parses URL-encoded parameters.
+	 *
+	 * @param parameters
+	 *            The parameters, may be {@code null}
+	 * @return The parsed parameters
+	 */
+	private static Map<String, String> parseParameters(String parameters) {
+		Map<String, String> parsedParameters = new HashMap<String, String>();
+		if (parameters == null) {
+			return parsedParameters;
+		}
+		for (String parameter : parameters.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0) {
+				parsedParameters.put(URLDecoder.decode(parameter.substring(0, equals), UTF_8), URLDecoder.decode(parameter.substring(equals + 1).trim(), UTF_8));
+			}
+		}
+		return parsedParameters;
+	}
+
+	/**
+	 * Reads the token from the given file. If the file does not exist, it is
+	 * created with a new random token that only the current user can read.
+	 *
+	 * @param tokenFile
+	 *            The file containing the token
+	 * @return The token
+	 * @throws IOException
+	 *             if the token file can not be read or created
+	 */
+	static String loadToken(File tokenFile) throws IOException {
+		Path tokenPath = tokenFile.toPath();
+		if (Files.exists(tokenPath)) {
+			String token = new String(Files.readAllBytes(tokenPath), UTF_8).trim();
+			if (token.isEmpty()) {
+				throw new IOException("Token file " + tokenFile + " is empty.");
+			}
+			return token;
+		}
+		byte[] randomBytes = new byte[32];
+		new SecureRandom().nextBytes(randomBytes);
+		StringBuilder token = new StringBuilder();
+		for (byte randomByte : randomBytes) {
+			token.append(String.format("%02x", randomByte & 0xff));
+		}
+		Files.createDirectories(tokenPath.toAbsolutePath().getParent());
+		if (tokenPath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(tokenPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			Files.createFile(tokenPath);
+		}
+		Files.write(tokenPath, (token + "\n").getBytes(UTF_8));
+		logger.log(Level.INFO, "Created daemon token file {0}.", tokenFile);
+		return token.toString();
+	}
+
+	/**
+	 * Updates a job with the events of its insert.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private class JobListener implements InsertListener {
+
+		/** The job. */
+		private final Job job;
+
+		/** The attempt of the insert scheduler this listener belongs to. */
+		private final int attempt;
+
+		/**
+		 * Creates a new job listener.
+		 *
+		 * @param job
+		 *            The job to update
+		 * @param attempt
+		 *            The number of the attempt, as counted by the insert
+		 *            scheduler
+		 */
+		public JobListener(Job job, int attempt) {
+			this.job = job;
+			this.attempt = attempt;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectInsertStarted(Project project) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectUploadFinished(Project project) {
+			if (project.getInsertIdentifier() != null) {
+				/* save the request identifier so the insert can be resumed. */
+				saveProjects();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectURIGenerated(Project project, String uri) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
+			/* ignore. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void projectInsertFinished(Project project, boolean success, Throwable cause) {
+			if (success) {
+				job.setStatus(Status.INSERTED);
+				job.setRequestURI(project.getFinalRequestURI(0));
+				job.setError(null);
+			} else {
+				/* the scheduler retries the insert with the same condition. */
+				job.setStatus((attempt <= configuration.getInsertRetries()) ? Status.QUEUED : Status.FAILED);
+				job.setError((cause != null) ? String.valueOf(cause.getMessage()) : "Insert failed.");
+			}
+			saveProjects();
+			jobQueue.save();
+		}
+
+	}
+
+	//
+	// MAIN
+	//
+
+	/**
+	 * Starts the daemon. The configuration file can be given with
+	 * <code>--config-file=&lt;file&gt;</code>, the port to listen on with
+	 * <code>--port=&lt;port&gt;</code>.
+	 *
+	 * @param args
+	 *            The command-line arguments
+	 * @throws IOException
+	 *             if the daemon can not be started
+	 */
+	public static void main(String[] args) throws IOException {
+		String configFile = null;
+		Integer port = null;
+		for (String argument : args) {
+			String value = argument.substring(argument.indexOf('=') + 1).trim();
+			if (argument.startsWith("--config-file=")) {
+				configFile = value;
+			} else if (argument.startsWith("--port=")) {
+				port = Integer.parseInt(value);
+			} else {
+				System.err.println("Unknown parameter: " + argument);
+				System.err.println("Parameters: [--config-file=<configuration file>] [--port=<port>]");
+				System.exit(1);
+			}
+		}
+		ConfigurationLocator configurationLocator = new ConfigurationLocator(new DefaultJarFileLocator(Daemon.class.getClassLoader()));
+		if (configFile != null) {
+			configurationLocator.setCustomLocation(configFile);
+		}
+		ConfigurationLocation configurationLocation = configurationLocator.findPreferredLocation();
+		Configuration configuration = new Configuration(configurationLocator, configurationLocation);
+		Daemon daemon = new Daemon(configuration, new JobQueue(configuration.getDaemonJobFile()), loadToken(configuration.getDaemonTokenFile()));
+		daemon.start((port != null) ? port : configuration.getDaemonPort());
+		Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop));
+	}
+
+}
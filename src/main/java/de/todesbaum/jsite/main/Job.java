@@ -0,0 +1,234 @@
+/*
+ * jSite - Job.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.main;
+
+/**
+ * An insert job of the {@link Daemon}.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class Job {
+
+	/**
+	 * The status of a job.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	enum Status {
+
+		/** The job is waiting to be started. */
+		QUEUED,
+
+		/** The project is being inserted. */
+		RUNNING,
+
+		/** The project has been inserted. */
+		INSERTED,
+
+		/** The project could not be inserted. */
+		FAILED;
+
+		/**
+		 * Returns whether a job with this status has finished.
+		 *
+		 * @return {@code true} if the job has finished, {@code false}
+		 *         otherwise
+		 */
+		public boolean isFinished() {
+			return (this == INSERTED) || (this == FAILED);
+		}
+
+	}
+
+	/** The identifier of the job. */
+	private final int identifier;
+
+	/** The name of the project to insert. */
+	private final String projectName;
+
+	/** The name of the node to insert to, or {@code null}. */
+	private final String nodeName;
+
+	/** The status of the job. */
+	private Status status = Status.QUEUED;
+
+	/** The number of attempts. */
+	private int attempts;
+
+	/** The request URI of the inserted project. */
+	private String requestURI;
+
+	/** The error message of the last failed attempt. */
+	private String error;
+
+	/**
+	 * Creates a new job.
+	 *
+	 * @param identifier
+	 *            The identifier of the job
+	 * @param projectName
+	 *            The name of the project to insert
+	 * @param nodeName
+	 *            The name of the node to insert to, or {@code null} to
+	 *            insert to the selected node
+	 */
+	Job(int identifier, String projectName, String nodeName) {
+		this.identifier = identifier;
+		this.projectName = projectName;
+		this.nodeName = nodeName;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the identifier of this job.
+	 *
+	 * @return The identifier of this job
+	 */
+	public int getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the name of the project to insert.
+	 *
+	 * @return The name of the project
+	 */
+	public String getProjectName() {
+		return projectName;
+	}
+
+	/**
+	 * Returns the name of the node to insert to.
+	 *
+	 * @return The name of the node, or {@code null} to insert to the
+	 *         selected node
+	 */
+	public String getNodeName() {
+		return nodeName;
+	}
+
+	/**
+	 * Returns the status of this job.
+	 *
+	 * @return The status of this job
+	 */
+	public synchronized Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Sets the status of this job.
+	 *
+	 * @param status
+	 *            The status of this job
+	 */
+	public synchronized void setStatus(Status status) {
+		this.status = status;
+	}
+
+	/**
+	 * Returns the number of times the project has been tried to insert.
+	 *
+	 * @return The number of attempts
+	 */
+	public synchronized int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Sets the number of times the project has been tried to insert.
+	 *
+	 * @param attempts
+	 *            The number of attempts
+	 */
+	public synchronized void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	/**
+	 * Returns the request URI of the inserted project.
+	 *
+	 * @return The request URI, or {@code null} if the project has not been
+	 *         inserted
+	 */
+	public synchronized String getRequestURI() {
+		return requestURI;
+	}
+
+	/**
+	 * Sets the request URI of the inserted project.
+	 *
+	 * @param requestURI
+	 *            The request URI
+	 */
+	public synchronized void setRequestURI(String requestURI) {
+		this.requestURI = requestURI;
+	}
+
+	/**
+	 * Returns the error message of the last failed attempt.
+	 *
+	 * @return The error message, or {@code null}
+	 */
+	public synchronized String getError() {
+		return error;
+	}
+
+	/**
+	 * Sets the error message of the last failed attempt.
+	 *
+	 * @param error
+	 *            The error message, or {@code null}
+	 */
+	public synchronized void setError(String error) {
+		this.error = error;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns this job in the format of an FCP message, with one
+	 * <code>key=value</code> line per field.
+	 *
+	 * @return This job as a message
+	 */
+	public synchronized String toMessage() {
+		StringBuilder message = new StringBuilder("Job\n");
+		message.append("Identifier=").append(identifier).append('\n');
+		message.append("Project=").append(projectName).append('\n');
+		if (nodeName != null) {
+			message.append("Node=").append(nodeName).append('\n');
+		}
+		message.append("Status=").append(status.name().toLowerCase()).append('\n');
+		message.append("Attempts=").append(attempts).append('\n');
+		if (requestURI != null) {
+			message.append("RequestURI=").append(requestURI).append('\n');
+		}
+		if (error != null) {
+			message.append("Error=").append(error.replace('\n', ' ')).append('\n');
+		}
+		return message.append("EndMessage\n").toString();
+	}
+
+}
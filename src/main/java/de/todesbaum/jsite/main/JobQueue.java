@@ -0,0 +1,253 @@
+/*
+ * jSite - JobQueue.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.main;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.todesbaum.jsite.main.Job.Status;
+
+/**
+ * Persistent queue of the jobs of the {@link Daemon}. The queue is written to
+ * its file whenever a job is added or changed, so jobs that were queued or
+ * running when the daemon stopped are started again when it is restarted.
+ * <p>
+ * The file contains one line per job with the identifier, status, number of
+ * attempts, project name, node name, request URI, and error of the job,
+ * separated by tabs; the names, the URI, and the error are URL-encoded. Files
+ * of the first version, which did not store the error, can still be read.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class JobQueue {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(JobQueue.class.getName());
+
+	/** The version of the file format. */
+	private static final String FORMAT_VERSION = "jSite daemon jobs 2";
+
+	/** The first version of the file format, without errors. */
+	private static final String FORMAT_VERSION_1 = "jSite daemon jobs 1";
+
+	/** The number of finished jobs that are kept. */
+	private static final int MAX_FINISHED_JOBS = 1000;
+
+	/** The file the queue is stored in. */
+	private final File queueFile;
+
+	/** All jobs, by identifier. */
+	private final Map<Integer, Job> jobs = new LinkedHashMap<Integer, Job>();
+
+	/** The identifier of the last job. */
+	private int lastIdentifier;
+
+	/**
+	 * Creates a new job queue.
+	 *
+	 * @param queueFile
+	 *            The file the queue is stored in
+	 */
+	JobQueue(File queueFile) {
+		this.queueFile = queueFile;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the job with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the job
+	 * @return The job, or {@code null} if there is no such job
+	 */
+	public synchronized Job getJob(int identifier) {
+		return jobs.get(identifier);
+	}
+
+	/**
+	 * Returns all jobs, in the order they were added.
+	 *
+	 * @return All jobs
+	 */
+	public synchronized List<Job> getJobs() {
+		return new ArrayList<Job>(jobs.values());
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds a new job to the queue and saves the queue.
+	 *
+	 * @param projectName
+	 *            The name of the project to insert
+	 * @param nodeName
+	 *            The name of the node to insert to, or {@code null} to
+	 *            insert to the selected node
+	 * @return The new job
+	 */
+	public synchronized Job addJob(String projectName, String nodeName) {
+		Job job = new Job(++lastIdentifier, projectName, nodeName);
+		jobs.put(job.getIdentifier(), job);
+		save();
+		return job;
+	}
+
+	/**
+	 * Loads the queue from its file. Jobs that were running when the queue
+	 * was saved are queued again.
+	 *
+	 * @return The jobs that have not finished, in the order they were added
+	 */
+	public synchronized List<Job> load() {
+		jobs.clear();
+		List<Job> unfinishedJobs = new ArrayList<Job>();
+		try (BufferedReader queueReader = new BufferedReader(new InputStreamReader(new FileInputStream(queueFile), UTF_8))) {
+			String formatVersion = queueReader.readLine();
+			int fieldCount;
+			if (FORMAT_VERSION.equals(formatVersion)) {
+				fieldCount = 7;
+			} else if (FORMAT_VERSION_1.equals(formatVersion)) {
+				fieldCount = 6;
+			} else {
+				logger.log(Level.WARNING, "Ignoring job queue {0} with unknown format.", queueFile);
+				return unfinishedJobs;
+			}
+			String line;
+			while ((line = queueReader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length != fieldCount) {
+					continue;
+				}
+				try {
+					Job job = new Job(Integer.parseInt(fields[0]), decode(fields[3]), decode(fields[4]));
+					job.setStatus(Status.valueOf(fields[1]));
+					job.setAttempts(Integer.parseInt(fields[2]));
+					job.setRequestURI(decode(fields[5]));
+					if (fieldCount > 6) {
+						job.setError(decode(fields[6]));
+					}
+					if (!job.getStatus().isFinished()) {
+						job.setStatus(Status.QUEUED);
+						unfinishedJobs.add(job);
+					}
+					jobs.put(job.getIdentifier(), job);
+					lastIdentifier = Math.max(lastIdentifier, job.getIdentifier());
+				} catch (IllegalArgumentException iae1) {
+					logger.log(Level.WARNING, "Ignoring invalid job: " + line, iae1);
+				}
+			}
+		} catch (FileNotFoundException fnfe1) {
+			/* no jobs yet. */
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not read job queue " + queueFile, ioe1);
+		}
+		return unfinishedJobs;
+	}
+
+	/**
+	 * Writes the queue to its file. Only the most recent finished jobs are
+	 * kept. The file is replaced atomically.
+	 */
+	public synchronized void save() {
+		int finishedJobs = 0;
+		for (Job job : jobs.values()) {
+			finishedJobs += job.getStatus().isFinished() ? 1 : 0;
+		}
+		for (Iterator<Job> jobIterator = jobs.values().iterator(); (finishedJobs > MAX_FINISHED_JOBS) && jobIterator.hasNext();) {
+			if (jobIterator.next().getStatus().isFinished()) {
+				jobIterator.remove();
+				finishedJobs--;
+			}
+		}
+		File queueDirectory = queueFile.getAbsoluteFile().getParentFile();
+		if (!queueDirectory.exists() && !queueDirectory.mkdirs()) {
+			logger.log(Level.WARNING, "Could not create job queue directory {0}.", queueDirectory);
+			return;
+		}
+		try {
+			File temporaryFile = File.createTempFile("jobs", ".tmp", queueDirectory);
+			try (Writer queueWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8))) {
+				queueWriter.write(FORMAT_VERSION + "\n");
+				for (Job job : jobs.values()) {
+					queueWriter.write(job.getIdentifier() + "\t" + job.getStatus().name() + "\t" + job.getAttempts() + "\t" + encode(job.getProjectName()) + "\t" + encode(job.getNodeName()) + "\t" + encode(job.getRequestURI()) + "\t" + encode(job.getError()) + "\n");
+				}
+			} catch (IOException ioe1) {
+				temporaryFile.delete();
+				throw ioe1;
+			}
+			Files.move(temporaryFile.toPath(), queueFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not write job queue " + queueFile, ioe1);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * URL-encodes the given value.
+	 *
+	 * @param value
+	 *            The value to encode, may be {@code null}
+	 * @return The encoded value, or an empty string if the value is
+	 *         {@code null}
+	 */
+	private static String encode(String value) {
+		return (value == null) ? "" : URLEncoder.encode(value, UTF_8);
+	}
+
+	/**
+	 * URL-decodes the given value.
+	 *
+	 * @param value
+	 *            The value to decode
+	 * @return The decoded value, or {@code null} if the value is empty
+	 */
+	private static String decode(String value) {
+		return value.isEmpty() ? null : URLDecoder.decode(value, UTF_8);
+	}
+
+}
@@ -45,7 +45,7 @@ import net.pterodactylus.util.image.IconLoader;
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
-public class Main implements ActionListener, ListSelectionListener, WizardListener, NodeManagerListener, UpdateListener {
+public class Main implements ActionListener, ListSelectionListener, WizardListener, NodeManagerListener, UpdateListener, InsertListener {
 
 	/** The logger. */
 	private static final Logger logger = Logger.getLogger(Main.class.getName());
@@ -315,6 +315,7 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 		ProjectInsertPage projectInsertPage = new ProjectInsertPage(wizard);
 		projectInsertPage.setName("page.project.insert");
 		projectInsertPage.setFreenetInterface(freenetInterface);
+		projectInsertPage.addInsertListener(this);
 		pages.put(PageType.PAGE_INSERT_PROJECT, projectInsertPage);
 
 		PreferencesPage preferencesPage = new PreferencesPage(wizard);
@@ -508,6 +509,8 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 				JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.warning.no-path"), null, JOptionPane.ERROR_MESSAGE);
 				return;
 			}
+			((ProjectFilesPage) pages.get(PageType.PAGE_PROJECT_FILES)).setHashCacheDirectory(configuration.getHashCacheDirectory());
+			((ProjectFilesPage) pages.get(PageType.PAGE_PROJECT_FILES)).setScanParallelism(configuration.getScanParallelism());
 			((ProjectFilesPage) pages.get(PageType.PAGE_PROJECT_FILES)).setProject(project);
 			((ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT)).setProject(project);
 			showPage(PageType.PAGE_PROJECT_FILES);
@@ -518,7 +521,7 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 				JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.error.no-node-selected"), null, JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			CheckReport checkReport = ProjectValidator.validateProject(project);
+			CheckReport checkReport = ProjectValidator.validateProject(project, configuration.getHashCacheDirectory(), configuration.getScanParallelism());
 			for (Issue issue : checkReport) {
 				if (issue.isFatal()) {
 					JOptionPane.showMessageDialog(wizard, MessageFormat.format(I18n.getMessage("jsite." + issue.getErrorKey()), (Object[]) issue.getParameters()), null, JOptionPane.ERROR_MESSAGE);
@@ -543,6 +546,12 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 			ProjectInsertPage projectInsertPage = (ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT);
 			String tempDirectory = ((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).getTempDirectory();
 			projectInsertPage.setTempDirectory(tempDirectory);
+			projectInsertPage.setHashCacheDirectory(configuration.getHashCacheDirectory());
+			projectInsertPage.setScanParallelism(configuration.getScanParallelism());
+			projectInsertPage.setPipelinedInsert(configuration.isPipelinedInsert());
+			projectInsertPage.setHierarchicalInsert(configuration.isHierarchicalInsert());
+			projectInsertPage.setSplitThreshold(configuration.getSplitThreshold() * 1024L * 1024L);
+			projectInsertPage.setResumableInsert(configuration.isResumableInsert());
 			projectInsertPage.setUseEarlyEncode(configuration.useEarlyEncode());
 			projectInsertPage.setPriority(configuration.getPriority());
 			projectInsertPage.startInsert();
@@ -692,6 +701,56 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 		}
 	}
 
+	//
+	// INTERFACE InsertListener
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectInsertStarted(Project project) {
+		/* ignore. */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the project is inserted as a resumable request, the configuration is
+	 * saved so that the request can be resumed even if jSite is not shut down
+	 * properly.
+	 */
+	@Override
+	public void projectUploadFinished(Project project) {
+		if (project.getInsertIdentifier() != null) {
+			SwingUtilities.invokeLater(this::saveConfiguration);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectURIGenerated(Project project, String uri) {
+		/* ignore. */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
+		/* ignore. */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectInsertFinished(Project project, boolean success, Throwable cause) {
+		/* ignore. */
+	}
+
 	//
 	// MAIN METHOD
 	//
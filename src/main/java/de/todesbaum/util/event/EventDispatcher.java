@@ -0,0 +1,311 @@
+/*
+ * jSite - EventDispatcher.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.event;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers events to listeners on a dedicated thread so that the thread
+ * producing the events never has to wait for a slow listener. Events are
+ * stored in a ring buffer and delivered in the order they were dispatched.
+ * <p>
+ * Events that are sent at a high rate and only carry the latest state, such
+ * as progress updates, can be dispatched with a coalescing key: if an event
+ * with the same key is still waiting to be delivered, it is replaced by the
+ * new event, so listeners that fall behind skip intermediate states instead
+ * of falling behind further.
+ * <p>
+ * Events can not be dropped without breaking the listeners (a lost
+ * “PutSuccessful” would leave an insert hanging forever), and the producer
+ * must not block, so the ring buffer grows beyond its capacity if the
+ * listeners can not keep up; a warning is logged when that happens. Once the
+ * listeners have caught up, the ring buffer shrinks back to its capacity.
+ * <p>
+ * The dispatcher thread is started when the first event is dispatched and
+ * stops after it has been idle for a minute, so a dispatcher does not need
+ * to be shut down.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class EventDispatcher {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(EventDispatcher.class.getName());
+
+	/** The default capacity of the ring buffer. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** The time after which an idle dispatcher thread stops. */
+	private static final long KEEP_ALIVE = TimeUnit.MINUTES.toMillis(1);
+
+	/** The name of the dispatcher thread. */
+	private final String name;
+
+	/** The capacity of the ring buffer. */
+	private final int capacity;
+
+	/** The object used for synchronization. */
+	private final Object lockObject = new Object();
+
+	/** The waiting events, by coalescing key. */
+	private final Map<Object, Event> coalescingEvents = new HashMap<Object, Event>();
+
+	/** The ring buffer of waiting events. */
+	private Event[] events;
+
+	/** The index of the first waiting event. */
+	private int head;
+
+	/** The number of waiting events. */
+	private int size;
+
+	/** Whether the dispatcher thread is running. */
+	private boolean running;
+
+	/** Whether the ring buffer has grown beyond its capacity. */
+	private boolean overflowed;
+
+	/**
+	 * Creates a new event dispatcher with the default capacity.
+	 *
+	 * @param name
+	 *            The name of the dispatcher thread
+	 */
+	public EventDispatcher(String name) {
+		this(name, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new event dispatcher.
+	 *
+	 * @param name
+	 *            The name of the dispatcher thread
+	 * @param capacity
+	 *            The number of events that can wait for delivery before the
+	 *            listeners are considered to have fallen behind
+	 */
+	public EventDispatcher(String name, int capacity) {
+		this.name = name;
+		this.capacity = Math.max(capacity, 1);
+		this.events = new Event[this.capacity];
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of events that are waiting for delivery.
+	 *
+	 * @return The number of waiting events
+	 */
+	public int getPendingEvents() {
+		synchronized (lockObject) {
+			int pendingEvents = 0;
+			for (int index = 0; index < size; index++) {
+				if (events[(head + index) % events.length].runnable != null) {
+					pendingEvents++;
+				}
+			}
+			return pendingEvents;
+		}
+	}
+
+	/**
+	 * Returns the number of events the ring buffer can currently hold.
+	 *
+	 * @return The size of the ring buffer
+	 */
+	int getBufferSize() {
+		synchronized (lockObject) {
+			return events.length;
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Dispatches the given event. This method never blocks.
+	 *
+	 * @param event
+	 *            The event to deliver to the listeners
+	 */
+	public void dispatch(Runnable event) {
+		dispatch(null, event);
+	}
+
+	/**
+	 * Dispatches the given event, replacing a waiting event with the same
+	 * coalescing key. If other events have been dispatched after the waiting
+	 * event, the waiting event is skipped and the new event is delivered
+	 * after the other events, so the order of events is kept. This method
+	 * never blocks.
+	 *
+	 * @param coalescingKey
+	 *            The coalescing key of the event, or {@code null} if the
+	 *            event must not be replaced
+	 * @param event
+	 *            The event to deliver to the listeners
+	 */
+	public void dispatch(Object coalescingKey, Runnable event) {
+		synchronized (lockObject) {
+			if (coalescingKey != null) {
+				Event waitingEvent = coalescingEvents.get(coalescingKey);
+				if (waitingEvent != null) {
+					if (waitingEvent == events[(head + size - 1) % events.length]) {
+						waitingEvent.runnable = event;
+						return;
+					}
+					waitingEvent.runnable = null;
+				}
+			}
+			Event newEvent = new Event(coalescingKey, event);
+			if (coalescingKey != null) {
+				coalescingEvents.put(coalescingKey, newEvent);
+			}
+			if (size == events.length) {
+				grow();
+			}
+			events[(head + size) % events.length] = newEvent;
+			size++;
+			if (!running) {
+				running = true;
+				Thread dispatcherThread = new Thread(this::dispatchEvents, name);
+				dispatcherThread.setDaemon(true);
+				dispatcherThread.start();
+			}
+			lockObject.notify();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Doubles the size of the ring buffer.
+	 */
+	private void grow() {
+		if (!overflowed) {
+			overflowed = true;
+			logger.log(Level.WARNING, "Listeners of {0} are falling behind, more than {1} events are waiting.", new Object[] { name, capacity });
+		}
+		Event[] newEvents = new Event[events.length * 2];
+		for (int index = 0; index < size; index++) {
+			newEvents[index] = events[(head + index) % events.length];
+		}
+		events = newEvents;
+		head = 0;
+	}
+
+	/**
+	 * Halves the size of the ring buffer if it has grown beyond its capacity
+	 * and is mostly empty.
+	 */
+	private void shrink() {
+		if ((events.length <= capacity) || (size > (events.length / 4))) {
+			return;
+		}
+		Event[] newEvents = new Event[Math.max(capacity, events.length / 2)];
+		for (int index = 0; index < size; index++) {
+			newEvents[index] = events[(head + index) % events.length];
+		}
+		events = newEvents;
+		head = 0;
+		if (events.length == capacity) {
+			overflowed = false;
+		}
+	}
+
+	/**
+	 * Delivers the waiting events until the dispatcher has been idle for the
+	 * keep-alive time.
+	 */
+	private void dispatchEvents() {
+		while (true) {
+			Runnable runnable;
+			synchronized (lockObject) {
+				if (size == 0) {
+					try {
+						lockObject.wait(KEEP_ALIVE);
+					} catch (InterruptedException ie1) {
+						/* stop unless there are events to deliver. */
+					}
+					if (size == 0) {
+						running = false;
+						return;
+					}
+				}
+				Event event = events[head];
+				events[head] = null;
+				head = (head + 1) % events.length;
+				size--;
+				shrink();
+				if (event.coalescingKey != null) {
+					coalescingEvents.remove(event.coalescingKey, event);
+				}
+				runnable = event.runnable;
+			}
+			if (runnable == null) {
+				/* event was replaced by a later one. */
+				continue;
+			}
+			try {
+				runnable.run();
+			} catch (RuntimeException re1) {
+				logger.log(Level.WARNING, "Listener of " + name + " threw exception.", re1);
+			}
+		}
+	}
+
+	/**
+	 * An event waiting for delivery.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Event {
+
+		/** The coalescing key of the event, or {@code null}. */
+		private final Object coalescingKey;
+
+		/** The event, or {@code null} if it was replaced by a later one. */
+		private Runnable runnable;
+
+		/**
+		 * Creates a new event.
+		 *
+		 * @param coalescingKey
+		 *            The coalescing key of the event, or {@code null}
+		 * @param runnable
+		 *            The event
+		 */
+		public Event(Object coalescingKey, Runnable runnable) {
+			this.coalescingKey = coalescingKey;
+			this.runnable = runnable;
+		}
+
+	}
+
+}
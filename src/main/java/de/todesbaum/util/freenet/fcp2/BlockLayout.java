@@ -0,0 +1,235 @@
+/*
+ * jSite - BlockLayout.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+/**
+ * Estimates how content of a given length is laid out in CHK blocks when it
+ * is inserted into Freenet. Content that fits into a single block is
+ * inserted as that block; larger content becomes a splitfile whose data
+ * blocks are distributed as evenly as possible over segments of at most
+ * {@value #MAX_SEGMENT_DATA_BLOCKS} blocks, with one FEC check block per
+ * block of a segment.
+ * <p>
+ * Splitfiles of at least {@value #MIN_CROSS_SEGMENT_SEGMENTS} segments are
+ * protected by cross-segment FEC as well, which adds
+ * {@value #CROSS_CHECK_BLOCKS} cross-check blocks to every segment, taking
+ * the place of data blocks. The metadata of a splitfile lists the keys of
+ * all its blocks; metadata that does not fit into a single block is inserted
+ * as a splitfile of its own, whose layout is estimated the same way.
+ * <p>
+ * The layout is only an estimate, not a bound. It is computed for the length
+ * of the content as given, so compressible content and small files that the
+ * node packs into containers take fewer blocks. The size of the metadata is
+ * approximated, and the node might use a different layout for its
+ * compatibility mode. The exact blocks are only known once the node has
+ * encoded the content.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class BlockLayout {
+
+	/** The size of the data of a CHK block. */
+	public static final int BLOCK_SIZE = 32 * 1024;
+
+	/** The maximum number of data blocks in a segment of a splitfile. */
+	public static final int MAX_SEGMENT_DATA_BLOCKS = 128;
+
+	/** The number of segments from which on cross-segment FEC is used. */
+	public static final int MIN_CROSS_SEGMENT_SEGMENTS = 20;
+
+	/** The number of cross-check blocks per segment. */
+	public static final int CROSS_CHECK_BLOCKS = 3;
+
+	/** The approximate length of the metadata of a splitfile without keys. */
+	static final int METADATA_HEADER_LENGTH = 256;
+
+	/** The length of a block’s key in the metadata of a splitfile. */
+	static final int METADATA_KEY_LENGTH = 32;
+
+	/** The number of data blocks. */
+	private final long dataBlocks;
+
+	/** The number of cross-check blocks. */
+	private final long crossCheckBlocks;
+
+	/** The number of check blocks. */
+	private final long checkBlocks;
+
+	/** The number of segments, 0 for a single block. */
+	private final int segments;
+
+	/** The number of metadata blocks. */
+	private final long metadataBlocks;
+
+	/**
+	 * Creates a new block layout.
+	 *
+	 * @param dataBlocks
+	 *            The number of data blocks
+	 * @param crossCheckBlocks
+	 *            The number of cross-check blocks
+	 * @param checkBlocks
+	 *            The number of check blocks
+	 * @param segments
+	 *            The number of segments
+	 * @param metadataBlocks
+	 *            The number of metadata blocks
+	 */
+	private BlockLayout(long dataBlocks, long crossCheckBlocks, long checkBlocks, int segments, long metadataBlocks) {
+		this.dataBlocks = dataBlocks;
+		this.crossCheckBlocks = crossCheckBlocks;
+		this.checkBlocks = checkBlocks;
+		this.segments = segments;
+		this.metadataBlocks = metadataBlocks;
+	}
+
+	/**
+	 * Estimates the layout of content with the given length.
+	 *
+	 * @param length
+	 *            The length of the content (in bytes)
+	 * @return The estimated layout of the content
+	 */
+	public static BlockLayout forLength(long length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("length must not be negative");
+		}
+		if (length <= BLOCK_SIZE) {
+			return new BlockLayout(1, 0, 0, 0, 0);
+		}
+		long dataBlocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		long segments = (dataBlocks + MAX_SEGMENT_DATA_BLOCKS - 1) / MAX_SEGMENT_DATA_BLOCKS;
+		long crossCheckBlocks = 0;
+		if (segments >= MIN_CROSS_SEGMENT_SEGMENTS) {
+			/* the cross-check blocks take the place of data blocks. */
+			int segmentDataBlocks = MAX_SEGMENT_DATA_BLOCKS - CROSS_CHECK_BLOCKS;
+			segments = (dataBlocks + segmentDataBlocks - 1) / segmentDataBlocks;
+			crossCheckBlocks = segments * CROSS_CHECK_BLOCKS;
+		}
+		long checkBlocks = dataBlocks + crossCheckBlocks;
+		long metadataLength = METADATA_HEADER_LENGTH + (dataBlocks + crossCheckBlocks + checkBlocks) * METADATA_KEY_LENGTH;
+		return new BlockLayout(dataBlocks, crossCheckBlocks, checkBlocks, (int) segments, forLength(metadataLength).getTotalBlocks());
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the content is inserted as a splitfile.
+	 *
+	 * @return {@code true} if the content is inserted as a splitfile,
+	 *         {@code false} if it fits into a single block
+	 */
+	public boolean isSplitfile() {
+		return segments > 0;
+	}
+
+	/**
+	 * Returns the number of data blocks.
+	 *
+	 * @return The number of data blocks
+	 */
+	public long getDataBlocks() {
+		return dataBlocks;
+	}
+
+	/**
+	 * Returns the number of cross-segment FEC check blocks.
+	 *
+	 * @return The number of cross-check blocks, or {@code 0} if the
+	 *         splitfile does not use cross-segment FEC
+	 */
+	public long getCrossCheckBlocks() {
+		return crossCheckBlocks;
+	}
+
+	/**
+	 * Returns the number of FEC check blocks of all segments.
+	 *
+	 * @return The number of check blocks
+	 */
+	public long getCheckBlocks() {
+		return checkBlocks;
+	}
+
+	/**
+	 * Returns the number of segments of the splitfile.
+	 *
+	 * @return The number of segments, or {@code 0} if the content is not
+	 *         inserted as a splitfile
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Returns the number of data blocks in the given segment. The data
+	 * blocks are distributed as evenly as possible, with the first segments
+	 * receiving one additional block each if the blocks can not be
+	 * distributed evenly.
+	 *
+	 * @param segment
+	 *            The index of the segment
+	 * @return The number of data blocks in the segment
+	 */
+	public int getSegmentDataBlocks(int segment) {
+		if ((segment < 0) || (segment >= Math.max(segments, 1))) {
+			throw new IndexOutOfBoundsException("segment " + segment + " of " + segments);
+		}
+		if (segments == 0) {
+			return 1;
+		}
+		long remainder = dataBlocks % segments;
+		return (int) (dataBlocks / segments + ((segment < remainder) ? 1 : 0));
+	}
+
+	/**
+	 * Returns the number of blocks that are inserted for the metadata of the
+	 * splitfile, including the blocks of a splitfile that holds metadata too
+	 * large for a single block.
+	 *
+	 * @return The number of metadata blocks
+	 */
+	public long getMetadataBlocks() {
+		return metadataBlocks;
+	}
+
+	/**
+	 * Returns the estimated total number of blocks that are inserted.
+	 *
+	 * @return The total number of blocks
+	 */
+	public long getTotalBlocks() {
+		return dataBlocks + crossCheckBlocks + checkBlocks + metadataBlocks;
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[data=" + dataBlocks + ",crossCheck=" + crossCheckBlocks + ",check=" + checkBlocks + ",segments=" + segments + ",metadata=" + metadataBlocks + "]";
+	}
+
+}
@@ -19,28 +19,63 @@
 package de.todesbaum.util.freenet.fcp2;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 
 /**
  * A Client executes {@link Command}s over a {@link Connection} to a
  * {@link Node} and delivers resulting {@link Message}s.
+ * <p>
+ * Commands can either be executed, in which case their replies are read
+ * using {@link #readMessage()}, or submitted using {@link #submit(Command)},
+ * in which case the replies are delivered to the returned {@link Request}
+ * without a thread having to wait for them.
  *
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id$
  */
 public class Client implements ConnectionListener {
 
+	/**
+	 * Sends the RemoveRequest commands of cancelled requests. Requests are
+	 * finished on the thread that delivers the events of all connections of a
+	 * selector, and executing a command can take as long as the upload of a
+	 * payload on the same connection, so the commands are sent from here.
+	 */
+	private static final ExecutorService removeRequestExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "FCP Request Remover");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	/** The connection this client operates on. */
 	private final Connection connection;
 
 	/** The identifiers the client filters messages for. */
-	private List<String> identifiers = new ArrayList<String>();
+	private final Set<String> identifiers = new HashSet<String>();
 
 	/** The queued messages. */
-	private final List<Message> messageQueue = new ArrayList<Message>();
+	private final Deque<Message> messageQueue = new ArrayDeque<Message>();
+
+	/** The submitted requests that are not yet finished, by identifier. */
+	private final Map<String, Request> requests = new ConcurrentHashMap<String, Request>();
+
+	/** The identifiers of the requests that have to be removed from the node. */
+	private final Deque<String> removedIdentifiers = new ArrayDeque<String>();
+
+	/** Whether a thread is sending the RemoveRequest commands of this client. */
+	private boolean removingRequests;
 
 	/** Whether the client was disconnected. */
 	private boolean disconnected = false;
@@ -89,6 +124,8 @@ public class Client implements ConnectionListener {
 
 	/**
 	 * Sets whether this client catches all messages going over the connection.
+	 * Messages for commands of other clients on the same connection are
+	 * routed to those clients and are not caught.
 	 *
 	 * @param catchAll
 	 *            <code>true</code> if the client should catch all messages,
@@ -164,13 +201,111 @@ public class Client implements ConnectionListener {
 		synchronized (messageQueue) {
 			messageQueue.clear();
 			if (removeExistingIdentifiers) {
+				for (String identifier : identifiers) {
+					removeRoute(identifier);
+				}
 				identifiers.clear();
 			}
-			identifiers.add(command.getIdentifier());
+			addIdentifier(command.getIdentifier());
+		}
+		connection.execute(command, progressListener);
+	}
+
+	/**
+	 * Executes the specified command in addition to the commands that are
+	 * already running on this client. Unlike the <code>execute</code>
+	 * methods, neither queued messages nor the identifiers of earlier commands
+	 * are discarded, so the replies to all commands can be read from this
+	 * client.
+	 *
+	 * @param command
+	 *            The command to execute
+	 * @param progressListener
+	 *            The progress listener for payload transfers
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void executeConcurrently(Command command, ProgressListener progressListener) throws IOException {
+		synchronized (messageQueue) {
+			addIdentifier(command.getIdentifier());
 		}
 		connection.execute(command, progressListener);
 	}
 
+	/**
+	 * Submits the specified command. Replies to the command are not queued
+	 * but delivered to the returned request.
+	 *
+	 * @param command
+	 *            The command to submit
+	 * @return The submitted request
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @see #submit(Command, ProgressListener, long, TimeUnit)
+	 */
+	public Request submit(Command command) throws IOException {
+		return submit(command, null, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Submits the specified command. Replies to the command are not queued
+	 * but delivered to the returned request. If the node does not send a
+	 * final reply within the given timeout (counted from the moment the
+	 * command including its payload has been sent), the request is removed
+	 * from the node and its result completes with a {@link TimeoutException}.
+	 *
+	 * @param command
+	 *            The command to submit; it needs to have an identifier
+	 * @param progressListener
+	 *            The progress listener for payload transfers (may be
+	 *            {@code null})
+	 * @param timeout
+	 *            The timeout for the request, or {@code 0} to wait endlessly
+	 * @param unit
+	 *            The unit of the timeout
+	 * @return The submitted request
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public Request submit(Command command, ProgressListener progressListener, long timeout, TimeUnit unit) throws IOException {
+		if (command.getIdentifier() == null) {
+			throw new IllegalArgumentException("Command " + command.getCommandName() + " has no identifier.");
+		}
+		Request request = new Request(command);
+		requests.put(request.getIdentifier(), request);
+		connection.addRoute(request.getIdentifier(), this);
+		request.getResult().whenComplete((message, throwable) -> requestFinished(request, throwable));
+		try {
+			connection.execute(command, progressListener);
+		} catch (IOException | IllegalStateException e1) {
+			requests.remove(request.getIdentifier(), request);
+			connection.removeRoute(request.getIdentifier(), this);
+			throw e1;
+		}
+		if (timeout > 0) {
+			request.getResult().orTimeout(timeout, unit);
+		}
+		return request;
+	}
+
+	/**
+	 * Lets this client receive the messages with the given identifier without
+	 * executing a command, e.g. for a persistent request that was started
+	 * by an earlier connection.
+	 *
+	 * @param identifier
+	 *            The identifier to add (may be {@code null} for commands
+	 *            without an identifier)
+	 */
+	public void addIdentifier(String identifier) {
+		synchronized (messageQueue) {
+			identifiers.add(identifier);
+			if (identifier != null) {
+				connection.addRoute(identifier, this);
+			}
+		}
+	}
+
 	/**
 	 * Returns the next message, waiting endlessly for it, if need be. If you
 	 * are not sure whether a message will arrive, better use
@@ -202,14 +337,14 @@ public class Client implements ConnectionListener {
 			if (disconnected) {
 				return null;
 			}
-			if (messageQueue.size() == 0) {
+			if (messageQueue.isEmpty()) {
 				try {
 					messageQueue.wait(maxWaitTime);
 				} catch (InterruptedException ie1) {
 				}
 			}
-			if (messageQueue.size() > 0) {
-				return messageQueue.remove(0);
+			if (!messageQueue.isEmpty()) {
+				return messageQueue.poll();
 			}
 		}
 		return null;
@@ -227,10 +362,36 @@ public class Client implements ConnectionListener {
 		}
 	}
 
+	/**
+	 * Detaches this client from its connection without disconnecting it, so
+	 * that the connection can be used by other clients. Requests that were
+	 * submitted by this client and are not yet finished are cancelled, and
+	 * threads waiting in {@link #readMessage(long)} return {@code null}.
+	 */
+	public void close() {
+		connection.removeConnectionListener(this);
+		synchronized (messageQueue) {
+			for (String identifier : identifiers) {
+				removeRoute(identifier);
+			}
+			identifiers.clear();
+			disconnected = true;
+			messageQueue.notifyAll();
+		}
+		for (Request request : requests.values()) {
+			request.cancel();
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public void messageReceived(Connection connection, Message message) {
+		Request request = requests.get(message.getIdentifier());
+		if (request != null) {
+			request.messageReceived(message);
+			return;
+		}
 		synchronized (messageQueue) {
 			if (catchAll || (message.getIdentifier().length() == 0) || identifiers.contains(message.getIdentifier())) {
 				messageQueue.add(message);
@@ -247,6 +408,74 @@ public class Client implements ConnectionListener {
 			disconnected = true;
 			messageQueue.notify();
 		}
+		for (Request request : requests.values()) {
+			request.connectionTerminated();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Stops the connection from routing messages with the given identifier to
+	 * this client.
+	 *
+	 * @param identifier
+	 *            The identifier to remove (may be {@code null})
+	 */
+	private void removeRoute(String identifier) {
+		if ((identifier != null) && !requests.containsKey(identifier)) {
+			connection.removeRoute(identifier, this);
+		}
+	}
+
+	/**
+	 * Forgets a finished request. If the request was cancelled or timed out,
+	 * the node is told to remove it; as this can block, it is done on another
+	 * thread, with at most one thread per client.
+	 *
+	 * @param request
+	 *            The finished request
+	 * @param throwable
+	 *            The reason the request failed, or {@code null} if it
+	 *            finished with a reply from the node
+	 */
+	private void requestFinished(Request request, Throwable throwable) {
+		if (requests.remove(request.getIdentifier(), request)) {
+			connection.removeRoute(request.getIdentifier(), this);
+		}
+		if ((throwable instanceof CancellationException) || (throwable instanceof TimeoutException)) {
+			synchronized (removedIdentifiers) {
+				removedIdentifiers.add(request.getIdentifier());
+				if (removingRequests) {
+					return;
+				}
+				removingRequests = true;
+			}
+			removeRequestExecutor.execute(this::sendRemoveRequests);
+		}
+	}
+
+	/**
+	 * Tells the node to remove all requests that were queued for removal.
+	 */
+	private void sendRemoveRequests() {
+		while (true) {
+			String identifier;
+			synchronized (removedIdentifiers) {
+				identifier = removedIdentifiers.poll();
+				if (identifier == null) {
+					removingRequests = false;
+					return;
+				}
+			}
+			try {
+				connection.execute(new RemoveRequest(identifier));
+			} catch (IOException | IllegalStateException e1) {
+				/* ignore, the request is gone along with the connection. */
+			}
+		}
 	}
 
 }
@@ -45,6 +45,9 @@ public abstract class ClientPut extends Command {
 	/** Whether the node should not try to compress the file. */
 	protected boolean dontCompress = false;
 
+	/** The compression codecs the node may use, or {@code null} for all. */
+	protected String codecs = null;
+
 	/** The maximum number of retries of this command. */
 	protected int maxRetries = 0;
 
@@ -101,6 +104,30 @@ public abstract class ClientPut extends Command {
 		this.dontCompress = dontCompress;
 	}
 
+	/**
+	 * Returns the compression codecs the node may use.
+	 *
+	 * @return The compression codecs, or {@code null} if the node may use all
+	 *         of its codecs
+	 */
+	public String getCodecs() {
+		return codecs;
+	}
+
+	/**
+	 * Sets the compression codecs the node may use, as a comma-separated
+	 * list of codec names such as <code>GZIP, LZMA_NEW</code>. The node tries
+	 * the codecs in the given order. This setting has no effect if
+	 * {@link #setDontCompress(boolean)} is set.
+	 *
+	 * @param codecs
+	 *            The compression codecs, or {@code null} to let the node use
+	 *            all of its codecs
+	 */
+	public void setCodecs(String codecs) {
+		this.codecs = codecs;
+	}
+
 	/**
 	 * Returns whether this request should only return the CHK of the data.
 	 * @return Whether this request should only return the CHK of the data
@@ -135,6 +162,23 @@ public abstract class ClientPut extends Command {
 		this.global = global;
 	}
 
+	/**
+	 * Returns the persistence of this request.
+	 * @return The persistence of this request
+	 */
+	public Persistence getPersistence() {
+		return persistence;
+	}
+
+	/**
+	 * Sets the persistence of this request.
+	 * @param persistence
+	 *            The persistence of this request
+	 */
+	public void setPersistence(Persistence persistence) {
+		this.persistence = persistence;
+	}
+
 	/**
 	 * Returns the maximum number of retries of this request.
 	 * @return The maximum number of retries of this request
@@ -228,12 +272,14 @@ public abstract class ClientPut extends Command {
 			writer.write("Verbosity=" + verbosity.getValue() + LINEFEED);
 		if (maxRetries != 0)
 			writer.write("MaxRetries=" + maxRetries + LINEFEED);
-		writer.write("EarlyEncode=" + earlyEncode);
+		writer.write("EarlyEncode=" + earlyEncode + LINEFEED);
 		if (priorityClass != null)
 			writer.write("PriorityClass=" + priorityClass.getValue() + LINEFEED);
 		writer.write("GetCHKOnly=" + getCHKOnly + LINEFEED);
 		writer.write("Global=" + global + LINEFEED);
 		writer.write("DontCompress=" + dontCompress + LINEFEED);
+		if (codecs != null)
+			writer.write("Codecs=" + codecs + LINEFEED);
 		if (clientToken != null)
 			writer.write("ClientToken=" + clientToken + LINEFEED);
 		if (persistence != null)
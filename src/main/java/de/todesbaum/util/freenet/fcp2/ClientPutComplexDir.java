@@ -18,21 +18,29 @@
 
 package de.todesbaum.util.freenet.fcp2;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
 
-import net.pterodactylus.util.io.Closer;
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 
 /**
  * Implementation of the <code>ClientPutComplexDir</code> command. This command
  * can be used to insert directories that do not exist on disk.
+ * <p>
+ * The payload of all {@link DirectFileEntry direct file entries} is not copied
+ * when the entries are added but streamed to the node when the command is
+ * executed. Entries that are backed by a file are transferred using
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} so that the
+ * operating system can send them without copying them through the heap.
  *
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id$
@@ -42,18 +50,12 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	/** The file entries of this directory. */
 	private List<FileEntry> fileEntries = new ArrayList<FileEntry>();
 
-	/** Whether this request has payload. */
-	private boolean hasPayload = false;
-
-	/** The input streams for the payload. */
-	private File payloadFile;
+	/** The file entries that are sent as payload. */
+	private List<DirectFileEntry> directFileEntries = new ArrayList<DirectFileEntry>();
 
 	/** The total number of bytes of the payload. */
 	private long payloadLength = 0;
 
-	/** The temp directory to use. */
-	private final String tempDirectory;
-
 	/**
 	 * Creates a new <code>ClientPutComplexDir</code> command with the specified
 	 * identifier and URI.
@@ -64,7 +66,7 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	 *            The URI of the command
 	 */
 	public ClientPutComplexDir(String identifier, String uri) {
-		this(identifier, uri, null);
+		super("ClientPutComplexDir", identifier, uri);
 	}
 
 	/**
@@ -76,54 +78,29 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	 * @param uri
 	 *            The URI of the command
 	 * @param tempDirectory
-	 *            The temp directory to use, or {@code null} to use the default
-	 *            temp directory
+	 *            Ignored
+	 * @deprecated The payload is no longer spooled to a temporary file, use
+	 *             {@link #ClientPutComplexDir(String, String)} instead
 	 */
+	@Deprecated
 	public ClientPutComplexDir(String identifier, String uri, String tempDirectory) {
-		super("ClientPutComplexDir", identifier, uri);
-		this.tempDirectory = tempDirectory;
+		this(identifier, uri);
 	}
 
 	/**
-	 * Adds a file to the directory inserted by this request.
+	 * Adds a file to the directory inserted by this request. The payload of
+	 * direct file entries is not read until the command is executed.
 	 *
 	 * @param fileEntry
 	 *            The file entry to add to the directory
 	 * @throws IOException
-	 *             if an I/O error occurs when creating the payload stream
+	 *             if an I/O error occurs
 	 */
 	public void addFileEntry(FileEntry fileEntry) throws IOException {
+		fileEntries.add(fileEntry);
 		if (fileEntry instanceof DirectFileEntry) {
-			if (payloadFile == null) {
-				try {
-					payloadFile = File.createTempFile("payload", ".dat", (tempDirectory != null) ? new File(tempDirectory) : null);
-					payloadFile.deleteOnExit();
-				} catch (IOException e) {
-					/* ignore. */
-				}
-			}
-			if (payloadFile != null) {
-				InputStream payloadInputStream = ((DirectFileEntry) fileEntry).getDataInputStream();
-				FileOutputStream payloadOutputStream = null;
-				try {
-					payloadOutputStream = new FileOutputStream(payloadFile, true);
-					byte[] buffer = new byte[65536];
-					int read = 0;
-					while ((read = payloadInputStream.read(buffer)) != -1) {
-						payloadOutputStream.write(buffer, 0, read);
-					}
-					payloadOutputStream.flush();
-					fileEntries.add(fileEntry);
-				} catch (IOException ioe1) {
-					payloadFile.delete();
-					throw ioe1;
-				} finally {
-					Closer.close(payloadOutputStream);
-					Closer.close(payloadInputStream);
-				}
-			}
-		} else {
-			fileEntries.add(fileEntry);
+			directFileEntries.add((DirectFileEntry) fileEntry);
+			payloadLength += ((DirectFileEntry) fileEntry).getDataLength();
 		}
 	}
 
@@ -141,11 +118,9 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 			}
 			writer.write("Files." + fileIndex + ".UploadFrom=" + fileEntry.getName() + LINEFEED);
 			if (fileEntry instanceof DirectFileEntry) {
-				hasPayload = true;
 				writer.write("Files." + fileIndex + ".DataLength=" + ((DirectFileEntry) fileEntry).getDataLength() + LINEFEED);
-				payloadLength += ((DirectFileEntry) fileEntry).getDataLength();
 			} else if (fileEntry instanceof DiskFileEntry) {
-				writer.write("Files." + fileIndex + ".Filename=" + ((DiskFileEntry) fileEntry).getFilename() + LINEFEED);
+				writer.write("Files." + fileIndex + ".Filename=" + ((DiskFileEntry) fileEntry).getLocalFilename() + LINEFEED);
 			} else if (fileEntry instanceof RedirectFileEntry) {
 				writer.write("Files." + fileIndex + ".TargetURI=" + ((RedirectFileEntry) fileEntry).getTargetURI() + LINEFEED);
 			}
@@ -158,7 +133,7 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	 */
 	@Override
 	protected boolean hasPayload() {
-		return hasPayload;
+		return !directFileEntries.isEmpty();
 	}
 
 	/**
@@ -171,17 +146,88 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 
 	/**
 	 * {@inheritDoc}
+	 * <p>
+	 * The returned stream opens the streams of the direct file entries one
+	 * after another, in the order the entries were added.
 	 */
 	@Override
 	protected InputStream getPayload() {
-		if (payloadFile != null) {
-			try {
-				return new FileInputStream(payloadFile);
-			} catch (FileNotFoundException e) {
-				/* shouldn't occur. */
+		final Iterator<DirectFileEntry> entries = directFileEntries.iterator();
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+
+			@Override
+			public boolean hasMoreElements() {
+				return entries.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				try {
+					return entries.next().getDataInputStream();
+				} catch (IOException ioe1) {
+					throw new UncheckedIOException(ioe1);
+				}
 			}
+
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The payload of every direct file entry is written to the channel in the
+	 * order the entries were added.
+	 */
+	@Override
+	protected void writePayload(WritableByteChannel channel, ProgressListener progressListener) throws IOException {
+		long totalWritten = 0;
+		for (DirectFileEntry directFileEntry : directFileEntries) {
+			directFileEntry.transferTo(channel, (progressListener == null) ? null : new OffsetProgressListener(progressListener, totalWritten, payloadLength));
+			totalWritten += directFileEntry.getDataLength();
+		}
+	}
+
+	/**
+	 * Progress listener that reports the progress of a single entry as
+	 * progress of the complete payload.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class OffsetProgressListener implements ProgressListener {
+
+		/** The progress listener to forward progress to. */
+		private final ProgressListener progressListener;
+
+		/** The number of bytes written before the current entry. */
+		private final long offset;
+
+		/** The total length of the payload. */
+		private final long totalLength;
+
+		/**
+		 * Creates a new offset progress listener.
+		 *
+		 * @param progressListener
+		 *            The progress listener to forward progress to
+		 * @param offset
+		 *            The number of bytes written before the current entry
+		 * @param totalLength
+		 *            The total length of the payload
+		 */
+		public OffsetProgressListener(ProgressListener progressListener, long offset, long totalLength) {
+			this.progressListener = progressListener;
+			this.offset = offset;
+			this.totalLength = totalLength;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onProgress(long copied, long length) {
+			progressListener.onProgress(offset + copied, totalLength);
 		}
-		return null;
+
 	}
 
 }
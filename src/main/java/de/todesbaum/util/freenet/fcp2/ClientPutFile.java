@@ -0,0 +1,149 @@
+/*
+ * jSite - ClientPutFile.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
+
+/**
+ * Implementation of the <code>ClientPut</code> command that inserts a single
+ * file. The content of the file is described by a {@link FileEntry}, i.e. it
+ * can be sent as payload, read by the node from its disk, or redirect to
+ * another key.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ClientPutFile extends ClientPut {
+
+	/** The file to insert. */
+	private final FileEntry fileEntry;
+
+	/** The filename to append to the generated key. */
+	private String targetFilename;
+
+	/**
+	 * Creates a new <code>ClientPut</code> command that inserts the given
+	 * file.
+	 *
+	 * @param identifier
+	 *            The identifier of the command
+	 * @param uri
+	 *            The URI of the command
+	 * @param fileEntry
+	 *            The file to insert
+	 */
+	public ClientPutFile(String identifier, String uri, FileEntry fileEntry) {
+		super("ClientPut", identifier, uri);
+		this.fileEntry = fileEntry;
+	}
+
+	/**
+	 * Returns the file inserted by this command.
+	 *
+	 * @return The file inserted by this command
+	 */
+	public FileEntry getFileEntry() {
+		return fileEntry;
+	}
+
+	/**
+	 * Returns the filename that is appended to the generated key.
+	 *
+	 * @return The target filename, or {@code null} if no filename is appended
+	 */
+	public String getTargetFilename() {
+		return targetFilename;
+	}
+
+	/**
+	 * Sets the filename that is appended to the generated key. The node
+	 * creates a small container with the content type of the file, so a
+	 * request for the key results in the correct content type.
+	 *
+	 * @param targetFilename
+	 *            The target filename, or {@code null} to not append a filename
+	 */
+	public void setTargetFilename(String targetFilename) {
+		this.targetFilename = targetFilename;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		if (fileEntry.getContentType() != null) {
+			writer.write("Metadata.ContentType=" + fileEntry.getContentType() + LINEFEED);
+		}
+		if (targetFilename != null) {
+			writer.write("TargetFilename=" + targetFilename + LINEFEED);
+		}
+		writer.write("UploadFrom=" + fileEntry.getName() + LINEFEED);
+		if (fileEntry instanceof DirectFileEntry) {
+			writer.write("DataLength=" + ((DirectFileEntry) fileEntry).getDataLength() + LINEFEED);
+		} else if (fileEntry instanceof DiskFileEntry) {
+			writer.write("Filename=" + ((DiskFileEntry) fileEntry).getLocalFilename() + LINEFEED);
+		} else if (fileEntry instanceof RedirectFileEntry) {
+			writer.write("TargetURI=" + ((RedirectFileEntry) fileEntry).getTargetURI() + LINEFEED);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean hasPayload() {
+		return fileEntry instanceof DirectFileEntry;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected long getPayloadLength() {
+		return ((DirectFileEntry) fileEntry).getDataLength();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputStream getPayload() {
+		try {
+			return ((DirectFileEntry) fileEntry).getDataInputStream();
+		} catch (IOException ioe1) {
+			throw new UncheckedIOException(ioe1);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void writePayload(WritableByteChannel channel, ProgressListener progressListener) throws IOException {
+		((DirectFileEntry) fileEntry).transferTo(channel, progressListener);
+	}
+
+}
@@ -20,7 +20,14 @@ package de.todesbaum.util.freenet.fcp2;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import net.pterodactylus.util.io.Closer;
+import net.pterodactylus.util.io.StreamCopier;
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 
 /**
  * Abstract base class for all commands.
@@ -134,4 +141,30 @@ public abstract class Command {
 		return -1;
 	}
 
+	/**
+	 * Writes the payload of this command to the given channel. This method is
+	 * never called if {@link #hasPayload()} returns <code>false</code>.
+	 * <p>
+	 * The default implementation copies the stream returned by
+	 * {@link #getPayload()}; subclasses that know where their payload comes
+	 * from can override this method to transfer it more efficiently.
+	 *
+	 * @param channel
+	 *            The channel to write the payload to
+	 * @param progressListener
+	 *            The progress listener to notify (may be {@code null})
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	protected void writePayload(WritableByteChannel channel, ProgressListener progressListener) throws IOException {
+		InputStream payloadInputStream = null;
+		try {
+			payloadInputStream = getPayload();
+			OutputStream channelOutputStream = Channels.newOutputStream(channel);
+			StreamCopier.copy(payloadInputStream, channelOutputStream, progressListener, getPayloadLength());
+		} finally {
+			Closer.close(payloadInputStream);
+		}
+	}
+
 }
@@ -19,21 +19,43 @@
 package de.todesbaum.util.freenet.fcp2;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import de.todesbaum.util.io.LineInputStream;
+import de.todesbaum.util.event.EventDispatcher;
 import de.todesbaum.util.io.TempFileInputStream;
 import net.pterodactylus.util.io.Closer;
-import net.pterodactylus.util.io.StreamCopier;
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 
 /**
- * A physical connection to a Freenet node.
+ * A physical connection to a Freenet node. The network I/O of the connection
+ * is run by a {@link ConnectionSelector}, which can be shared by any number of
+ * connections; unless a selector is specified, the
+ * {@link ConnectionSelector#getDefault() default selector} is used.
+ * <p>
+ * Messages are dispatched by their identifier: a listener that has
+ * {@link #addRoute(String, ConnectionListener) claimed} an identifier is the
+ * only one to receive messages with that identifier. All other messages,
+ * including those without an identifier, are sent to all listeners.
+ * <p>
+ * Listeners are notified by the {@link EventDispatcher} of the selector so
+ * that a slow listener can not stall the selector, which reads from all
+ * connections. All connections of a selector share its dispatcher, so the
+ * events of a connection are delivered in the order they were received.
+ * Progress messages of a request that have not been delivered yet are
+ * replaced by newer progress messages of the same request.
  *
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id$
@@ -41,8 +63,14 @@ import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 public class Connection {
 	private final static Logger logger = Logger.getLogger(Connection.class.getName());
 
+	/** The time to wait for the NodeHello message, in milliseconds. */
+	private static final long NODE_HELLO_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
 	/** The listeners that receive events from this connection. */
-	private final List<ConnectionListener> connectionListeners = new ArrayList<>();
+	private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+
+	/** The listeners that own an identifier, by identifier. */
+	private final Map<String, ConnectionListener> routes = new ConcurrentHashMap<>();
 
 	/** The node this connection is connected to. */
 	private final Node node;
@@ -50,19 +78,19 @@ public class Connection {
 	/** The name of this connection. */
 	private final String name;
 
-	/** The network socket of this connection. */
-	private Socket nodeSocket;
+	/** The selector running the I/O of this connection. */
+	private ConnectionSelector connectionSelector;
 
-	/** The input stream that reads from the socket. */
-	private InputStream nodeInputStream;
+	/** The socket channel of this connection. */
+	private SocketChannel nodeChannel;
 
-	/** The output stream that writes to the socket. */
-	private OutputStream nodeOutputStream;
+	/** The network socket of this connection. */
+	private Socket nodeSocket;
 
-	/** The thread that reads from the socket. */
-	private NodeReader nodeReader;
+	/** The channel registered with the selector. */
+	private ConnectionSelector.RegisteredChannel registeredChannel;
 
-	/** A writer for the output stream. */
+	/** A writer for the registered channel. */
 	private Writer nodeWriter;
 
 	/** The NodeHello message sent by the node on connect. */
@@ -71,6 +99,9 @@ public class Connection {
 	/** The temp directory to use. */
 	private String tempDirectory;
 
+	/** The results of TestDDA handshakes, by directory. */
+	private final Map<String, Boolean> directoryAccess = new ConcurrentHashMap<>();
+
 	/**
 	 * Creates a new connection to the specified node with the specified name.
 	 *
@@ -80,8 +111,25 @@ public class Connection {
 	 *            The name of this connection
 	 */
 	public Connection(Node node, String name) {
+		this(node, name, null);
+	}
+
+	/**
+	 * Creates a new connection to the specified node with the specified name
+	 * that runs its I/O on the given selector.
+	 *
+	 * @param node
+	 *            The node to connect to
+	 * @param name
+	 *            The name of this connection
+	 * @param connectionSelector
+	 *            The selector to run the I/O of this connection, or
+	 *            {@code null} to use the default selector
+	 */
+	public Connection(Node node, String name, ConnectionSelector connectionSelector) {
 		this.node = node;
 		this.name = name;
+		this.connectionSelector = connectionSelector;
 	}
 
 	/**
@@ -107,12 +155,47 @@ public class Connection {
 	}
 
 	/**
-	 * Notifies listeners about a received message.
+	 * Sends all messages with the given identifier only to the given
+	 * listener. The listener still needs to be
+	 * {@link #addConnectionListener(ConnectionListener) added} to be notified
+	 * about the loss of the connection and about messages without an
+	 * identifier.
+	 *
+	 * @param identifier
+	 *            The identifier to route
+	 * @param connectionListener
+	 *            The listener that receives the messages with the identifier
+	 */
+	public void addRoute(String identifier, ConnectionListener connectionListener) {
+		routes.put(identifier, connectionListener);
+	}
+
+	/**
+	 * Removes the route for the given identifier if it still points to the
+	 * given listener.
+	 *
+	 * @param identifier
+	 *            The identifier to stop routing
+	 * @param connectionListener
+	 *            The listener that received the messages with the identifier
+	 */
+	public void removeRoute(String identifier, ConnectionListener connectionListener) {
+		routes.remove(identifier, connectionListener);
+	}
+
+	/**
+	 * Notifies listeners about a received message. If a listener claimed the
+	 * identifier of the message, only that listener is notified.
 	 *
 	 * @param message
 	 *            The received message
 	 */
 	protected void fireMessageReceived(Message message) {
+		ConnectionListener routedConnectionListener = routes.get(message.getIdentifier());
+		if (routedConnectionListener != null) {
+			routedConnectionListener.messageReceived(this, message);
+			return;
+		}
 		for (ConnectionListener connectionListener : connectionListeners) {
 			connectionListener.messageReceived(this, message);
 		}
@@ -147,48 +230,99 @@ public class Connection {
 		this.tempDirectory = tempDirectory;
 	}
 
+	/**
+	 * Returns whether the node allows this connection to read files from the
+	 * given directory. The node remembers a completed TestDDA handshake until
+	 * the connection is closed, so the result only has to be found out once
+	 * per connection.
+	 *
+	 * @param directory
+	 *            The directory to check
+	 * @return Whether the directory may be read, or an empty optional if no
+	 *         TestDDA handshake has been completed for the directory
+	 */
+	public Optional<Boolean> getDirectoryAccess(String directory) {
+		return Optional.ofNullable(directoryAccess.get(directory));
+	}
+
+	/**
+	 * Stores the result of a TestDDA handshake for the given directory.
+	 *
+	 * @param directory
+	 *            The directory that was checked
+	 * @param readAllowed
+	 *            {@code true} if the node may read the directory,
+	 *            {@code false} otherwise
+	 */
+	public void setDirectoryAccess(String directory, boolean readAllowed) {
+		directoryAccess.put(directory, readAllowed);
+	}
+
 	/**
 	 * Connects to the node.
 	 *
 	 * @return <code>true</code> if the connection succeeded and the node
-	 *         returned a NodeHello message
+	 *         returned a NodeHello message in time
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 * @see #getNodeHello()
 	 */
 	public synchronized boolean connect() throws IOException {
+		nodeChannel = null;
 		nodeSocket = null;
-		nodeInputStream = null;
-		nodeOutputStream = null;
+		registeredChannel = null;
 		nodeWriter = null;
-		nodeReader = null;
+		nodeHello = null;
+		directoryAccess.clear();
 		try {
-			nodeSocket = new Socket(node.getHostname(), node.getPort());
+			if (connectionSelector == null) {
+				connectionSelector = ConnectionSelector.getDefault();
+			}
+			nodeChannel = SocketChannel.open(new InetSocketAddress(node.getHostname(), node.getPort()));
+			nodeSocket = nodeChannel.socket();
 			nodeSocket.setReceiveBufferSize(65535);
-			nodeInputStream = nodeSocket.getInputStream();
-			nodeOutputStream = nodeSocket.getOutputStream();
-			nodeWriter = new OutputStreamWriter(nodeOutputStream, Charset.forName("UTF-8"));
-			nodeReader = new NodeReader(nodeInputStream);
-			Thread nodeReaderThread = new Thread(nodeReader);
-			nodeReaderThread.setDaemon(true);
-			nodeReaderThread.start();
+			registeredChannel = connectionSelector.register(nodeChannel, new NodeReader());
+			nodeWriter = new OutputStreamWriter(Channels.newOutputStream(registeredChannel), Charset.forName("UTF-8"));
 			ClientHello clientHello = new ClientHello();
 			clientHello.setName(name);
 			clientHello.setExpectedVersion("2.0");
 			execute(clientHello);
-			synchronized (this) {
-				try {
-					wait();
-				} catch (InterruptedException e) {
-				}
+			if (!waitForNodeHello()) {
+				disconnect();
+				return false;
 			}
-			return nodeHello != null;
+			return true;
 		} catch (IOException ioe1) {
 			disconnect();
 			throw ioe1;
 		}
 	}
 
+	/**
+	 * Waits until the node has sent its NodeHello message, the connection was
+	 * closed, or the {@link #NODE_HELLO_TIMEOUT timeout} has expired.
+	 *
+	 * @return {@code true} if the NodeHello message was received,
+	 *         {@code false} otherwise
+	 */
+	private synchronized boolean waitForNodeHello() {
+		long deadline = System.currentTimeMillis() + NODE_HELLO_TIMEOUT;
+		while ((nodeHello == null) && (registeredChannel != null)) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				logger.log(Level.WARNING, "Node did not send NodeHello to {0} in time.", name);
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return nodeHello != null;
+	}
+
 	/**
 	 * Returns whether this connection is still connected to the node.
 	 *
@@ -214,17 +348,17 @@ public class Connection {
 	public void disconnect() {
 		Closer.close(nodeWriter);
 		nodeWriter = null;
-		Closer.close(nodeOutputStream);
-		nodeOutputStream = null;
-		Closer.close(nodeInputStream);
-		nodeInputStream = null;
-		nodeInputStream = null;
+		Closer.close(registeredChannel);
+		registeredChannel = null;
 		Closer.close(nodeSocket);
 		nodeSocket = null;
+		Closer.close(nodeChannel);
+		nodeChannel = null;
 		synchronized (this) {
 			notify();
 		}
-		fireConnectionTerminated();
+		/* deliver the messages that were received before. */
+		dispatch(null, this::fireConnectionTerminated);
 	}
 
 	/**
@@ -262,123 +396,107 @@ public class Connection {
 		nodeWriter.write("EndMessage" + Command.LINEFEED);
 		nodeWriter.flush();
 		if (command.hasPayload()) {
-			InputStream payloadInputStream = null;
-			try {
-				payloadInputStream = command.getPayload();
-				StreamCopier.copy(payloadInputStream, nodeOutputStream, progressListener, command.getPayloadLength());
-			} finally {
-				Closer.close(payloadInputStream);
-			}
-			nodeOutputStream.flush();
+			command.writePayload(registeredChannel, progressListener);
 		}
 	}
 
 	/**
-	 * The reader thread for this connection. This is essentially a thread that
-	 * reads lines from the node, creates messages from them and notifies
+	 * Hands the given event to the dispatcher of the selector. A connection
+	 * that was never connected has no selector and no earlier events, so the
+	 * event is delivered right away.
+	 *
+	 * @param coalescingKey
+	 *            The coalescing key of the event, or {@code null} if the
+	 *            event must not be replaced
+	 * @param event
+	 *            The event to deliver to the listeners
+	 */
+	private void dispatch(Object coalescingKey, Runnable event) {
+		ConnectionSelector connectionSelector = this.connectionSelector;
+		if (connectionSelector == null) {
+			event.run();
+			return;
+		}
+		connectionSelector.getEventDispatcher().dispatch(coalescingKey, event);
+	}
+
+	/**
+	 * The reader for this connection. It is called by the
+	 * {@link ConnectionSelector} with chunks of data read from the node,
+	 * decodes messages from them using a {@link MessageDecoder} and notifies
 	 * listeners about the messages.
 	 *
 	 * @author David Roden &lt;droden@gmail.com&gt;
 	 * @version $Id$
 	 */
-	private class NodeReader implements Runnable {
+	private class NodeReader implements ConnectionSelector.ChannelHandler, MessageDecoder.MessageHandler, MessageDecoder.PayloadHandler {
+
+		/** The decoder for the data read from the node. */
+		private final MessageDecoder messageDecoder = new MessageDecoder(this, this);
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void dataReceived(byte[] data, int offset, int length) throws IOException {
+			messageDecoder.decode(data, offset, length);
+		}
 
-		/** The input stream to read from. */
-		private final InputStream nodeInputStream;
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void channelClosed() {
+			Connection.this.disconnect();
+		}
 
 		/**
-		 * Creates a new reader that reads from the specified input stream.
-		 *
-		 * @param nodeInputStream
-		 *            The input stream to read from
+		 * {@inheritDoc}
 		 */
-		public NodeReader(InputStream nodeInputStream) {
-			this.nodeInputStream = nodeInputStream;
+		@Override
+		public void messageDecoded(Message message) {
+			if (message.getName().equals("NodeHello")) {
+				nodeHello = message;
+				synchronized (Connection.this) {
+					Connection.this.notify();
+				}
+			} else {
+				/* the dispatcher is shared, so the key has to name the connection. */
+				Object coalescingKey = message.getName().equals("SimpleProgress") ? Arrays.asList(Connection.this, "SimpleProgress", message.getIdentifier()) : null;
+				dispatch(coalescingKey, () -> fireMessageReceived(message));
+			}
 		}
 
 		/**
-		 * Main loop of the reader. Lines are read and converted into
-		 * {@link Message} objects.
+		 * {@inheritDoc}
+		 * <p>
+		 * The payload is stored in a temporary file that is deleted once the
+		 * payload input stream of the message is closed.
 		 */
 		@Override
-		public void run() {
-			LineInputStream nodeReader = null;
+		public OutputStream payloadStarted(final Message message, long length) {
 			try {
-				nodeReader = new LineInputStream(nodeInputStream);
-				String line; 
-				Message message = null;
-				while (true) {
-					line = nodeReader.readLine();
-					// System.err.println("> " + line);
-					if (line == null) {
-						break;
-					}
-					if (message == null) {
-						message = new Message(line);
-						continue;
-					}
-					if ("Data".equals(line)) {
-						/* need to read message from stream now */
-						try {
-							File tempDirectoryFile = (tempDirectory != null) ? new File(tempDirectory) : null;
-							File tempFile = File.createTempFile("fcpv2", "data", tempDirectoryFile);
-							tempFile.deleteOnExit();
-							try (FileOutputStream tempFileOutputStream = new FileOutputStream(tempFile)) {
-								long dataLength = Long.parseLong(message.get("DataLength"));
-								StreamCopier.copy(nodeInputStream, tempFileOutputStream, dataLength);
-							}
-							message.setPayloadInputStream(new TempFileInputStream(tempFile));
-						} catch (IOException ioe1) {
-							logger.log(Level.SEVERE, "Error reading data payload", ioe1);
-						}
+				File tempDirectoryFile = (tempDirectory != null) ? new File(tempDirectory) : null;
+				final File tempFile = File.createTempFile("fcpv2", "data", tempDirectoryFile);
+				tempFile.deleteOnExit();
+				return new FilterOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))) {
+
+					@Override
+					public void write(byte[] data, int offset, int length) throws IOException {
+						out.write(data, offset, length);
 					}
-					if ("Data".equals(line) || "EndMessage".equals(line)) {
-						if (message.getName().equals("NodeHello")) {
-							nodeHello = message;
-							synchronized (Connection.this) {
-								Connection.this.notify();
-							}
-						} else {
-							fireMessageReceived(message);
-						}
-						message = null;
-						continue;
-					}
-					int equalsPosition = line.indexOf('=');
-					if (equalsPosition > -1) {
-						String key = line.substring(0, equalsPosition).trim();
-						String value = line.substring(equalsPosition + 1).trim();
-						if (key.equals("Identifier")) {
-							message.setIdentifier(value);
-						} else {
-							message.put(key, value);
-						}
-						continue;
-					}
-					/* skip lines consisting of whitespace only */
-					if (line.trim().length() == 0) {
-						continue;
+
+					@Override
+					public void close() throws IOException {
+						super.close();
+						message.setPayloadInputStream(new TempFileInputStream(tempFile));
 					}
-					/* if we got here, some error occured! */
-					throw new IOException("Unexpected line: " + line);
-				}
+
+				};
 			} catch (IOException ioe1) {
-				logger.log(Level.ALL, "Failed reading node", ioe1);
-			} finally {
-				if (nodeReader != null) {
-					try {
-						nodeReader.close();
-					} catch (IOException ioe1) {
-					}
-				}
-				if (nodeInputStream != null) {
-					try {
-						nodeInputStream.close();
-					} catch (IOException ioe1) {
-					}
-				}
+				logger.log(Level.SEVERE, "Error reading data payload", ioe1);
+				return null;
 			}
-			Connection.this.disconnect();
 		}
 
 	}
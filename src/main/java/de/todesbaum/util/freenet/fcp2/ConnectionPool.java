@@ -0,0 +1,271 @@
+/*
+ * jSite - ConnectionPool.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of connections to a single node. Connections handed out by
+ * the pool are shared: because the node and the {@link Connection} keep the
+ * replies of different requests apart by their identifiers, any number of
+ * {@link Client}s can use the same connection at once. The pool hands out the
+ * connection with the fewest users and only opens a new connection while all
+ * connections are in use and the limit has not been reached.
+ * <p>
+ * Before a connection is handed out, the pool drops connections that have
+ * been lost and connections that have been idle for too long, so callers
+ * transparently get a fresh connection after the node was restarted.
+ * <p>
+ * Users of a pooled connection must not
+ * {@link Connection#disconnect() disconnect} it; they
+ * {@link Client#close() close} their clients and
+ * {@link #release(Connection) release} the connection instead.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ConnectionPool {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+	/** Creates new, unconnected connections. */
+	private final Supplier<Connection> connectionFactory;
+
+	/** The maximum number of connections. */
+	private final int maxConnections;
+
+	/** The time after which an unused connection is closed, in milliseconds. */
+	private final long idleTimeout;
+
+	/** The connections of the pool. */
+	private final List<PooledConnection> pooledConnections = new ArrayList<PooledConnection>();
+
+	/** The number of connections that are being established. */
+	private int pendingConnections;
+
+	/** Whether the pool was closed. */
+	private boolean closed;
+
+	/**
+	 * Creates a new connection pool.
+	 *
+	 * @param connectionFactory
+	 *            Creates new, unconnected connections to the node
+	 * @param maxConnections
+	 *            The maximum number of connections
+	 * @param idleTimeout
+	 *            The time after which an unused connection is closed
+	 * @param unit
+	 *            The unit of the idle timeout
+	 */
+	public ConnectionPool(Supplier<Connection> connectionFactory, int maxConnections, long idleTimeout, TimeUnit unit) {
+		this.connectionFactory = connectionFactory;
+		this.maxConnections = Math.max(1, maxConnections);
+		this.idleTimeout = unit.toMillis(idleTimeout);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of open connections in this pool.
+	 *
+	 * @return The number of open connections
+	 */
+	public synchronized int getConnectionCount() {
+		return pooledConnections.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns a connected connection from this pool. Every acquired
+	 * connection has to be {@link #release(Connection) released} again.
+	 * <p>
+	 * A new connection is established without holding the lock of the pool,
+	 * so that other threads can acquire and release connections while the
+	 * node is slow to answer.
+	 *
+	 * @return A connected connection
+	 * @throws IOException
+	 *             if a new connection can not be established
+	 * @throws IllegalStateException
+	 *             if the pool has been closed
+	 */
+	public Connection acquire() throws IOException {
+		synchronized (this) {
+			while (true) {
+				if (closed) {
+					throw new IllegalStateException("connection pool is closed");
+				}
+				removeStaleConnections();
+				PooledConnection leastUsedConnection = null;
+				for (PooledConnection pooledConnection : pooledConnections) {
+					if ((leastUsedConnection == null) || (pooledConnection.users < leastUsedConnection.users)) {
+						leastUsedConnection = pooledConnection;
+					}
+				}
+				boolean slotAvailable = (pooledConnections.size() + pendingConnections) < maxConnections;
+				if ((leastUsedConnection != null) && ((leastUsedConnection.users == 0) || !slotAvailable)) {
+					leastUsedConnection.users++;
+					return leastUsedConnection.connection;
+				}
+				if (slotAvailable) {
+					pendingConnections++;
+					break;
+				}
+				/* all slots are taken by connections that are being established. */
+				try {
+					wait();
+				} catch (InterruptedException ie1) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while waiting for a connection");
+				}
+			}
+		}
+		Connection connection = connectionFactory.get();
+		boolean connected = false;
+		try {
+			connected = connection.connect();
+		} finally {
+			if (!connected) {
+				releaseSlot();
+			}
+		}
+		if (!connected) {
+			throw new IOException("Could not connect to node.");
+		}
+		synchronized (this) {
+			releaseSlot();
+			if (!closed) {
+				logger.log(Level.FINE, "Opened pooled connection {0}.", connection.getName());
+				PooledConnection pooledConnection = new PooledConnection(connection);
+				pooledConnection.users++;
+				pooledConnections.add(pooledConnection);
+				return connection;
+			}
+		}
+		connection.disconnect();
+		throw new IllegalStateException("connection pool is closed");
+	}
+
+	/**
+	 * Returns a connection to the pool.
+	 *
+	 * @param connection
+	 *            The connection to release
+	 */
+	public synchronized void release(Connection connection) {
+		for (PooledConnection pooledConnection : pooledConnections) {
+			if (pooledConnection.connection == connection) {
+				pooledConnection.users = Math.max(0, pooledConnection.users - 1);
+				pooledConnection.lastReleaseTime = System.currentTimeMillis();
+				break;
+			}
+		}
+		if (closed) {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Closes this pool and disconnects all of its connections.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (PooledConnection pooledConnection : pooledConnections) {
+			pooledConnection.connection.disconnect();
+		}
+		pooledConnections.clear();
+		notifyAll();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Frees the slot that was reserved for a connection that is being
+	 * established, and wakes up threads waiting for a slot.
+	 */
+	private synchronized void releaseSlot() {
+		pendingConnections--;
+		notifyAll();
+	}
+
+	/**
+	 * Removes connections that have been lost, and disconnects and removes
+	 * connections that have not been used for longer than the idle timeout.
+	 */
+	private void removeStaleConnections() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> pooledConnectionIterator = pooledConnections.iterator();
+		while (pooledConnectionIterator.hasNext()) {
+			PooledConnection pooledConnection = pooledConnectionIterator.next();
+			if (!pooledConnection.connection.isConnected()) {
+				logger.log(Level.FINE, "Pooled connection {0} was lost.", pooledConnection.connection.getName());
+				pooledConnectionIterator.remove();
+			} else if ((pooledConnection.users == 0) && ((now - pooledConnection.lastReleaseTime) > idleTimeout)) {
+				logger.log(Level.FINE, "Closing idle pooled connection {0}.", pooledConnection.connection.getName());
+				pooledConnection.connection.disconnect();
+				pooledConnectionIterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * A connection of the pool and its usage.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class PooledConnection {
+
+		/** The connection. */
+		final Connection connection;
+
+		/** The number of users of the connection. */
+		int users;
+
+		/** The time the connection was last released. */
+		long lastReleaseTime = System.currentTimeMillis();
+
+		/**
+		 * Creates a new pooled connection.
+		 *
+		 * @param connection
+		 *            The connection
+		 */
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+	}
+
+}
@@ -0,0 +1,422 @@
+/*
+ * jSite - ConnectionSelector.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.todesbaum.util.event.EventDispatcher;
+
+/**
+ * Runs the network I/O of any number of {@link Connection}s on a single
+ * thread. The socket channels of all connections are registered with one
+ * {@link Selector}; the selector thread reads from every channel that has
+ * data into a direct {@link ByteBuffer} and hands the data to the
+ * {@link ChannelHandler} of the channel.
+ * <p>
+ * Writes are performed by the thread that sends a command. Because the
+ * channels are non-blocking, a write that does not fit into the socket’s send
+ * buffer waits until the selector thread reports that the channel is
+ * writable again.
+ * <p>
+ * The selector also owns the {@link EventDispatcher} that notifies the
+ * listeners of all its connections, so the number of dispatcher threads does
+ * not grow with the number of connections.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ConnectionSelector implements Runnable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ConnectionSelector.class.getName());
+
+	/** The size of the read buffer. */
+	private static final int BUFFER_SIZE = 65536;
+
+	/** The selector shared by all connections that do not specify one. */
+	private static ConnectionSelector defaultSelector;
+
+	/** The selector. */
+	private final Selector selector;
+
+	/** The buffer all channels are read into. */
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/** The array the read data is handed to the handlers in. */
+	private final byte[] readArray = new byte[BUFFER_SIZE];
+
+	/** The selector thread. */
+	private final Thread selectorThread;
+
+	/** The dispatcher for the events of all connections of this selector. */
+	private final EventDispatcher eventDispatcher;
+
+	/**
+	 * Creates a new connection selector and starts its thread.
+	 *
+	 * @param name
+	 *            The name of the selector thread
+	 * @throws IOException
+	 *             if the selector can not be opened
+	 */
+	public ConnectionSelector(String name) throws IOException {
+		selector = Selector.open();
+		eventDispatcher = new EventDispatcher(name + " Events");
+		selectorThread = new Thread(this, name);
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Returns the connection selector that is shared by all connections that
+	 * do not specify a selector of their own. It is created on first use.
+	 *
+	 * @return The default connection selector
+	 * @throws IOException
+	 *             if the selector can not be opened
+	 */
+	public static synchronized ConnectionSelector getDefault() throws IOException {
+		if (defaultSelector == null) {
+			defaultSelector = new ConnectionSelector("FCP Connection Selector");
+		}
+		return defaultSelector;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the dispatcher that notifies the listeners of the connections
+	 * of this selector.
+	 *
+	 * @return The event dispatcher of this selector
+	 */
+	public EventDispatcher getEventDispatcher() {
+		return eventDispatcher;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Registers the given channel with this selector. The channel is switched
+	 * to non-blocking mode.
+	 *
+	 * @param socketChannel
+	 *            The channel to register
+	 * @param channelHandler
+	 *            The handler for data read from the channel
+	 * @return The registered channel, to write to the channel with
+	 * @throws IOException
+	 *             if the channel can not be registered
+	 */
+	public RegisteredChannel register(SocketChannel socketChannel, ChannelHandler channelHandler) throws IOException {
+		socketChannel.configureBlocking(false);
+		RegisteredChannel registeredChannel = new RegisteredChannel(socketChannel, channelHandler);
+		registeredChannel.selectionKey = socketChannel.register(selector, SelectionKey.OP_READ, registeredChannel);
+		selector.wakeup();
+		return registeredChannel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Main loop of the selector thread.
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				selector.select();
+			} catch (IOException ioe1) {
+				logger.log(Level.SEVERE, "Could not select channels!", ioe1);
+				return;
+			}
+			Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+			while (selectedKeys.hasNext()) {
+				SelectionKey selectionKey = selectedKeys.next();
+				selectedKeys.remove();
+				RegisteredChannel registeredChannel = (RegisteredChannel) selectionKey.attachment();
+				try {
+					if (selectionKey.isWritable()) {
+						registeredChannel.writable();
+					}
+					if (selectionKey.isReadable()) {
+						read(registeredChannel);
+					}
+				} catch (CancelledKeyException cke1) {
+					/* channel was closed, ignore. */
+				}
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Reads up to one buffer full of data from the given channel and hands it
+	 * to the channel’s handler; if there is more data, the channel is selected
+	 * again after all other channels had their turn. If the channel has been
+	 * closed by the node, or the handler can not process the data, the channel
+	 * is closed.
+	 *
+	 * @param registeredChannel
+	 *            The channel to read from
+	 */
+	private void read(RegisteredChannel registeredChannel) {
+		try {
+			int read = registeredChannel.socketChannel.read(readBuffer);
+			if (read > 0) {
+				readBuffer.flip();
+				readBuffer.get(readArray, 0, read);
+				readBuffer.clear();
+				registeredChannel.channelHandler.dataReceived(readArray, 0, read);
+			} else if (read == -1) {
+				registeredChannel.closeFromSelector();
+			}
+		} catch (IOException ioe1) {
+			logger.log(Level.FINE, "Could not read from channel.", ioe1);
+			readBuffer.clear();
+			registeredChannel.closeFromSelector();
+		}
+	}
+
+	/**
+	 * Handler for the data received by a registered channel. All methods are
+	 * called on the selector thread, so they must not block; a handler that
+	 * needs to write to a channel should do so from another thread.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public interface ChannelHandler {
+
+		/**
+		 * Notifies the handler that data has been received. The buffer is
+		 * reused after this method returns.
+		 *
+		 * @param data
+		 *            The buffer containing the data
+		 * @param offset
+		 *            The offset of the data in the buffer
+		 * @param length
+		 *            The length of the data
+		 * @throws IOException
+		 *             if the data can not be processed
+		 */
+		void dataReceived(byte[] data, int offset, int length) throws IOException;
+
+		/**
+		 * Notifies the handler that the channel has been closed by the node,
+		 * or because of an error.
+		 */
+		void channelClosed();
+
+	}
+
+	/**
+	 * A channel that has been registered with a {@link ConnectionSelector}.
+	 * Writing to it blocks until all data has been written, even though the
+	 * underlying socket channel is non-blocking.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public class RegisteredChannel implements WritableByteChannel {
+
+		/** The socket channel. */
+		private final SocketChannel socketChannel;
+
+		/** The handler for received data. */
+		private final ChannelHandler channelHandler;
+
+		/** Object used for synchronization of writers and the selector. */
+		private final Object writeLock = new Object();
+
+		/** The selection key of the channel. */
+		private volatile SelectionKey selectionKey;
+
+		/** Whether the selector has reported that the channel is writable. */
+		private boolean writable;
+
+		/**
+		 * Creates a new registered channel.
+		 *
+		 * @param socketChannel
+		 *            The socket channel
+		 * @param channelHandler
+		 *            The handler for received data
+		 */
+		RegisteredChannel(SocketChannel socketChannel, ChannelHandler channelHandler) {
+			this.socketChannel = socketChannel;
+			this.channelHandler = channelHandler;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isOpen() {
+			return socketChannel.isOpen();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * Waits until all remaining bytes of the buffer have been written.
+		 */
+		@Override
+		public int write(ByteBuffer buffer) throws IOException {
+			int written = 0;
+			while (buffer.hasRemaining()) {
+				int bytes = socketChannel.write(buffer);
+				if (bytes == 0) {
+					awaitWritable();
+				}
+				written += bytes;
+			}
+			return written;
+		}
+
+		/**
+		 * Transfers bytes from the given file to this channel, waiting until
+		 * at least one byte could be transferred. The transfer uses
+		 * {@link FileChannel#transferTo(long, long, WritableByteChannel)} with
+		 * the socket channel as target so that the operating system can send
+		 * the file without copying it.
+		 *
+		 * @param fileChannel
+		 *            The file to transfer
+		 * @param position
+		 *            The position of the first byte to transfer
+		 * @param count
+		 *            The maximum number of bytes to transfer
+		 * @return The number of bytes transferred, or {@code 0} if the file
+		 *         has no bytes at the given position
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public long transferFrom(FileChannel fileChannel, long position, long count) throws IOException {
+			while (true) {
+				long transferred = fileChannel.transferTo(position, count, socketChannel);
+				if ((transferred > 0) || (fileChannel.size() <= position)) {
+					return transferred;
+				}
+				awaitWritable();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * Closes the socket channel and removes it from the selector. The
+		 * handler is not notified.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				socketChannel.close();
+			} finally {
+				synchronized (writeLock) {
+					writeLock.notifyAll();
+				}
+				selector.wakeup();
+			}
+		}
+
+		//
+		// PRIVATE METHODS
+		//
+
+		/**
+		 * Waits until the selector reports that the channel is writable.
+		 * When called on the selector thread itself (i.e. by a handler), the
+		 * selector can not report anything, so the channel is polled.
+		 *
+		 * @throws IOException
+		 *             if the channel is closed, or the thread is interrupted
+		 */
+		private void awaitWritable() throws IOException {
+			if (Thread.currentThread() == selectorThread) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				return;
+			}
+			synchronized (writeLock) {
+				writable = false;
+				try {
+					selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+				} catch (CancelledKeyException cke1) {
+					throw new ClosedChannelException();
+				}
+				selector.wakeup();
+				while (!writable) {
+					if (!socketChannel.isOpen()) {
+						throw new ClosedChannelException();
+					}
+					try {
+						writeLock.wait();
+					} catch (InterruptedException ie1) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while waiting to write.", ie1);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Called by the selector thread when the channel is writable.
+		 */
+		private void writable() {
+			selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+			synchronized (writeLock) {
+				writable = true;
+				writeLock.notifyAll();
+			}
+		}
+
+		/**
+		 * Closes the channel from the selector thread and notifies the
+		 * handler.
+		 */
+		private void closeFromSelector() {
+			try {
+				close();
+			} catch (IOException ioe1) {
+				logger.log(Level.FINE, "Could not close channel.", ioe1);
+			}
+			channelHandler.channelClosed();
+		}
+
+	}
+
+}
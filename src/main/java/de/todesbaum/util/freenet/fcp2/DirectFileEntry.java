@@ -19,7 +19,18 @@
 package de.todesbaum.util.freenet.fcp2;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import net.pterodactylus.util.io.Closer;
+import net.pterodactylus.util.io.StreamCopier;
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 
 /**
  * A {@link FileEntry} that sends its payload directly to the node, using the
@@ -30,9 +41,18 @@ import java.io.InputStream;
  */
 public class DirectFileEntry extends FileEntry {
 
+	/** The content of this file, if it is held in memory. */
+	private final byte[] dataBytes;
+
 	/** The input stream to read the data for this file from. */
 	private final InputStream dataInputStream;
 
+	/** The file to read the data for this file from. */
+	private final File dataFile;
+
+	/** The offset of the data in the file. */
+	private final long dataOffset;
+
 	/** The length of the data. */
 	private final long dataLength;
 
@@ -48,7 +68,12 @@ public class DirectFileEntry extends FileEntry {
 	 *            The content of the file
 	 */
 	public DirectFileEntry(String filename, String contentType, byte[] dataBytes) {
-		this(filename, contentType, new ByteArrayInputStream(dataBytes), dataBytes.length);
+		super(filename, contentType);
+		this.dataBytes = dataBytes;
+		this.dataInputStream = null;
+		this.dataFile = null;
+		this.dataOffset = 0;
+		this.dataLength = dataBytes.length;
 	}
 
 	/**
@@ -66,7 +91,53 @@ public class DirectFileEntry extends FileEntry {
 	 */
 	public DirectFileEntry(String filename, String contentType, InputStream dataInputStream, long dataLength) {
 		super(filename, contentType);
+		this.dataBytes = null;
 		this.dataInputStream = dataInputStream;
+		this.dataFile = null;
+		this.dataOffset = 0;
+		this.dataLength = dataLength;
+	}
+
+	/**
+	 * Creates a new FileEntry with the specified name and content type that
+	 * gets its data from the specified file. The file is only opened when the
+	 * payload is sent to the node, allowing it to be transferred without
+	 * copying it through the heap.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param contentType
+	 *            The content type of the file
+	 * @param dataFile
+	 *            The file to read the content from
+	 */
+	public DirectFileEntry(String filename, String contentType, File dataFile) {
+		this(filename, contentType, dataFile, 0, dataFile.length());
+	}
+
+	/**
+	 * Creates a new FileEntry with the specified name and content type that
+	 * gets its data from a range of the specified file. Like
+	 * {@link #DirectFileEntry(String, String, File)} the file is only opened
+	 * when the payload is sent to the node.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param contentType
+	 *            The content type of the file
+	 * @param dataFile
+	 *            The file to read the content from
+	 * @param dataOffset
+	 *            The offset of the content in the file
+	 * @param dataLength
+	 *            The length of the content
+	 */
+	public DirectFileEntry(String filename, String contentType, File dataFile, long dataOffset, long dataLength) {
+		super(filename, contentType);
+		this.dataBytes = null;
+		this.dataInputStream = null;
+		this.dataFile = dataFile;
+		this.dataOffset = dataOffset;
 		this.dataLength = dataLength;
 	}
 
@@ -79,14 +150,56 @@ public class DirectFileEntry extends FileEntry {
 	}
 
 	/**
-	 * Returns the input stream for the file's content.
+	 * Returns the input stream for the file's content. If this entry was
+	 * created from a file or a byte array, a new stream for the content is
+	 * opened.
 	 *
 	 * @return The input stream for the file's content
+	 * @throws IOException
+	 *             if the file can not be opened
 	 */
-	public InputStream getDataInputStream() {
+	public InputStream getDataInputStream() throws IOException {
+		if (dataFile != null) {
+			FileChannel fileChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+			fileChannel.position(dataOffset);
+			return new RangeInputStream(Channels.newInputStream(fileChannel), dataLength);
+		}
+		if (dataBytes != null) {
+			return new ByteArrayInputStream(dataBytes);
+		}
 		return dataInputStream;
 	}
 
+	/**
+	 * Returns the content of this entry, if it is held in memory.
+	 *
+	 * @return The content of this entry, or {@code null} if this entry was
+	 *         not created from a byte array
+	 */
+	public byte[] getDataBytes() {
+		return dataBytes;
+	}
+
+	/**
+	 * Returns the file this entry’s content is read from.
+	 *
+	 * @return The file of this entry, or {@code null} if this entry was not
+	 *         created from a file
+	 */
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	/**
+	 * Returns the offset of this entry’s content in its file.
+	 *
+	 * @return The offset of this entry’s content, or {@code 0} if this entry
+	 *         was not created from a file
+	 */
+	public long getDataOffset() {
+		return dataOffset;
+	}
+
 	/**
 	 * Returns the length of this file's content.
 	 *
@@ -96,4 +209,124 @@ public class DirectFileEntry extends FileEntry {
 		return dataLength;
 	}
 
+	/**
+	 * Writes this file's content to the given channel. If this entry was
+	 * created from a file, the file is transferred using
+	 * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+	 *
+	 * @param channel
+	 *            The channel to write the content to
+	 * @param progressListener
+	 *            The progress listener to notify (may be {@code null})
+	 * @throws IOException
+	 *             if an I/O error occurs, or the file is shorter than
+	 *             announced
+	 */
+	public void transferTo(WritableByteChannel channel, ProgressListener progressListener) throws IOException {
+		if (dataFile == null) {
+			InputStream dataInputStream = getDataInputStream();
+			try {
+				StreamCopier.copy(dataInputStream, Channels.newOutputStream(channel), progressListener, dataLength);
+			} finally {
+				Closer.close(dataInputStream);
+			}
+			return;
+		}
+		try (FileChannel fileChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+			long transferred = 0;
+			while (transferred < dataLength) {
+				long written;
+				if (channel instanceof ConnectionSelector.RegisteredChannel) {
+					written = ((ConnectionSelector.RegisteredChannel) channel).transferFrom(fileChannel, dataOffset + transferred, dataLength - transferred);
+				} else {
+					written = fileChannel.transferTo(dataOffset + transferred, dataLength - transferred, channel);
+				}
+				if (written <= 0) {
+					if (fileChannel.size() <= (dataOffset + transferred)) {
+						throw new IOException("File " + dataFile + " is shorter than " + (dataOffset + dataLength) + " bytes.");
+					}
+					continue;
+				}
+				transferred += written;
+				if (progressListener != null) {
+					progressListener.onProgress(transferred, dataLength);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Input stream that ends after a given number of bytes, and closes the
+	 * underlying stream when it is closed.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class RangeInputStream extends FilterInputStream {
+
+		/** The number of bytes that can still be read. */
+		private long remaining;
+
+		/**
+		 * Creates a new range input stream.
+		 *
+		 * @param inputStream
+		 *            The input stream to read from
+		 * @param length
+		 *            The number of bytes to read
+		 */
+		public RangeInputStream(InputStream inputStream, long length) {
+			super(inputStream);
+			this.remaining = length;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int data = super.read();
+			if (data != -1) {
+				remaining--;
+			}
+			return data;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long skip(long count) throws IOException {
+			long skipped = super.skip(Math.min(count, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+	}
+
 }
@@ -35,4 +35,16 @@ public class GenerateSSK extends Command {
 		super("GenerateSSK", null);
 	}
 
+	/**
+	 * Creates a new <code>GenerateSSK</code> request with the given
+	 * identifier. Only requests with an identifier can be
+	 * {@link Client#submit(Command) submitted}.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	public GenerateSSK(String identifier) {
+		super("GenerateSSK", identifier);
+	}
+
 }
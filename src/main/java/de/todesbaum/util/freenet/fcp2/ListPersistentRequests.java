@@ -0,0 +1,43 @@
+/*
+ * jSite - ListPersistentRequests.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+/**
+ * Implementation of the <code>ListPersistentRequests</code> command. It lists
+ * the persistent requests of this client and, if the global queue is
+ * {@link WatchGlobal watched}, the requests on the global queue.
+ * <p>
+ * The node can answer with the following messages:
+ * <code>PersistentGet</code>, <code>PersistentPut</code>,
+ * <code>PersistentPutDir</code> for every request, followed by the messages
+ * describing the state of the request, and finally
+ * <code>EndListPersistentRequests</code>.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ListPersistentRequests extends Command {
+
+	/**
+	 * Creates a new <code>ListPersistentRequests</code> command.
+	 */
+	public ListPersistentRequests() {
+		super("ListPersistentRequests", null);
+	}
+
+}
@@ -0,0 +1,420 @@
+/*
+ * jSite - MessageDecoder.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes {@link Message}s from the bytes sent by a node. Bytes are handed to
+ * the decoder in arbitrarily sized chunks; complete lines are split into
+ * <code>key=value</code> pairs directly from the chunk, only lines that span
+ * two chunks are copied into an internal buffer. Lines are decoded as UTF-8.
+ * <p>
+ * The payload following a <code>Data</code> line is not parsed but handed to
+ * the {@link PayloadHandler} as it arrives. A message is only handed to the
+ * {@link MessageHandler} once its payload has been completely handled.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class MessageDecoder {
+
+	/** The default size of the read buffer. */
+	private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+	/** The bytes of the “Data” line. */
+	private static final byte[] DATA = "Data".getBytes(UTF_8);
+
+	/** The bytes of the “EndMessage” line. */
+	private static final byte[] END_MESSAGE = "EndMessage".getBytes(UTF_8);
+
+	/** The handler for decoded messages. */
+	private final MessageHandler messageHandler;
+
+	/** The handler for payloads. */
+	private final PayloadHandler payloadHandler;
+
+	/** The size of the buffer for reading from an input stream. */
+	private final int bufferSize;
+
+	/** The buffer for reading from an input stream, created on first use. */
+	private byte[] readBuffer;
+
+	/** Buffer for a line that is spread over several chunks. */
+	private byte[] lineBuffer = new byte[256];
+
+	/** The number of bytes in the line buffer. */
+	private int lineLength;
+
+	/** Whether a linefeed directly following a carriage return is skipped. */
+	private boolean skipLinefeed;
+
+	/** The message that is currently being decoded. */
+	private Message message;
+
+	/** The stream the current payload is written to. */
+	private OutputStream payloadOutputStream;
+
+	/** The number of payload bytes that are still expected. */
+	private long remainingPayload = -1;
+
+	/**
+	 * Creates a new message decoder.
+	 *
+	 * @param messageHandler
+	 *            The handler for decoded messages
+	 * @param payloadHandler
+	 *            The handler for payloads (may be {@code null} to discard all
+	 *            payloads)
+	 */
+	public MessageDecoder(MessageHandler messageHandler, PayloadHandler payloadHandler) {
+		this(messageHandler, payloadHandler, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new message decoder.
+	 *
+	 * @param messageHandler
+	 *            The handler for decoded messages
+	 * @param payloadHandler
+	 *            The handler for payloads (may be {@code null} to discard all
+	 *            payloads)
+	 * @param bufferSize
+	 *            The size of the buffer used by {@link #decode(InputStream)}
+	 */
+	public MessageDecoder(MessageHandler messageHandler, PayloadHandler payloadHandler, int bufferSize) {
+		this.messageHandler = messageHandler;
+		this.payloadHandler = payloadHandler;
+		this.bufferSize = bufferSize;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Reads the given input stream until it is exhausted and decodes all
+	 * messages from it. The stream is read into a reusable buffer, i.e. only
+	 * one read call is made per buffer full of data.
+	 *
+	 * @param inputStream
+	 *            The input stream to read
+	 * @throws IOException
+	 *             if an I/O error occurs, or the node sends garbage
+	 */
+	public void decode(InputStream inputStream) throws IOException {
+		if (readBuffer == null) {
+			readBuffer = new byte[bufferSize];
+		}
+		int read;
+		while ((read = inputStream.read(readBuffer)) != -1) {
+			decode(readBuffer, 0, read);
+		}
+	}
+
+	/**
+	 * Decodes the given chunk of bytes. Any complete messages in the chunk are
+	 * handed to the message handler; incomplete lines are remembered until the
+	 * next chunk arrives.
+	 *
+	 * @param data
+	 *            The buffer containing the chunk
+	 * @param offset
+	 *            The offset of the chunk in the buffer
+	 * @param length
+	 *            The length of the chunk
+	 * @throws IOException
+	 *             if a handler throws, or the node sends garbage
+	 */
+	public void decode(byte[] data, int offset, int length) throws IOException {
+		int position = offset;
+		int end = offset + length;
+		while (position < end) {
+			if (skipLinefeed) {
+				skipLinefeed = false;
+				if (data[position] == '\n') {
+					position++;
+					continue;
+				}
+			}
+			if (remainingPayload > -1) {
+				int payloadChunk = (int) Math.min(remainingPayload, end - position);
+				if (payloadOutputStream != null) {
+					payloadOutputStream.write(data, position, payloadChunk);
+				}
+				position += payloadChunk;
+				remainingPayload -= payloadChunk;
+				if (remainingPayload == 0) {
+					finishPayload();
+				}
+				continue;
+			}
+			int lineEnd = findLineEnd(data, position, end);
+			if (lineEnd == -1) {
+				appendToLineBuffer(data, position, end - position);
+				break;
+			}
+			skipLinefeed = data[lineEnd] == '\r';
+			if (lineLength > 0) {
+				appendToLineBuffer(data, position, lineEnd - position);
+				int bufferedLength = lineLength;
+				lineLength = 0;
+				processLine(lineBuffer, 0, bufferedLength);
+			} else {
+				processLine(data, position, lineEnd - position);
+			}
+			position = lineEnd + 1;
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Appends the given bytes to the line buffer, growing it if necessary.
+	 *
+	 * @param data
+	 *            The buffer containing the bytes
+	 * @param offset
+	 *            The offset of the bytes
+	 * @param length
+	 *            The number of bytes
+	 */
+	private void appendToLineBuffer(byte[] data, int offset, int length) {
+		if ((lineLength + length) > lineBuffer.length) {
+			lineBuffer = Arrays.copyOf(lineBuffer, Math.max(lineBuffer.length * 2, lineLength + length));
+		}
+		System.arraycopy(data, offset, lineBuffer, lineLength, length);
+		lineLength += length;
+	}
+
+	/**
+	 * Processes a single line.
+	 *
+	 * @param data
+	 *            The buffer containing the line
+	 * @param offset
+	 *            The offset of the line
+	 * @param length
+	 *            The length of the line, excluding the line terminator
+	 * @throws IOException
+	 *             if a handler throws, or the line is not valid
+	 */
+	private void processLine(byte[] data, int offset, int length) throws IOException {
+		if (message == null) {
+			/* skip empty lines between messages. */
+			if (!isBlank(data, offset, length)) {
+				message = new Message(new String(data, offset, length, UTF_8));
+			}
+			return;
+		}
+		if (matches(data, offset, length, DATA)) {
+			startPayload();
+			return;
+		}
+		if (matches(data, offset, length, END_MESSAGE)) {
+			finishMessage();
+			return;
+		}
+		for (int index = offset; index < (offset + length); index++) {
+			if (data[index] == '=') {
+				String key = new String(data, offset, index - offset, UTF_8).trim();
+				String value = new String(data, index + 1, offset + length - index - 1, UTF_8).trim();
+				if (key.equals("Identifier")) {
+					message.setIdentifier(value);
+				} else {
+					message.put(key, value);
+				}
+				return;
+			}
+		}
+		/* skip lines consisting of whitespace only */
+		if (isBlank(data, offset, length)) {
+			return;
+		}
+		throw new IOException("Unexpected line: " + new String(data, offset, length, UTF_8));
+	}
+
+	/**
+	 * Starts the payload of the current message.
+	 *
+	 * @throws IOException
+	 *             if the payload handler throws, or the message does not
+	 *             contain a valid payload length
+	 */
+	private void startPayload() throws IOException {
+		long dataLength;
+		try {
+			dataLength = Long.parseLong(message.get("DataLength"));
+		} catch (NumberFormatException nfe1) {
+			throw new IOException("Invalid DataLength: " + message.get("DataLength"), nfe1);
+		}
+		payloadOutputStream = (payloadHandler != null) ? payloadHandler.payloadStarted(message, dataLength) : null;
+		remainingPayload = dataLength;
+		if (remainingPayload == 0) {
+			finishPayload();
+		}
+	}
+
+	/**
+	 * Finishes the payload of the current message and hands the message to the
+	 * message handler.
+	 *
+	 * @throws IOException
+	 *             if the payload can not be closed, or the message handler
+	 *             throws
+	 */
+	private void finishPayload() throws IOException {
+		remainingPayload = -1;
+		if (payloadOutputStream != null) {
+			try {
+				payloadOutputStream.close();
+			} finally {
+				payloadOutputStream = null;
+			}
+		}
+		finishMessage();
+	}
+
+	/**
+	 * Hands the current message to the message handler.
+	 *
+	 * @throws IOException
+	 *             if the message handler throws
+	 */
+	private void finishMessage() throws IOException {
+		Message decodedMessage = message;
+		message = null;
+		messageHandler.messageDecoded(decodedMessage);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the index of the first line terminator in the given range.
+	 *
+	 * @param data
+	 *            The buffer to search
+	 * @param offset
+	 *            The index of the first byte to search
+	 * @param end
+	 *            The index after the last byte to search
+	 * @return The index of the first carriage return or linefeed, or
+	 *         {@code -1} if the range does not contain a line terminator
+	 */
+	private static int findLineEnd(byte[] data, int offset, int end) {
+		for (int index = offset; index < end; index++) {
+			byte b = data[index];
+			if ((b == '\n') || (b == '\r')) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether the given line consists of whitespace only.
+	 *
+	 * @param data
+	 *            The buffer containing the line
+	 * @param offset
+	 *            The offset of the line
+	 * @param length
+	 *            The length of the line
+	 * @return {@code true} if the line is blank, {@code false} otherwise
+	 */
+	private static boolean isBlank(byte[] data, int offset, int length) {
+		for (int index = offset; index < (offset + length); index++) {
+			if ((data[index] & 0xff) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the given line is equal to the given bytes.
+	 *
+	 * @param data
+	 *            The buffer containing the line
+	 * @param offset
+	 *            The offset of the line
+	 * @param length
+	 *            The length of the line
+	 * @param expected
+	 *            The expected bytes
+	 * @return {@code true} if the line matches, {@code false} otherwise
+	 */
+	private static boolean matches(byte[] data, int offset, int length, byte[] expected) {
+		return Arrays.equals(data, offset, offset + length, expected, 0, expected.length);
+	}
+
+	/**
+	 * Handler for decoded messages.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public interface MessageHandler {
+
+		/**
+		 * Notifies the handler that a message was decoded.
+		 *
+		 * @param message
+		 *            The decoded message
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		void messageDecoded(Message message) throws IOException;
+
+	}
+
+	/**
+	 * Handler for payloads of messages.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public interface PayloadHandler {
+
+		/**
+		 * Notifies the handler that the payload of the given message starts.
+		 * The decoder writes the payload to the returned stream as it arrives
+		 * and closes the stream once the payload is complete, before the
+		 * message is handed to the {@link MessageHandler}.
+		 *
+		 * @param message
+		 *            The message the payload belongs to
+		 * @param length
+		 *            The length of the payload
+		 * @return The stream to write the payload to, or {@code null} to
+		 *         discard the payload
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		OutputStream payloadStarted(Message message, long length) throws IOException;
+
+	}
+
+}
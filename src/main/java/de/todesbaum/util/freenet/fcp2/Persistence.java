@@ -31,7 +31,7 @@ package de.todesbaum.util.freenet.fcp2;
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id$
  * @see de.todesbaum.util.freenet.fcp2.ModifyPersistentRequest
- * @see de.todesbaum.util.freenet.fcp2.RemovePersistentRequest
+ * @see de.todesbaum.util.freenet.fcp2.RemoveRequest
  */
 public final class Persistence {
 
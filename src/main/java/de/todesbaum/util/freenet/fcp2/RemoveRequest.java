@@ -0,0 +1,69 @@
+/*
+ * jSite - RemoveRequest.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>RemoveRequest</code> command. It cancels a
+ * running request and removes it from the node’s queue.
+ * <p>
+ * The node can answer with the following messages:
+ * <code>PersistentRequestRemoved</code>, <code>ProtocolError</code>.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class RemoveRequest extends Command {
+
+	/** Whether the request to remove is on the global queue. */
+	private boolean global;
+
+	/**
+	 * Creates a new <code>RemoveRequest</code> command that removes the
+	 * request with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request to remove
+	 */
+	public RemoveRequest(String identifier) {
+		super("RemoveRequest", identifier);
+	}
+
+	/**
+	 * Sets whether the request to remove is on the global queue.
+	 *
+	 * @param global
+	 *            {@code true} if the request is on the global queue,
+	 *            {@code false} if it belongs to this client
+	 */
+	public void setGlobal(boolean global) {
+		this.global = global;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Global=" + global + LINEFEED);
+	}
+
+}
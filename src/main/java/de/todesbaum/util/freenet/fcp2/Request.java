@@ -0,0 +1,215 @@
+/*
+ * jSite - Request.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.util.Arrays.asList;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * A command that was submitted to the node using
+ * {@link Client#submit(Command)}. Instead of reading messages from the client
+ * the result of the request is available as a {@link CompletableFuture} that
+ * is completed with the final reply of the node, e.g.
+ * <code>PutSuccessful</code>, <code>PutFailed</code>, <code>AllData</code>,
+ * <code>GetFailed</code>, or <code>SSKKeypair</code>. All other messages for
+ * the request, e.g. <code>SimpleProgress</code> or <code>URIGenerated</code>,
+ * are published to the subscribers of {@link #getMessages()}.
+ * <p>
+ * If the connection to the node is terminated before the final reply arrives
+ * the result is completed with an {@link IOException}. Cancelling the result
+ * or letting it time out removes the request from the node.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class Request {
+
+	/** The names of the messages that finish a request. */
+	private static final Set<String> finalMessageNames = new HashSet<String>(asList(
+			"PutSuccessful", "PutFailed", "AllData", "GetFailed", "SSKKeypair",
+			"TestDDAComplete", "FCPPluginReply", "PersistentRequestRemoved",
+			"IdentifierCollision", "ProtocolError"
+	));
+
+	/** The identifier of the request. */
+	private final String identifier;
+
+	/** The final reply of the node. */
+	private final CompletableFuture<Message> result = new CompletableFuture<Message>();
+
+	/** The publisher for intermediate messages. */
+	private final SubmissionPublisher<Message> messages = new SubmissionPublisher<Message>();
+
+	/** The first received message of each name. */
+	private final Map<String, CompletableFuture<Message>> firstMessages = new ConcurrentHashMap<String, CompletableFuture<Message>>();
+
+	/**
+	 * Creates a new request for the given command.
+	 *
+	 * @param command
+	 *            The command of the request
+	 */
+	Request(Command command) {
+		this.identifier = command.getIdentifier();
+		result.whenComplete((message, throwable) -> {
+			if (throwable != null) {
+				messages.closeExceptionally(throwable);
+			} else {
+				messages.close();
+			}
+			for (CompletableFuture<Message> firstMessage : firstMessages.values()) {
+				firstMessage.completeExceptionally(new IOException("Request finished without message."));
+			}
+		});
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the identifier of this request.
+	 *
+	 * @return The identifier of this request
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the result of this request. The result is completed with the
+	 * final reply of the node. Failures that are reported by the node, such as
+	 * <code>PutFailed</code>, are replies as well; the result only completes
+	 * exceptionally if the connection is lost, the request times out, or the
+	 * request is cancelled.
+	 *
+	 * @return The result of this request
+	 */
+	public CompletableFuture<Message> getResult() {
+		return result;
+	}
+
+	/**
+	 * Returns a publisher for all messages of this request that are not the
+	 * final reply. The publisher is closed when the request is finished.
+	 * Messages are offered to subscribers without blocking the connection, so
+	 * a subscriber that lags more than {@link Flow#defaultBufferSize()}
+	 * messages behind will miss messages.
+	 *
+	 * @return The publisher for intermediate messages
+	 */
+	public Flow.Publisher<Message> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the first message with the given name that is received for this
+	 * request. Unlike {@link #getMessages()} no message is missed even if this
+	 * method is called after the message arrived. If the request finishes
+	 * without such a message the returned future is completed with an
+	 * {@link IOException}.
+	 *
+	 * @param messageName
+	 *            The name of the message, e.g. <code>URIGenerated</code>
+	 * @return The first message with the given name
+	 */
+	public CompletableFuture<Message> getMessage(String messageName) {
+		CompletableFuture<Message> firstMessage = firstMessages.computeIfAbsent(messageName, name -> new CompletableFuture<Message>());
+		if (result.isDone()) {
+			firstMessage.completeExceptionally(new IOException("Request finished without message."));
+		}
+		return firstMessage;
+	}
+
+	/**
+	 * Returns whether this request is finished.
+	 *
+	 * @return {@code true} if this request is finished, {@code false}
+	 *         otherwise
+	 */
+	public boolean isDone() {
+		return result.isDone();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Cancels this request. The request is removed from the node, and the
+	 * result is completed with a
+	 * {@link java.util.concurrent.CancellationException}.
+	 *
+	 * @return {@code true} if the request was cancelled, {@code false} if it
+	 *         was already finished
+	 */
+	public boolean cancel() {
+		return result.cancel(false);
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Returns whether the given message finishes the request it belongs to.
+	 *
+	 * @param message
+	 *            The message to check
+	 * @return {@code true} if the message is a final reply, {@code false}
+	 *         otherwise
+	 */
+	static boolean isFinalMessage(Message message) {
+		return finalMessageNames.contains(message.getName());
+	}
+
+	/**
+	 * Notifies this request that a message for it was received.
+	 *
+	 * @param message
+	 *            The received message
+	 */
+	void messageReceived(Message message) {
+		firstMessages.computeIfAbsent(message.getName(), name -> new CompletableFuture<Message>()).complete(message);
+		if (isFinalMessage(message)) {
+			result.complete(message);
+		} else if (!result.isDone()) {
+			try {
+				messages.offer(message, null);
+			} catch (IllegalStateException ise1) {
+				/* request was finished in the meantime. */
+			}
+		}
+	}
+
+	/**
+	 * Notifies this request that the connection to the node was terminated.
+	 */
+	void connectionTerminated() {
+		result.completeExceptionally(new IOException("Connection to node was terminated."));
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * jSite - TestDDARequest.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>TestDDARequest</code> command. This command
+ * starts the handshake that proves to the node that the client and the node
+ * share a file system, allowing the client to upload files from disk instead
+ * of sending them over the connection.
+ * <p>
+ * The node can answer with the following messages: <code>TestDDAReply</code>.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class TestDDARequest extends Command {
+
+	/** The directory to test. */
+	private final String directory;
+
+	/** Whether the node should test read access to the directory. */
+	private boolean wantReadDirectory;
+
+	/** Whether the node should test write access to the directory. */
+	private boolean wantWriteDirectory;
+
+	/**
+	 * Creates a new <code>TestDDARequest</code> command for the given
+	 * directory.
+	 *
+	 * @param directory
+	 *            The directory to test
+	 */
+	public TestDDARequest(String directory) {
+		super("TestDDARequest", null);
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the directory to test.
+	 *
+	 * @return The directory to test
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets whether the node should test read access to the directory.
+	 *
+	 * @param wantReadDirectory
+	 *            {@code true} to test read access, {@code false} otherwise
+	 */
+	public void setWantReadDirectory(boolean wantReadDirectory) {
+		this.wantReadDirectory = wantReadDirectory;
+	}
+
+	/**
+	 * Sets whether the node should test write access to the directory.
+	 *
+	 * @param wantWriteDirectory
+	 *            {@code true} to test write access, {@code false} otherwise
+	 */
+	public void setWantWriteDirectory(boolean wantWriteDirectory) {
+		this.wantWriteDirectory = wantWriteDirectory;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Directory=" + directory + LINEFEED);
+		writer.write("WantReadDirectory=" + wantReadDirectory + LINEFEED);
+		writer.write("WantWriteDirectory=" + wantWriteDirectory + LINEFEED);
+	}
+
+}
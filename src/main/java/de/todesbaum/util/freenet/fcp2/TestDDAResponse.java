@@ -0,0 +1,68 @@
+/*
+ * jSite - TestDDAResponse.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>TestDDAResponse</code> command. This command
+ * answers a <code>TestDDAReply</code> with the content of the file the node
+ * asked the client to read.
+ * <p>
+ * The node can answer with the following messages:
+ * <code>TestDDAComplete</code>.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class TestDDAResponse extends Command {
+
+	/** The directory that is being tested. */
+	private final String directory;
+
+	/** The content of the file the node asked to read. */
+	private final String readContent;
+
+	/**
+	 * Creates a new <code>TestDDAResponse</code> command.
+	 *
+	 * @param directory
+	 *            The directory that is being tested
+	 * @param readContent
+	 *            The content of the file the node asked to read
+	 */
+	public TestDDAResponse(String directory, String readContent) {
+		super("TestDDAResponse", null);
+		this.directory = directory;
+		this.readContent = readContent;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Directory=" + directory + LINEFEED);
+		if (readContent != null) {
+			writer.write("ReadContent=" + readContent + LINEFEED);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * jSite - WatchGlobal.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>WatchGlobal</code> command. It tells the node
+ * to send the messages of requests on the global queue over this connection,
+ * including requests that were started by other connections.
+ * <p>
+ * The node does not reply to this command.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class WatchGlobal extends Command {
+
+	/** Whether to watch the global queue. */
+	private final boolean enabled;
+
+	/** The verbosity of the watched requests. */
+	private Verbosity verbosity;
+
+	/**
+	 * Creates a new <code>WatchGlobal</code> command.
+	 *
+	 * @param enabled
+	 *            {@code true} to start watching the global queue,
+	 *            {@code false} to stop watching it
+	 */
+	public WatchGlobal(boolean enabled) {
+		super("WatchGlobal", null);
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Sets the verbosity of the watched requests.
+	 *
+	 * @param verbosity
+	 *            The verbosity of the watched requests
+	 */
+	public void setVerbosity(Verbosity verbosity) {
+		this.verbosity = verbosity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Enabled=" + enabled + LINEFEED);
+		if (verbosity != null) {
+			writer.write("VerbosityMask=" + verbosity.getValue() + LINEFEED);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * jSite - StorageDevices.java - Copyright © 2006–2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Helper methods for finding out about the storage device a file resides on.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class StorageDevices {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(StorageDevices.class.getName());
+
+	/** The directory the kernel exposes block devices in. */
+	private static final File SYS_CLASS_BLOCK = new File("/sys/class/block");
+
+	/**
+	 * Returns whether the given file resides on a rotational device, i.e. a
+	 * spinning disk that performs badly on concurrent random reads. This is
+	 * currently only detected on Linux; on other systems, and whenever the
+	 * device can not be determined, {@code false} is returned.
+	 *
+	 * @param file
+	 *            The file to check
+	 * @return {@code true} if the file resides on a rotational device,
+	 *         {@code false} otherwise
+	 */
+	public static boolean isRotational(File file) {
+		if (!SYS_CLASS_BLOCK.isDirectory()) {
+			return false;
+		}
+		try {
+			FileStore fileStore = Files.getFileStore(file.toPath());
+			String deviceName = new File(fileStore.name()).getName();
+			File blockDevice = new File(SYS_CLASS_BLOCK, deviceName);
+			File rotationalFile = new File(blockDevice, "queue/rotational");
+			if (!rotationalFile.exists()) {
+				/* a partition; the queue belongs to the parent device. */
+				rotationalFile = new File(blockDevice.getCanonicalFile().getParentFile(), "queue/rotational");
+			}
+			if (!rotationalFile.exists()) {
+				return false;
+			}
+			return new String(Files.readAllBytes(rotationalFile.toPath()), StandardCharsets.US_ASCII).trim().equals("1");
+		} catch (IOException | SecurityException e1) {
+			logger.log(Level.FINE, "Could not determine storage device of " + file, e1);
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link CompressionPolicy}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class CompressionPolicyTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final CompressionPolicy compressionPolicy = new CompressionPolicy("");
+
+	@Test
+	public void compressedFormatIsNotCompressedRegardlessOfContent() throws IOException {
+		File file = createFile(repeatedBytes(100000));
+		assertThat(compressionPolicy.isCompressible("image/jpeg", file), is(false));
+	}
+
+	@Test
+	public void textIsCompressedRegardlessOfContent() throws IOException {
+		File file = createFile(randomBytes(100000));
+		assertThat(compressionPolicy.isCompressible("text/html; charset=utf-8", file), is(true));
+	}
+
+	@Test
+	public void randomContentOfUnknownTypeIsNotCompressed() throws IOException {
+		File file = createFile(randomBytes(100000));
+		assertThat(compressionPolicy.isCompressible("application/octet-stream", file), is(false));
+	}
+
+	@Test
+	public void redundantContentOfUnknownTypeIsCompressed() throws IOException {
+		File file = createFile(repeatedBytes(100000));
+		assertThat(compressionPolicy.isCompressible("application/octet-stream", file), is(true));
+	}
+
+	@Test
+	public void onlyTheGivenRangeIsSampled() throws IOException {
+		byte[] content = randomBytes(200000);
+		Arrays.fill(content, 100000, 200000, (byte) 'x');
+		File file = createFile(content);
+		assertThat(compressionPolicy.isCompressible("application/octet-stream", file, 0, 100000), is(false));
+		assertThat(compressionPolicy.isCompressible("application/octet-stream", file, 100000, 100000), is(true));
+	}
+
+	@Test
+	public void evenlyDistributedBytesHaveEightBitsOfEntropy() {
+		int[] counts = new int[256];
+		Arrays.fill(counts, 10);
+		assertThat(CompressionPolicy.entropy(counts, 2560), closeTo(8.0, 0.000001));
+	}
+
+	@Test
+	public void emptyCodecsLetTheNodeDecide() {
+		assertThat(compressionPolicy.getCodecs(), nullValue());
+		assertThat(new CompressionPolicy(" LZMA_NEW ").getCodecs(), is("LZMA_NEW"));
+	}
+
+	private File createFile(byte[] content) throws IOException {
+		File file = temporaryFolder.newFile("content.bin");
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] content = new byte[length];
+		new Random(17).nextBytes(content);
+		return content;
+	}
+
+	private static byte[] repeatedBytes(int length) {
+		byte[] content = new byte[length];
+		byte[] pattern = "<p>Hello, world!</p>\n".getBytes(UTF_8);
+		for (int index = 0; index < length; index++) {
+			content[index] = pattern[index % pattern.length];
+		}
+		return content;
+	}
+
+}
@@ -0,0 +1,100 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import de.todesbaum.jsite.application.ContentDefinedChunker.Chunk;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ContentDefinedChunker}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ContentDefinedChunkerTest {
+
+	private final ContentDefinedChunker chunker = new ContentDefinedChunker(1024, 4096, 16384);
+	private final byte[] data = createData(1024 * 1024);
+
+	@Test
+	public void chunksCoverTheWholeData() throws IOException {
+		List<Chunk> chunks = split(data);
+		long offset = 0;
+		for (Chunk chunk : chunks) {
+			assertThat(chunk.getOffset(), is(offset));
+			offset += chunk.getLength();
+		}
+		assertThat(offset, is((long) data.length));
+	}
+
+	@Test
+	public void chunksRespectMinimumAndMaximumSize() throws IOException {
+		List<Chunk> chunks = split(data);
+		for (Chunk chunk : chunks.subList(0, chunks.size() - 1)) {
+			assertThat(chunk.getLength(), greaterThanOrEqualTo(1024L));
+			assertThat(chunk.getLength(), lessThanOrEqualTo(16384L));
+		}
+	}
+
+	@Test
+	public void appendingDataKeepsAllButTheLastChunk() throws IOException {
+		List<Chunk> chunks = split(data);
+		byte[] appendedData = new byte[data.length + 10000];
+		System.arraycopy(data, 0, appendedData, 0, data.length);
+		Set<String> appendedHashes = toHashes(split(appendedData));
+		for (Chunk chunk : chunks.subList(0, chunks.size() - 1)) {
+			assertThat(appendedHashes.contains(chunk.getHash()), is(true));
+		}
+	}
+
+	@Test
+	public void insertingDataOnlyChangesChunksAroundTheInsertion() throws IOException {
+		List<Chunk> chunks = split(data);
+		byte[] changedData = new byte[data.length + 100];
+		System.arraycopy(data, 0, changedData, 0, data.length / 2);
+		System.arraycopy(data, data.length / 2, changedData, data.length / 2 + 100, data.length / 2);
+		Set<String> changedHashes = toHashes(split(changedData));
+		int keptChunks = 0;
+		for (Chunk chunk : chunks) {
+			if (changedHashes.contains(chunk.getHash())) {
+				keptChunks++;
+			}
+		}
+		assertThat(keptChunks, greaterThanOrEqualTo(chunks.size() - 3));
+	}
+
+	@Test
+	public void emptyDataResultsInSingleEmptyChunk() throws IOException {
+		List<Chunk> chunks = split(new byte[0]);
+		assertThat(chunks.size(), is(1));
+		assertThat(chunks.get(0).getLength(), is(0L));
+	}
+
+	private List<Chunk> split(byte[] data) throws IOException {
+		return chunker.split(new ByteArrayInputStream(data));
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(1).nextBytes(data);
+		return data;
+	}
+
+	private static Set<String> toHashes(List<Chunk> chunks) {
+		Set<String> hashes = new HashSet<>();
+		for (Chunk chunk : chunks) {
+			hashes.add(chunk.getHash());
+		}
+		return hashes;
+	}
+
+}
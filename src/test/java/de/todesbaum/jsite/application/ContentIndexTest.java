@@ -0,0 +1,94 @@
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ContentIndex}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ContentIndexTest {
+
+	private static final String HASH = "0123456789abcdef";
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void storedKeyIsReturnedAfterSavingAndLoading() {
+		ContentIndex contentIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		contentIndex.putKey(HASH, "CHK@file");
+		contentIndex.save();
+		assertThat(ContentIndex.forDirectory(temporaryFolder.getRoot()).getKey(HASH), is("CHK@file"));
+	}
+
+	@Test
+	public void firstKeyOfAHashIsKept() {
+		ContentIndex contentIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		contentIndex.putKey(HASH, "CHK@first");
+		contentIndex.putKey(HASH, "SSK@second/site-1/file");
+		assertThat(contentIndex.getKey(HASH), is("CHK@first"));
+	}
+
+	@Test
+	public void entriesOfOtherInstancesAreMergedOnSave() {
+		ContentIndex firstIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		ContentIndex secondIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		firstIndex.putKey(HASH, "CHK@first");
+		firstIndex.save();
+		secondIndex.putKey("fedcba9876543210", "CHK@second");
+		secondIndex.save();
+		ContentIndex contentIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		assertThat(contentIndex.getKey(HASH), is("CHK@first"));
+		assertThat(contentIndex.getKey("fedcba9876543210"), is("CHK@second"));
+	}
+
+	@Test
+	public void hashOfUnreadableFileIsNotIndexed() {
+		ContentIndex contentIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		contentIndex.putKey("0000000000000000", "CHK@file");
+		assertThat(contentIndex.getKey("0000000000000000"), nullValue());
+	}
+
+	@Test
+	public void wholeFileHashOfSplitFileIsIndexed() {
+		Project project = new Project();
+		project.setRequestURI("request");
+		project.setPath("site");
+		project.getFileOption("logs.tar.gz").setLastInsertHash(HASH).setLastInsertEdition(2).setLastInsertSplit(true).setLastInsertFilename("logs.tar.gz");
+		ContentIndex contentIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		contentIndex.putInsertedFiles(project);
+		assertThat(contentIndex.getKey(HASH), is("SSK@request/site-2/logs.tar.gz"));
+	}
+
+	@Test
+	public void wholeFileHashOfSplitFileWithOnlyChunkListIsNotIndexed() {
+		Project project = new Project();
+		project.setRequestURI("request");
+		project.setPath("site");
+		project.getFileOption("logs.tar.gz").setLastInsertHash(HASH).setLastInsertSplit(true).setLastInsertFilename("logs.tar.gz" + FileOption.SPLIT_INDEX_SUFFIX);
+		project.getFileOption("index.html").setLastInsertHash("fedcba9876543210").setLastInsertEdition(3).setLastInsertFilename("index.html");
+		ContentIndex contentIndex = ContentIndex.forDirectory(temporaryFolder.getRoot());
+		contentIndex.putInsertedFiles(project);
+		assertThat(contentIndex.getKey(HASH), nullValue());
+		assertThat(contentIndex.getKey("fedcba9876543210"), is("SSK@request/site-3/index.html"));
+	}
+
+	@Test
+	public void brokenIndexFileResultsInEmptyIndex() throws IOException {
+		Files.write(new File(temporaryFolder.getRoot(), "content.index").toPath(), "garbage\nmore garbage\n".getBytes(UTF_8));
+		assertThat(ContentIndex.forDirectory(temporaryFolder.getRoot()).size(), is(0));
+	}
+
+}
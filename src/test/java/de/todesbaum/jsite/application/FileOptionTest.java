@@ -209,6 +209,27 @@ public class FileOptionTest {
 		assertThat(fileOption.isCustom(), is(false));
 	}
 
+	@Test
+	public void changedSplitModeMakesUnchangedFileChanged() {
+		fileOption.setLastInsertHash(CUSTOM_CURRENT_HASH);
+		fileOption.setCurrentHash(CUSTOM_CURRENT_HASH);
+		assertThat(fileOption.isChangedSinceLastInsert(), is(false));
+		fileOption.setLastInsertSplit(true);
+		assertThat(fileOption.isChangedSinceLastInsert(), is(true));
+		fileOption.setCurrentSplit(true);
+		assertThat(fileOption.isChangedSinceLastInsert(), is(false));
+	}
+
+	@Test
+	public void splitFileWithOnlyPublishedChunkListIsChanged() {
+		fileOption.setLastInsertHash(CUSTOM_CURRENT_HASH).setLastInsertSplit(true).setLastInsertFilename("logs.tar.gz" + FileOption.SPLIT_INDEX_SUFFIX);
+		fileOption.setCurrentHash(CUSTOM_CURRENT_HASH).setCurrentSplit(true);
+		assertThat(fileOption.isLastInsertChunkListOnly(), is(true));
+		assertThat(fileOption.isChangedSinceLastInsert(), is(true));
+		fileOption.setLastInsertFilename("logs.tar.gz");
+		assertThat(fileOption.isChangedSinceLastInsert(), is(false));
+	}
+
 	@Test
 	public void copyConstructorCopiesAllProperties() {
 		fileOption.setChangedName(CUSTOM_CHANGED_NAME);
@@ -221,7 +242,9 @@ public class FileOptionTest {
 		fileOption.setLastInsertEdition(CUSTOM_LAST_INSERT_EDITION);
 		fileOption.setLastInsertFilename(CUSTOM_LAST_INSERT_FILENAME);
 		fileOption.setLastInsertHash(CUSTOM_LAST_INSERT_HASH);
+		fileOption.setLastInsertSplit(true);
 		fileOption.setCurrentHash(CUSTOM_CURRENT_HASH);
+		fileOption.setCurrentSplit(true);
 		FileOption copiedFileOption = new FileOption(fileOption);
 		assertThat(copiedFileOption.getChangedName().get(), is(CUSTOM_CHANGED_NAME));
 		assertThat(copiedFileOption.isInsertRedirect(), is(CUSTOM_INSERT_REDIRECT));
@@ -233,7 +256,9 @@ public class FileOptionTest {
 		assertThat(copiedFileOption.getLastInsertEdition(), is(CUSTOM_LAST_INSERT_EDITION));
 		assertThat(copiedFileOption.getLastInsertFilename(), is(CUSTOM_LAST_INSERT_FILENAME));
 		assertThat(copiedFileOption.getLastInsertHash(), is(CUSTOM_LAST_INSERT_HASH));
+		assertThat(copiedFileOption.isLastInsertSplit(), is(true));
 		assertThat(copiedFileOption.getCurrentHash(), is(CUSTOM_CURRENT_HASH));
+		assertThat(copiedFileOption.isCurrentSplit(), is(true));
 	}
 
 }
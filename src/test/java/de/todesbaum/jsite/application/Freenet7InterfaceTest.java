@@ -1,6 +1,9 @@
 package de.todesbaum.jsite.application;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -169,18 +172,40 @@ public class Freenet7InterfaceTest {
 	@Test
 	public void keyPairIsGeneratedSuccessfully() throws IOException {
 		Connection connection = mock(Connection.class);
+		when(connection.connect()).thenReturn(true);
 		when(connection.isConnected()).thenReturn(true);
 		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
 		freenet7Interface.setNode(mock(Node.class));
-		Message message = new Message("SSKKeyPair");
+		Message message = new Message("SSKKeypair");
 		message.put("InsertURI", INSERT_URI);
 		message.put("RequestURI", REQUEST_URI);
+		Request request = mock(Request.class);
+		when(request.getResult()).thenReturn(CompletableFuture.completedFuture(message));
 		Client client = mock(Client.class);
-		when(client.readMessage()).thenReturn(message);
-		when(clientSupplier.supply(eq(connection), any(GenerateSSK.class))).thenReturn(client);
+		when(client.submit(any(GenerateSSK.class), isNull(), anyLong(), any(TimeUnit.class))).thenReturn(request);
+		when(clientSupplier.supply(connection)).thenReturn(client);
 		String[] keyPair = freenet7Interface.generateKeyPair();
 		assertThat(keyPair[0], is(INSERT_URI));
 		assertThat(keyPair[1], is(REQUEST_URI));
+		verify(client).close();
+	}
+
+	@Test
+	public void failedKeyPairGenerationCausesException() throws IOException {
+		Connection connection = mock(Connection.class);
+		when(connection.connect()).thenReturn(true);
+		when(connection.isConnected()).thenReturn(true);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
+		freenet7Interface.setNode(mock(Node.class));
+		Request request = mock(Request.class);
+		CompletableFuture<Message> result = new CompletableFuture<>();
+		result.completeExceptionally(new TimeoutException());
+		when(request.getResult()).thenReturn(result);
+		Client client = mock(Client.class);
+		when(client.submit(any(GenerateSSK.class), isNull(), anyLong(), any(TimeUnit.class))).thenReturn(request);
+		when(clientSupplier.supply(connection)).thenReturn(client);
+		expectedException.expect(IOException.class);
+		freenet7Interface.generateKeyPair();
 	}
 
 }
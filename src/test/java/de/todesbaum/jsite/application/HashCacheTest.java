@@ -0,0 +1,138 @@
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link HashCache}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class HashCacheTest {
+
+	private static final String HASH = "0123456789abcdef";
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File cacheFile;
+	private File file;
+
+	@Before
+	public void setupFiles() throws IOException {
+		cacheFile = new File(temporaryFolder.getRoot(), "cache/hashes");
+		file = temporaryFolder.newFile("file.txt");
+		writeFile("content", 10000);
+	}
+
+	@Test
+	public void unknownFileIsAMiss() throws IOException {
+		HashCache hashCache = new HashCache(cacheFile);
+		assertThat(hashCache.getHash("file.txt", attributes()), nullValue());
+		assertThat(hashCache.getMisses(), is(1));
+		assertThat(hashCache.getHits(), is(0));
+	}
+
+	@Test
+	public void storedHashIsReturnedAfterSavingAndLoading() throws IOException {
+		createCache();
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.load();
+		assertThat(hashCache.getHash("file.txt", attributes()), is(HASH));
+		assertThat(hashCache.getHits(), is(1));
+	}
+
+	@Test
+	public void changedSizeInvalidatesEntry() throws IOException {
+		createCache();
+		writeFile("other content", 10000);
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.load();
+		assertThat(hashCache.getHash("file.txt", attributes()), nullValue());
+	}
+
+	@Test
+	public void changedModificationTimeInvalidatesEntry() throws IOException {
+		createCache();
+		writeFile("CONTENT", 5000);
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.load();
+		assertThat(hashCache.getHash("file.txt", attributes()), nullValue());
+	}
+
+	@Test
+	public void recentlyModifiedFileIsNotCached() throws IOException {
+		writeFile("content", 0);
+		createCache();
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.load();
+		assertThat(hashCache.getHash("file.txt", attributes()), nullValue());
+	}
+
+	@Test
+	public void entriesNotSeenDuringScanAreRemovedOnSave() throws IOException {
+		createCache();
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.load();
+		hashCache.save();
+		hashCache.load();
+		assertThat(hashCache.getHash("file.txt", attributes()), nullValue());
+	}
+
+	@Test
+	public void filenamesWithTabsAreStored() throws IOException {
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.putHash("dir/with\ttab.txt", attributes(), HASH);
+		hashCache.save();
+		hashCache.load();
+		assertThat(hashCache.getHash("dir/with\ttab.txt", attributes()), is(HASH));
+	}
+
+	@Test
+	public void brokenCacheFileResultsInEmptyCache() throws IOException {
+		cacheFile.getParentFile().mkdirs();
+		Files.write(cacheFile.toPath(), "garbage\nmore garbage\n".getBytes(UTF_8));
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.load();
+		assertThat(hashCache.getHash("file.txt", attributes()), nullValue());
+	}
+
+	@Test
+	public void projectsWithDifferentLocalPathsUseDifferentFiles() {
+		Project firstProject = new Project();
+		firstProject.setLocalPath("/first");
+		Project secondProject = new Project();
+		secondProject.setLocalPath("/second");
+		File cacheDirectory = temporaryFolder.getRoot();
+		assertThat(HashCache.forProject(cacheDirectory, firstProject).getCacheFile().equals(HashCache.forProject(cacheDirectory, secondProject).getCacheFile()), is(false));
+	}
+
+	private void createCache() throws IOException {
+		HashCache hashCache = new HashCache(cacheFile);
+		hashCache.putHash("file.txt", attributes(), HASH);
+		hashCache.save();
+	}
+
+	private void writeFile(String content, long age) throws IOException {
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+		Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() - age));
+	}
+
+	private BasicFileAttributes attributes() throws IOException {
+		return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+	}
+
+}
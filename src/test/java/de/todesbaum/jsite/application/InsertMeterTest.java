@@ -0,0 +1,42 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link InsertMeter}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertMeterTest {
+
+	private final Project project = new Project();
+
+	@Test
+	public void remainingTimeIsUnknownWithoutHistoryAndProgress() {
+		assertThat(new InsertMeter(0, 0).getRemainingTime(1000), is(-1L));
+	}
+
+	@Test
+	public void historyIsUsedBeforeProgressIsKnown() {
+		assertThat(new InsertMeter(60000, 0).getRemainingTime(20000), is(40000L));
+	}
+
+	@Test
+	public void rateIsTrustedMoreTheMoreBlocksAreDone() {
+		InsertMeter insertMeter = new InsertMeter(1000000, 0);
+		insertMeter.progressChanged(new InsertProgress(project, 0, 0, 0, 100, true, 0));
+		insertMeter.progressChanged(new InsertProgress(project, 75, 0, 0, 100, true, 75000));
+		/* rate: 25 s remaining, history: 925 s remaining. */
+		assertThat(insertMeter.getRemainingTime(75000), is(250000L));
+	}
+
+	@Test
+	public void formattedDurationHasHoursMinutesAndSeconds() {
+		assertThat(InsertMeter.formatDuration(3723000), is("1:02:03"));
+		assertThat(InsertMeter.formatDuration(-1), is("?"));
+	}
+
+}
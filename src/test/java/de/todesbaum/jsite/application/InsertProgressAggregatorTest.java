@@ -0,0 +1,60 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link InsertProgressAggregator}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertProgressAggregatorTest {
+
+	private final Project project = new Project();
+	private final List<InsertProgress> publishedProgress = new CopyOnWriteArrayList<>();
+	private final InsertProgressAggregator insertProgressAggregator = new InsertProgressAggregator(200, TimeUnit.MILLISECONDS, publishedProgress::add);
+
+	@Test
+	public void onlyLatestProgressWithinIntervalIsPublished() throws InterruptedException {
+		for (int succeeded = 1; succeeded <= 100; succeeded++) {
+			insertProgressAggregator.progressChanged(new InsertProgress(project, succeeded, 0, 0, 100, false));
+		}
+		assertThat(publishedProgress.isEmpty(), is(true));
+		awaitPublication(1);
+		assertThat(publishedProgress.get(0).getSucceeded(), is(100));
+	}
+
+	@Test
+	public void progressOfEveryProjectIsPublished() throws InterruptedException {
+		Project otherProject = new Project();
+		insertProgressAggregator.progressChanged(new InsertProgress(project, 1, 0, 0, 10, false));
+		insertProgressAggregator.progressChanged(new InsertProgress(otherProject, 2, 0, 0, 10, false));
+		awaitPublication(2);
+		assertThat(publishedProgress.get(0).getProject(), is(project));
+		assertThat(publishedProgress.get(1).getProject(), is(otherProject));
+	}
+
+	@Test
+	public void flushPublishesPendingProgressImmediately() throws InterruptedException {
+		insertProgressAggregator.progressChanged(new InsertProgress(project, 5, 1, 0, 10, true));
+		insertProgressAggregator.flush(project);
+		assertThat(publishedProgress.size(), is(1));
+		assertThat(publishedProgress.get(0).getPercent(), is(60));
+		Thread.sleep(400);
+		assertThat(publishedProgress.size(), is(1));
+	}
+
+	private void awaitPublication(int count) throws InterruptedException {
+		for (int wait = 0; (wait < 100) && (publishedProgress.size() < count); wait++) {
+			Thread.sleep(50);
+		}
+		assertThat(publishedProgress.size(), is(count));
+	}
+
+}
@@ -0,0 +1,109 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.todesbaum.jsite.application.InsertScheduler.InsertStarter;
+import de.todesbaum.jsite.application.InsertScheduler.Result;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link InsertScheduler}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertSchedulerTest {
+
+	private final Node firstNode = new Node("localhost", 9481, "first");
+	private final Node secondNode = new Node("localhost", 9482, "second");
+	private final List<String> startedInserts = new ArrayList<String>();
+	private final List<InsertListener> runningInserts = new ArrayList<InsertListener>();
+	private final List<Project> runningProjects = new ArrayList<Project>();
+	private final List<Integer> startedAttempts = new ArrayList<Integer>();
+	private final InsertStarter insertStarter = (project, node, attempt, insertListener) -> {
+		startedInserts.add(project.getName());
+		startedAttempts.add(attempt);
+		runningProjects.add(project);
+		runningInserts.add(insertListener);
+	};
+
+	@Test
+	public void noMoreThanTheGivenNumberOfInsertsRunAtOnce() {
+		InsertScheduler insertScheduler = new InsertScheduler(2, 0, 0);
+		for (String name : new String[] { "a", "b", "c" }) {
+			insertScheduler.submit(createProject(name), firstNode, insertStarter);
+		}
+		assertThat(startedInserts, contains("a", "b"));
+		finishInsert(0, true);
+		assertThat(startedInserts, contains("a", "b", "c"));
+	}
+
+	@Test
+	public void insertsToBusyNodeAreSkipped() {
+		InsertScheduler insertScheduler = new InsertScheduler(2, 1, 0);
+		insertScheduler.submit(createProject("a"), firstNode, insertStarter);
+		insertScheduler.submit(createProject("b"), firstNode, insertStarter);
+		insertScheduler.submit(createProject("c"), secondNode, insertStarter);
+		assertThat(startedInserts, contains("a", "c"));
+		finishInsert(0, true);
+		assertThat(startedInserts, contains("a", "c", "b"));
+	}
+
+	@Test
+	public void projectIsNotInsertedTwiceAtTheSameTime() {
+		InsertScheduler insertScheduler = new InsertScheduler(2, 0, 0);
+		Project project = createProject("a");
+		insertScheduler.submit(project, firstNode, insertStarter);
+		insertScheduler.submit(project, secondNode, insertStarter);
+		assertThat(startedInserts, contains("a"));
+		finishInsert(0, true);
+		assertThat(startedInserts, contains("a", "a"));
+	}
+
+	@Test
+	public void failedInsertIsRetriedAfterQueuedInserts() throws InterruptedException {
+		InsertScheduler insertScheduler = new InsertScheduler(1, 0, 1);
+		insertScheduler.submit(createProject("a"), firstNode, insertStarter);
+		insertScheduler.submit(createProject("b"), firstNode, insertStarter);
+		finishInsert(0, false);
+		finishInsert(0, true);
+		finishInsert(0, true);
+		assertThat(startedInserts, contains("a", "b", "a"));
+		assertThat(startedAttempts, contains(1, 1, 2));
+		List<Result> results = insertScheduler.awaitResults();
+		assertThat(results.get(0).getProject().getName(), is("a"));
+		assertThat(results.get(0).isSuccess(), is(true));
+		assertThat(results.get(0).getAttempts(), is(2));
+		assertThat(results.get(1).getAttempts(), is(1));
+	}
+
+	@Test
+	public void insertIsNotRetriedMoreThanTheGivenNumberOfTimes() throws InterruptedException {
+		InsertScheduler insertScheduler = new InsertScheduler(1, 0, 1);
+		insertScheduler.submit(createProject("a"), firstNode, insertStarter);
+		finishInsert(0, false);
+		finishInsert(0, false);
+		List<Result> results = insertScheduler.awaitResults();
+		assertThat(results.get(0).isSuccess(), is(false));
+		assertThat(results.get(0).getAttempts(), is(2));
+		assertThat(results.get(0).getCause() instanceof IOException, is(true));
+	}
+
+	private static Project createProject(String name) {
+		Project project = new Project();
+		project.setName(name);
+		return project;
+	}
+
+	private void finishInsert(int index, boolean success) {
+		InsertListener insertListener = runningInserts.remove(index);
+		Project project = runningProjects.remove(index);
+		insertListener.projectInsertFinished(project, success, success ? null : new IOException());
+	}
+
+}
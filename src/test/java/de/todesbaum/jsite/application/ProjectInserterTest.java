@@ -0,0 +1,64 @@
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import de.todesbaum.util.freenet.fcp2.DirectFileEntry;
+import de.todesbaum.util.freenet.fcp2.FileEntry;
+import de.todesbaum.util.freenet.fcp2.RedirectFileEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ProjectInserter}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProjectInserterTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final CompressionPolicy compressionPolicy = new CompressionPolicy(null);
+
+	@Test
+	public void incompressibleFilesNextToCompressibleFilesAreInsertedSeparately() throws IOException {
+		FileEntry page = createFileEntry("index.html", "text/html");
+		FileEntry image = createFileEntry("image.jpg", "image/jpeg");
+		FileEntry redirect = new RedirectFileEntry("video.mp4", "video/mp4", "CHK@video");
+		List<FileEntry> fileEntries = Arrays.asList(page, image, redirect);
+		assertThat(ProjectInserter.getSeparateEntries(compressionPolicy, fileEntries), contains(image));
+		assertThat(ProjectInserter.shouldCompress(compressionPolicy, Arrays.asList(page, redirect)), is(true));
+	}
+
+	@Test
+	public void requestWithOnlyIncompressibleFilesIsNotCompressed() throws IOException {
+		List<FileEntry> fileEntries = Arrays.asList(createFileEntry("image.jpg", "image/jpeg"), createFileEntry("video.mp4", "video/mp4"));
+		assertThat(ProjectInserter.getSeparateEntries(compressionPolicy, fileEntries), empty());
+		assertThat(ProjectInserter.shouldCompress(compressionPolicy, fileEntries), is(false));
+	}
+
+	@Test
+	public void requestWithOnlyRedirectsIsCompressed() {
+		List<FileEntry> fileEntries = Arrays.<FileEntry> asList(new RedirectFileEntry("image.jpg", "image/jpeg", "CHK@image"));
+		assertThat(ProjectInserter.getSeparateEntries(compressionPolicy, fileEntries), empty());
+		assertThat(ProjectInserter.shouldCompress(compressionPolicy, fileEntries), is(true));
+	}
+
+	private FileEntry createFileEntry(String filename, String contentType) throws IOException {
+		File file = temporaryFolder.newFile(filename);
+		Files.write(file.toPath(), "content".getBytes(UTF_8));
+		return new DirectFileEntry(filename, contentType, file);
+	}
+
+}
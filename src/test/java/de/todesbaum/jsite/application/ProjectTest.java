@@ -1,5 +1,6 @@
 package de.todesbaum.jsite.application;
 
+import static java.util.Collections.singletonMap;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
@@ -19,4 +20,47 @@ public class ProjectTest {
 		assertThat(fileOption.getMimeType(), is("application/x-gtar"));
 	}
 
+	@Test
+	public void copiedProjectKeepsUnfinishedInsertIdentifier() {
+		Project project = new Project();
+		project.setInsertIdentifier("jSite-insert");
+		project.setInsertHashes(singletonMap("index.html", "hash"));
+		assertThat(new Project(project).getInsertIdentifier(), is("jSite-insert"));
+		assertThat(new Project(project).getInsertHashes(), is(singletonMap("index.html", "hash")));
+	}
+
+	@Test
+	public void filesMatchingSplitPatternAreSplit() {
+		Project project = new Project();
+		project.setSplitPattern("*.tar.gz, logs/**");
+		assertThat(project.isSplitInsert("archive.tar.gz"), is(true));
+		assertThat(project.isSplitInsert("logs/2026/10.log"), is(true));
+		assertThat(project.isSplitInsert("index.html"), is(false));
+		project.getFileOption("index.html").setSplitInsert(true);
+		assertThat(project.isSplitInsert("index.html"), is(true));
+	}
+
+	@Test
+	public void changingSplitModeOfUnchangedFileRecordsNewInsert() {
+		Project project = new Project();
+		project.setEdition(1);
+		project.getFileOption("logs.tar.gz").setCurrentHash("hash").setCurrentSplit(true);
+		project.onSuccessfulInsert();
+		assertThat(project.getFileOption("logs.tar.gz").getLastInsertFilename(), is("logs.tar.gz"));
+		assertThat(project.getFileOption("logs.tar.gz").isLastInsertSplit(), is(true));
+		project.setEdition(2);
+		project.getFileOption("logs.tar.gz").setCurrentSplit(false);
+		project.onSuccessfulInsert();
+		assertThat(project.getFileOption("logs.tar.gz").isLastInsertSplit(), is(false));
+		assertThat(project.getFileOption("logs.tar.gz").getLastInsertEdition(), is(2));
+		assertThat(project.getFileOption("logs.tar.gz").getLastInsertFilename(), is("logs.tar.gz"));
+	}
+
+	@Test
+	public void copiedProjectKeepsDirectoryManifests() {
+		Project project = new Project();
+		project.setDirectoryManifests(singletonMap("images", new DirectoryManifest("hash", "CHK@images")));
+		assertThat(new Project(project).getDirectoryManifests().get("images").getKey(), is("CHK@images"));
+	}
+
 }
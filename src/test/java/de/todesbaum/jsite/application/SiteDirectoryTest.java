@@ -0,0 +1,114 @@
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.todesbaum.util.freenet.fcp2.DirectFileEntry;
+import de.todesbaum.util.freenet.fcp2.FileEntry;
+import de.todesbaum.util.freenet.fcp2.RedirectFileEntry;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SiteDirectory}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SiteDirectoryTest {
+
+	private final SiteDirectory rootDirectory = new SiteDirectory();
+
+	@Test
+	public void directoriesAreReturnedDeepestFirst() {
+		addFile("index.html", "1");
+		addFile("a/index.html", "2");
+		addFile("a/b/c/index.html", "3");
+		addFile("d/index.html", "4");
+		assertThat(toPaths(rootDirectory.getDescendants()), contains("a/b/c", "a/b", "a", "d"));
+	}
+
+	@Test
+	public void filesAreRenamedToTheirNamesWithinTheDirectory() {
+		addFile("a/b/index.html", "1");
+		SiteDirectory directory = rootDirectory.getDescendants().get(0);
+		FileEntry fileEntry = directory.createManifestEntries(new HashMap<>()).get(0);
+		assertThat(fileEntry.getFilename(), is("index.html"));
+		assertThat(((RedirectFileEntry) fileEntry).getTargetURI(), is("CHK@a/b/index.html"));
+	}
+
+	@Test
+	public void filesHeldInMemoryAreRenamedWithTheirContent() throws IOException {
+		rootDirectory.addFile("logs/big.tar.gz.jsite-split", new DirectFileEntry("logs/big.tar.gz.jsite-split", "text/plain", "index".getBytes(UTF_8)), "1", false);
+		SiteDirectory directory = rootDirectory.getDescendants().get(0);
+		DirectFileEntry fileEntry = (DirectFileEntry) directory.createManifestEntries(new HashMap<>()).get(0);
+		assertThat(fileEntry.getFilename(), is("big.tar.gz.jsite-split"));
+		assertThat(new String(fileEntry.getDataInputStream().readAllBytes(), UTF_8), is("index"));
+	}
+
+	@Test
+	public void subdirectoriesAreLinkedByTheirKeys() {
+		addFile("a/index.html", "1");
+		List<FileEntry> manifestEntries = rootDirectory.createManifestEntries(singletonMap("a", "CHK@a"));
+		assertThat(manifestEntries.get(0).getFilename(), is("a"));
+		assertThat(((RedirectFileEntry) manifestEntries.get(0)).getTargetURI(), is("CHK@a"));
+	}
+
+	@Test
+	public void changedFileChangesHashesOfAllParentDirectories() {
+		addFile("a/b/index.html", "1");
+		addFile("c/index.html", "2");
+		Map<String, String> oldHashes = toHashes(rootDirectory);
+		SiteDirectory changedDirectory = new SiteDirectory();
+		changedDirectory.addFile("a/b/index.html", createFileEntry("a/b/index.html"), "3", false);
+		changedDirectory.addFile("c/index.html", createFileEntry("c/index.html"), "2", false);
+		Map<String, String> newHashes = toHashes(changedDirectory);
+		assertThat(newHashes.get("a/b"), not(oldHashes.get("a/b")));
+		assertThat(newHashes.get("a"), not(oldHashes.get("a")));
+		assertThat(newHashes.get(""), not(oldHashes.get("")));
+		assertThat(newHashes.get("c"), is(oldHashes.get("c")));
+	}
+
+	@Test
+	public void forcedInsertIsPropagatedToParentDirectories() {
+		addFile("c/index.html", "1");
+		rootDirectory.addFile("a/b/index.html", createFileEntry("a/b/index.html"), "2", true);
+		assertThat(toPaths(rootDirectory.getDescendants()), contains("a/b", "a", "c"));
+		assertThat(rootDirectory.getDescendants().get(1).isForceInsert(), is(true));
+		assertThat(rootDirectory.getDescendants().get(2).isForceInsert(), is(false));
+	}
+
+	private void addFile(String name, String contentHash) {
+		rootDirectory.addFile(name, createFileEntry(name), contentHash, false);
+	}
+
+	private static FileEntry createFileEntry(String name) {
+		return new RedirectFileEntry(name, "text/html", "CHK@" + name);
+	}
+
+	private static List<String> toPaths(List<SiteDirectory> directories) {
+		List<String> paths = new ArrayList<>();
+		for (SiteDirectory directory : directories) {
+			paths.add(directory.getPath());
+		}
+		return paths;
+	}
+
+	private static Map<String, String> toHashes(SiteDirectory rootDirectory) {
+		Map<String, String> hashes = new HashMap<>();
+		hashes.put("", rootDirectory.getHash());
+		for (SiteDirectory directory : rootDirectory.getDescendants()) {
+			hashes.put(directory.getPath(), directory.getHash());
+		}
+		return hashes;
+	}
+
+}
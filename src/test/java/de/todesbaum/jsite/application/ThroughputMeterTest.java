@@ -0,0 +1,68 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ThroughputMeter}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ThroughputMeterTest {
+
+	private final ThroughputMeter throughputMeter = new ThroughputMeter(10000);
+
+	@Test
+	public void meterWithoutElapsedTimeHasNoRate() {
+		throughputMeter.update(100, 1000);
+		throughputMeter.update(200, 1000);
+		assertThat(throughputMeter.getAverageRate(), is(0.0));
+		assertThat(throughputMeter.getCurrentRate(1000), is(0.0));
+		assertThat(throughputMeter.getRemainingTime(300, 1000), is(-1L));
+	}
+
+	@Test
+	public void constantRateIsMeasured() {
+		for (int second = 0; second <= 10; second++) {
+			throughputMeter.update(second * 50, second * 1000);
+		}
+		assertThat(throughputMeter.getCurrentRate(10000), closeTo(50, 0.001));
+		assertThat(throughputMeter.getAverageRate(), closeTo(50, 0.001));
+		assertThat(throughputMeter.getRemainingTime(1000, 10000), is(10000L));
+	}
+
+	@Test
+	public void stallLowersCurrentRateButNotAverageRate() {
+		for (int second = 0; second <= 10; second++) {
+			throughputMeter.update(second * 50, second * 1000);
+		}
+		assertThat(throughputMeter.getCurrentRate(40000), lessThan(5.0));
+		assertThat(throughputMeter.getAverageRate(), closeTo(50, 0.001));
+	}
+
+	@Test
+	public void currentRateFollowsRateChange() {
+		for (int second = 0; second <= 10; second++) {
+			throughputMeter.update(second * 50, second * 1000);
+		}
+		for (int second = 11; second <= 60; second++) {
+			throughputMeter.update(500 + (second - 10) * 10, second * 1000);
+		}
+		assertThat(throughputMeter.getCurrentRate(60000), closeTo(10, 0.5));
+		assertThat(throughputMeter.getAverageRate(), closeTo(1000 / 60.0, 0.001));
+	}
+
+	@Test
+	public void smallerValueRestartsMeter() {
+		throughputMeter.update(500, 0);
+		throughputMeter.update(1000, 1000);
+		throughputMeter.update(0, 2000);
+		assertThat(throughputMeter.getValue(), is(0L));
+		assertThat(throughputMeter.getAverageRate(), is(0.0));
+	}
+
+}
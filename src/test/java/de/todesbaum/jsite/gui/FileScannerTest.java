@@ -0,0 +1,197 @@
+package de.todesbaum.jsite.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.todesbaum.jsite.application.Project;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link FileScanner}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FileScannerTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final Project project = new Project();
+
+	@Before
+	public void setupProject() throws IOException {
+		project.setLocalPath(temporaryFolder.getRoot().getPath());
+		for (int directoryIndex = 0; directoryIndex < 5; directoryIndex++) {
+			File directory = temporaryFolder.newFolder("dir" + directoryIndex);
+			for (int fileIndex = 0; fileIndex < 20; fileIndex++) {
+				Files.write(new File(directory, "file" + fileIndex + ".txt").toPath(), ("content " + directoryIndex + "/" + fileIndex).getBytes(UTF_8));
+			}
+		}
+		Files.write(temporaryFolder.newFile("index.html").toPath(), "Hello".getBytes(UTF_8));
+	}
+
+	@Test
+	public void fileIsHashedWithSha256() {
+		List<ScannedFile> files = scan(1);
+		ScannedFile indexFile = files.get(files.size() - 1);
+		assertThat(indexFile.getFilename(), is("index.html"));
+		assertThat(indexFile.getHash(), is("185f8db32271fe25f561a6fc938b2e264306ec304eda518007d1764826381969"));
+	}
+
+	@Test
+	public void parallelScanReturnsSameFilesAsSequentialScan() {
+		List<ScannedFile> sequentialFiles = scan(1);
+		List<ScannedFile> parallelFiles = scan(8);
+		assertThat(parallelFiles.size(), is(101));
+		assertThat(toNamesAndHashes(parallelFiles), is(toNamesAndHashes(sequentialFiles)));
+	}
+
+	@Test
+	public void filesAreSortedByName() {
+		List<ScannedFile> files = scan(4);
+		assertThat(toNames(files.subList(0, 3)), contains(
+				"dir0/file0.txt", "dir0/file1.txt", "dir0/file10.txt"
+		));
+	}
+
+	@Test
+	public void everyFileIsSentExactlyOnceBeforeScanFinishes() {
+		List<ScannedFile> streamedFiles = new ArrayList<>();
+		List<ScannedFile> filesAtFinish = new ArrayList<>();
+		FileScanner fileScanner = new FileScanner(project, new FileScannerListener() {
+			@Override
+			public void fileScanned(List<ScannedFile> scannedFiles) {
+				streamedFiles.addAll(scannedFiles);
+			}
+
+			@Override
+			public void fileScannerFinished(boolean error, Collection<ScannedFile> files) {
+				filesAtFinish.addAll(streamedFiles);
+			}
+		});
+		fileScanner.setParallelism(4);
+		fileScanner.run();
+		Collections.sort(filesAtFinish);
+		assertThat(toNamesAndHashes(filesAtFinish), is(toNamesAndHashes(fileScanner.getFiles())));
+	}
+
+	@Test
+	public void progressCountsAllFilesAndBytes() {
+		List<String> progress = new ArrayList<>();
+		FileScanner fileScanner = new FileScanner(project, new FileScannerListener() {
+			@Override
+			public void fileScannerProgress(int scannedFiles, long scannedBytes) {
+				progress.add(scannedFiles + "/" + scannedBytes);
+			}
+
+			@Override
+			public void fileScannerFinished(boolean error, Collection<ScannedFile> files) {
+			}
+		});
+		fileScanner.run();
+		assertThat(progress.get(progress.size() - 1), is("101/1155"));
+		assertThat(fileScanner.getScannedFileCount(), is(101));
+		assertThat(fileScanner.getScannedBytes(), is(1155L));
+	}
+
+	@Test
+	public void progressContainsSeenFilesHashedBytesAndCurrentFile() {
+		FileScanner fileScanner = new FileScanner(project, (error, files) -> { });
+		fileScanner.run();
+		ScanProgress scanProgress = fileScanner.getProgress();
+		assertThat(scanProgress.getSeenFiles(), is(101));
+		assertThat(scanProgress.getHashedBytes(), is(1155L));
+		assertThat(scanProgress.getCurrentFilename(), notNullValue());
+	}
+
+	@Test
+	public void cancelledScanStopsHashingAndFinishesWithError() throws InterruptedException {
+		List<ScannedFile> streamedFiles = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch cancelled = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		FileScanner fileScanner = new FileScanner(project, new FileScannerListener() {
+			@Override
+			public void fileScanned(List<ScannedFile> scannedFiles) {
+				streamedFiles.addAll(scannedFiles);
+				try {
+					cancelled.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ie1) {
+					/* the scan has been cancelled. */
+				}
+			}
+
+			@Override
+			public void fileScannerFinished(boolean error, Collection<ScannedFile> files) {
+				finished.countDown();
+			}
+		});
+		fileScanner.setParallelism(1);
+		ScanTask scanTask = fileScanner.startInBackground();
+		scanTask.cancel();
+		cancelled.countDown();
+		assertThat(finished.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(scanTask.isCancelled(), is(true));
+		assertThat(scanTask.isFinished(), is(true));
+		assertThat(fileScanner.isError(), is(true));
+		assertThat(fileScanner.getFiles(), empty());
+		assertThat(streamedFiles.size(), lessThan(101));
+	}
+
+	@Test
+	public void cancelledHashingReturnsNoHash() throws IOException {
+		File file = temporaryFolder.newFile("large.bin");
+		Files.write(file.toPath(), new byte[1024 * 1024]);
+		assertThat(FileScanner.hashFile(file, () -> true, (bytes) -> { }).isPresent(), is(false));
+	}
+
+	@Test
+	public void unreadableDirectoryResultsInError() {
+		project.setLocalPath(new File(temporaryFolder.getRoot(), "missing").getPath());
+		FileScanner fileScanner = new FileScanner(project, (error, files) -> { });
+		fileScanner.run();
+		assertThat(fileScanner.isError(), is(true));
+	}
+
+	private List<ScannedFile> scan(int parallelism) {
+		FileScanner fileScanner = new FileScanner(project, (error, files) -> { });
+		fileScanner.setParallelism(parallelism);
+		fileScanner.run();
+		assertThat(fileScanner.isError(), is(false));
+		return fileScanner.getFiles();
+	}
+
+	private static List<String> toNames(List<ScannedFile> files) {
+		List<String> names = new ArrayList<>();
+		for (ScannedFile file : files) {
+			names.add(file.getFilename());
+		}
+		return names;
+	}
+
+	private static List<String> toNamesAndHashes(List<ScannedFile> files) {
+		List<String> namesAndHashes = new ArrayList<>();
+		for (ScannedFile file : files) {
+			namesAndHashes.add(file.getFilename() + ":" + file.getHash());
+		}
+		return namesAndHashes;
+	}
+
+}
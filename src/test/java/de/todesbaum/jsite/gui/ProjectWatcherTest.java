@@ -0,0 +1,102 @@
+package de.todesbaum.jsite.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.todesbaum.jsite.application.Project;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ProjectWatcher}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProjectWatcherTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final Project project = new Project();
+	private final BlockingQueue<Set<String>> changes = new LinkedBlockingQueue<>();
+	private ProjectWatcher projectWatcher;
+
+	@Before
+	public void setupProject() throws IOException {
+		project.setName("Test");
+		project.setLocalPath(temporaryFolder.getRoot().getPath());
+		writeFile("index.html", "Hello");
+		writeFile("dir/file.txt", "File");
+		projectWatcher = new ProjectWatcher(project, 200, (project, files, changedFilenames) -> changes.add(changedFilenames));
+		projectWatcher.start();
+	}
+
+	@After
+	public void stopWatcher() {
+		projectWatcher.stop();
+	}
+
+	@Test
+	public void initialScanFindsAllFiles() {
+		assertThat(toNames(projectWatcher.getFiles()), contains("dir/file.txt", "index.html"));
+	}
+
+	@Test
+	public void changedAndNewFilesAreReported() throws IOException, InterruptedException {
+		String oldHash = projectWatcher.getFiles().get(1).getHash();
+		writeFile("index.html", "Changed");
+		writeFile("dir/new.txt", "New");
+		assertThat(awaitChanges(), contains("dir/new.txt", "index.html"));
+		assertThat(toNames(projectWatcher.getFiles()), contains("dir/file.txt", "dir/new.txt", "index.html"));
+		assertThat(projectWatcher.getFiles().get(2).getHash().equals(oldHash), is(false));
+	}
+
+	@Test
+	public void deletedDirectoryRemovesItsFiles() throws IOException, InterruptedException {
+		Files.delete(new File(temporaryFolder.getRoot(), "dir/file.txt").toPath());
+		Files.delete(new File(temporaryFolder.getRoot(), "dir").toPath());
+		assertThat(awaitChanges(), contains("dir/file.txt"));
+		assertThat(toNames(projectWatcher.getFiles()), contains("index.html"));
+	}
+
+	@Test
+	public void rewritingFileWithSameContentIsNotReported() throws IOException, InterruptedException {
+		writeFile("index.html", "Hello");
+		assertThat(changes.poll(2, TimeUnit.SECONDS), nullValue());
+	}
+
+	private Set<String> awaitChanges() throws InterruptedException {
+		return changes.poll(30, TimeUnit.SECONDS);
+	}
+
+	private void writeFile(String name, String content) throws IOException {
+		File file = new File(temporaryFolder.getRoot(), name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+	}
+
+	private static List<String> toNames(List<ScannedFile> files) {
+		List<String> names = new ArrayList<>();
+		for (ScannedFile file : files) {
+			names.add(file.getFilename());
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,107 @@
+package de.todesbaum.jsite.gui;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ScannedFileListModel}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ScannedFileListModelTest {
+
+	private final ScannedFileListModel scannedFileListModel = new ScannedFileListModel();
+
+	@Test
+	public void batchesAreMergedInOrder() {
+		scannedFileListModel.addFiles(files("b.html", "d/e.png"));
+		scannedFileListModel.addFiles(files("c.css", "a.html", "d/f.png"));
+		assertThat(shownFilenames(), contains("a.html", "b.html", "c.css", "d/e.png", "d/f.png"));
+	}
+
+	@Test
+	public void everyBatchSendsOneEventPerKindOfChange() {
+		List<String> events = new ArrayList<>();
+		scannedFileListModel.addListDataListener(new ListDataListener() {
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				events.add("added " + e.getIndex0() + "-" + e.getIndex1());
+			}
+
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				events.add("removed " + e.getIndex0() + "-" + e.getIndex1());
+			}
+
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				events.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+			}
+		});
+		scannedFileListModel.addFiles(files("a", "b", "c"));
+		scannedFileListModel.addFiles(files("d", "e"));
+		assertThat(events, contains("added 0-2", "added 3-4", "changed 0-2"));
+	}
+
+	@Test
+	public void substringFilterIgnoresCase() {
+		scannedFileListModel.addFiles(files("images/Logo.png", "index.html", "style/logo.css"));
+		scannedFileListModel.setFilter("LOGO");
+		assertThat(shownFilenames(), contains("images/Logo.png", "style/logo.css"));
+		scannedFileListModel.setFilter("LOGO.c");
+		assertThat(shownFilenames(), contains("style/logo.css"));
+		scannedFileListModel.setFilter("");
+		assertThat(scannedFileListModel.getSize(), is(3));
+	}
+
+	@Test
+	public void slashFilterMatchesPrefix() {
+		scannedFileListModel.addFiles(files("images/a.png", "images/b.png", "index.html", "style/images.css"));
+		scannedFileListModel.setFilter("/images/");
+		assertThat(shownFilenames(), contains("images/a.png", "images/b.png"));
+	}
+
+	@Test
+	public void filterIsAppliedToAddedFiles() {
+		scannedFileListModel.setFilter("png");
+		scannedFileListModel.addFiles(files("a.png", "b.html"));
+		scannedFileListModel.addFiles(files("c.png"));
+		assertThat(shownFilenames(), contains("a.png", "c.png"));
+		assertThat(scannedFileListModel.getFileCount(), is(3));
+	}
+
+	@Test
+	public void indexOfReturnsRowOfShownFile() {
+		scannedFileListModel.addFiles(files("a.png", "b.html", "c.png"));
+		scannedFileListModel.setFilter("png");
+		assertThat(scannedFileListModel.indexOf(new ScannedFile("c.png", "")), is(1));
+		assertThat(scannedFileListModel.indexOf(new ScannedFile("b.html", "")), is(-1));
+	}
+
+	private static List<ScannedFile> files(String... filenames) {
+		List<ScannedFile> files = new ArrayList<>();
+		for (String filename : asList(filenames)) {
+			files.add(new ScannedFile(filename, ""));
+		}
+		return files;
+	}
+
+	private List<String> shownFilenames() {
+		List<String> filenames = new ArrayList<>();
+		for (int index = 0; index < scannedFileListModel.getSize(); index++) {
+			filenames.add(scannedFileListModel.getElementAt(index).getFilename());
+		}
+		return filenames;
+	}
+
+}
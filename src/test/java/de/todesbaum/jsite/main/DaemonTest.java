@@ -0,0 +1,49 @@
+package de.todesbaum.jsite.main;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link Daemon}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class DaemonTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void missingTokenFileIsCreatedWithRandomToken() throws IOException {
+		File tokenFile = new File(temporaryFolder.getRoot(), "daemon/token");
+		String token = Daemon.loadToken(tokenFile);
+		assertThat(token.length(), is(64));
+		assertThat(new String(Files.readAllBytes(tokenFile.toPath()), UTF_8).trim(), is(token));
+		assertThat(Daemon.loadToken(new File(temporaryFolder.getRoot(), "other-token")), not(token));
+	}
+
+	@Test
+	public void existingTokenIsReused() throws IOException {
+		File tokenFile = new File(temporaryFolder.getRoot(), "token");
+		Files.write(tokenFile.toPath(), "secret\n".getBytes(UTF_8));
+		assertThat(Daemon.loadToken(tokenFile), is("secret"));
+	}
+
+	@Test(expected = IOException.class)
+	public void emptyTokenFileIsRejected() throws IOException {
+		File tokenFile = new File(temporaryFolder.getRoot(), "token");
+		Files.write(tokenFile.toPath(), new byte[0]);
+		Daemon.loadToken(tokenFile);
+	}
+
+}
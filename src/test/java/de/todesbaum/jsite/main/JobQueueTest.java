@@ -0,0 +1,104 @@
+package de.todesbaum.jsite.main;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import de.todesbaum.jsite.main.Job.Status;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link JobQueue}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class JobQueueTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File queueFile() {
+		return new File(temporaryFolder.getRoot(), "jobs/queue");
+	}
+
+	@Test
+	public void unfinishedJobsAreQueuedAgainAfterLoading() {
+		JobQueue jobQueue = new JobQueue(queueFile());
+		Job runningJob = jobQueue.addJob("running", null);
+		runningJob.setStatus(Status.RUNNING);
+		runningJob.setAttempts(1);
+		Job insertedJob = jobQueue.addJob("inserted", "node");
+		insertedJob.setStatus(Status.INSERTED);
+		insertedJob.setRequestURI("USK@key/site/1/");
+		jobQueue.save();
+		JobQueue loadedJobQueue = new JobQueue(queueFile());
+		List<Job> unfinishedJobs = loadedJobQueue.load();
+		assertThat(unfinishedJobs.size(), is(1));
+		assertThat(unfinishedJobs.get(0).getProjectName(), is("running"));
+		assertThat(unfinishedJobs.get(0).getStatus(), is(Status.QUEUED));
+		assertThat(unfinishedJobs.get(0).getAttempts(), is(1));
+		assertThat(unfinishedJobs.get(0).getNodeName(), nullValue());
+		assertThat(loadedJobQueue.getJob(2).getRequestURI(), is("USK@key/site/1/"));
+		assertThat(loadedJobQueue.getJob(2).getNodeName(), is("node"));
+	}
+
+	@Test
+	public void errorOfFailedJobIsStored() {
+		JobQueue jobQueue = new JobQueue(queueFile());
+		Job failedJob = jobQueue.addJob("failed", null);
+		failedJob.setStatus(Status.FAILED);
+		failedJob.setError("Connection\tterminated");
+		jobQueue.addJob("queued", null);
+		jobQueue.save();
+		JobQueue loadedJobQueue = new JobQueue(queueFile());
+		loadedJobQueue.load();
+		assertThat(loadedJobQueue.getJob(1).getError(), is("Connection\tterminated"));
+		assertThat(loadedJobQueue.getJob(2).getError(), nullValue());
+	}
+
+	@Test
+	public void queueOfFirstVersionCanBeLoaded() throws IOException {
+		Files.createDirectories(queueFile().getParentFile().toPath());
+		Files.write(queueFile().toPath(), "jSite daemon jobs 1\n1\tFAILED\t2\tproject\t\t\n".getBytes(UTF_8));
+		JobQueue jobQueue = new JobQueue(queueFile());
+		jobQueue.load();
+		assertThat(jobQueue.getJob(1).getStatus(), is(Status.FAILED));
+		assertThat(jobQueue.getJob(1).getAttempts(), is(2));
+		assertThat(jobQueue.getJob(1).getError(), nullValue());
+	}
+
+	@Test
+	public void identifiersContinueAfterLoading() {
+		JobQueue jobQueue = new JobQueue(queueFile());
+		jobQueue.addJob("first", null);
+		jobQueue.addJob("second", null);
+		JobQueue loadedJobQueue = new JobQueue(queueFile());
+		loadedJobQueue.load();
+		assertThat(loadedJobQueue.addJob("third", null).getIdentifier(), is(3));
+	}
+
+	@Test
+	public void namesWithTabsAndNewlinesAreStored() {
+		JobQueue jobQueue = new JobQueue(queueFile());
+		jobQueue.addJob("project\twith\ntab", null);
+		JobQueue loadedJobQueue = new JobQueue(queueFile());
+		loadedJobQueue.load();
+		assertThat(loadedJobQueue.getJob(1).getProjectName(), is("project\twith\ntab"));
+	}
+
+	@Test
+	public void missingFileResultsInEmptyQueue() {
+		JobQueue jobQueue = new JobQueue(queueFile());
+		assertThat(jobQueue.load().isEmpty(), is(true));
+		assertThat(jobQueue.getJobs().isEmpty(), is(true));
+	}
+
+}
@@ -0,0 +1,105 @@
+package de.todesbaum.util.event;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link EventDispatcher}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class EventDispatcherTest {
+
+	private final EventDispatcher eventDispatcher = new EventDispatcher("Test Events", 4);
+	private final List<String> deliveredEvents = new CopyOnWriteArrayList<>();
+	private final CountDownLatch listenerBlocked = new CountDownLatch(1);
+	private final CountDownLatch listenerReleased = new CountDownLatch(1);
+
+	@Test
+	public void eventsAreDeliveredInOrder() throws InterruptedException {
+		for (int index = 0; index < 100; index++) {
+			dispatch(null, "event-" + index);
+		}
+		awaitEvent("event-99");
+		assertThat(deliveredEvents.size(), is(100));
+		assertThat(deliveredEvents.get(42), is("event-42"));
+	}
+
+	@Test
+	public void producerIsNotBlockedBySlowListener() throws InterruptedException {
+		blockListener();
+		for (int index = 0; index < 1000; index++) {
+			dispatch(null, "event-" + index);
+		}
+		assertThat(eventDispatcher.getPendingEvents(), is(1000));
+		listenerReleased.countDown();
+		awaitEvent("event-999");
+		assertThat(deliveredEvents.size(), is(1000));
+	}
+
+	@Test
+	public void ringBufferShrinksAfterListenerCaughtUp() throws InterruptedException {
+		blockListener();
+		for (int index = 0; index < 1000; index++) {
+			dispatch(null, "event-" + index);
+		}
+		assertThat(eventDispatcher.getBufferSize(), is(1024));
+		listenerReleased.countDown();
+		awaitEvent("event-999");
+		assertThat(eventDispatcher.getBufferSize(), is(4));
+	}
+
+	@Test
+	public void waitingEventIsReplacedByEventWithSameKey() throws InterruptedException {
+		blockListener();
+		dispatch("progress", "progress-1");
+		dispatch("progress", "progress-2");
+		dispatch(null, "finished");
+		dispatch("progress", "progress-3");
+		listenerReleased.countDown();
+		awaitEvent("progress-3");
+		assertThat(deliveredEvents, contains("finished", "progress-3"));
+	}
+
+	@Test
+	public void exceptionInListenerDoesNotStopDelivery() throws InterruptedException {
+		eventDispatcher.dispatch(() -> {
+			throw new IllegalStateException();
+		});
+		dispatch(null, "event");
+		awaitEvent("event");
+		assertThat(deliveredEvents, contains("event"));
+	}
+
+	private void blockListener() throws InterruptedException {
+		eventDispatcher.dispatch(() -> {
+			listenerBlocked.countDown();
+			try {
+				listenerReleased.await();
+			} catch (InterruptedException ie1) {
+				/* test fails below. */
+			}
+		});
+		assertThat(listenerBlocked.await(10, TimeUnit.SECONDS), is(true));
+	}
+
+	private void dispatch(Object coalescingKey, String event) {
+		eventDispatcher.dispatch(coalescingKey, () -> deliveredEvents.add(event));
+	}
+
+	private void awaitEvent(String event) throws InterruptedException {
+		CountDownLatch delivered = new CountDownLatch(1);
+		eventDispatcher.dispatch(delivered::countDown);
+		assertThat(delivered.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(deliveredEvents.get(deliveredEvents.size() - 1), is(event));
+	}
+
+}
@@ -0,0 +1,70 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BlockLayout}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class BlockLayoutTest {
+
+	@Test
+	public void contentThatFitsIntoABlockIsASingleBlock() {
+		BlockLayout blockLayout = BlockLayout.forLength(BlockLayout.BLOCK_SIZE);
+		assertThat(blockLayout.isSplitfile(), is(false));
+		assertThat(blockLayout.getTotalBlocks(), is(1L));
+	}
+
+	@Test
+	public void emptyContentIsASingleBlock() {
+		assertThat(BlockLayout.forLength(0).getTotalBlocks(), is(1L));
+	}
+
+	@Test
+	public void largerContentIsASplitfileWithOneCheckBlockPerDataBlock() {
+		BlockLayout blockLayout = BlockLayout.forLength(BlockLayout.BLOCK_SIZE + 1);
+		assertThat(blockLayout.isSplitfile(), is(true));
+		assertThat(blockLayout.getDataBlocks(), is(2L));
+		assertThat(blockLayout.getCheckBlocks(), is(2L));
+		assertThat(blockLayout.getSegments(), is(1));
+		assertThat(blockLayout.getTotalBlocks(), is(5L));
+	}
+
+	@Test
+	public void dataBlocksAreDistributedEvenlyOverSegments() {
+		BlockLayout blockLayout = BlockLayout.forLength(129L * BlockLayout.BLOCK_SIZE);
+		assertThat(blockLayout.getSegments(), is(2));
+		assertThat(blockLayout.getSegmentDataBlocks(0), is(65));
+		assertThat(blockLayout.getSegmentDataBlocks(1), is(64));
+	}
+
+	@Test
+	public void metadataTooLargeForABlockIsInsertedAsSplitfile() {
+		BlockLayout blockLayout = BlockLayout.forLength(600L * BlockLayout.BLOCK_SIZE);
+		assertThat(blockLayout.getSegments(), is(5));
+		assertThat(blockLayout.getCrossCheckBlocks(), is(0L));
+		assertThat(blockLayout.getMetadataBlocks(), is(5L));
+		assertThat(blockLayout.getTotalBlocks(), is(1205L));
+	}
+
+	@Test
+	public void largeSplitfilesUseCrossSegmentCheckBlocks() {
+		BlockLayout blockLayout = BlockLayout.forLength(20L * BlockLayout.MAX_SEGMENT_DATA_BLOCKS * BlockLayout.BLOCK_SIZE);
+		assertThat(blockLayout.getDataBlocks(), is(2560L));
+		assertThat(blockLayout.getSegments(), is(21));
+		assertThat(blockLayout.getCrossCheckBlocks(), is(63L));
+		assertThat(blockLayout.getCheckBlocks(), is(2623L));
+		assertThat(blockLayout.getMetadataBlocks(), is(13L));
+		assertThat(blockLayout.getTotalBlocks(), is(5259L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeLengthIsRejected() {
+		BlockLayout.forLength(-1);
+	}
+
+}
@@ -0,0 +1,109 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ClientPutComplexDir}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ClientPutComplexDirTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final ClientPutComplexDir clientPutComplexDir = new ClientPutComplexDir("dir-1", "CHK@");
+
+	@Test
+	public void commandWithoutDirectEntriesHasNoPayload() throws IOException {
+		clientPutComplexDir.addFileEntry(new RedirectFileEntry("index.html", "text/html", "CHK@foo"));
+		assertThat(clientPutComplexDir.hasPayload(), is(false));
+	}
+
+	@Test
+	public void headerContainsAllFileEntries() throws IOException {
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("index.html", "text/html", "Hello".getBytes(UTF_8)));
+		clientPutComplexDir.addFileEntry(new RedirectFileEntry("old.html", "text/html", "CHK@foo"));
+		StringWriter writer = new StringWriter();
+		clientPutComplexDir.write(writer);
+		assertThat(writer.toString(), containsString("Files.0.Name=index.html\r\n"));
+		assertThat(writer.toString(), containsString("Files.0.UploadFrom=direct\r\n"));
+		assertThat(writer.toString(), containsString("Files.0.DataLength=5\r\n"));
+		assertThat(writer.toString(), containsString("Files.1.Name=old.html\r\n"));
+		assertThat(writer.toString(), containsString("Files.1.TargetURI=CHK@foo\r\n"));
+	}
+
+	@Test
+	public void payloadLengthDoesNotChangeWhenHeaderIsWrittenTwice() throws IOException {
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("index.html", "text/html", "Hello".getBytes(UTF_8)));
+		clientPutComplexDir.write(new StringWriter());
+		clientPutComplexDir.write(new StringWriter());
+		assertThat(clientPutComplexDir.getPayloadLength(), is(5L));
+	}
+
+	@Test
+	public void payloadOfFileAndStreamEntriesIsWrittenInOrder() throws IOException {
+		File firstFile = createFile("first.txt", "First file.");
+		File secondFile = createFile("second.txt", "Second file.");
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("first.txt", "text/plain", firstFile));
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("inline.txt", "text/plain", "Inline.".getBytes(UTF_8)));
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("second.txt", "text/plain", secondFile));
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		clientPutComplexDir.writePayload(Channels.newChannel(payload), null);
+		assertThat(new String(payload.toByteArray(), UTF_8), is("First file.Inline.Second file."));
+		assertThat(clientPutComplexDir.getPayloadLength(), is((long) payload.size()));
+	}
+
+	@Test
+	public void progressIsReportedForTheWholePayload() throws IOException {
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("first.txt", "text/plain", createFile("first.txt", "12345")));
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("second.txt", "text/plain", createFile("second.txt", "67890")));
+		List<Long> progress = new ArrayList<>();
+		clientPutComplexDir.writePayload(Channels.newChannel(new ByteArrayOutputStream()), (copied, length) -> {
+			assertThat(length, is(10L));
+			progress.add(copied);
+		});
+		assertThat(progress.get(progress.size() - 1), is(10L));
+	}
+
+	@Test
+	public void payloadStreamConcatenatesAllEntries() throws IOException {
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("first.txt", "text/plain", createFile("first.txt", "First.")));
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("second.txt", "text/plain", "Second.".getBytes(UTF_8)));
+		try (InputStream payload = clientPutComplexDir.getPayload()) {
+			assertThat(new String(payload.readAllBytes(), UTF_8), is("First.Second."));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void fileThatShrankBeforeUploadCausesException() throws IOException {
+		File file = createFile("file.txt", "Some content.");
+		clientPutComplexDir.addFileEntry(new DirectFileEntry("file.txt", "text/plain", file));
+		Files.write(file.toPath(), "Less.".getBytes(UTF_8));
+		clientPutComplexDir.writePayload(Channels.newChannel(new ByteArrayOutputStream()), null);
+	}
+
+	private File createFile(String name, String content) throws IOException {
+		File file = temporaryFolder.newFile(name);
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+		return file;
+	}
+
+}
@@ -0,0 +1,86 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ClientPutFile}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ClientPutFileTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void directFileIsSentAsPayload() throws IOException {
+		File file = temporaryFolder.newFile("index.html");
+		Files.write(file.toPath(), "Hello".getBytes(UTF_8));
+		ClientPutFile clientPutFile = new ClientPutFile("file-1", "CHK@", new DirectFileEntry("index.html", "text/html", file));
+		clientPutFile.setTargetFilename("index.html");
+		String header = writeHeader(clientPutFile);
+		assertThat(header, containsString("URI=CHK@\r\n"));
+		assertThat(header, containsString("Metadata.ContentType=text/html\r\n"));
+		assertThat(header, containsString("TargetFilename=index.html\r\n"));
+		assertThat(header, containsString("UploadFrom=direct\r\n"));
+		assertThat(header, containsString("DataLength=5\r\n"));
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		clientPutFile.writePayload(Channels.newChannel(payload), null);
+		assertThat(new String(payload.toByteArray(), UTF_8), is("Hello"));
+	}
+
+	@Test
+	public void rangeOfFileIsSentAsPayload() throws IOException {
+		File file = temporaryFolder.newFile("data.bin");
+		Files.write(file.toPath(), "0123456789".getBytes(UTF_8));
+		ClientPutFile clientPutFile = new ClientPutFile("chunk-1", "CHK@", new DirectFileEntry("data.bin", "application/octet-stream", file, 3, 4));
+		assertThat(writeHeader(clientPutFile), containsString("DataLength=4\r\n"));
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		clientPutFile.writePayload(Channels.newChannel(payload), null);
+		assertThat(new String(payload.toByteArray(), UTF_8), is("3456"));
+		assertThat(new String(clientPutFile.getPayload().readAllBytes(), UTF_8), is("3456"));
+	}
+
+	@Test
+	public void diskFileHasNoPayload() throws IOException {
+		ClientPutFile clientPutFile = new ClientPutFile("file-1", "CHK@", new DiskFileEntry("index.html", "text/html", "/site/index.html"));
+		assertThat(writeHeader(clientPutFile), containsString("Filename=/site/index.html\r\n"));
+		assertThat(clientPutFile.hasPayload(), is(false));
+	}
+
+	@Test
+	public void earlyEncodeIsTerminatedByLinefeed() throws IOException {
+		ClientPutFile clientPutFile = new ClientPutFile("file-1", "CHK@", new RedirectFileEntry("index.html", "text/html", "CHK@foo"));
+		clientPutFile.setEarlyEncode(true);
+		assertThat(writeHeader(clientPutFile), containsString("EarlyEncode=true\r\n"));
+	}
+
+	@Test
+	public void codecsAreOnlySentIfSet() throws IOException {
+		ClientPutFile clientPutFile = new ClientPutFile("file-1", "CHK@", new RedirectFileEntry("index.html", "text/html", "CHK@foo"));
+		assertThat(writeHeader(clientPutFile).contains("Codecs="), is(false));
+		clientPutFile.setCodecs("LZMA_NEW");
+		assertThat(writeHeader(clientPutFile), containsString("Codecs=LZMA_NEW\r\n"));
+	}
+
+	private static String writeHeader(ClientPutFile clientPutFile) throws IOException {
+		StringWriter writer = new StringWriter();
+		clientPutFile.write(writer);
+		return writer.toString();
+	}
+
+}
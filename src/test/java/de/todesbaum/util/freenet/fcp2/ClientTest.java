@@ -0,0 +1,213 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Client}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ClientTest {
+
+	private final List<Command> executedCommands = new CopyOnWriteArrayList<>();
+	private final CountDownLatch removeRequestSent = new CountDownLatch(1);
+	private final Connection connection = new Connection(new Node("localhost"), "test") {
+		@Override
+		public synchronized void execute(Command command, ProgressListener progressListener) {
+			executedCommands.add(command);
+			if (command instanceof RemoveRequest) {
+				removeRequestSent.countDown();
+			}
+		}
+	};
+	private final Client client = new Client(connection);
+
+	@Test
+	public void finalMessageCompletesResult() throws IOException {
+		Request request = client.submit(new ClientGet("get-1"));
+		client.messageReceived(connection, createMessage("AllData", "get-1"));
+		assertThat(request.getResult().getNow(null).getName(), is("AllData"));
+	}
+
+	@Test
+	public void submittedRequestsDoNotEndUpInMessageQueue() throws IOException {
+		client.submit(new ClientGet("get-1"));
+		client.messageReceived(connection, createMessage("AllData", "get-1"));
+		assertThat(client.readMessage(1), nullValue());
+	}
+
+	@Test
+	public void intermediateMessagesArePublished() throws IOException, InterruptedException {
+		Request request = client.submit(new ClientGet("get-1"));
+		List<String> messageNames = new ArrayList<>();
+		CountDownLatch completed = new CountDownLatch(1);
+		request.getMessages().subscribe(new Flow.Subscriber<Message>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(Message message) {
+				messageNames.add(message.getName());
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+				completed.countDown();
+			}
+		});
+		client.messageReceived(connection, createMessage("SimpleProgress", "get-1"));
+		client.messageReceived(connection, createMessage("DataFound", "get-1"));
+		client.messageReceived(connection, createMessage("AllData", "get-1"));
+		assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(messageNames, contains("SimpleProgress", "DataFound"));
+	}
+
+	@Test
+	public void cancelledRequestIsRemovedFromNode() throws IOException, InterruptedException {
+		Request request = client.submit(new ClientGet("get-1"));
+		assertThat(request.cancel(), is(true));
+		assertThat(removeRequestSent.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(executedCommands.get(1).getCommandName(), is("RemoveRequest"));
+		assertThat(executedCommands.get(1).getIdentifier(), is("get-1"));
+	}
+
+	@Test
+	public void cancellingRequestDoesNotWaitForConnection() throws IOException, InterruptedException {
+		Request request = client.submit(new ClientGet("get-1"));
+		CountDownLatch connectionLocked = new CountDownLatch(1);
+		CountDownLatch connectionReleased = new CountDownLatch(1);
+		new Thread(() -> {
+			synchronized (connection) {
+				connectionLocked.countDown();
+				try {
+					connectionReleased.await();
+				} catch (InterruptedException ie1) {
+					/* test fails below. */
+				}
+			}
+		}).start();
+		assertThat(connectionLocked.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(request.cancel(), is(true));
+		assertThat(removeRequestSent.getCount(), is(1L));
+		connectionReleased.countDown();
+		assertThat(removeRequestSent.await(10, TimeUnit.SECONDS), is(true));
+	}
+
+	@Test
+	public void requestTimesOut() throws IOException, InterruptedException {
+		Request request = client.submit(new ClientGet("get-1"), null, 10, TimeUnit.MILLISECONDS);
+		try {
+			request.getResult().get();
+		} catch (ExecutionException ee1) {
+			assertThat(ee1.getCause(), instanceOf(TimeoutException.class));
+		}
+		assertThat(request.getResult().isCompletedExceptionally(), is(true));
+	}
+
+	@Test
+	public void terminatedConnectionFailsPendingRequests() throws IOException, InterruptedException {
+		Request request = client.submit(new ClientGet("get-1"));
+		client.connectionTerminated(connection);
+		try {
+			request.getResult().get();
+		} catch (ExecutionException ee1) {
+			assertThat(ee1.getCause(), instanceOf(IOException.class));
+		}
+		assertThat(request.getResult().isCompletedExceptionally(), is(true));
+	}
+
+	@Test
+	public void messageIsRoutedOnlyToClientOwningTheIdentifier() throws IOException {
+		Client otherClient = new Client(connection);
+		otherClient.setCatchAll(true);
+		client.execute(new ClientGet("get-1"));
+		connection.fireMessageReceived(createMessage("AllData", "get-1"));
+		assertThat(client.readMessage(1).getName(), is("AllData"));
+		assertThat(otherClient.readMessage(1), nullValue());
+	}
+
+	@Test
+	public void messageWithoutIdentifierIsSentToAllClients() throws IOException {
+		Client otherClient = new Client(connection);
+		client.execute(new ClientGet("get-1"));
+		otherClient.execute(new ClientGet("get-2"));
+		connection.fireMessageReceived(createMessage("NodeHello", ""));
+		assertThat(client.readMessage(1).getName(), is("NodeHello"));
+		assertThat(otherClient.readMessage(1).getName(), is("NodeHello"));
+	}
+
+	@Test
+	public void routesOfPreviousCommandsAreRemoved() throws IOException {
+		Client otherClient = new Client(connection);
+		otherClient.setCatchAll(true);
+		client.execute(new ClientGet("get-1"));
+		client.execute(new ClientGet("get-2"));
+		connection.fireMessageReceived(createMessage("AllData", "get-1"));
+		assertThat(client.readMessage(1), nullValue());
+		assertThat(otherClient.readMessage(1).getName(), is("AllData"));
+	}
+
+	@Test
+	public void closedClientCancelsRequestsAndStopsReceivingMessages() throws IOException {
+		Request request = client.submit(new ClientGet("get-1"));
+		client.execute(new ClientGet("get-2"), false);
+		client.close();
+		connection.fireMessageReceived(createMessage("AllData", "get-2"));
+		assertThat(request.getResult().isCancelled(), is(true));
+		assertThat(client.readMessage(1), nullValue());
+	}
+
+	@Test
+	public void firstMessageIsAvailableAfterItWasReceived() throws IOException {
+		Request request = client.submit(new ClientGet("get-1"));
+		client.messageReceived(connection, createMessage("URIGenerated", "get-1"));
+		assertThat(request.getMessage("URIGenerated").getNow(null).getName(), is("URIGenerated"));
+	}
+
+	@Test
+	public void missingMessageFailsWhenRequestIsFinished() throws IOException, InterruptedException {
+		Request request = client.submit(new ClientGet("get-1"));
+		client.messageReceived(connection, createMessage("GetFailed", "get-1"));
+		try {
+			request.getMessage("URIGenerated").get();
+		} catch (ExecutionException ee1) {
+			assertThat(ee1.getCause(), instanceOf(IOException.class));
+		}
+		assertThat(request.getMessage("URIGenerated").isCompletedExceptionally(), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void commandWithoutIdentifierCanNotBeSubmitted() throws IOException {
+		client.submit(new GenerateSSK());
+	}
+
+	private static Message createMessage(String name, String identifier) {
+		Message message = new Message(name);
+		message.setIdentifier(identifier);
+		return message;
+	}
+
+}
@@ -0,0 +1,156 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ConnectionPool}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ConnectionPoolTest {
+
+	private final List<FakeConnection> createdConnections = new ArrayList<>();
+	private final ConnectionPool connectionPool = new ConnectionPool(this::createConnection, 2, 1, TimeUnit.HOURS);
+
+	@Test
+	public void releasedConnectionIsReused() throws IOException {
+		Connection connection = connectionPool.acquire();
+		connectionPool.release(connection);
+		assertThat(connectionPool.acquire(), sameInstance(connection));
+		assertThat(createdConnections.size(), is(1));
+	}
+
+	@Test
+	public void newConnectionIsOpenedWhileAllConnectionsAreUsed() throws IOException {
+		Connection firstConnection = connectionPool.acquire();
+		Connection secondConnection = connectionPool.acquire();
+		assertThat(secondConnection, not(sameInstance(firstConnection)));
+	}
+
+	@Test
+	public void connectionsAreSharedOnceLimitIsReached() throws IOException {
+		Connection firstConnection = connectionPool.acquire();
+		Connection secondConnection = connectionPool.acquire();
+		connectionPool.release(firstConnection);
+		assertThat(connectionPool.acquire(), sameInstance(firstConnection));
+		assertThat(connectionPool.acquire(), sameInstance(firstConnection));
+		assertThat(connectionPool.acquire(), sameInstance(secondConnection));
+		assertThat(createdConnections.size(), is(2));
+	}
+
+	@Test
+	public void lostConnectionIsReplaced() throws IOException {
+		Connection connection = connectionPool.acquire();
+		connectionPool.release(connection);
+		connection.disconnect();
+		assertThat(connectionPool.acquire(), not(sameInstance(connection)));
+		assertThat(connectionPool.getConnectionCount(), is(1));
+	}
+
+	@Test
+	public void idleConnectionIsClosed() throws IOException, InterruptedException {
+		ConnectionPool connectionPool = new ConnectionPool(this::createConnection, 2, 1, TimeUnit.MILLISECONDS);
+		Connection connection = connectionPool.acquire();
+		connectionPool.release(connection);
+		Thread.sleep(10);
+		assertThat(connectionPool.acquire(), not(sameInstance(connection)));
+		assertThat(connection.isConnected(), is(false));
+	}
+
+	@Test
+	public void closingPoolDisconnectsConnections() throws IOException {
+		Connection connection = connectionPool.acquire();
+		connectionPool.close();
+		assertThat(connection.isConnected(), is(false));
+	}
+
+	@Test(timeout = 10000)
+	public void slowConnectDoesNotBlockOtherUsersOfThePool() throws Exception {
+		CountDownLatch connecting = new CountDownLatch(1);
+		CountDownLatch finishConnect = new CountDownLatch(1);
+		AtomicInteger connectionCount = new AtomicInteger();
+		ConnectionPool connectionPool = new ConnectionPool(() -> (connectionCount.getAndIncrement() == 0) ? new FakeConnection() : new FakeConnection() {
+			@Override
+			public boolean connect() {
+				connecting.countDown();
+				try {
+					finishConnect.await();
+				} catch (InterruptedException ie1) {
+					return false;
+				}
+				return super.connect();
+			}
+		}, 2, 1, TimeUnit.HOURS);
+		Connection firstConnection = connectionPool.acquire();
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			Future<Connection> secondConnection = executorService.submit(connectionPool::acquire);
+			assertThat(connecting.await(5, TimeUnit.SECONDS), is(true));
+			connectionPool.release(firstConnection);
+			assertThat(connectionPool.acquire(), sameInstance(firstConnection));
+			finishConnect.countDown();
+			assertThat(secondConnection.get(5, TimeUnit.SECONDS), not(sameInstance(firstConnection)));
+			assertThat(connectionPool.getConnectionCount(), is(2));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void failedConnectCausesException() throws IOException {
+		new ConnectionPool(() -> new Connection(new Node("localhost"), "failing") {
+			@Override
+			public boolean connect() {
+				return false;
+			}
+		}, 2, 1, TimeUnit.HOURS).acquire();
+	}
+
+	private Connection createConnection() {
+		FakeConnection connection = new FakeConnection();
+		createdConnections.add(connection);
+		return connection;
+	}
+
+	private static class FakeConnection extends Connection {
+
+		private boolean connected;
+
+		FakeConnection() {
+			super(new Node("localhost"), "fake");
+		}
+
+		@Override
+		public boolean connect() {
+			connected = true;
+			return true;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public void disconnect() {
+			connected = false;
+		}
+
+	}
+
+}
@@ -0,0 +1,152 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ConnectionSelector}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ConnectionSelectorTest {
+
+	private final List<Socket> sockets = new ArrayList<>();
+	private ServerSocket serverSocket;
+	private ConnectionSelector connectionSelector;
+
+	@Before
+	public void setupServerSocket() throws IOException {
+		serverSocket = new ServerSocket(0);
+		connectionSelector = new ConnectionSelector("Test Selector");
+	}
+
+	@After
+	public void closeSockets() throws IOException {
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		serverSocket.close();
+	}
+
+	@Test
+	public void dataOfAllChannelsIsReceivedBySingleSelector() throws IOException, InterruptedException {
+		List<RecordingHandler> handlers = new ArrayList<>();
+		List<Socket> peers = new ArrayList<>();
+		for (int index = 0; index < 5; index++) {
+			RecordingHandler handler = new RecordingHandler(6);
+			connectionSelector.register(connect(), handler);
+			handlers.add(handler);
+			peers.add(accept());
+		}
+		for (int index = 0; index < 5; index++) {
+			OutputStream outputStream = peers.get(index).getOutputStream();
+			outputStream.write(("node-" + index).getBytes(UTF_8));
+			outputStream.flush();
+		}
+		for (int index = 0; index < 5; index++) {
+			assertThat(handlers.get(index).await(), is(true));
+			assertThat(handlers.get(index).getData(), is("node-" + index));
+		}
+	}
+
+	@Test
+	public void writeLargerThanSendBufferCompletes() throws IOException, InterruptedException {
+		ConnectionSelector.RegisteredChannel registeredChannel = connectionSelector.register(connect(), new RecordingHandler(0));
+		Socket peer = accept();
+		byte[] data = new byte[8 * 1024 * 1024];
+		Arrays.fill(data, (byte) 'x');
+		long[] received = new long[1];
+		Thread readerThread = new Thread(() -> {
+			try (InputStream inputStream = peer.getInputStream()) {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((received[0] < data.length) && ((read = inputStream.read(buffer)) != -1)) {
+					received[0] += read;
+					Thread.sleep(0, 1000);
+				}
+			} catch (IOException | InterruptedException e) {
+				/* test fails below. */
+			}
+		});
+		readerThread.start();
+		assertThat(registeredChannel.write(ByteBuffer.wrap(data)), is(data.length));
+		readerThread.join(TimeUnit.SECONDS.toMillis(30));
+		assertThat(received[0], is((long) data.length));
+	}
+
+	@Test
+	public void handlerIsNotifiedWhenNodeClosesChannel() throws IOException, InterruptedException {
+		RecordingHandler handler = new RecordingHandler(0);
+		connectionSelector.register(connect(), handler);
+		accept().close();
+		assertThat(handler.closed.await(10, TimeUnit.SECONDS), is(true));
+	}
+
+	private SocketChannel connect() throws IOException {
+		return SocketChannel.open(new InetSocketAddress("localhost", serverSocket.getLocalPort()));
+	}
+
+	private Socket accept() throws IOException {
+		Socket socket = serverSocket.accept();
+		sockets.add(socket);
+		return socket;
+	}
+
+	private static class RecordingHandler implements ConnectionSelector.ChannelHandler {
+
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private final CountDownLatch complete;
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		RecordingHandler(int expectedLength) {
+			complete = new CountDownLatch(expectedLength);
+		}
+
+		@Override
+		public void dataReceived(byte[] data, int offset, int length) {
+			synchronized (this.data) {
+				this.data.write(data, offset, length);
+			}
+			for (int index = 0; index < length; index++) {
+				complete.countDown();
+			}
+		}
+
+		@Override
+		public void channelClosed() {
+			closed.countDown();
+		}
+
+		boolean await() throws InterruptedException {
+			return complete.await(10, TimeUnit.SECONDS);
+		}
+
+		String getData() {
+			synchronized (data) {
+				return new String(data.toByteArray(), UTF_8);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,174 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link MessageDecoder}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class MessageDecoderTest {
+
+	private final List<Message> messages = new ArrayList<>();
+	private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+	private final List<String> messagesSeenAtPayloadClose = new ArrayList<>();
+	private final MessageDecoder messageDecoder = new MessageDecoder(messages::add, (message, length) -> new OutputStream() {
+		@Override
+		public void write(int b) {
+			payload.write(b);
+		}
+
+		@Override
+		public void close() {
+			messagesSeenAtPayloadClose.add(String.valueOf(messages.size()));
+		}
+	});
+
+	@Test
+	public void simpleMessageIsDecoded() throws IOException {
+		decode("NodeHello\nVersion=Fred,0.7\nFCPVersion=2.0\nEndMessage\n");
+		assertThat(messages, hasSize(1));
+		assertThat(messages.get(0).getName(), is("NodeHello"));
+		assertThat(messages.get(0).get("Version"), is("Fred,0.7"));
+		assertThat(messages.get(0).get("FCPVersion"), is("2.0"));
+	}
+
+	@Test
+	public void identifierIsStoredSeparately() throws IOException {
+		decode("SimpleProgress\nIdentifier=dir-1\nTotal=10\nEndMessage\n");
+		assertThat(messages.get(0).getIdentifier(), is("dir-1"));
+		assertThat(messages.get(0).get("Identifier"), nullValue());
+	}
+
+	@Test
+	public void keysAndValuesAreTrimmed() throws IOException {
+		decode("SimpleProgress\n Total = 10 \nEndMessage\n");
+		assertThat(messages.get(0).get("Total"), is("10"));
+	}
+
+	@Test
+	public void valuesMayContainEqualsSigns() throws IOException {
+		decode("URIGenerated\nURI=SSK@a,b,AQECAAE/site?x=1\nEndMessage\n");
+		assertThat(messages.get(0).get("URI"), is("SSK@a,b,AQECAAE/site?x=1"));
+	}
+
+	@Test
+	public void carriageReturnLinefeedIsHandled() throws IOException {
+		decode("NodeHello\r\nVersion=1\r\nEndMessage\r\nSimpleProgress\r\nTotal=2\r\nEndMessage\r\n");
+		assertThat(messages, hasSize(2));
+		assertThat(messages.get(1).get("Total"), is("2"));
+	}
+
+	@Test
+	public void emptyLinesBetweenMessagesAreSkipped() throws IOException {
+		decode("\n\nNodeHello\n\nVersion=1\nEndMessage\n\n");
+		assertThat(messages, hasSize(1));
+		assertThat(messages.get(0).getName(), is("NodeHello"));
+	}
+
+	@Test
+	public void multiByteCharactersAreDecoded() throws IOException {
+		decode("ProtocolError\nCodeDescription=Grüße aus Köln ✓\nEndMessage\n");
+		assertThat(messages.get(0).get("CodeDescription"), is("Grüße aus Köln ✓"));
+	}
+
+	@Test
+	public void messageSplitIntoSingleBytesIsDecoded() throws IOException {
+		byte[] data = "ProtocolError\r\nCodeDescription=Grüße\r\nEndMessage\r\n".getBytes(UTF_8);
+		for (int index = 0; index < data.length; index++) {
+			messageDecoder.decode(data, index, 1);
+		}
+		assertThat(messages, hasSize(1));
+		assertThat(messages.get(0).get("CodeDescription"), is("Grüße"));
+	}
+
+	@Test
+	public void payloadIsHandedToPayloadHandlerBeforeMessageIsDecoded() throws IOException {
+		decode("AllData\nIdentifier=get-1\nDataLength=5\nData\nHello\nSimpleProgress\nEndMessage\n");
+		assertThat(messages, hasSize(2));
+		assertThat(messages.get(0).getName(), is("AllData"));
+		assertThat(new String(payload.toByteArray(), UTF_8), is("Hello"));
+		assertThat(messagesSeenAtPayloadClose, contains("0"));
+		assertThat(messages.get(1).getName(), is("SimpleProgress"));
+	}
+
+	@Test
+	public void payloadContainingLineBreaksIsNotParsed() throws IOException {
+		decode("AllData\nDataLength=7\nData\n\r\nA=B\r\nSimpleProgress\nEndMessage\n");
+		assertThat(new String(payload.toByteArray(), UTF_8), is("\r\nA=B\r\n"));
+		assertThat(messages, hasSize(2));
+	}
+
+	@Test
+	public void payloadSplitIntoChunksIsReassembled() throws IOException {
+		byte[] data = "AllData\nDataLength=10\nData\n0123456789".getBytes(UTF_8);
+		messageDecoder.decode(data, 0, data.length - 7);
+		assertThat(messages, hasSize(0));
+		messageDecoder.decode(data, data.length - 7, 7);
+		assertThat(new String(payload.toByteArray(), UTF_8), is("0123456789"));
+		assertThat(messages, hasSize(1));
+	}
+
+	@Test
+	public void linefeedAfterDataLineIsNotPartOfPayload() throws IOException {
+		decode("AllData\r\nDataLength=3\r\nData\r\nabcSimpleProgress\r\nEndMessage\r\n");
+		assertThat(new String(payload.toByteArray(), UTF_8), is("abc"));
+		assertThat(messages, hasSize(2));
+	}
+
+	@Test
+	public void emptyPayloadIsHandled() throws IOException {
+		decode("AllData\nDataLength=0\nData\nSimpleProgress\nEndMessage\n");
+		assertThat(messages, hasSize(2));
+		assertThat(payload.size(), is(0));
+	}
+
+	@Test
+	public void payloadIsDiscardedWithoutPayloadHandler() throws IOException {
+		MessageDecoder messageDecoder = new MessageDecoder(messages::add, null);
+		byte[] data = "AllData\nDataLength=3\nData\nabcSimpleProgress\nEndMessage\n".getBytes(UTF_8);
+		messageDecoder.decode(new ByteArrayInputStream(data));
+		assertThat(messages, hasSize(2));
+		assertThat(messages.get(1).getName(), is("SimpleProgress"));
+	}
+
+	@Test
+	public void streamIsReadInChunksSmallerThanAMessage() throws IOException {
+		MessageDecoder messageDecoder = new MessageDecoder(messages::add, null, 3);
+		byte[] data = "NodeHello\r\nVersion=Fred,0.7,1.0,1475\r\nEndMessage\r\nSimpleProgress\nTotal=10\nEndMessage\n".getBytes(UTF_8);
+		messageDecoder.decode(new ByteArrayInputStream(data));
+		assertThat(messages, hasSize(2));
+		assertThat(messages.get(0).get("Version"), is("Fred,0.7,1.0,1475"));
+		assertThat(messages.get(1).get("Total"), is("10"));
+	}
+
+	@Test(expected = IOException.class)
+	public void lineWithoutEqualsSignThrowsException() throws IOException {
+		decode("NodeHello\nGarbage\nEndMessage\n");
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidDataLengthThrowsException() throws IOException {
+		decode("AllData\nDataLength=many\nData\n");
+	}
+
+	private void decode(String data) throws IOException {
+		byte[] bytes = data.getBytes(UTF_8);
+		messageDecoder.decode(bytes, 0, bytes.length);
+	}
+
+}